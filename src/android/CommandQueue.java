@@ -0,0 +1,159 @@
+package com.eltonfaust.multiplayer;
+
+import android.os.Handler;
+import android.util.Log;
+
+import org.apache.cordova.CallbackContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queues the player commands on the command thread keeping only the latest intent of each slot.
+ *
+ * A command submitted while a command of the same slot is still waiting replaces it:
+ * if both are the same action (eg. play, play), the waiting callbacks are resolved with the result of the latest,
+ * otherwise (eg. play, stop) the waiting callbacks receive the "SUPERSEDED" error and the waiting command never runs.
+ */
+public class CommandQueue {
+    private static final String LOG_TAG = "MultiPlayer";
+
+    // Error sent to the callbacks of a command replaced by another action before running
+    public static final String SUPERSEDED = "SUPERSEDED";
+
+    /**
+     * A player command, run on the command thread
+     */
+    public interface Command {
+        /**
+         * @return null on success, the error message otherwise
+         */
+        String run();
+    }
+
+    private final Handler handler;
+
+    /**
+     * Commands waiting to run, by slot
+     */
+    private final Map<String, Entry> pending = new HashMap<String, Entry>();
+
+    public CommandQueue(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Queue a command, replacing the command of the same slot still waiting
+     *
+     * @param slot commands of the same slot collapse (eg. the play and stop of a session)
+     * @param action
+     * @param callbackContext
+     * @param command
+     */
+    public void submit(String slot, String action, CallbackContext callbackContext, Command command) {
+        Entry entry = new Entry(slot, action, command);
+        List<CallbackContext> superseded = new ArrayList<CallbackContext>();
+
+        synchronized (this) {
+            Entry previous = this.remove(slot);
+
+            if (previous != null) {
+                if (previous.action.equals(action)) {
+                    entry.callbacks.addAll(previous.callbacks);
+                    this.log("Collapsed duplicated " + action + " on " + slot);
+                } else {
+                    superseded.addAll(previous.callbacks);
+                    this.log(previous.action + " superseded by " + action + " on " + slot);
+                }
+            }
+
+            entry.callbacks.add(callbackContext);
+            this.pending.put(slot, entry);
+            this.handler.post(entry);
+        }
+
+        this.resolveSuperseded(superseded);
+    }
+
+    /**
+     * Drop every waiting command, eg. before disconnecting
+     */
+    public void supersedeAll() {
+        List<CallbackContext> superseded = new ArrayList<CallbackContext>();
+
+        synchronized (this) {
+            Iterator<Entry> iterator = this.pending.values().iterator();
+
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                this.handler.removeCallbacks(entry);
+                superseded.addAll(entry.callbacks);
+                iterator.remove();
+            }
+        }
+
+        this.resolveSuperseded(superseded);
+    }
+
+    private Entry remove(String slot) {
+        Entry entry = this.pending.remove(slot);
+
+        if (entry != null) {
+            this.handler.removeCallbacks(entry);
+        }
+
+        return entry;
+    }
+
+    private void resolveSuperseded(List<CallbackContext> callbacks) {
+        for (CallbackContext callbackContext : callbacks) {
+            callbackContext.error(SUPERSEDED);
+        }
+    }
+
+    private class Entry implements Runnable {
+        private final String slot;
+        private final String action;
+        private final Command command;
+        private final List<CallbackContext> callbacks = new ArrayList<CallbackContext>();
+
+        Entry(String slot, String action, Command command) {
+            this.slot = slot;
+            this.action = action;
+            this.command = command;
+        }
+
+        public void run() {
+            synchronized (CommandQueue.this) {
+                // replaced after being posted
+                if (CommandQueue.this.pending.get(this.slot) != this) {
+                    return;
+                }
+
+                CommandQueue.this.pending.remove(this.slot);
+            }
+
+            String error = this.command.run();
+
+            for (CallbackContext callbackContext : this.callbacks) {
+                if (error == null) {
+                    callbackContext.success();
+                } else {
+                    callbackContext.error(error);
+                }
+            }
+        }
+    }
+
+    /**
+     * Logger
+     *
+     * @param log
+     */
+    private void log(String log) {
+        Log.v(LOG_TAG, "CommandQueue : " + log);
+    }
+}
@@ -0,0 +1,173 @@
+package com.eltonfaust.multiplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Delivers the player events to the initialize callback.
+ *
+ * On legacy mode, events without payload are sent as plain strings (eg. "STARTED") and events with payload as
+ * an object, each one on its own PluginResult.
+ * On structured mode, every event is an object with type, timestamp (monotonic, in ms), seq and optional data,
+ * events emitted within the batch window are sent together as an array on a single PluginResult,
+ * and high frequency events of the same type are merged keeping only the latest.
+ */
+public class EventChannel {
+    // Default time events are held to be sent on the same batch
+    private static final int DEFAULT_BATCH_WINDOW_MS = 50;
+
+    // Events where only the latest value matters, merged when waiting on the same batch
+    private static final Set<String> COALESCED_TYPES = new HashSet<String>(Arrays.asList("METADATA", "STATS", "RECORDING"));
+
+    // Events sent as plain strings on legacy mode even with payload, apps compare them with the string
+    private static final Set<String> LEGACY_STRING_TYPES = new HashSet<String>(Arrays.asList("ERROR"));
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Sequence number of the last event, never reset, so the order is kept across reconnects and re-initializations
+     */
+    private long sequence = 0;
+
+    private CallbackContext callbackContext = null;
+    private TimingStats timingStats = null;
+    private boolean structured = false;
+    private int batchWindow = DEFAULT_BATCH_WINDOW_MS;
+
+    /**
+     * Events waiting to be sent on the next batch
+     */
+    private final List<JSONObject> pending = new ArrayList<JSONObject>();
+
+    /**
+     * Set the callback the events are sent to, pending events are sent to the previous callback
+     *
+     * @param callbackContext
+     * @param structured
+     * @param batchWindow batch window in ms, -1 to use the default
+     */
+    public synchronized void configure(CallbackContext callbackContext, boolean structured, int batchWindow) {
+        this.flush();
+
+        this.callbackContext = callbackContext;
+        this.structured = structured;
+        this.batchWindow = batchWindow >= 0 ? batchWindow : DEFAULT_BATCH_WINDOW_MS;
+    }
+
+    /**
+     * Record the time spent building and sending the results
+     *
+     * @param timingStats null to not record
+     */
+    public synchronized void setTimingStats(TimingStats timingStats) {
+        this.timingStats = timingStats;
+    }
+
+    /**
+     * Send an event
+     *
+     * @param type
+     * @param data optional payload
+     */
+    public synchronized void send(String type, JSONObject data) {
+        if (this.callbackContext == null) {
+            return;
+        }
+
+        this.sequence++;
+
+        if (!this.structured && (data == null || LEGACY_STRING_TYPES.contains(type))) {
+            this.sendResult(new PluginResult(PluginResult.Status.OK, type));
+            return;
+        }
+
+        // events without data leave it out
+        JSONObject event = new JSONBuilder()
+            .put("type", type)
+            .put("timestamp", SystemClock.elapsedRealtime())
+            .put("seq", this.sequence)
+            .put("data", data)
+            .build();
+
+        if (!this.structured) {
+            this.sendResult(new PluginResult(PluginResult.Status.OK, event));
+            return;
+        }
+
+        if (COALESCED_TYPES.contains(type)) {
+            Iterator<JSONObject> iterator = this.pending.iterator();
+
+            while (iterator.hasNext()) {
+                if (type.equals(iterator.next().optString("type"))) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        this.pending.add(event);
+
+        if (this.batchWindow == 0) {
+            this.flush();
+        } else if (this.pending.size() == 1) {
+            this.handler.postDelayed(this.flushRunnable, this.batchWindow);
+        }
+    }
+
+    /**
+     * Send the pending events immediately
+     */
+    public synchronized void flush() {
+        this.handler.removeCallbacks(this.flushRunnable);
+
+        if (this.pending.isEmpty()) {
+            return;
+        }
+
+        long flushStart = TimingStats.start();
+        JSONArray batch = new JSONArray();
+
+        for (JSONObject event : this.pending) {
+            batch.put(event);
+        }
+
+        this.pending.clear();
+        this.sendResult(new PluginResult(PluginResult.Status.OK, batch));
+
+        if (this.timingStats != null) {
+            // batch serialization and send
+            this.timingStats.record("eventFlush", flushStart);
+        }
+    }
+
+    private void sendResult(PluginResult pluginResult) {
+        if (this.callbackContext != null) {
+            long sendStart = TimingStats.start();
+
+            pluginResult.setKeepCallback(true);
+            this.callbackContext.sendPluginResult(pluginResult);
+
+            if (this.timingStats != null) {
+                this.timingStats.record("eventSend", sendStart);
+            }
+        }
+    }
+
+    private final Runnable flushRunnable = new Runnable() {
+        public void run() {
+            EventChannel.this.flush();
+        }
+    };
+}
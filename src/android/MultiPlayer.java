@@ -6,15 +6,36 @@ import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class MultiPlayer extends CordovaPlugin implements RadioListener {
     private static final String LOG_TAG = "MultiPlayer";
 
-    private RadioManager mRadioManager = null;
-    private CallbackContext connectionCallbackContext;
-    private boolean isConnecting = false;
-    private boolean isConnected = false;
-    private JSONArray requestedPlay = null;
+    // Command queue slot of connect and disconnect
+    private static final String CONNECTION_SLOT = "connection";
+
+    private volatile RadioManager mRadioManager = null;
+    private EventChannel mEventChannel = new EventChannel();
+
+    /**
+     * Collapses the play, stop, connect and disconnect commands waiting to run to the latest intent
+     */
+    private final CommandQueue mCommandQueue = new CommandQueue(RadioManager.getRequestHandler());
+
+    /**
+     * Play requests waiting the service connection, by session id
+     */
+    private Map<Integer, JSONArray> requestedPlays = new HashMap<Integer, JSONArray>();
+
+    /**
+     * Event listeners of the sessions created with createSession, by session id
+     */
+    private Map<Integer, SessionEventListener> mSessionListeners = new HashMap<Integer, SessionEventListener>();
 
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
@@ -24,10 +45,41 @@ public class MultiPlayer extends CordovaPlugin implements RadioListener {
             synchronized (this) {
                 try {
                     this.mRadioManager = RadioManager.with(this.cordova.getActivity(), this);
-                    this.mRadioManager.setStreamURL(args.getString(0));
+                    this.mRadioManager.setStreamURLs(this.getStreamURLs(args.get(0)));
                     this.mRadioManager.setAutoKillNotification(args.getBoolean(1));
+                    this.mRadioManager.setStallTimeout(args.optInt(2, 0));
+
+                    JSONObject options = args.optJSONObject(3);
 
-                    this.connectionCallbackContext = callbackContext;
+                    if (options == null) {
+                        options = new JSONObject();
+                    }
+
+                    this.mRadioManager.setBufferProfile(options.isNull("profile") ? null : options.getString("profile"));
+                    this.mRadioManager.setRetryPolicy(
+                        options.optInt("retryMaxAttempts", -1),
+                        options.optInt("retryBaseDelay", 0),
+                        options.optInt("retryMaxDelay", 0)
+                    );
+                    this.mRadioManager.setCache(
+                        options.optBoolean("cache", false),
+                        options.optLong("cacheMaxBytes", 0),
+                        this.getStringList(options.optJSONArray("cacheIgnoredParams"))
+                    );
+                    this.mRadioManager.setPreWarm(options.optBoolean("preWarm", false), options.optInt("preWarmTimeout", 0));
+                    this.mRadioManager.setSoftStop(options.optBoolean("softStop", false), options.optInt("softStopTimeout", 0));
+                    this.mRadioManager.setTimeShift(options.optBoolean("timeShift", false), options.optInt("timeShiftDuration", 0));
+                    this.mRadioManager.setMounts(this.getMounts(options.optJSONArray("mounts")));
+                    this.mRadioManager.setStatsInterval(options.optInt("statsInterval", 0));
+                    this.mRadioManager.setMetadataInterval(options.optInt("metadataInterval", -1));
+                    TimingStats.setEnabled(options.optBoolean("timings", false));
+
+                    this.mEventChannel.configure(
+                        callbackContext,
+                        options.optBoolean("structuredEvents", false),
+                        options.optInt("eventBatchWindow", -1)
+                    );
+                    this.mEventChannel.setTimingStats(this.mRadioManager.getSession(RadioManager.DEFAULT_SESSION_ID).getTimingStats());
 
                     PluginResult pluginResult = new PluginResult(PluginResult.Status.NO_RESULT);
                     pluginResult.setKeepCallback(true);
@@ -38,112 +90,374 @@ public class MultiPlayer extends CordovaPlugin implements RadioListener {
                     callbackContext.error(e.getMessage());
                 }
             }
-        } else if ("connect".equals(action)) {
-            // cordova.getActivity().runOnUiThread(new Runnable() {
+        } else if ("createSession".equals(action)) {
             RadioManager.getRequestHandler().post(new Runnable() {
                 public void run() {
                     synchronized (MultiPlayer.this) {
-                        if (!isConnected && !isConnecting) {
-                            isConnecting = true;
+                        if (mRadioManager == null) {
+                            callbackContext.error("NOT_INITIALIZED");
+                            return;
+                        }
 
-                            try {
-                                mRadioManager.connect();
-                            } catch (Exception e) {
-                                log("Exception occurred during connect: ".concat(e.getMessage()));
-                                isConnecting = false;
-                                callbackContext.error(e.getMessage());
-                                return;
+                        try {
+                            JSONObject options = args.optJSONObject(1);
+
+                            if (options == null) {
+                                options = new JSONObject();
+                            }
+
+                            RadioSession session = mRadioManager.createSession();
+                            configureSession(session, getStreamURLs(args.get(0)), options);
+
+                            EventChannel eventChannel = new EventChannel();
+                            eventChannel.configure(
+                                callbackContext,
+                                options.optBoolean("structuredEvents", false),
+                                options.optInt("eventBatchWindow", -1)
+                            );
+                            eventChannel.setTimingStats(session.getTimingStats());
+
+                            SessionEventListener sessionListener = new SessionEventListener(eventChannel);
+                            mSessionListeners.put(session.getId(), sessionListener);
+                            session.setListener(sessionListener);
+
+                            if (isConnected()) {
+                                session.preWarm();
+                            }
+
+                            eventChannel.send("SESSION", new JSONBuilder().put("id", session.getId()).build());
+
+                            if (isConnected()) {
+                                // already usable, later service connections are notified by the manager
+                                sessionListener.onRadioConnected();
                             }
+                        } catch (Exception e) {
+                            log("Exception occurred during createSession: ".concat(e.getMessage()));
+                            callbackContext.error(e.getMessage());
                         }
+                    }
+                }
+            });
 
-                        callbackContext.success();
+            return true;
+        } else if ("connect".equals(action)) {
+            this.mCommandQueue.submit(CONNECTION_SLOT, action, callbackContext, new CommandQueue.Command() {
+                public String run() {
+                    synchronized (MultiPlayer.this) {
+                        try {
+                            mRadioManager.connect();
+                        } catch (Exception e) {
+                            log("Exception occurred during connect: ".concat(e.getMessage()));
+                            return e.getMessage();
+                        }
+
+                        return null;
                     }
                 }
             });
 
             return true;
         } else if ("disconnect".equals(action)) {
-            RadioManager.getRequestHandler().post(new Runnable() {
-                public void run() {
+            final int sessionId = args.optInt(0, RadioManager.DEFAULT_SESSION_ID);
+
+            if (sessionId != RadioManager.DEFAULT_SESSION_ID) {
+                this.mCommandQueue.submit(this.getPlaybackSlot(sessionId), action, callbackContext, new CommandQueue.Command() {
+                    public String run() {
+                        synchronized (MultiPlayer.this) {
+                            try {
+                                destroySession(sessionId);
+                            } catch (Exception e) {
+                                log("Exception occurred during session disconnect: ".concat(e.getMessage()));
+                                return e.getMessage();
+                            }
+
+                            return null;
+                        }
+                    }
+                });
+
+                return true;
+            }
+
+            // nothing waiting matters after the disconnect
+            this.mCommandQueue.supersedeAll();
+
+            this.mCommandQueue.submit(CONNECTION_SLOT, action, callbackContext, new CommandQueue.Command() {
+                public String run() {
                     synchronized (MultiPlayer.this) {
-                        requestedPlay = null;
-                        boolean canDisconnect = isConnecting || isConnected;
+                        requestedPlays.clear();
+                        boolean canDisconnect = mRadioManager.getConnectionState() != ConnectionState.DISCONNECTED;
 
                         if (canDisconnect) {
                             try {
-                                isConnecting = false;
-                                isConnected = false;
                                 mRadioManager.disconnect();
                             } catch (Exception e) {
                                 log("Exception occurred during disconnect: ".concat(e.getMessage()));
-                                callbackContext.error(e.getMessage());
-                                return;
+                                return e.getMessage();
                             }
-                        }
 
-                        callbackContext.success();
-
-                        if (canDisconnect) {
                             log("RADIO STATE - DISCONNECTED...");
                             sendListenerResult("DISCONNECTED");
                         }
+
+                        return null;
                     }
                 }
             });
 
             return true;
         } else if ("play".equals(action)) {
-            RadioManager.getRequestHandler().post(new Runnable() {
-                public void run() {
+            this.traceCommand(args.optInt(2, RadioManager.DEFAULT_SESSION_ID), action, "received");
+
+            this.mCommandQueue.submit(this.getPlaybackSlot(args.optInt(2, RadioManager.DEFAULT_SESSION_ID)), action, callbackContext, new CommandQueue.Command() {
+                public String run() {
                     synchronized (MultiPlayer.this) {
-                        if (!isConnected) {
-                            requestedPlay = args;
-
-                            if (!isConnecting) {
-                                isConnecting = true;
-
-                                try {
-                                    mRadioManager.connect();
-                                } catch (Exception e) {
-                                    log("Exception occurred during play auto connect: ".concat(e.getMessage()));
-                                    isConnecting = false;
-                                    requestedPlay = null;
-                                    callbackContext.error(e.getMessage());
-                                    return;
-                                }
+                        int sessionId = args.optInt(2, RadioManager.DEFAULT_SESSION_ID);
+                        traceCommand(sessionId, null, "command");
+
+                        if (!isConnected()) {
+                            requestedPlays.put(sessionId, args);
+
+                            try {
+                                mRadioManager.connect();
+                            } catch (Exception e) {
+                                log("Exception occurred during play auto connect: ".concat(e.getMessage()));
+                                requestedPlays.remove(sessionId);
+                                return e.getMessage();
                             }
                         } else {
-                            requestedPlay = null;
+                            requestedPlays.remove(sessionId);
 
                             try {
-                                mRadioManager.startRadio(args.getInt(0));
+                                startRadio(args);
                             } catch (Exception e) {
                                 log("Exception occurred during play: ".concat(e.getMessage()));
-                                callbackContext.error(e.getMessage());
-                                return;
+                                return e.getMessage();
                             }
                         }
 
-                        callbackContext.success();
+                        return null;
                     }
                 }
             });
 
             return true;
         } else if ("stop".equals(action)) {
-            RadioManager.getRequestHandler().post(new Runnable() {
-                public void run() {
+            this.traceCommand(args.optInt(0, RadioManager.DEFAULT_SESSION_ID), action, "received");
+
+            this.mCommandQueue.submit(this.getPlaybackSlot(args.optInt(0, RadioManager.DEFAULT_SESSION_ID)), action, callbackContext, new CommandQueue.Command() {
+                public String run() {
                     synchronized (MultiPlayer.this) {
-                        requestedPlay = null;
+                        int sessionId = args.optInt(0, RadioManager.DEFAULT_SESSION_ID);
+                        traceCommand(sessionId, null, "command");
+                        requestedPlays.remove(sessionId);
 
-                        if (isConnected) {
+                        if (isConnected()) {
                             try {
-                                mRadioManager.stopRadio();
+                                mRadioManager.stopRadio(sessionId);
                             } catch (Exception e) {
                                 log("Exception occurred during stop: ".concat(e.getMessage()));
-                                callbackContext.error(e.getMessage());
-                                return;
+                                return e.getMessage();
+                            }
+                        }
+
+                        return null;
+                    }
+                }
+            });
+
+            return true;
+        } else if ("setStations".equals(action)) {
+            RadioManager.getRequestHandler().post(new Runnable() {
+                public void run() {
+                    synchronized (MultiPlayer.this) {
+                        if (mRadioManager == null) {
+                            callbackContext.error("NOT_INITIALIZED");
+                            return;
+                        }
+
+                        try {
+                            JSONArray urls = args.getJSONArray(0);
+                            JSONObject options = args.optJSONObject(1);
+                            List<String> stations = new ArrayList<String>();
+
+                            if (options == null) {
+                                options = new JSONObject();
+                            }
+
+                            for (int i = 0; i < urls.length(); i++) {
+                                stations.add(urls.getString(i));
+                            }
+
+                            mRadioManager.setStations(
+                                args.optInt(2, RadioManager.DEFAULT_SESSION_ID),
+                                stations,
+                                options.optInt("preloadNeighbors", 1),
+                                options.optInt("preloadBuffer", 0)
+                            );
+                        } catch (Exception e) {
+                            log("Exception occurred during setStations: ".concat(e.getMessage()));
+                            callbackContext.error(e.getMessage());
+                            return;
+                        }
+
+                        callbackContext.success();
+                    }
+                }
+            });
+
+            return true;
+        } else if ("scheduleAlarm".equals(action) || "cancelAlarm".equals(action)) {
+            RadioManager.getRequestHandler().post(new Runnable() {
+                public void run() {
+                    synchronized (MultiPlayer.this) {
+                        if (mRadioManager == null) {
+                            callbackContext.error("NOT_INITIALIZED");
+                            return;
+                        }
+
+                        try {
+                            if ("scheduleAlarm".equals(action)) {
+                                JSONObject options = args.optJSONObject(1);
+
+                                if (options == null) {
+                                    options = new JSONObject();
+                                }
+
+                                mRadioManager.scheduleAlarm(
+                                    args.optInt(2, RadioManager.DEFAULT_SESSION_ID),
+                                    new AlarmSchedule(
+                                        args.getLong(0),
+                                        options.optInt("leadTime", AlarmSchedule.DEFAULT_LEAD_MS),
+                                        options.optInt("rampDuration", AlarmSchedule.DEFAULT_RAMP_MS),
+                                        options.isNull("fallback") ? null : options.getString("fallback")
+                                    )
+                                );
+                            } else {
+                                mRadioManager.cancelAlarm(args.optInt(0, RadioManager.DEFAULT_SESSION_ID));
+                            }
+                        } catch (Exception e) {
+                            log("Exception occurred during " + action + ": ".concat(e.getMessage()));
+                            callbackContext.error(e.getMessage());
+                            return;
+                        }
+
+                        callbackContext.success();
+                    }
+                }
+            });
+
+            return true;
+        } else if ("switchStation".equals(action)) {
+            this.traceCommand(args.optInt(2, RadioManager.DEFAULT_SESSION_ID), action, "received");
+
+            RadioManager.getRequestHandler().post(new Runnable() {
+                public void run() {
+                    synchronized (MultiPlayer.this) {
+                        traceCommand(args.optInt(2, RadioManager.DEFAULT_SESSION_ID), null, "command");
+
+                        if (!isConnected()) {
+                            callbackContext.error("NOT_CONNECTED");
+                            return;
+                        }
+
+                        try {
+                            mRadioManager.switchStation(
+                                args.optInt(2, RadioManager.DEFAULT_SESSION_ID),
+                                args.getInt(0),
+                                args.optBoolean(1, false)
+                            );
+                        } catch (Exception e) {
+                            log("Exception occurred during switchStation: ".concat(e.getMessage()));
+                            callbackContext.error(e.getMessage());
+                            return;
+                        }
+
+                        callbackContext.success();
+                    }
+                }
+            });
+
+            return true;
+        } else if ("clearCache".equals(action) || "pinCache".equals(action)) {
+            RadioManager.getRequestHandler().post(new Runnable() {
+                public void run() {
+                    synchronized (MultiPlayer.this) {
+                        if (mRadioManager == null) {
+                            callbackContext.error("NOT_INITIALIZED");
+                            return;
+                        }
+
+                        try {
+                            if ("clearCache".equals(action)) {
+                                mRadioManager.clearCache(args.isNull(0) ? null : args.getString(0));
+                            } else {
+                                mRadioManager.pinCache(args.getString(0), args.optBoolean(1, true));
                             }
+                        } catch (Exception e) {
+                            log("Exception occurred during " + action + ": ".concat(e.getMessage()));
+                            callbackContext.error(e.getMessage());
+                            return;
+                        }
+
+                        callbackContext.success();
+                    }
+                }
+            });
+
+            return true;
+        } else if ("getState".equals(action)) {
+            // answered on the calling thread from the published snapshot, never waits the player work
+            RadioManager radioManager = this.mRadioManager;
+
+            if (radioManager == null) {
+                callbackContext.error("NOT_INITIALIZED");
+                return true;
+            }
+
+            try {
+                callbackContext.success(radioManager.getSession(args.optInt(0, RadioManager.DEFAULT_SESSION_ID)).getSnapshot().toJSON());
+            } catch (Exception e) {
+                log("Exception occurred during getState: ".concat(e.getMessage()));
+                callbackContext.error(e.getMessage());
+            }
+
+            return true;
+        } else if ("getStats".equals(action)) {
+            RadioManager.getRequestHandler().post(new Runnable() {
+                public void run() {
+                    synchronized (MultiPlayer.this) {
+                        if (!isConnected()) {
+                            callbackContext.error("NOT_CONNECTED");
+                            return;
+                        }
+
+                        try {
+                            callbackContext.success(mRadioManager.getStats(args.optInt(0, RadioManager.DEFAULT_SESSION_ID)));
+                        } catch (Exception e) {
+                            log("Exception occurred during getStats: ".concat(e.getMessage()));
+                            callbackContext.error(e.getMessage());
+                        }
+                    }
+                }
+            });
+
+            return true;
+        } else if ("seekTimeShift".equals(action)) {
+            RadioManager.getRequestHandler().post(new Runnable() {
+                public void run() {
+                    synchronized (MultiPlayer.this) {
+                        if (!isConnected()) {
+                            callbackContext.error("NOT_CONNECTED");
+                            return;
+                        }
+
+                        try {
+                            mRadioManager.seekTimeShift(args.optInt(1, RadioManager.DEFAULT_SESSION_ID), args.optLong(0, 0));
+                        } catch (Exception e) {
+                            log("Exception occurred during seekTimeShift: ".concat(e.getMessage()));
+                            callbackContext.error(e.getMessage());
+                            return;
                         }
 
                         callbackContext.success();
@@ -151,6 +465,81 @@ public class MultiPlayer extends CordovaPlugin implements RadioListener {
                 }
             });
 
+            return true;
+        } else if ("startRecording".equals(action)) {
+            RadioManager.getRequestHandler().post(new Runnable() {
+                public void run() {
+                    synchronized (MultiPlayer.this) {
+                        if (!isConnected()) {
+                            callbackContext.error("NOT_CONNECTED");
+                            return;
+                        }
+
+                        try {
+                            mRadioManager.startRecording(args.optInt(1, RadioManager.DEFAULT_SESSION_ID), args.getString(0));
+                        } catch (Exception e) {
+                            log("Exception occurred during startRecording: ".concat(e.getMessage()));
+                            callbackContext.error(e.getMessage());
+                            return;
+                        }
+
+                        callbackContext.success();
+                    }
+                }
+            });
+
+            return true;
+        } else if ("stopRecording".equals(action)) {
+            RadioManager.getRequestHandler().post(new Runnable() {
+                public void run() {
+                    synchronized (MultiPlayer.this) {
+                        if (!isConnected()) {
+                            callbackContext.error("NOT_CONNECTED");
+                            return;
+                        }
+
+                        try {
+                            callbackContext.success(mRadioManager.stopRecording(args.optInt(0, RadioManager.DEFAULT_SESSION_ID)));
+                        } catch (Exception e) {
+                            log("Exception occurred during stopRecording: ".concat(e.getMessage()));
+                            callbackContext.error(e.getMessage());
+                        }
+                    }
+                }
+            });
+
+            return true;
+        } else if ("getTimeShiftPosition".equals(action)) {
+            RadioManager.getRequestHandler().post(new Runnable() {
+                public void run() {
+                    synchronized (MultiPlayer.this) {
+                        if (!isConnected()) {
+                            callbackContext.error("NOT_CONNECTED");
+                            return;
+                        }
+
+                        int sessionId = args.optInt(0, RadioManager.DEFAULT_SESSION_ID);
+
+                        try {
+                            // answered from the playback thread, the next commands don't wait the player
+                            mRadioManager.getTimeShiftPosition(sessionId, new RadioSession.TimeShiftPositionCallback() {
+                                @Override
+                                public void onPosition(JSONObject position) {
+                                    if (position == null) {
+                                        callbackContext.error("TIME_SHIFT_INACTIVE");
+                                    } else {
+                                        callbackContext.success(position);
+                                    }
+                                }
+                            });
+                        } catch (Exception e) {
+                            log("Exception occurred during getTimeShiftPosition: ".concat(e.getMessage()));
+                            callbackContext.error(e.getMessage());
+                        }
+                    }
+                }
+            });
+
             return true;
         } else {
             log("Called invalid action: " + action);
@@ -168,27 +557,23 @@ public class MultiPlayer extends CordovaPlugin implements RadioListener {
 
     @Override
     public void onRadioConnected() {
-        this.isConnecting = false;
-        this.isConnected = true;
-
         log("RADIO STATE - CONNECTED...");
         this.sendListenerResult("CONNECTED");
 
-        if (this.requestedPlay != null) {
+        for (JSONArray requestedPlay : this.requestedPlays.values()) {
             try {
-                this.mRadioManager.startRadio(this.requestedPlay.getInt(0));
-            } catch(JSONException e) {
+                this.startRadio(requestedPlay);
+            } catch (Exception e) {
+                log("Exception occurred during requested play: ".concat(e.getMessage()));
             }
-
-            this.requestedPlay = null;
         }
+
+        this.requestedPlays.clear();
     }
 
     @Override
     public void onRadioDisconnected() {
-        this.isConnecting = false;
-        this.isConnected = false;
-        this.requestedPlay = null;
+        this.requestedPlays.clear();
 
         log("RADIO STATE - DISCONNECTED...");
         this.sendListenerResult("DISCONNECTED");
@@ -225,9 +610,55 @@ public class MultiPlayer extends CordovaPlugin implements RadioListener {
     }
 
     @Override
-    public void onError() {
-        log("RADIO STATE - ERROR...");
-        this.sendListenerResult("ERROR");
+    public void onRadioStalled() {
+        log("RADIO STATE - STALLED...");
+        this.sendListenerResult("STALLED");
+    }
+
+    @Override
+    public void onRadioRecovered() {
+        log("RADIO STATE - RECOVERED...");
+        this.sendListenerResult("RECOVERED");
+    }
+
+    @Override
+    public void onRadioReconnecting(JSONObject reconnect) {
+        log("RADIO STATE - RECONNECTING... " + reconnect.toString());
+        this.sendListenerResult("RECONNECTING", reconnect);
+    }
+
+    @Override
+    public void onRadioStats(JSONObject stats) {
+        this.sendListenerResult("STATS", stats);
+    }
+
+    @Override
+    public void onRadioMetadata(JSONObject metadata) {
+        log("RADIO METADATA - " + metadata.toString());
+        this.sendListenerResult("METADATA", metadata);
+    }
+
+    @Override
+    public void onRadioRecording(JSONObject recording) {
+        this.sendListenerResult("RECORDING", recording);
+    }
+
+    @Override
+    public void onRadioBitrateChanged(JSONObject change) {
+        log("RADIO BITRATE - " + change.toString());
+        this.sendListenerResult("BITRATE_CHANGED", change);
+    }
+
+    @Override
+    public void onRadioAlarm(JSONObject alarm) {
+        log("RADIO ALARM - " + alarm.toString());
+        this.sendListenerResult("ALARM", alarm);
+    }
+
+    @Override
+    public void onError(JSONObject error) {
+        log("RADIO STATE - ERROR... " + error.toString());
+        this.sendListenerResult("ERROR", error);
     }
 
     @Override
@@ -237,13 +668,181 @@ public class MultiPlayer extends CordovaPlugin implements RadioListener {
         }
     }
 
-    private void sendListenerResult(String result) {
-        if (this.connectionCallbackContext != null) {
-            PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
+    /**
+     * @return true if the radio player service is connected, read from the manager connection state
+     */
+    private boolean isConnected() {
+        return this.mRadioManager != null && this.mRadioManager.isConnected();
+    }
+
+    /**
+     * Start the radio with the play action arguments (stream type, optional buffer profile and optional session id)
+     * @param args
+     * @throws JSONException
+     */
+    private void startRadio(JSONArray args) throws JSONException {
+        int sessionId = args.optInt(2, RadioManager.DEFAULT_SESSION_ID);
+
+        if (!args.isNull(1)) {
+            this.mRadioManager.getSession(sessionId).setBufferProfile(BufferProfile.fromName(args.getString(1)));
+        }
+
+        this.mRadioManager.startRadio(sessionId, args.getInt(0));
+    }
+
+    /**
+     * Apply the createSession options to a session
+     * @param session
+     * @param urls
+     * @param options
+     * @throws JSONException
+     */
+    private void configureSession(RadioSession session, List<String> urls, JSONObject options) throws JSONException {
+        session.setStreamURLs(urls);
+        session.setAudioFocus(options.optBoolean("audioFocus", true));
+        session.setStallTimeout(options.optInt("stallTimeout", 0));
+        session.setBufferProfile(BufferProfile.fromName(options.isNull("profile") ? null : options.getString("profile")));
+        session.setRetryPolicy(new DefaultRetryPolicy(
+            options.optInt("retryMaxAttempts", -1),
+            options.optInt("retryBaseDelay", 0),
+            options.optInt("retryMaxDelay", 0)
+        ));
+        session.setPreWarm(options.optBoolean("preWarm", false), options.optInt("preWarmTimeout", 0));
+        session.setSoftStop(options.optBoolean("softStop", false), options.optInt("softStopTimeout", 0));
+        session.setTimeShift(options.optBoolean("timeShift", false), options.optInt("timeShiftDuration", 0));
+        session.setMounts(this.getMounts(options.optJSONArray("mounts")));
+        session.setStatsInterval(options.optInt("statsInterval", 0));
+        session.setMetadataInterval(options.optInt("metadataInterval", -1));
+    }
+
+    /**
+     * Stream urls from the url argument, a single url or a list of mirrors
+     * @param url
+     * @return
+     * @throws JSONException
+     */
+    private List<String> getStreamURLs(Object url) throws JSONException {
+        List<String> urls = new ArrayList<String>();
+
+        if (url instanceof JSONArray) {
+            JSONArray mirrors = (JSONArray) url;
+
+            for (int i = 0; i < mirrors.length(); i++) {
+                urls.add(mirrors.getString(i));
+            }
+        } else {
+            urls.add(url.toString());
+        }
+
+        if (urls.isEmpty()) {
+            throw new JSONException("Stream url not informed");
+        }
+
+        return urls;
+    }
+
+    /**
+     * Bitrate ladder from the mounts option, each mount is an object with url and bitrate (in kbps)
+     * @param values
+     * @return
+     * @throws JSONException
+     */
+    private List<AdaptiveMountSelector.Mount> getMounts(JSONArray values) throws JSONException {
+        List<AdaptiveMountSelector.Mount> mounts = new ArrayList<AdaptiveMountSelector.Mount>();
+
+        if (values == null) {
+            return mounts;
+        }
+
+        for (int i = 0; i < values.length(); i++) {
+            JSONObject mount = values.getJSONObject(i);
+            mounts.add(new AdaptiveMountSelector.Mount(mount.getString("url"), mount.getInt("bitrate") * 1000));
+        }
 
-            pluginResult.setKeepCallback(true);
-            this.connectionCallbackContext.sendPluginResult(pluginResult);
+        return mounts;
+    }
+
+    /**
+     * Strings of a json array
+     * @param values
+     * @return null if the array is null
+     * @throws JSONException
+     */
+    private List<String> getStringList(JSONArray values) throws JSONException {
+        if (values == null) {
+            return null;
+        }
+
+        List<String> list = new ArrayList<String>();
+
+        for (int i = 0; i < values.length(); i++) {
+            list.add(values.getString(i));
         }
+
+        return list;
+    }
+
+    /**
+     * Release a session created with createSession
+     * @param sessionId
+     */
+    private void destroySession(int sessionId) {
+        this.requestedPlays.remove(sessionId);
+        this.mRadioManager.destroySession(sessionId);
+
+        SessionEventListener sessionListener = this.mSessionListeners.remove(sessionId);
+
+        if (sessionListener != null) {
+            sessionListener.onRadioDisconnected();
+        }
+    }
+
+    /**
+     * Command queue slot of the play and stop of a session
+     * @param sessionId
+     * @return
+     */
+    private String getPlaybackSlot(int sessionId) {
+        return "playback-" + sessionId;
+    }
+
+    /**
+     * Trace the latency of a command of a session, ignored if the session doesn't exist (yet)
+     * @param sessionId
+     * @param command command being started, null to only mark the hop of the current one
+     * @param hop
+     */
+    private void traceCommand(int sessionId, String command, String hop) {
+        RadioManager radioManager = this.mRadioManager;
+
+        if (radioManager == null) {
+            return;
+        }
+
+        try {
+            RadioSession session = radioManager.getSession(sessionId);
+
+            if (command != null) {
+                session.beginTrace(command);
+            }
+
+            session.markTrace(hop);
+        } catch (IllegalArgumentException e) {
+            // session not created yet
+        }
+    }
+
+    private void sendListenerResult(String result) {
+        this.mEventChannel.send(result, null);
+    }
+
+    /**
+     * Send an event with payload
+     * @param type
+     * @param data
+     */
+    private void sendListenerResult(String type, JSONObject data) {
+        this.mEventChannel.send(type, data);
     }
 
     /**
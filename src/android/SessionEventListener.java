@@ -0,0 +1,100 @@
+package com.eltonfaust.multiplayer;
+
+import org.json.JSONObject;
+
+/**
+ * Sends the events of a session created with createSession to its own callback
+ */
+public class SessionEventListener implements RadioListener {
+    private final EventChannel mEventChannel;
+
+    public SessionEventListener(EventChannel mEventChannel) {
+        this.mEventChannel = mEventChannel;
+    }
+
+    @Override
+    public void onRadioLoading() {
+        this.mEventChannel.send("LOADING", null);
+    }
+
+    @Override
+    public void onRadioConnected() {
+        this.mEventChannel.send("CONNECTED", null);
+    }
+
+    @Override
+    public void onRadioDisconnected() {
+        this.mEventChannel.send("DISCONNECTED", null);
+        this.mEventChannel.flush();
+    }
+
+    @Override
+    public void onRadioStarted() {
+        this.mEventChannel.send("STARTED", null);
+    }
+
+    @Override
+    public void onRadioStopped() {
+        this.mEventChannel.send("STOPPED", null);
+    }
+
+    @Override
+    public void onRadioStoppedFocusTransient() {
+        this.mEventChannel.send("STOPPED_FOCUS_TRANSIENT", null);
+    }
+
+    @Override
+    public void onRadioStartedFocusTransient() {
+        this.mEventChannel.send("STARTED_FOCUS_TRANSIENT", null);
+    }
+
+    @Override
+    public void onRadioStoppedFocusLoss() {
+        this.mEventChannel.send("STOPPED_FOCUS_LOSS", null);
+    }
+
+    @Override
+    public void onRadioStalled() {
+        this.mEventChannel.send("STALLED", null);
+    }
+
+    @Override
+    public void onRadioRecovered() {
+        this.mEventChannel.send("RECOVERED", null);
+    }
+
+    @Override
+    public void onRadioReconnecting(JSONObject reconnect) {
+        this.mEventChannel.send("RECONNECTING", reconnect);
+    }
+
+    @Override
+    public void onRadioStats(JSONObject stats) {
+        this.mEventChannel.send("STATS", stats);
+    }
+
+    @Override
+    public void onRadioMetadata(JSONObject metadata) {
+        this.mEventChannel.send("METADATA", metadata);
+    }
+
+    @Override
+    public void onRadioRecording(JSONObject recording) {
+        this.mEventChannel.send("RECORDING", recording);
+    }
+
+    @Override
+    public void onRadioBitrateChanged(JSONObject change) {
+        this.mEventChannel.send("BITRATE_CHANGED", change);
+    }
+
+    @Override
+    public void onRadioAlarm(JSONObject alarm) {
+        this.mEventChannel.send("ALARM", alarm);
+    }
+
+    @Override
+    public void onError(JSONObject error) {
+        this.mEventChannel.send("ERROR", error);
+    }
+}
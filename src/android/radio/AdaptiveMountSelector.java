@@ -0,0 +1,191 @@
+package com.eltonfaust.multiplayer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Picks the mount of a bitrate ladder (the same stream offered on progressive mounts of different bitrates)
+ * from the bandwidth estimate and the buffer health.
+ * Switches down when the buffer keeps draining below the low watermark (the download is slower than the playback)
+ * or the playback is rebuffering, and only switches up after the buffer was healthy for a while
+ * and the estimate has room for the next mount.
+ * Not thread safe, must only be used from the session playback thread.
+ */
+public class AdaptiveMountSelector {
+    // Fraction of the bandwidth estimate the starting mount can use
+    private static final float START_BANDWIDTH_FRACTION = 0.7f;
+
+    // Fraction of the bandwidth estimate the next mount up can use
+    private static final float UP_BANDWIDTH_FRACTION = 0.6f;
+
+    // Time the buffer must be healthy before switching up
+    private static final int UP_HOLD_MS = 30000;
+
+    // Min time between a switch (or a failed switch) and the next switch down
+    private static final int DOWN_GUARD_MS = 5000;
+
+    // Consecutive draining buffer readings below the low watermark to switch down
+    private static final int DRAINING_READINGS = 3;
+
+    public static final String REASON_INITIAL = "INITIAL";
+    public static final String REASON_REBUFFERING = "REBUFFERING";
+    public static final String REASON_BUFFER_LOW = "BUFFER_LOW";
+    public static final String REASON_BANDWIDTH = "BANDWIDTH";
+
+    /**
+     * A mount of the ladder
+     */
+    public static class Mount {
+        public final String url;
+
+        /**
+         * Bitrate, in bits/s
+         */
+        public final int bitrate;
+
+        public Mount(String url, int bitrate) {
+            this.url = url;
+            this.bitrate = bitrate;
+        }
+    }
+
+    /**
+     * Mount the playback should switch to
+     */
+    public static class Decision {
+        public final int index;
+        public final String reason;
+
+        public Decision(int index, String reason) {
+            this.index = index;
+            this.reason = reason;
+        }
+    }
+
+    /**
+     * Mounts ordered by bitrate, lowest first
+     */
+    private final List<Mount> mounts;
+
+    private int current = 0;
+    private long lastSwitchAt = 0;
+    private long healthySince = 0;
+    private long previousBufferedMs = -1;
+    private int drainingReadings = 0;
+
+    public AdaptiveMountSelector(List<Mount> mounts) {
+        this.mounts = new ArrayList<Mount>(mounts);
+
+        Collections.sort(this.mounts, new Comparator<Mount>() {
+            @Override
+            public int compare(Mount a, Mount b) {
+                return a.bitrate < b.bitrate ? -1 : (a.bitrate == b.bitrate ? 0 : 1);
+            }
+        });
+    }
+
+    public Mount getMount(int index) {
+        return this.mounts.get(index);
+    }
+
+    public Mount getCurrent() {
+        return this.mounts.get(this.current);
+    }
+
+    public int getCurrentIndex() {
+        return this.current;
+    }
+
+    /**
+     * Select the highest mount fitting the bandwidth estimate, the lowest if none fits
+     *
+     * @param bandwidthEstimate bits/s
+     * @param now elapsed realtime
+     * @return Mount
+     */
+    public Mount selectInitial(long bandwidthEstimate, long now) {
+        int index = 0;
+
+        for (int i = 0; i < this.mounts.size(); i++) {
+            if (this.mounts.get(i).bitrate <= bandwidthEstimate * START_BANDWIDTH_FRACTION) {
+                index = i;
+            }
+        }
+
+        this.onSwitched(index, now);
+
+        return this.getCurrent();
+    }
+
+    /**
+     * Evaluate a buffer reading of the playing mount
+     *
+     * @param bufferedMs buffered duration ahead of the playback
+     * @param lowWatermarkMs below it the buffer is unhealthy
+     * @param rebuffering if the playback is waiting for data
+     * @param bandwidthEstimate bits/s
+     * @param now elapsed realtime
+     * @return Decision, null to keep the current mount
+     */
+    public Decision evaluate(long bufferedMs, long lowWatermarkMs, boolean rebuffering, long bandwidthEstimate, long now) {
+        boolean draining = this.previousBufferedMs != -1 && bufferedMs < this.previousBufferedMs;
+
+        this.previousBufferedMs = bufferedMs;
+        this.drainingReadings = draining && bufferedMs < lowWatermarkMs ? this.drainingReadings + 1 : 0;
+
+        if (this.current > 0 && now - this.lastSwitchAt >= DOWN_GUARD_MS) {
+            if (rebuffering) {
+                return new Decision(this.current - 1, REASON_REBUFFERING);
+            }
+
+            if (this.drainingReadings >= DRAINING_READINGS) {
+                return new Decision(this.current - 1, REASON_BUFFER_LOW);
+            }
+        }
+
+        if (rebuffering || bufferedMs < lowWatermarkMs * 2) {
+            this.healthySince = 0;
+            return null;
+        }
+
+        if (this.healthySince == 0) {
+            this.healthySince = now;
+        }
+
+        if (
+            this.current < this.mounts.size() - 1
+            && now - this.healthySince >= UP_HOLD_MS
+            && now - this.lastSwitchAt >= UP_HOLD_MS
+            && this.mounts.get(this.current + 1).bitrate <= bandwidthEstimate * UP_BANDWIDTH_FRACTION
+        ) {
+            return new Decision(this.current + 1, REASON_BANDWIDTH);
+        }
+
+        return null;
+    }
+
+    /**
+     * The playback switched to the mount
+     *
+     * @param index
+     * @param now elapsed realtime
+     */
+    public void onSwitched(int index, long now) {
+        this.current = index;
+        this.onSwitchFailed(now);
+    }
+
+    /**
+     * The switch failed, the current mount is kept and the readings restart
+     *
+     * @param now elapsed realtime
+     */
+    public void onSwitchFailed(long now) {
+        this.lastSwitchAt = now;
+        this.healthySince = 0;
+        this.previousBufferedMs = -1;
+        this.drainingReadings = 0;
+    }
+}
@@ -0,0 +1,377 @@
+package com.eltonfaust.multiplayer;
+
+import android.content.Context;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.media3.common.AudioAttributes;
+import androidx.media3.common.C;
+import androidx.media3.common.MediaItem;
+import androidx.media3.exoplayer.ExoPlayer;
+
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Scheduled start of a session: warms the stream up before the trigger time, notifies its readiness
+ * and starts the playback (or a fallback sound) with a volume ramp.
+ * Must only be used from the session playback thread.
+ */
+public class AlarmController {
+    // Interval between the stream readiness checks of a scheduled start
+    private static final int ALARM_CHECK_INTERVAL_MS = 1000;
+
+    // Time the warm player is kept after the trigger time if the trigger doesn't run
+    private static final int ALARM_WARM_GRACE_MS = 60000;
+
+    // Interval between the volume steps of the alarm ramp
+    private static final int ALARM_RAMP_STEP_MS = 100;
+
+    /**
+     * Session side of the controller
+     */
+    public interface Host {
+        /**
+         * @return the current player, null if released
+         */
+        ExoPlayer getPlayer();
+
+        /**
+         * @return List<String> stream urls persisted with the schedule
+         */
+        List<String> getStreamURLs();
+
+        /**
+         * @return true if a failed playback is waiting the retry
+         */
+        boolean isRetryPending();
+
+        boolean isPlaying();
+
+        /**
+         * @return true if the current player was only warmed and still wasn't played
+         */
+        boolean isPlayerWarm();
+
+        /**
+         * Build and prepare the player muted with the alarm usage, if there's none
+         *
+         * @param timeoutMs time the player is kept if not played
+         */
+        void warmPlayer(int timeoutMs);
+
+        /**
+         * Stop the player, keeping or releasing it
+         */
+        void stopPlayer();
+
+        void releasePlayer();
+
+        void notifyRadioAlarm(JSONObject alarm);
+
+        void log(String log);
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final int mSessionId;
+    private final Host mHost;
+
+    /**
+     * Persisted scheduled start, restored if the app process is killed before the warm-up
+     */
+    private final AlarmStore mStore;
+
+    /**
+     * Scheduled start of the session, null if not scheduled
+     */
+    private AlarmSchedule mAlarm = null;
+
+    /**
+     * Last readiness status notified for the scheduled start
+     */
+    private String mStatus = null;
+
+    /**
+     * Sound played when the stream wasn't ready at the trigger time
+     */
+    private ExoPlayer mFallbackPlayer = null;
+
+    /**
+     * Volume ramp of the started alarm
+     */
+    private int mRampMs = 0;
+    private long mRampStartedAt = 0;
+
+    /**
+     * Volume ramp of the triggered alarm, started with the player of its play, -1 if none
+     */
+    private int mRampPendingMs = -1;
+
+    /**
+     * @param context application context
+     * @param handler handler of the playback thread, also used as the fallback player looper
+     * @param sessionId
+     * @param host
+     */
+    public AlarmController(Context context, Handler handler, int sessionId, Host host) {
+        this.mContext = context;
+        this.mHandler = handler;
+        this.mSessionId = sessionId;
+        this.mHost = host;
+        this.mStore = new AlarmStore(context);
+    }
+
+    /**
+     * Set the scheduled start, replacing the previous one, persisted with the stream urls
+     *
+     * @param alarm
+     */
+    public void set(AlarmSchedule alarm) {
+        this.clear();
+        this.mAlarm = alarm;
+        this.mStore.put(this.mSessionId, alarm, this.mHost.getStreamURLs());
+        this.notifyStatus("SCHEDULED");
+    }
+
+    /**
+     * Set the persisted scheduled start, if the session lost it (released with the service or rebuilt)
+     *
+     * @param alarm
+     */
+    public void restore(AlarmSchedule alarm) {
+        if (this.mAlarm != null) {
+            return;
+        }
+
+        this.mAlarm = alarm;
+        this.notifyStatus("SCHEDULED");
+    }
+
+    /**
+     * Cancel the scheduled start, a stream buffered for it and not played yet is released
+     */
+    public void cancel() {
+        this.mStore.remove(this.mSessionId);
+
+        if (this.mAlarm == null) {
+            return;
+        }
+
+        this.clear();
+
+        if (this.mHost.isPlayerWarm()) {
+            this.mHost.stopPlayer();
+        }
+
+        this.notifyStatus("CANCELED");
+    }
+
+    /**
+     * Start buffering the stream muted, its readiness is notified until the trigger time
+     */
+    public void startWarmup() {
+        AlarmSchedule alarm = this.mAlarm;
+
+        if (alarm == null) {
+            return;
+        }
+
+        int delay = (int) Math.max(alarm.triggerAt - System.currentTimeMillis(), 0);
+
+        this.mHost.log("Alarm warm-up, trigger in " + delay + "ms");
+        this.mHost.warmPlayer(delay + ALARM_WARM_GRACE_MS);
+
+        this.mHandler.removeCallbacks(this.checkRunnable);
+        this.mHandler.removeCallbacks(this.triggerRunnable);
+        this.mHandler.post(this.checkRunnable);
+        this.mHandler.postDelayed(this.triggerRunnable, delay);
+    }
+
+    /**
+     * The player of a play started, the ramp of a triggered alarm starts with it
+     */
+    public void onPlayerStarted() {
+        if (this.mRampPendingMs >= 0) {
+            this.startRamp(this.mRampPendingMs);
+            this.mRampPendingMs = -1;
+        }
+    }
+
+    /**
+     * @return true if the fallback sound was playing
+     */
+    public boolean releaseFallback() {
+        this.mHandler.removeCallbacks(this.rampRunnable);
+
+        if (this.mFallbackPlayer == null) {
+            return false;
+        }
+
+        this.mFallbackPlayer.release();
+        this.mFallbackPlayer = null;
+
+        return true;
+    }
+
+    /**
+     * Drop the schedule (still persisted), the pending ramp and the fallback sound
+     */
+    public void release() {
+        this.clear();
+        this.mRampPendingMs = -1;
+        this.releaseFallback();
+    }
+
+    private void clear() {
+        this.mHandler.removeCallbacks(this.checkRunnable);
+        this.mHandler.removeCallbacks(this.triggerRunnable);
+        this.mAlarm = null;
+        this.mStatus = null;
+    }
+
+    private boolean isStreamReady() {
+        ExoPlayer player = this.mHost.getPlayer();
+
+        return player != null
+            && player.getPlaybackState() == ExoPlayer.STATE_READY
+            && !this.mHost.isRetryPending();
+    }
+
+    private void notifyStatus(String status) {
+        AlarmSchedule alarm = this.mAlarm;
+        ExoPlayer player = this.mHost.getPlayer();
+        // the trigger time is left out once the alarm is cleared
+        JSONObject data = new JSONBuilder()
+            .put("status", status)
+            .put("bufferedMs", player == null ? 0 : player.getTotalBufferedDuration())
+            .put("triggerAt", alarm == null ? null : alarm.triggerAt)
+            .build();
+
+        this.mStatus = status;
+        this.mHost.notifyRadioAlarm(data);
+    }
+
+    /**
+     * Notify the readiness of the stream until the trigger time, only when it changes
+     */
+    private Runnable checkRunnable = new Runnable() {
+        public void run() {
+            if (AlarmController.this.mAlarm == null) {
+                return;
+            }
+
+            String status = AlarmController.this.isStreamReady() ? "READY" : "WARMING";
+
+            if (!status.equals(AlarmController.this.mStatus)) {
+                AlarmController.this.notifyStatus(status);
+            }
+
+            AlarmController.this.mHandler.postDelayed(this, ALARM_CHECK_INTERVAL_MS);
+        }
+    };
+
+    /**
+     * Start the scheduled playback, or the fallback sound if the stream isn't ready
+     */
+    private Runnable triggerRunnable = new Runnable() {
+        public void run() {
+            AlarmSchedule alarm = AlarmController.this.mAlarm;
+
+            if (alarm == null) {
+                return;
+            }
+
+            AlarmController.this.mHandler.removeCallbacks(AlarmController.this.checkRunnable);
+            AlarmController.this.mStore.remove(AlarmController.this.mSessionId);
+
+            if (AlarmController.this.mHost.isPlaying()) {
+                AlarmController.this.mHost.log("Alarm triggered, already playing");
+                AlarmController.this.notifyStatus("STARTED");
+                AlarmController.this.clear();
+                return;
+            }
+
+            if (AlarmController.this.isStreamReady()) {
+                AlarmController.this.mHost.log("Alarm triggered, playing the stream");
+                AlarmController.this.mRampPendingMs = alarm.rampMs;
+                AlarmController.this.notifyStatus("STARTED");
+                // played through the manager as a play command, the ramp starts with the player
+                RadioManager.getInstance().startAlarm(AlarmController.this.mSessionId);
+            } else {
+                AlarmController.this.mHost.log("Alarm triggered, stream not ready, playing the fallback");
+                AlarmController.this.mHost.releasePlayer();
+                AlarmController.this.startFallback(alarm.fallbackUrl);
+                AlarmController.this.startRamp(alarm.rampMs);
+                AlarmController.this.notifyStatus("FALLBACK");
+            }
+
+            AlarmController.this.clear();
+        }
+    };
+
+    /**
+     * Play the fallback sound in loop, until the session is stopped or played
+     *
+     * @param url null for the default alarm sound
+     */
+    private void startFallback(String url) {
+        this.releaseFallback();
+
+        Uri uri = url != null ? Uri.parse(url) : RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+
+        ExoPlayer player = new ExoPlayer.Builder(this.mContext)
+            .setLooper(this.mHandler.getLooper())
+            .setAudioAttributes(
+                new AudioAttributes.Builder()
+                    .setUsage(C.USAGE_ALARM)
+                    .setContentType(C.AUDIO_CONTENT_TYPE_SONIFICATION)
+                    .build(),
+                false
+            )
+            .build();
+
+        player.setRepeatMode(ExoPlayer.REPEAT_MODE_ALL);
+        player.setMediaItem(MediaItem.fromUri(uri));
+        player.setVolume(0f);
+        player.prepare();
+        player.setPlayWhenReady(true);
+
+        this.mFallbackPlayer = player;
+    }
+
+    private void startRamp(int rampMs) {
+        this.mRampMs = rampMs;
+        this.mRampStartedAt = SystemClock.elapsedRealtime();
+        this.mHandler.removeCallbacks(this.rampRunnable);
+        this.rampRunnable.run();
+    }
+
+    /**
+     * Raise the volume of the alarm from muted to full
+     */
+    private Runnable rampRunnable = new Runnable() {
+        public void run() {
+            ExoPlayer player = AlarmController.this.mFallbackPlayer != null
+                ? AlarmController.this.mFallbackPlayer
+                : AlarmController.this.mHost.getPlayer();
+
+            if (player == null) {
+                return;
+            }
+
+            int rampMs = AlarmController.this.mRampMs;
+            long elapsed = SystemClock.elapsedRealtime() - AlarmController.this.mRampStartedAt;
+            float volume = rampMs == 0 ? 1f : Math.min(elapsed / (float) rampMs, 1f);
+
+            player.setVolume(volume);
+
+            if (volume < 1f) {
+                AlarmController.this.mHandler.postDelayed(this, ALARM_RAMP_STEP_MS);
+            }
+        }
+    };
+}
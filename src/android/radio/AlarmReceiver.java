@@ -0,0 +1,141 @@
+package com.eltonfaust.multiplayer;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Wakes the app at the warm-up time of a scheduled session start, and registers the persisted schedules again
+ * after the device reboots
+ */
+public class AlarmReceiver extends BroadcastReceiver {
+    private static final String LOG_TAG = "MultiPlayer";
+
+    public static final String EXTRA_SESSION_ID = "sessionId";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            this.scheduleStored(context);
+            return;
+        }
+
+        int sessionId = intent.getIntExtra(EXTRA_SESSION_ID, RadioManager.DEFAULT_SESSION_ID);
+        AlarmStore.Entry entry = new AlarmStore(context).get(sessionId);
+
+        if (entry == null) {
+            log("No scheduled start of session #" + sessionId + ", canceled or session destroyed");
+            return;
+        }
+
+        RadioManager radioManager = RadioManager.getInstance();
+
+        if (radioManager == null) {
+            // the app process was killed, the session is rebuilt from the persisted schedule
+            log("Player not initialized, restoring the scheduled start of session #" + sessionId);
+            radioManager = RadioManager.with(context.getApplicationContext());
+            this.startService(context);
+        }
+
+        radioManager.restoreAlarm(entry);
+        radioManager.startAlarmWarmup(sessionId);
+    }
+
+    /**
+     * Register the warm-up of the persisted schedules, the expired ones are dropped
+     *
+     * @param context
+     */
+    private void scheduleStored(Context context) {
+        AlarmStore alarmStore = new AlarmStore(context);
+
+        for (AlarmStore.Entry entry : alarmStore.getAll()) {
+            if (entry.schedule.triggerAt <= System.currentTimeMillis()) {
+                log("Scheduled start of session #" + entry.sessionId + " expired while the device was off");
+                alarmStore.remove(entry.sessionId);
+            } else {
+                log("Scheduled start of session #" + entry.sessionId + " registered again");
+                schedule(context, entry.sessionId, entry.schedule.getWarmupAt());
+            }
+        }
+    }
+
+    /**
+     * Start the service in the foreground, keeps the process alive until the trigger time without the app
+     *
+     * @param context
+     */
+    private void startService(Context context) {
+        Intent intent = new Intent(context, RadioPlayerService.class);
+
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(intent);
+            } else {
+                context.startService(intent);
+            }
+        } catch (IllegalStateException e) {
+            // started from an inexact alarm, the foreground start isn't allowed, the service is only bound
+            log("Can't start the service: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Register the warm-up alarm of a session, replacing the previous one
+     *
+     * @param context
+     * @param sessionId
+     * @param warmupAt in ms since the epoch, the warm-up runs right away if past
+     */
+    public static void schedule(Context context, int sessionId, long warmupAt) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent pendingIntent = buildIntent(context, sessionId);
+
+        alarmManager.cancel(pendingIntent);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmManager.canScheduleExactAlarms()) {
+            log("Exact alarms not allowed, the warm-up may be delayed");
+            alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, warmupAt, pendingIntent);
+        } else {
+            // an alarm clock brings the device out of idle, so the network is available for the warm-up
+            alarmManager.setAlarmClock(new AlarmManager.AlarmClockInfo(warmupAt, null), pendingIntent);
+        }
+    }
+
+    /**
+     * Cancel the warm-up alarm of a session
+     *
+     * @param context
+     * @param sessionId
+     */
+    public static void cancel(Context context, int sessionId) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.cancel(buildIntent(context, sessionId));
+    }
+
+    private static PendingIntent buildIntent(Context context, int sessionId) {
+        Intent intent = new Intent(context.getApplicationContext(), AlarmReceiver.class);
+        intent.putExtra(EXTRA_SESSION_ID, sessionId);
+
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            flags |= PendingIntent.FLAG_IMMUTABLE;
+        }
+
+        return PendingIntent.getBroadcast(context.getApplicationContext(), sessionId, intent, flags);
+    }
+
+    /**
+     * Logger
+     *
+     * @param log
+     */
+    private static void log(String log) {
+        Log.v(LOG_TAG, "AlarmReceiver : " + log);
+    }
+}
@@ -0,0 +1,49 @@
+package com.eltonfaust.multiplayer;
+
+/**
+ * Scheduled start of a session: the stream is buffered muted ahead of the trigger time,
+ * and at the trigger time the volume is ramped up, or the fallback sound is played if the stream isn't ready
+ */
+public class AlarmSchedule {
+    // Default time the stream starts buffering before the trigger time
+    public static final int DEFAULT_LEAD_MS = 60000;
+
+    // Default time the volume takes to go from muted to full
+    public static final int DEFAULT_RAMP_MS = 30000;
+
+    /**
+     * Trigger time, in ms since the epoch
+     */
+    public final long triggerAt;
+
+    /**
+     * Time the stream starts buffering before the trigger time
+     */
+    public final int leadMs;
+
+    /**
+     * Time the volume takes to go from muted to full, 0 to start at full volume
+     */
+    public final int rampMs;
+
+    /**
+     * Url of the sound played if the stream isn't ready at the trigger time, null for the default alarm sound
+     */
+    public final String fallbackUrl;
+
+    public AlarmSchedule(long triggerAt, int leadMs, int rampMs, String fallbackUrl) {
+        this.triggerAt = triggerAt;
+        this.leadMs = leadMs > 0 ? leadMs : DEFAULT_LEAD_MS;
+        this.rampMs = Math.max(rampMs, 0);
+        this.fallbackUrl = fallbackUrl;
+    }
+
+    /**
+     * Time the stream starts buffering, in ms since the epoch
+     *
+     * @return long
+     */
+    public long getWarmupAt() {
+        return this.triggerAt - this.leadMs;
+    }
+}
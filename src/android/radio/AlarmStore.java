@@ -0,0 +1,119 @@
+package com.eltonfaust.multiplayer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent scheduled starts of the sessions, with the stream urls to play,
+ * so the session can be rebuilt if the app process was killed or the device rebooted before the warm-up
+ */
+public class AlarmStore {
+    private static final String PREFERENCES_NAME = "cordova-plugin-multi-player-alarms";
+
+    /**
+     * Scheduled start of a session
+     */
+    public static class Entry {
+        public final int sessionId;
+        public final AlarmSchedule schedule;
+        public final List<String> urls;
+
+        public Entry(int sessionId, AlarmSchedule schedule, List<String> urls) {
+            this.sessionId = sessionId;
+            this.schedule = schedule;
+            this.urls = urls;
+        }
+    }
+
+    private final SharedPreferences preferences;
+
+    public AlarmStore(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Store the scheduled start of a session, replacing the previous one
+     *
+     * @param sessionId
+     * @param schedule
+     * @param urls stream urls of the session
+     */
+    public synchronized void put(int sessionId, AlarmSchedule schedule, List<String> urls) {
+        // without a fallback sound the key is left out, read back as null
+        JSONObject value = new JSONBuilder()
+            .put("triggerAt", schedule.triggerAt)
+            .put("leadMs", schedule.leadMs)
+            .put("rampMs", schedule.rampMs)
+            .put("fallbackUrl", schedule.fallbackUrl)
+            .put("urls", new JSONArray(urls))
+            .build();
+
+        this.preferences.edit().putString(String.valueOf(sessionId), value.toString()).apply();
+    }
+
+    /**
+     * @param sessionId
+     * @return null if the session has no scheduled start
+     */
+    public synchronized Entry get(int sessionId) {
+        return this.parse(String.valueOf(sessionId), this.preferences.getString(String.valueOf(sessionId), null));
+    }
+
+    /**
+     * @return List<Entry> scheduled starts of all the sessions
+     */
+    public synchronized List<Entry> getAll() {
+        List<Entry> entries = new ArrayList<Entry>();
+
+        for (Map.Entry<String, ?> stored : this.preferences.getAll().entrySet()) {
+            Entry entry = this.parse(stored.getKey(), String.valueOf(stored.getValue()));
+
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+
+        return entries;
+    }
+
+    public synchronized void remove(int sessionId) {
+        this.preferences.edit().remove(String.valueOf(sessionId)).apply();
+    }
+
+    private Entry parse(String key, String value) {
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            JSONObject json = new JSONObject(value);
+            JSONArray urlsJSON = json.getJSONArray("urls");
+            List<String> urls = new ArrayList<String>();
+
+            for (int i = 0; i < urlsJSON.length(); i++) {
+                urls.add(urlsJSON.getString(i));
+            }
+
+            return new Entry(
+                Integer.parseInt(key),
+                new AlarmSchedule(
+                    json.getLong("triggerAt"),
+                    json.getInt("leadMs"),
+                    json.getInt("rampMs"),
+                    json.isNull("fallbackUrl") ? null : json.getString("fallbackUrl")
+                ),
+                urls
+            );
+        } catch (JSONException | NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.eltonfaust.multiplayer;
+
+import androidx.media3.common.MediaItem;
+import androidx.media3.exoplayer.DefaultLoadControl;
+import androidx.media3.exoplayer.LoadControl;
+
+/**
+ * Buffering and live latency settings used to build the player
+ */
+public class BufferProfile {
+    /**
+     * Minimal delay, starts fast and keeps close to the live edge, but stalls easily on bad networks
+     */
+    public static final BufferProfile LOW_LATENCY = new BufferProfile(
+        "low-latency",
+        2000,
+        10000,
+        500,
+        1000,
+        3000,
+        0.97f,
+        1.04f,
+        0
+    );
+
+    /**
+     * ExoPlayer default buffering, the profile used when none is informed
+     */
+    public static final BufferProfile BALANCED = new BufferProfile(
+        "balanced",
+        DefaultLoadControl.DEFAULT_MIN_BUFFER_MS,
+        DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+        DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+        DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+        5000,
+        0.97f,
+        1.02f,
+        DefaultLoadControl.DEFAULT_BACK_BUFFER_DURATION_MS
+    );
+
+    /**
+     * Deep buffer and distant live offset, tolerates long network gaps with fewer reconnections
+     */
+    public static final BufferProfile RESILIENT = new BufferProfile(
+        "resilient",
+        30000,
+        120000,
+        2500,
+        10000,
+        15000,
+        0.98f,
+        1.01f,
+        30000
+    );
+
+    private final String name;
+    private final int minBufferMs;
+    private final int maxBufferMs;
+    private final int bufferForPlaybackMs;
+    private final int bufferForPlaybackAfterRebufferMs;
+    private final long liveTargetOffsetMs;
+    private final float liveMinPlaybackSpeed;
+    private final float liveMaxPlaybackSpeed;
+    private final int backBufferMs;
+
+    private BufferProfile(
+        String name,
+        int minBufferMs,
+        int maxBufferMs,
+        int bufferForPlaybackMs,
+        int bufferForPlaybackAfterRebufferMs,
+        long liveTargetOffsetMs,
+        float liveMinPlaybackSpeed,
+        float liveMaxPlaybackSpeed,
+        int backBufferMs
+    ) {
+        this.name = name;
+        this.minBufferMs = minBufferMs;
+        this.maxBufferMs = maxBufferMs;
+        this.bufferForPlaybackMs = bufferForPlaybackMs;
+        this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+        this.liveTargetOffsetMs = liveTargetOffsetMs;
+        this.liveMinPlaybackSpeed = liveMinPlaybackSpeed;
+        this.liveMaxPlaybackSpeed = liveMaxPlaybackSpeed;
+        this.backBufferMs = backBufferMs;
+    }
+
+    /**
+     * Get a profile by its name, if name is null, returns the balanced profile
+     *
+     * @param name
+     * @return BufferProfile
+     */
+    public static BufferProfile fromName(String name) {
+        if (name == null || BALANCED.name.equals(name)) {
+            return BALANCED;
+        } else if (LOW_LATENCY.name.equals(name)) {
+            return LOW_LATENCY;
+        } else if (RESILIENT.name.equals(name) || "low-data".equals(name)) {
+            return RESILIENT;
+        }
+
+        throw new IllegalArgumentException("Invalid buffer profile: " + name);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public long getLiveTargetOffsetMs() {
+        return this.liveTargetOffsetMs;
+    }
+
+    /**
+     * Buffered duration below which a draining buffer means the download can't keep up with the playback,
+     * below the min buffer the player is always loading
+     *
+     * @return long
+     */
+    public long getLowWatermarkMs() {
+        return Math.max(this.minBufferMs / 2, this.bufferForPlaybackAfterRebufferMs);
+    }
+
+    /**
+     * Build the load control of the profile
+     *
+     * @param targetBufferBytes max bytes to buffer, the time thresholds are never allowed to exceed it, 0 for no limit
+     * @return LoadControl
+     */
+    public LoadControl buildLoadControl(int targetBufferBytes) {
+        DefaultLoadControl.Builder builder = new DefaultLoadControl.Builder()
+            .setBufferDurationsMs(
+                this.minBufferMs,
+                this.maxBufferMs,
+                this.bufferForPlaybackMs,
+                this.bufferForPlaybackAfterRebufferMs
+            )
+            .setBackBuffer(this.backBufferMs, false);
+
+        if (targetBufferBytes > 0) {
+            builder
+                .setTargetBufferBytes(targetBufferBytes)
+                .setPrioritizeTimeOverSizeThresholds(false);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Build the load control of a preloaded (not playing) player, only buffers up to the given duration
+     *
+     * @param targetBufferBytes max bytes to buffer, 0 for no limit
+     * @param preloadBufferMs max duration to buffer
+     * @return LoadControl
+     */
+    public LoadControl buildPreloadLoadControl(int targetBufferBytes, int preloadBufferMs) {
+        DefaultLoadControl.Builder builder = new DefaultLoadControl.Builder()
+            .setBufferDurationsMs(
+                Math.min(this.minBufferMs, preloadBufferMs),
+                preloadBufferMs,
+                Math.min(this.bufferForPlaybackMs, preloadBufferMs),
+                Math.min(this.bufferForPlaybackAfterRebufferMs, preloadBufferMs)
+            )
+            .setBackBuffer(0, false);
+
+        if (targetBufferBytes > 0) {
+            builder
+                .setTargetBufferBytes(targetBufferBytes)
+                .setPrioritizeTimeOverSizeThresholds(false);
+        }
+
+        return builder.build();
+    }
+
+    public MediaItem.LiveConfiguration buildLiveConfiguration() {
+        return new MediaItem.LiveConfiguration.Builder()
+            .setTargetOffsetMs(this.liveTargetOffsetMs)
+            .setMinPlaybackSpeed(this.liveMinPlaybackSpeed)
+            .setMaxPlaybackSpeed(this.liveMaxPlaybackSpeed)
+            .build();
+    }
+}
@@ -0,0 +1,10 @@
+package com.eltonfaust.multiplayer;
+
+/**
+ * Connection state of the radio player service
+ */
+public enum ConnectionState {
+    DISCONNECTED,
+    CONNECTING,
+    CONNECTED,
+}
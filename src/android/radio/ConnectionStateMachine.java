@@ -0,0 +1,89 @@
+package com.eltonfaust.multiplayer;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Connection state of the radio player service, the single source of the connected/connecting flags.
+ * A late service callback (eg. a bind completed after the disconnect) isn't allowed by the table and is ignored.
+ *
+ * It has no Android dependency, the manager translates the service connection callbacks into events.
+ */
+public class ConnectionStateMachine {
+    /**
+     * Events changing the connection state
+     */
+    public enum Event {
+        // the service bind was requested
+        CONNECT,
+        // the service was bound
+        BOUND,
+        // the service process died, the bind is kept and the service is bound again when restarted
+        LOST,
+        // the service was unbound
+        DISCONNECT,
+    }
+
+    /**
+     * Notified of every state change
+     */
+    public interface Listener {
+        void onTransition(ConnectionState from, Event event, ConnectionState to);
+    }
+
+    private static final Map<ConnectionState, Map<Event, ConnectionState>> TRANSITIONS =
+        new EnumMap<ConnectionState, Map<Event, ConnectionState>>(ConnectionState.class);
+
+    static {
+        for (ConnectionState state : ConnectionState.values()) {
+            TRANSITIONS.put(state, new EnumMap<Event, ConnectionState>(Event.class));
+            allow(state, Event.DISCONNECT, ConnectionState.DISCONNECTED);
+        }
+
+        allow(ConnectionState.DISCONNECTED, Event.CONNECT, ConnectionState.CONNECTING);
+        allow(ConnectionState.CONNECTING, Event.BOUND, ConnectionState.CONNECTED);
+        allow(ConnectionState.CONNECTED, Event.LOST, ConnectionState.CONNECTING);
+    }
+
+    private static void allow(ConnectionState from, Event event, ConnectionState to) {
+        TRANSITIONS.get(from).put(event, to);
+    }
+
+    private volatile ConnectionState state = ConnectionState.DISCONNECTED;
+    private Listener listener = null;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public ConnectionState getState() {
+        return this.state;
+    }
+
+    public boolean is(ConnectionState state) {
+        return this.state == state;
+    }
+
+    /**
+     * Apply an event to the current state
+     *
+     * @param event
+     * @return false if the event isn't allowed on the current state and was ignored
+     */
+    public synchronized boolean fire(Event event) {
+        ConnectionState from = this.state;
+        ConnectionState to = TRANSITIONS.get(from).get(event);
+
+        if (to == null) {
+            return false;
+        }
+
+        this.state = to;
+
+        if (this.listener != null && from != to) {
+            this.listener.onTransition(from, event, to);
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+package com.eltonfaust.multiplayer;
+
+/**
+ * Source of the device network changes, replaceable by a fake one to simulate the changes without real networks
+ */
+public interface ConnectivitySource {
+    interface Listener {
+        /**
+         * A network became the default one, replacing a previous network or restoring the connectivity after a loss.
+         * Not called for the network already available when the source is started.
+         */
+        void onNetworkChanged();
+
+        /**
+         * There's no network available
+         */
+        void onNetworkLost();
+    }
+
+    /**
+     * Start watching the network changes
+     *
+     * @param listener
+     */
+    void start(Listener listener);
+
+    void stop();
+
+    /**
+     * If there's a network available
+     *
+     * @return boolean
+     */
+    boolean isConnected();
+}
@@ -0,0 +1,66 @@
+package com.eltonfaust.multiplayer;
+
+import java.util.Random;
+
+/**
+ * Retries network, server and source ended errors with jittered exponential backoff,
+ * decoder errors are retried once and client errors are never retried.
+ * After the max attempts the circuit opens and the error is reported.
+ */
+public class DefaultRetryPolicy implements RetryPolicy {
+    // Default max retries before the error is reported
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    // Default delay of the first retry
+    public static final int DEFAULT_BASE_DELAY_MS = 1000;
+
+    // Default max delay between retries
+    public static final int DEFAULT_MAX_DELAY_MS = 30000;
+
+    private final int maxAttempts;
+    private final int baseDelayMs;
+    private final int maxDelayMs;
+    private final Random random = new Random();
+
+    /**
+     * @param maxAttempts max retries, 0 to disable, -1 to use the default
+     * @param baseDelayMs delay of the first retry, 0 to use the default
+     * @param maxDelayMs max delay between retries, 0 to use the default
+     */
+    public DefaultRetryPolicy(int maxAttempts, int baseDelayMs, int maxDelayMs) {
+        this.maxAttempts = maxAttempts >= 0 ? maxAttempts : DEFAULT_MAX_ATTEMPTS;
+        this.baseDelayMs = baseDelayMs > 0 ? baseDelayMs : DEFAULT_BASE_DELAY_MS;
+        this.maxDelayMs = Math.max(maxDelayMs > 0 ? maxDelayMs : DEFAULT_MAX_DELAY_MS, this.baseDelayMs);
+    }
+
+    public DefaultRetryPolicy() {
+        this(-1, 0, 0);
+    }
+
+    @Override
+    public long getRetryDelayMs(ErrorCategory category, int attempt) {
+        int attempts;
+
+        switch (category) {
+            case NETWORK_IO:
+            case HTTP_5XX:
+            case SOURCE_ENDED:
+                attempts = this.maxAttempts;
+                break;
+            case DECODER:
+                attempts = Math.min(this.maxAttempts, 1);
+                break;
+            default:
+                attempts = 0;
+        }
+
+        if (attempt > attempts) {
+            return -1;
+        }
+
+        long delay = Math.min((long) this.baseDelayMs << Math.min(attempt - 1, 16), this.maxDelayMs);
+
+        // "equal jitter", between half and the full delay, so clients don't reconnect at the same time
+        return delay / 2 + (long) (this.random.nextDouble() * (delay / 2));
+    }
+}
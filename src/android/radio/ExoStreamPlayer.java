@@ -0,0 +1,39 @@
+package com.eltonfaust.multiplayer;
+
+import androidx.media3.exoplayer.ExoPlayer;
+
+/**
+ * StreamPlayer backed by the session ExoPlayer
+ */
+class ExoStreamPlayer implements StreamPlayer {
+    private final ExoPlayer mPlayer;
+
+    ExoStreamPlayer(ExoPlayer player) {
+        this.mPlayer = player;
+    }
+
+    @Override
+    public int getPlaybackState() {
+        return this.mPlayer.getPlaybackState();
+    }
+
+    @Override
+    public boolean getPlayWhenReady() {
+        return this.mPlayer.getPlayWhenReady();
+    }
+
+    @Override
+    public void setPlayWhenReady(boolean playWhenReady) {
+        this.mPlayer.setPlayWhenReady(playWhenReady);
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        this.mPlayer.setVolume(volume);
+    }
+
+    @Override
+    public void prepare() {
+        this.mPlayer.prepare();
+    }
+}
@@ -0,0 +1,448 @@
+package com.eltonfaust.multiplayer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.media3.common.PlaybackException;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.upstream.DefaultBandwidthMeter;
+
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Replaces the player of a session without a gap: switches between the mounts of the bitrate ladder following
+ * the buffer health, and re-opens the stream on a new network while the current buffer keeps playing.
+ * The replacement is prepared muted as a candidate player, and switched to on a safe point.
+ * Must only be used from the session playback thread.
+ */
+public class HandoverController {
+    // Interval between the buffer health readings of the adaptive mounts
+    private static final int ADAPTIVE_CHECK_INTERVAL_MS = 1000;
+
+    // Max time a ready switch up waits for a track change to be applied
+    private static final int ADAPTIVE_SAFE_POINT_TIMEOUT_MS = 15000;
+
+    // Interval the current player buffer is checked while a ready network handover waits it to drain
+    private static final int HANDOVER_DRAIN_CHECK_MS = 200;
+
+    /**
+     * Session side of the controller
+     */
+    public interface Host {
+        /**
+         * @return the current player, null if released
+         */
+        ExoPlayer getPlayer();
+
+        /**
+         * @return the buffer profile the current player was built with, null if released
+         */
+        BufferProfile getPlayerBufferProfile();
+
+        /**
+         * @return the url being played
+         */
+        String getPlaybackUrl();
+
+        boolean isPlaying();
+
+        /**
+         * @return true if a failed playback is waiting the retry
+         */
+        boolean isRetryPending();
+
+        /**
+         * @return true if the stream is being recorded (to a file or the time-shift buffer), both bound to the url
+         */
+        boolean isRecording();
+
+        /**
+         * Build a muted and paused player of the url, not prepared
+         */
+        ExoPlayer buildCandidatePlayer(String url);
+
+        /**
+         * Replace the current player by the ready candidate, keeping its volume, and play it
+         *
+         * @param url
+         * @param player now owned by the session
+         */
+        void replacePlayer(String url, ExoPlayer player);
+
+        /**
+         * Set the stream url of the next player build
+         */
+        void setStreamURL(String url);
+
+        void notifyRadioBitrateChanged(JSONObject change);
+
+        void log(String log);
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final Host mHost;
+
+    /**
+     * Selects the mount of the bitrate ladder, null if the stream has a single mount
+     */
+    private AdaptiveMountSelector mMountSelector = null;
+
+    /**
+     * Player replacing the current one, prepared muted until the switch
+     */
+    private ExoPlayer mCandidatePlayer = null;
+
+    /**
+     * Url of the candidate player
+     */
+    private String mCandidateUrl = null;
+
+    /**
+     * Mount switch decision of the candidate player, null on a network handover
+     */
+    private AdaptiveMountSelector.Decision mCandidateDecision = null;
+
+    /**
+     * If the candidate is ready and waiting for a safe point (a track change) to be switched to
+     */
+    private boolean mCandidateReady = false;
+
+    /**
+     * Network handover candidate ready and waiting the current player buffer to drain, null if none
+     */
+    private HandoverDrain mHandoverDrain = null;
+
+    /**
+     * @param context application context, used by the bandwidth meter
+     * @param handler handler of the playback thread
+     * @param host
+     */
+    public HandoverController(Context context, Handler handler, Host host) {
+        this.mContext = context;
+        this.mHandler = handler;
+        this.mHost = host;
+    }
+
+    /**
+     * Set the bitrate ladder, a ladder with less than two mounts disables the adaptive mode
+     *
+     * @param mounts
+     */
+    public void setMounts(List<AdaptiveMountSelector.Mount> mounts) {
+        this.cancel();
+        this.mMountSelector = mounts.size() > 1 ? new AdaptiveMountSelector(mounts) : null;
+    }
+
+    /**
+     * @return true if the stream has a bitrate ladder
+     */
+    public boolean isAdaptive() {
+        return this.mMountSelector != null;
+    }
+
+    /**
+     * @return the url of the mount the playback is on, null if not adaptive
+     */
+    public String getCurrentMountUrl() {
+        return this.mMountSelector == null ? null : this.mMountSelector.getCurrent().url;
+    }
+
+    /**
+     * Select the starting mount of the ladder from the bandwidth estimate
+     */
+    public void selectInitialMount() {
+        long bandwidth = DefaultBandwidthMeter.getSingletonInstance(this.mContext).getBitrateEstimate();
+        AdaptiveMountSelector.Mount mount = this.mMountSelector.selectInitial(bandwidth, SystemClock.elapsedRealtime());
+
+        this.mHost.log("Starting on mount " + mount.url + " (" + mount.bitrate + "bps), bandwidth estimate " + bandwidth + "bps");
+
+        this.mHost.setStreamURL(mount.url);
+        this.notifyBitrateChanged(null, mount, AdaptiveMountSelector.REASON_INITIAL, 0, bandwidth);
+    }
+
+    public void startMonitor() {
+        this.stopMonitor();
+
+        if (this.mMountSelector != null) {
+            this.mHandler.postDelayed(this.monitorRunnable, ADAPTIVE_CHECK_INTERVAL_MS);
+        }
+    }
+
+    public void stopMonitor() {
+        this.mHandler.removeCallbacks(this.monitorRunnable);
+        this.cancel();
+    }
+
+    /**
+     * Re-open the stream on the new network while the current buffer keeps playing
+     */
+    public void startNetworkHandover() {
+        if (
+            this.mHost.getPlayer() == null
+            || !this.mHost.isPlaying()
+            || this.mCandidatePlayer != null
+            || this.mHost.isRecording()
+        ) {
+            return;
+        }
+
+        this.mHost.log("Network changed, re-opening the stream");
+        this.startCandidate(this.mHost.getPlaybackUrl(), null);
+    }
+
+    /**
+     * The stream metadata changed, the switch gap of a ready candidate falls between the tracks
+     */
+    public void onTrackChanged() {
+        if (this.mCandidateReady) {
+            this.mHandler.post(this.safePointRunnable);
+        }
+    }
+
+    /**
+     * Release the candidate player, if any
+     */
+    public void cancel() {
+        this.mHandler.removeCallbacks(this.safePointRunnable);
+        this.mHandler.removeCallbacks(this.drainRunnable);
+        this.mHandoverDrain = null;
+        this.mCandidateReady = false;
+        this.mCandidateDecision = null;
+        this.mCandidateUrl = null;
+
+        if (this.mCandidatePlayer != null) {
+            this.mCandidatePlayer.removeListener(this.candidateListener);
+            this.mCandidatePlayer.release();
+            this.mCandidatePlayer = null;
+        }
+    }
+
+    /**
+     * Read the buffer health of the playing mount and start a switch if the selector decides so.
+     * The time-shift and the recordings are bound to the mount url, so there are no switches while they are active.
+     */
+    private Runnable monitorRunnable = new Runnable() {
+        public void run() {
+            ExoPlayer player = HandoverController.this.mHost.getPlayer();
+            AdaptiveMountSelector selector = HandoverController.this.mMountSelector;
+
+            if (player == null || selector == null) {
+                return;
+            }
+
+            HandoverController.this.mHandler.postDelayed(this, ADAPTIVE_CHECK_INTERVAL_MS);
+
+            if (HandoverController.this.mHost.isRecording()) {
+                HandoverController.this.cancel();
+                return;
+            }
+
+            if (
+                !HandoverController.this.mHost.isPlaying()
+                || HandoverController.this.mHost.isRetryPending()
+                || HandoverController.this.mCandidatePlayer != null
+            ) {
+                return;
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            long bandwidth = DefaultBandwidthMeter.getSingletonInstance(HandoverController.this.mContext).getBitrateEstimate();
+            long bufferedMs = player.getTotalBufferedDuration();
+
+            AdaptiveMountSelector.Decision decision = selector.evaluate(
+                bufferedMs,
+                HandoverController.this.mHost.getPlayerBufferProfile().getLowWatermarkMs(),
+                player.getPlaybackState() == ExoPlayer.STATE_BUFFERING,
+                bandwidth,
+                now
+            );
+
+            if (decision != null) {
+                HandoverController.this.startMountSwitch(decision);
+            }
+        }
+    };
+
+    /**
+     * Prepare the player of the decided mount muted, the current player keeps playing until it's ready
+     *
+     * @param decision
+     */
+    private void startMountSwitch(AdaptiveMountSelector.Decision decision) {
+        AdaptiveMountSelector.Mount mount = this.mMountSelector.getMount(decision.index);
+
+        this.mHost.log("Switching to mount " + mount.url + " (" + mount.bitrate + "bps), " + decision.reason);
+        this.startCandidate(mount.url, decision);
+    }
+
+    /**
+     * Prepare a muted player of the url to replace the current one
+     *
+     * @param url
+     * @param decision mount switch decision, null for a network handover
+     */
+    private void startCandidate(String url, AdaptiveMountSelector.Decision decision) {
+        this.cancel();
+
+        ExoPlayer candidate = this.mHost.buildCandidatePlayer(url);
+
+        candidate.addListener(this.candidateListener);
+        candidate.prepare();
+
+        this.mCandidatePlayer = candidate;
+        this.mCandidateUrl = url;
+        this.mCandidateDecision = decision;
+        this.mCandidateReady = false;
+    }
+
+    /**
+     * Replace the current player by the ready candidate
+     */
+    private void complete() {
+        ExoPlayer candidate = this.mCandidatePlayer;
+        ExoPlayer player = this.mHost.getPlayer();
+        String url = this.mCandidateUrl;
+        AdaptiveMountSelector.Decision decision = this.mCandidateDecision;
+
+        if (candidate == null || player == null || !this.mHost.isPlaying()) {
+            return;
+        }
+
+        this.mHandler.removeCallbacks(this.safePointRunnable);
+        this.mHandler.removeCallbacks(this.drainRunnable);
+        this.mHandoverDrain = null;
+        this.mCandidatePlayer = null;
+        this.mCandidateUrl = null;
+        this.mCandidateDecision = null;
+        this.mCandidateReady = false;
+
+        long bufferedMs = player.getTotalBufferedDuration();
+        AdaptiveMountSelector.Mount from = null;
+
+        if (decision != null) {
+            // the selector is moved first, the retries and failovers resolve the url from its current mount
+            from = this.mMountSelector.getCurrent();
+            this.mMountSelector.onSwitched(decision.index, SystemClock.elapsedRealtime());
+        }
+
+        candidate.removeListener(this.candidateListener);
+        this.mHost.replacePlayer(url, candidate);
+
+        if (decision != null) {
+            AdaptiveMountSelector.Mount to = this.mMountSelector.getMount(decision.index);
+            long bandwidth = DefaultBandwidthMeter.getSingletonInstance(this.mContext).getBitrateEstimate();
+
+            this.notifyBitrateChanged(from, to, decision.reason, bufferedMs, bandwidth);
+        } else {
+            this.mHost.log("Network handover completed, " + bufferedMs + "ms were still buffered");
+        }
+    }
+
+    private void notifyBitrateChanged(
+        AdaptiveMountSelector.Mount from,
+        AdaptiveMountSelector.Mount to,
+        String reason,
+        long bufferedMs,
+        long bandwidth
+    ) {
+        // without a previous mount (first selection) the from bitrate is left out
+        JSONObject change = new JSONBuilder()
+            .put("from", from == null ? null : from.bitrate)
+            .put("bitrate", to.bitrate)
+            .put("url", to.url)
+            .put("reason", reason)
+            .put("bufferedMs", bufferedMs)
+            .put("bandwidthEstimate", bandwidth)
+            .build();
+
+        this.mHost.notifyRadioBitrateChanged(change);
+    }
+
+    /**
+     * Switch on the safe point, or when a ready switch up didn't find a track change until the timeout
+     */
+    private Runnable safePointRunnable = new Runnable() {
+        public void run() {
+            HandoverController.this.complete();
+        }
+    };
+
+    /**
+     * Switch to the ready network handover candidate once the current player drained its buffer
+     */
+    private Runnable drainRunnable = new Runnable() {
+        public void run() {
+            HandoverDrain drain = HandoverController.this.mHandoverDrain;
+            ExoPlayer player = HandoverController.this.mHost.getPlayer();
+
+            if (drain == null) {
+                return;
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            long bufferedMs = player == null ? 0 : player.getTotalBufferedDuration();
+            boolean playing = player != null && player.getPlaybackState() == ExoPlayer.STATE_READY;
+
+            if (drain.shouldSwitch(bufferedMs, playing, now)) {
+                HandoverController.this.complete();
+            } else {
+                HandoverController.this.mHandler.postDelayed(this, Math.min(HANDOVER_DRAIN_CHECK_MS, drain.getRemainingMs(now)));
+            }
+        }
+    };
+
+    private ExoPlayer.Listener candidateListener = new ExoPlayer.Listener() {
+        @Override
+        public void onPlaybackStateChanged(int playbackState) {
+            if (
+                playbackState != ExoPlayer.STATE_READY
+                || HandoverController.this.mCandidatePlayer == null
+                || HandoverController.this.mCandidateReady
+            ) {
+                return;
+            }
+
+            AdaptiveMountSelector.Decision decision = HandoverController.this.mCandidateDecision;
+            ExoPlayer player = HandoverController.this.mHost.getPlayer();
+            BufferProfile bufferProfile = HandoverController.this.mHost.getPlayerBufferProfile();
+
+            if (decision == null && player != null && bufferProfile != null) {
+                // network handover, keep playing the buffer of the previous network before jumping to the live edge
+                HandoverController.this.mCandidateReady = true;
+                HandoverController.this.mHandoverDrain = new HandoverDrain(
+                    SystemClock.elapsedRealtime(),
+                    player.getTotalBufferedDuration(),
+                    bufferProfile.getLowWatermarkMs()
+                );
+                HandoverController.this.mHandler.post(HandoverController.this.drainRunnable);
+            } else if (decision == null || decision.index < HandoverController.this.mMountSelector.getCurrentIndex()) {
+                // switching down, the current buffer may be draining, switch right away
+                HandoverController.this.complete();
+            } else {
+                HandoverController.this.mCandidateReady = true;
+                HandoverController.this.mHandler.postDelayed(HandoverController.this.safePointRunnable, ADAPTIVE_SAFE_POINT_TIMEOUT_MS);
+            }
+        }
+
+        @Override
+        public void onPlayerError(PlaybackException error) {
+            HandoverController.this.mHost.log("Player replacement failed. " + error.getErrorCodeName());
+
+            HandoverController.this.mHandler.post(new Runnable() {
+                public void run() {
+                    boolean mountSwitch = HandoverController.this.mCandidateDecision != null;
+
+                    HandoverController.this.cancel();
+
+                    if (mountSwitch && HandoverController.this.mMountSelector != null) {
+                        HandoverController.this.mMountSelector.onSwitchFailed(SystemClock.elapsedRealtime());
+                    }
+                }
+            });
+        }
+    };
+}
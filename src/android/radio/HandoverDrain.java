@@ -0,0 +1,48 @@
+package com.eltonfaust.multiplayer;
+
+/**
+ * Decides when a ready network handover candidate replaces the current player.
+ *
+ * The candidate starts at the live edge of the new connection, while the current player is behind it by its buffer.
+ * Switching right away would skip the whole buffer, so the current player keeps playing it down to the low watermark,
+ * and only the watermark is skipped. The switch is immediate if the current player stops playing (eg. its network is gone).
+ */
+public class HandoverDrain {
+    // Max time the current player keeps playing once the candidate is ready
+    public static final long MAX_DRAIN_MS = 15000;
+
+    private final long mReadyAt;
+    private final long mLowWatermarkMs;
+    private final long mDrainMs;
+
+    /**
+     * @param readyAt time the candidate got ready
+     * @param bufferedMs buffered by the current player when the candidate got ready
+     * @param lowWatermarkMs
+     */
+    public HandoverDrain(long readyAt, long bufferedMs, long lowWatermarkMs) {
+        this.mReadyAt = readyAt;
+        this.mLowWatermarkMs = lowWatermarkMs;
+        this.mDrainMs = Math.min(MAX_DRAIN_MS, Math.max(0, bufferedMs - lowWatermarkMs));
+    }
+
+    /**
+     * @param bufferedMs buffered by the current player
+     * @param playing false if the current player is buffering, stopped or failed
+     * @param now
+     * @return true if the candidate should replace the current player now
+     */
+    public boolean shouldSwitch(long bufferedMs, boolean playing, long now) {
+        return !playing
+            || bufferedMs <= this.mLowWatermarkMs
+            || now - this.mReadyAt >= this.mDrainMs;
+    }
+
+    /**
+     * @param now
+     * @return time left until the switch, if the current player keeps playing
+     */
+    public long getRemainingMs(long now) {
+        return Math.max(0, this.mDrainMs - (now - this.mReadyAt));
+    }
+}
@@ -1,13 +1,49 @@
 package com.eltonfaust.multiplayer;
 
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.List;
+
 public interface IRadioManager {
     void setStreamURL(String streamURL);
+    void setStreamURLs(List<String> streamURLs);
     void setAutoKillNotification(boolean killNotification);
+    void setStallTimeout(int stallTimeout);
+    void setBufferProfile(String bufferProfile);
+    void setRetryPolicy(int maxAttempts, int baseDelayMs, int maxDelayMs);
+    void setCache(boolean enabled, long maxBytes, List<String> ignoredParams);
+    void setPreWarm(boolean preWarm, int preWarmTimeout);
+    void setSoftStop(boolean softStop, int softStopTimeout);
+    void setTimeShift(boolean timeShift, int timeShiftDuration);
+    void setMounts(List<AdaptiveMountSelector.Mount> mounts);
+    void setStatsInterval(int statsInterval);
+    void setMetadataInterval(int metadataInterval);
     void startRadio();
     void startRadio(int streamType);
+    void startRadio(int sessionId, int streamType);
     void stopRadio();
+    void stopRadio(int sessionId);
+    void setStations(int sessionId, List<String> stations, int preloadNeighbors, int preloadBufferMs);
+    void switchStation(int sessionId, int index, boolean relative);
+    void seekTimeShift(int sessionId, long behindLiveMs);
+    void startRecording(int sessionId, String path) throws IOException;
+    JSONObject stopRecording(int sessionId);
+    void scheduleAlarm(int sessionId, AlarmSchedule schedule);
+    void cancelAlarm(int sessionId);
 
     boolean isPlaying();
+    JSONObject getStats();
+    JSONObject getStats(int sessionId);
+    void getTimeShiftPosition(int sessionId, RadioSession.TimeShiftPositionCallback callback);
+
+    void clearCache(String url);
+    void pinCache(String url, boolean pinned);
+
+    RadioSession getDefaultSession();
+    RadioSession createSession();
+    RadioSession getSession(int sessionId);
+    void destroySession(int sessionId);
 
     void setListener(RadioListener mRadioListener);
     void registerListener(RadioListener mRadioListener);
@@ -15,4 +51,6 @@ public interface IRadioManager {
 
     void connect();
     void disconnect();
+    ConnectionState getConnectionState();
+    boolean isConnected();
 }
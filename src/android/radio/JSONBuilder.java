@@ -0,0 +1,46 @@
+package com.eltonfaust.multiplayer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Builds the JSON payloads of the events, stats and stored values.
+ * JSONObject.put only fails for a null key or a NaN/infinite number, the payloads have constant keys and finite
+ * numbers, so a failure is a bug and is thrown unchecked, instead of ignored by each payload.
+ */
+public class JSONBuilder {
+    private final JSONObject json;
+
+    public JSONBuilder() {
+        this(new JSONObject());
+    }
+
+    /**
+     * @param json object the values are added to
+     */
+    public JSONBuilder(JSONObject json) {
+        this.json = json;
+    }
+
+    /**
+     * @param key
+     * @param value a JSONObject, JSONArray, String, boxed primitive or JSONObject.NULL, null leaves the key out
+     * @return JSONBuilder
+     */
+    public JSONBuilder put(String key, Object value) {
+        try {
+            this.json.put(key, value);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid JSON value of " + key + ": " + value, e);
+        }
+
+        return this;
+    }
+
+    /**
+     * @return JSONObject the object built, further puts change it
+     */
+    public JSONObject build() {
+        return this.json;
+    }
+}
@@ -0,0 +1,118 @@
+package com.eltonfaust.multiplayer;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Traces the time from a player command (eg. play) until its effect is delivered to the listeners,
+ * with the time each thread hop was reached:
+ * "received" (bridge thread), "command" (command thread), "playback" (playback thread), "effect" (the event was emitted) and "delivered"
+ * (the first listener received the event).
+ * A command issued before the effect of the previous one finishes the previous trace as "SUPERSEDED".
+ */
+public class LatencyTracer {
+    private static final String LOG_TAG = "MultiPlayer";
+
+    // Finished traces kept
+    private static final int MAX_TRACES = 10;
+
+    private final String name;
+    private final LinkedList<JSONObject> traces = new LinkedList<JSONObject>();
+
+    private String command = null;
+    private long beganAt = 0;
+    private Map<String, Double> hops = null;
+
+    public LatencyTracer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Start tracing a command, called when the command is received from the bridge
+     *
+     * @param command
+     */
+    public synchronized void begin(String command) {
+        if (this.command != null) {
+            this.finish("SUPERSEDED");
+        }
+
+        this.command = command;
+        this.beganAt = SystemClock.elapsedRealtimeNanos();
+        this.hops = new LinkedHashMap<String, Double>();
+    }
+
+    /**
+     * Record the time a hop was reached, only the first time of each hop is kept
+     *
+     * @param hop
+     */
+    public synchronized void mark(String hop) {
+        if (this.command == null || this.hops.containsKey(hop)) {
+            return;
+        }
+
+        this.hops.put(hop, this.elapsedMs());
+    }
+
+    /**
+     * The effect of the command was delivered to the listeners
+     *
+     * @param effect event delivered
+     */
+    public synchronized void end(String effect) {
+        if (this.command == null) {
+            return;
+        }
+
+        this.mark("delivered");
+        this.finish(effect);
+    }
+
+    /**
+     * Last finished traces: command, result and the hops times (in ms since the command)
+     *
+     * @return JSONArray
+     */
+    public synchronized JSONArray toJSON() {
+        JSONArray traces = new JSONArray();
+
+        for (JSONObject trace : this.traces) {
+            traces.put(trace);
+        }
+
+        return traces;
+    }
+
+    private void finish(String result) {
+        JSONObject hops = new JSONObject(this.hops);
+        JSONObject trace = new JSONBuilder()
+            .put("command", this.command)
+            .put("result", result)
+            .put("hops", hops)
+            .build();
+
+        Log.v(LOG_TAG, "LatencyTracer " + this.name + " : " + this.command + " -> " + result + " " + hops.toString());
+
+        this.traces.addLast(trace);
+
+        if (this.traces.size() > MAX_TRACES) {
+            this.traces.removeFirst();
+        }
+
+        this.command = null;
+        this.hops = null;
+    }
+
+    private double elapsedMs() {
+        // 0.1ms precision
+        return Math.round((SystemClock.elapsedRealtimeNanos() - this.beganAt) / 100000.0) / 10.0;
+    }
+}
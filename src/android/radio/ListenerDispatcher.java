@@ -0,0 +1,207 @@
+package com.eltonfaust.multiplayer;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers the events of a session to its listeners.
+ *
+ * Each listener has its own queue, drained in order on the shared listener executor, so a slow listener
+ * (eg. a busy WebView) never delays the playback thread nor the other listeners.
+ * Periodic events (eg. stats) waiting on a queue are merged keeping only the latest, and when a queue is full
+ * the oldest periodic event is dropped, the state events (eg. started, stopped) are never dropped.
+ */
+public class ListenerDispatcher {
+    private static final String LOG_TAG = "MultiPlayer";
+
+    // Max events waiting for a listener before the periodic events are dropped
+    private static final int MAX_PENDING = 32;
+
+    /**
+     * Call of a listener method
+     */
+    public interface Call {
+        void call(RadioListener mRadioListener);
+    }
+
+    private final Executor executor;
+    private final TimingStats timingStats;
+
+    /**
+     * Listener queues, iterated on dispatch while changed from the other threads
+     */
+    private final List<Channel> channels = new CopyOnWriteArrayList<Channel>();
+
+    public ListenerDispatcher(Executor executor, TimingStats timingStats) {
+        this.executor = executor;
+        this.timingStats = timingStats;
+    }
+
+    public synchronized void add(RadioListener mRadioListener) {
+        this.channels.add(new Channel(mRadioListener));
+    }
+
+    public synchronized void remove(RadioListener mRadioListener) {
+        for (Channel channel : this.channels) {
+            if (channel.listener == mRadioListener) {
+                channel.close();
+                this.channels.remove(channel);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replace all the listeners by a single one
+     *
+     * @param mRadioListener
+     */
+    public synchronized void set(RadioListener mRadioListener) {
+        for (Channel channel : this.channels) {
+            channel.close();
+        }
+
+        this.channels.clear();
+        this.channels.add(new Channel(mRadioListener));
+    }
+
+    /**
+     * Queue an event to all the listeners, never blocks
+     *
+     * @param mergeKey key of a periodic event, merged with the waiting event of the same key, null for a state event
+     * @param call
+     * @param onDelivered run once the event is delivered to the first listener, may be null
+     */
+    public void dispatch(String mergeKey, Call call, Runnable onDelivered) {
+        Event event = new Event(mergeKey, call, onDelivered);
+
+        for (Channel channel : this.channels) {
+            channel.offer(event);
+        }
+    }
+
+    private static class Event {
+        private final String mergeKey;
+        private final Call call;
+        private final Runnable onDelivered;
+        private final long postedAt = TimingStats.start();
+        private final AtomicBoolean delivered = new AtomicBoolean(false);
+
+        Event(String mergeKey, Call call, Runnable onDelivered) {
+            this.mergeKey = mergeKey;
+            this.call = call;
+            this.onDelivered = onDelivered;
+        }
+    }
+
+    private class Channel implements Runnable {
+        private final RadioListener listener;
+        private final ArrayDeque<Event> pending = new ArrayDeque<Event>();
+        private boolean scheduled = false;
+        private boolean closed = false;
+
+        Channel(RadioListener listener) {
+            this.listener = listener;
+        }
+
+        void offer(Event event) {
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+
+                if (event.mergeKey != null) {
+                    this.removeFirst(event.mergeKey);
+                }
+
+                if (this.pending.size() >= MAX_PENDING && this.removeFirst(null)) {
+                    ListenerDispatcher.this.log("Listener queue full, periodic event dropped");
+                }
+
+                this.pending.addLast(event);
+
+                if (this.scheduled) {
+                    return;
+                }
+
+                this.scheduled = true;
+            }
+
+            ListenerDispatcher.this.executor.execute(this);
+        }
+
+        synchronized void close() {
+            this.closed = true;
+            this.pending.clear();
+        }
+
+        /**
+         * Remove the oldest waiting periodic event
+         *
+         * @param mergeKey key of the event, null for any periodic event
+         * @return true if an event was removed
+         */
+        private boolean removeFirst(String mergeKey) {
+            Iterator<Event> iterator = this.pending.iterator();
+
+            while (iterator.hasNext()) {
+                Event event = iterator.next();
+
+                if (event.mergeKey != null && (mergeKey == null || mergeKey.equals(event.mergeKey))) {
+                    iterator.remove();
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        public void run() {
+            while (true) {
+                Event event;
+
+                synchronized (this) {
+                    event = this.pending.pollFirst();
+
+                    if (event == null) {
+                        this.scheduled = false;
+                        return;
+                    }
+                }
+
+                TimingStats timingStats = ListenerDispatcher.this.timingStats;
+                timingStats.record("listenerQueue", event.postedAt);
+
+                long dispatchStart = TimingStats.start();
+
+                try {
+                    event.call.call(this.listener);
+                } catch (RuntimeException e) {
+                    // a failing listener must not stop the delivery to itself or the others
+                    ListenerDispatcher.this.log("Listener failed: " + e.getMessage());
+                }
+
+                timingStats.record("listenerDispatch", dispatchStart);
+
+                if (event.onDelivered != null && event.delivered.compareAndSet(false, true)) {
+                    event.onDelivered.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Logger
+     *
+     * @param log
+     */
+    private void log(String log) {
+        Log.v(LOG_TAG, "ListenerDispatcher : " + log);
+    }
+}
@@ -0,0 +1,137 @@
+package com.eltonfaust.multiplayer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Persistent startup latency and failure history of the stream mirrors, used to rank them on the next starts
+ */
+public class MirrorHistory {
+    private static final String PREFERENCES_NAME = "cordova-plugin-multi-player-mirrors";
+
+    // Latency assumed for mirrors without history, keeps them between the fast and the slow known mirrors
+    private static final long UNKNOWN_LATENCY_MS = 1500;
+
+    // Score penalty of each consecutive failure
+    private static final long FAILURE_PENALTY_MS = 5000;
+
+    // Weight of the last measure on the latency moving average
+    private static final float LATENCY_WEIGHT = 0.3f;
+
+    // Max mirrors kept on the history, the oldest entries are removed
+    private static final int MAX_ENTRIES = 64;
+
+    private final SharedPreferences preferences;
+
+    public MirrorHistory(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Sort the urls from the best to the worst mirror, urls with the same score keep the informed order
+     *
+     * @param urls
+     * @return List<String>
+     */
+    public synchronized List<String> rank(final List<String> urls) {
+        final List<String> ranked = new ArrayList<String>(urls);
+        final List<Long> scores = new ArrayList<Long>();
+
+        for (String url : urls) {
+            scores.add(this.getScore(url));
+        }
+
+        Collections.sort(ranked, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return Long.compare(scores.get(urls.indexOf(a)), scores.get(urls.indexOf(b)));
+            }
+        });
+
+        return ranked;
+    }
+
+    /**
+     * Record a successful start
+     *
+     * @param url
+     * @param latencyMs time until the mirror was ready to play
+     */
+    public synchronized void recordSuccess(String url, long latencyMs) {
+        long[] entry = this.getEntry(url);
+        long latency = entry == null
+            ? latencyMs
+            : (long) (entry[0] * (1 - LATENCY_WEIGHT) + latencyMs * LATENCY_WEIGHT);
+
+        this.putEntry(url, latency, 0);
+    }
+
+    /**
+     * Record a failed start or a failure while playing
+     *
+     * @param url
+     */
+    public synchronized void recordFailure(String url) {
+        long[] entry = this.getEntry(url);
+
+        this.putEntry(url, entry == null ? UNKNOWN_LATENCY_MS : entry[0], entry == null ? 1 : entry[1] + 1);
+    }
+
+    private long getScore(String url) {
+        long[] entry = this.getEntry(url);
+
+        if (entry == null) {
+            return UNKNOWN_LATENCY_MS;
+        }
+
+        return entry[0] + entry[1] * FAILURE_PENALTY_MS;
+    }
+
+    /**
+     * Entry stored as "latency,failures,updatedAt"
+     */
+    private long[] getEntry(String url) {
+        String value = this.preferences.getString(url, null);
+
+        if (value == null) {
+            return null;
+        }
+
+        String[] parts = value.split(",");
+
+        try {
+            return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]) };
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void putEntry(String url, long latencyMs, long failures) {
+        SharedPreferences.Editor editor = this.preferences.edit();
+
+        if (!this.preferences.contains(url) && this.preferences.getAll().size() >= MAX_ENTRIES) {
+            String oldestUrl = null;
+            long oldestUpdatedAt = Long.MAX_VALUE;
+
+            for (String key : this.preferences.getAll().keySet()) {
+                long[] entry = this.getEntry(key);
+
+                if (entry == null || entry[2] < oldestUpdatedAt) {
+                    oldestUrl = key;
+                    oldestUpdatedAt = entry == null ? Long.MIN_VALUE : entry[2];
+                }
+            }
+
+            if (oldestUrl != null) {
+                editor.remove(oldestUrl);
+            }
+        }
+
+        editor.putString(url, latencyMs + "," + failures + "," + System.currentTimeMillis());
+        editor.apply();
+    }
+}
@@ -0,0 +1,176 @@
+package com.eltonfaust.multiplayer;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.Player;
+import androidx.media3.exoplayer.ExoPlayer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connects to the candidate mirrors in parallel, staggered "happy eyeballs" style,
+ * the first one with audio ready to play wins and the others are released.
+ * Must only be used from the session playback thread.
+ */
+public class MirrorRace {
+    // Delay before the next candidate joins the race, if no candidate is ready yet
+    private static final int STAGGER_DELAY_MS = 250;
+
+    public interface Callback {
+        /**
+         * Build a muted and paused player of the candidate, not prepared
+         */
+        ExoPlayer buildRacePlayer(String url);
+
+        /**
+         * A candidate is ready to play, its player is now owned by the callback
+         */
+        void onRaceWon(String url, ExoPlayer player);
+
+        /**
+         * All the candidates failed, the player of the last failed one is now owned by the callback
+         */
+        void onRaceLost(String url, ExoPlayer player, PlaybackException error);
+    }
+
+    private final Handler handler;
+    private final List<String> candidates;
+    private final MirrorHistory history;
+    private final Callback callback;
+    private final int maxParallel;
+
+    private final List<Runner> runners = new ArrayList<Runner>();
+    private int nextCandidate = 0;
+    private boolean finished = false;
+
+    /**
+     * @param handler handler of the playback thread
+     * @param candidates mirrors, from the best to the worst
+     * @param maxParallel max candidates connecting at the same time
+     * @param history
+     * @param callback
+     */
+    public MirrorRace(Handler handler, List<String> candidates, int maxParallel, MirrorHistory history, Callback callback) {
+        this.handler = handler;
+        this.candidates = candidates;
+        this.maxParallel = Math.max(maxParallel, 1);
+        this.history = history;
+        this.callback = callback;
+    }
+
+    public void start() {
+        this.startNext();
+    }
+
+    /**
+     * Release all the candidates, the callback isn't called
+     */
+    public void cancel() {
+        this.finished = true;
+        this.handler.removeCallbacks(this.staggerRunnable);
+
+        for (Runner runner : this.runners) {
+            runner.player.release();
+        }
+
+        this.runners.clear();
+    }
+
+    private void startNext() {
+        if (
+            this.finished
+            || this.nextCandidate >= this.candidates.size()
+            || this.runners.size() >= this.maxParallel
+        ) {
+            return;
+        }
+
+        String url = this.candidates.get(this.nextCandidate++);
+        Runner runner = new Runner(url, this.callback.buildRacePlayer(url));
+
+        this.runners.add(runner);
+        runner.player.addListener(runner);
+        runner.player.prepare();
+
+        this.handler.removeCallbacks(this.staggerRunnable);
+
+        if (this.nextCandidate < this.candidates.size() && this.runners.size() < this.maxParallel) {
+            this.handler.postDelayed(this.staggerRunnable, STAGGER_DELAY_MS);
+        }
+    }
+
+    private void onReady(Runner winner) {
+        if (this.finished) {
+            return;
+        }
+
+        this.finished = true;
+        this.handler.removeCallbacks(this.staggerRunnable);
+        this.history.recordSuccess(winner.url, SystemClock.elapsedRealtime() - winner.startedAt);
+
+        for (Runner runner : this.runners) {
+            runner.player.removeListener(runner);
+
+            if (runner != winner) {
+                runner.player.release();
+            }
+        }
+
+        this.runners.clear();
+        this.callback.onRaceWon(winner.url, winner.player);
+    }
+
+    private void onFailed(Runner runner, PlaybackException error) {
+        if (this.finished) {
+            return;
+        }
+
+        this.history.recordFailure(runner.url);
+        runner.player.removeListener(runner);
+        this.runners.remove(runner);
+
+        if (this.runners.isEmpty() && this.nextCandidate >= this.candidates.size()) {
+            this.finished = true;
+            this.handler.removeCallbacks(this.staggerRunnable);
+            this.callback.onRaceLost(runner.url, runner.player, error);
+            return;
+        }
+
+        runner.player.release();
+
+        // a failed candidate doesn't need to wait for the stagger delay
+        this.startNext();
+    }
+
+    private final Runnable staggerRunnable = new Runnable() {
+        public void run() {
+            MirrorRace.this.startNext();
+        }
+    };
+
+    private class Runner implements Player.Listener {
+        private final String url;
+        private final ExoPlayer player;
+        private final long startedAt = SystemClock.elapsedRealtime();
+
+        private Runner(String url, ExoPlayer player) {
+            this.url = url;
+            this.player = player;
+        }
+
+        @Override
+        public void onPlaybackStateChanged(int playbackState) {
+            if (playbackState == Player.STATE_READY) {
+                MirrorRace.this.onReady(this);
+            }
+        }
+
+        @Override
+        public void onPlayerError(PlaybackException error) {
+            MirrorRace.this.onFailed(this, error);
+        }
+    }
+}
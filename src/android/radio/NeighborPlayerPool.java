@@ -0,0 +1,86 @@
+package com.eltonfaust.multiplayer;
+
+import androidx.media3.exoplayer.ExoPlayer;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU pool of prepared (muted and paused) players of the stations next to the current one,
+ * when the pool is full the least recently used player is released.
+ * Not thread safe, must only be used from the session playback thread.
+ */
+public class NeighborPlayerPool {
+    private final LinkedHashMap<String, ExoPlayer> players = new LinkedHashMap<String, ExoPlayer>(8, 0.75f, true);
+    private int maxSize;
+
+    public NeighborPlayerPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        this.trim();
+    }
+
+    public boolean contains(String url) {
+        return this.players.containsKey(url);
+    }
+
+    /**
+     * Remove the player of the url from the pool, the caller becomes its owner
+     *
+     * @param url
+     * @return ExoPlayer or null if not preloaded
+     */
+    public ExoPlayer take(String url) {
+        return this.players.remove(url);
+    }
+
+    public void put(String url, ExoPlayer player) {
+        ExoPlayer previous = this.players.put(url, player);
+
+        if (previous != null && previous != player) {
+            previous.release();
+        }
+
+        this.trim();
+    }
+
+    /**
+     * Release the players of the urls not in the given list
+     *
+     * @param urls
+     */
+    public void retain(Collection<String> urls) {
+        Iterator<Map.Entry<String, ExoPlayer>> iterator = this.players.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<String, ExoPlayer> entry = iterator.next();
+
+            if (!urls.contains(entry.getKey())) {
+                entry.getValue().release();
+                iterator.remove();
+            }
+        }
+    }
+
+    public void releaseAll() {
+        for (ExoPlayer player : this.players.values()) {
+            player.release();
+        }
+
+        this.players.clear();
+    }
+
+    private void trim() {
+        Iterator<ExoPlayer> iterator = this.players.values().iterator();
+
+        while (this.players.size() > this.maxSize && iterator.hasNext()) {
+            iterator.next().release();
+            iterator.remove();
+        }
+    }
+}
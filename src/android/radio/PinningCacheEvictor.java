@@ -0,0 +1,94 @@
+package com.eltonfaust.multiplayer;
+
+import androidx.media3.common.C;
+import androidx.media3.datasource.cache.Cache;
+import androidx.media3.datasource.cache.CacheEvictor;
+import androidx.media3.datasource.cache.CacheSpan;
+
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Evicts the least recently used spans when the cache exceeds the max size, the spans of pinned keys are never evicted
+ */
+public class PinningCacheEvictor implements CacheEvictor {
+    private final Set<String> pinnedKeys;
+    private final TreeSet<CacheSpan> spans = new TreeSet<CacheSpan>(new Comparator<CacheSpan>() {
+        public int compare(CacheSpan a, CacheSpan b) {
+            long diff = a.lastTouchTimestamp - b.lastTouchTimestamp;
+            return diff == 0 ? a.compareTo(b) : (diff < 0 ? -1 : 1);
+        }
+    });
+
+    private volatile long maxBytes;
+    private long currentSize = 0;
+
+    /**
+     * @param maxBytes
+     * @param pinnedKeys keys never evicted, must be a thread safe set, read on every eviction
+     */
+    public PinningCacheEvictor(long maxBytes, Set<String> pinnedKeys) {
+        this.maxBytes = maxBytes;
+        this.pinnedKeys = pinnedKeys;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public boolean requiresCacheSpanTouches() {
+        return true;
+    }
+
+    @Override
+    public void onCacheInitialized() {
+    }
+
+    @Override
+    public void onStartFile(Cache cache, String key, long position, long length) {
+        if (length != C.LENGTH_UNSET) {
+            this.evictCache(cache, length);
+        }
+    }
+
+    @Override
+    public void onSpanAdded(Cache cache, CacheSpan span) {
+        this.spans.add(span);
+        this.currentSize += span.length;
+        this.evictCache(cache, 0);
+    }
+
+    @Override
+    public void onSpanRemoved(Cache cache, CacheSpan span) {
+        this.spans.remove(span);
+        this.currentSize -= span.length;
+    }
+
+    @Override
+    public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+        this.onSpanRemoved(cache, oldSpan);
+        this.onSpanAdded(cache, newSpan);
+    }
+
+    private void evictCache(Cache cache, long requiredSpace) {
+        while (this.currentSize + requiredSpace > this.maxBytes) {
+            CacheSpan candidate = null;
+
+            for (CacheSpan span : this.spans) {
+                if (!this.pinnedKeys.contains(span.key)) {
+                    candidate = span;
+                    break;
+                }
+            }
+
+            if (candidate == null) {
+                // only pinned spans left
+                return;
+            }
+
+            cache.removeSpan(candidate);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.eltonfaust.multiplayer;
+
+/**
+ * Translates the player and audio focus callbacks of a session into playback state events,
+ * telling the session what to stop and notify.
+ *
+ * It has no Android dependency, so the state handling can be driven by a fake player on the JVM tests.
+ */
+public class PlaybackController {
+    /**
+     * Audio focus changes, mapped from the AudioManager values by the session
+     */
+    public enum Focus {
+        GAIN,
+        LOSS,
+        LOSS_TRANSIENT,
+        LOSS_TRANSIENT_CAN_DUCK,
+    }
+
+    /**
+     * Session side of the controller
+     */
+    public interface Host {
+        /**
+         * @return the current player, null if released
+         */
+        StreamPlayer getPlayer();
+
+        /**
+         * @return true if a failed playback is waiting the retry
+         */
+        boolean isRetryPending();
+
+        /**
+         * @return true if the stream is being recorded
+         */
+        boolean isRecording();
+
+        /**
+         * Run on the session playback thread
+         * @param runnable
+         */
+        void post(Runnable runnable);
+
+        /**
+         * Stop the session, as requested by the user
+         */
+        void stop();
+
+        /**
+         * Stop the player, keeping or releasing it
+         */
+        void stopPlayer();
+
+        /**
+         * The playing stream ended, handled as a failed playback
+         */
+        void onSourceEnded();
+
+        /**
+         * The player is ready and no retry is pending
+         */
+        void onReady();
+
+        void notifyRadioStarted();
+
+        void notifyRadioStopped();
+
+        void notifyRadioStartedFocusTransient();
+
+        void notifyRadioStoppedFocusTransient();
+
+        void notifyRadioStoppedFocusLoss();
+
+        void log(String log);
+    }
+
+    // Volume while another app has the focus and allows ducking
+    public static final float DUCK_VOLUME = 0.2f;
+
+    private final PlaybackStateMachine mStateMachine;
+    private final Host mHost;
+
+    /**
+     * If the player was muted instead of stopped on a transient focus loss, to keep the recording going
+     */
+    private boolean mRecordingFocusMuted = false;
+
+    /**
+     * Incremented on every play, a player stop deferred before it is skipped
+     */
+    private int mPlayCount = 0;
+
+    public PlaybackController(PlaybackStateMachine stateMachine, Host host) {
+        this.mStateMachine = stateMachine;
+        this.mHost = host;
+    }
+
+    /**
+     * A play was requested, called on the playback thread before the player is taken
+     */
+    public void onPlay() {
+        this.mPlayCount++;
+    }
+
+    /**
+     * Start playing the player, the audio focus must be already granted.
+     * A stopped player keeps the play when ready flag, it's reset so the change is reported and the state updated.
+     *
+     * @param player
+     */
+    public void start(StreamPlayer player) {
+        this.mRecordingFocusMuted = false;
+        player.setVolume(1f);
+
+        if (player.getPlayWhenReady() && !this.mStateMachine.is(PlaybackState.PLAYING)) {
+            player.setPlayWhenReady(false);
+        }
+
+        player.setPlayWhenReady(true);
+    }
+
+    /**
+     * The player was stopped or released, a muted transient loss doesn't apply anymore
+     */
+    public void clearFocusMuted() {
+        this.mRecordingFocusMuted = false;
+    }
+
+    /**
+     * @param playbackState one of the StreamPlayer states
+     */
+    public void onPlaybackStateChanged(int playbackState) {
+        if (this.mHost.isRetryPending()) {
+            // failed playback, handled by the retry
+            this.mHost.log("Player state changed. Waiting retry, ExoPlayer State: " + playbackState);
+        } else if (playbackState == StreamPlayer.STATE_ENDED && this.mStateMachine.is(PlaybackState.PLAYING)) {
+            // a live stream isn't expected to end, the server closed the connection
+            this.mHost.onSourceEnded();
+        } else if (playbackState == StreamPlayer.STATE_IDLE && this.mStateMachine.is(PlaybackState.PLAYING)) {
+            // Player.STATE_IDLE: This is the initial state, the state when the player is stopped, and when playback failed.
+            this.mHost.log("Player state changed. Stopped");
+            this.mStateMachine.fire(PlaybackStateMachine.Event.STOP);
+            this.mHost.notifyRadioStopped();
+            this.postStopPlayer();
+        } else if (
+            playbackState == StreamPlayer.STATE_IDLE
+            && this.mStateMachine.is(PlaybackState.STOPPED_FOCUS_TRANSIENT)
+        ) {
+            // focus loss temporarily, notify
+            this.mHost.log("Player state changed. Stopped focus loss transient");
+
+            if (this.mRecordingFocusMuted) {
+                // stopped while muted, already notified, the focus gain must prepare it again
+                this.mRecordingFocusMuted = false;
+            } else {
+                this.mHost.notifyRadioStoppedFocusTransient();
+            }
+        } else if (
+            playbackState == StreamPlayer.STATE_IDLE
+            && this.mStateMachine.is(PlaybackState.STOPPED_FOCUS_LOSS)
+        ) {
+            // focus loss, notify and set state to STOPPED
+            this.mHost.log("Player state changed. Stopped focus loss");
+            this.mHost.notifyRadioStoppedFocusLoss();
+            this.postStopPlayer();
+        } else if (
+            playbackState == StreamPlayer.STATE_READY
+            && this.mStateMachine.is(PlaybackState.STOPPED_FOCUS_TRANSIENT)
+            // a muted player rebuffering isn't a focus gain
+            && !this.mRecordingFocusMuted
+        ) {
+            // focus regained after an transient loss
+            this.mHost.log("Player state changed. Playing - regained focus transient");
+            this.mStateMachine.fire(PlaybackStateMachine.Event.FOCUS_GAIN);
+            this.mHost.notifyRadioStartedFocusTransient();
+        } else {
+            this.mHost.log("Player state changed. ExoPlayer State: " + playbackState + ", Current state: " + this.mStateMachine.getState());
+        }
+
+        if (playbackState == StreamPlayer.STATE_READY && !this.mHost.isRetryPending()) {
+            this.mHost.onReady();
+        }
+    }
+
+    /**
+     * Stop the player out of the player callback, the state is already changed and notified.
+     * Skipped if played again before, the play already took the player.
+     */
+    private void postStopPlayer() {
+        final int playCount = this.mPlayCount;
+
+        this.mHost.post(new Runnable() {
+            public void run() {
+                if (PlaybackController.this.mPlayCount != playCount) {
+                    PlaybackController.this.mHost.log("Player stop skipped, played again");
+                    return;
+                }
+
+                PlaybackController.this.mHost.stopPlayer();
+            }
+        });
+    }
+
+    /**
+     * @param playWhenReady
+     * @param userRequest true if changed by the session, not by the player (eg. on focus loss or noisy audio)
+     */
+    public void onPlayWhenReadyChanged(boolean playWhenReady, boolean userRequest) {
+        if (!playWhenReady || !userRequest) {
+            return;
+        }
+
+        if (this.mStateMachine.is(PlaybackState.STOPPED_FOCUS_TRANSIENT)) {
+            this.mHost.log("Player state changed when ready. Playing - regained focus transient");
+            this.mStateMachine.fire(PlaybackStateMachine.Event.FOCUS_GAIN);
+            this.mHost.notifyRadioStartedFocusTransient();
+        } else if (!this.mStateMachine.is(PlaybackState.PLAYING)) {
+            // The player is only playing if the state is Player.STATE_READY and playWhenReady=true
+            this.mHost.log("Player state changed when ready. Playing");
+            this.mStateMachine.fire(PlaybackStateMachine.Event.START);
+            this.mHost.notifyRadioStarted();
+        }
+    }
+
+    /**
+     * Received on the audio manager thread, handled on the playback thread
+     * @param focus
+     */
+    public void onFocusChange(final Focus focus) {
+        if (
+            this.mHost.getPlayer() == null
+            || (
+                !this.mStateMachine.is(PlaybackState.PLAYING)
+                && !this.mStateMachine.is(PlaybackState.STOPPED_FOCUS_TRANSIENT)
+            )
+        ) {
+            return;
+        }
+
+        this.mHost.post(new Runnable() {
+            public void run() {
+                PlaybackController.this.handleFocusChange(focus);
+            }
+        });
+    }
+
+    private void handleFocusChange(Focus focus) {
+        StreamPlayer player = this.mHost.getPlayer();
+
+        if (player == null) {
+            // released since the focus change was received
+            return;
+        }
+
+        if (focus == Focus.LOSS_TRANSIENT_CAN_DUCK) {
+            this.mHost.log("Player focus changed. LOSS_TRANSIENT_CAN_DUCK");
+
+            // a muted player stays muted until the focus is regained
+            if (!this.mRecordingFocusMuted) {
+                player.setVolume(DUCK_VOLUME);
+            }
+        } else if (focus == Focus.GAIN) {
+            this.mHost.log("Player focus changed. GAIN");
+            player.setVolume(1f);
+
+            if (this.mStateMachine.is(PlaybackState.STOPPED_FOCUS_TRANSIENT) && this.mRecordingFocusMuted) {
+                this.mHost.log(" - was muted transient");
+                this.mRecordingFocusMuted = false;
+                this.mStateMachine.fire(PlaybackStateMachine.Event.FOCUS_GAIN);
+                this.mHost.notifyRadioStartedFocusTransient();
+            } else if (this.mStateMachine.is(PlaybackState.STOPPED_FOCUS_TRANSIENT)) {
+                this.mHost.log(" - was stopped transient");
+                player.prepare();
+                player.setPlayWhenReady(true);
+            }
+        } else if (focus == Focus.LOSS_TRANSIENT) {
+            this.mHost.log("Player focus changed. LOSS_TRANSIENT");
+
+            if (!this.mStateMachine.fire(PlaybackStateMachine.Event.FOCUS_LOSS_TRANSIENT)) {
+                // stopped since the focus change was received
+                return;
+            }
+
+            if (player.getPlaybackState() == StreamPlayer.STATE_IDLE) {
+                // already stopped, the stop won't trigger the state change
+                this.mHost.notifyRadioStoppedFocusTransient();
+            } else if (this.mHost.isRecording()) {
+                // stopping would close the connection the recording is teed from, only mute the playback
+                this.mRecordingFocusMuted = true;
+                player.setVolume(0f);
+                this.mHost.notifyRadioStoppedFocusTransient();
+            } else {
+                this.mHost.stop();
+            }
+        } else if (focus == Focus.LOSS) {
+            this.mHost.log("Player focus changed. LOSS");
+
+            if (this.mStateMachine.fire(PlaybackStateMachine.Event.FOCUS_LOSS)) {
+                this.mHost.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.eltonfaust.multiplayer;
+
+/**
+ * Playback state of a session
+ */
+public enum PlaybackState {
+    IDLE,
+    PLAYING,
+    STOPPED,
+    STOPPED_FOCUS_TRANSIENT,
+    STOPPED_FOCUS_LOSS,
+}
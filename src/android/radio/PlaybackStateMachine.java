@@ -0,0 +1,115 @@
+package com.eltonfaust.multiplayer;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Playback state of a session, changed only by the transitions of the table below.
+ * Events not allowed on the current state are ignored and reported, so a late player or focus event
+ * (eg. a focus loss after the stop) can't move the session to an unexpected state.
+ *
+ * It has no Android dependency, the session translates the player and audio focus callbacks into events.
+ */
+public class PlaybackStateMachine {
+    /**
+     * Events changing the playback state
+     */
+    public enum Event {
+        // the player started playing
+        START,
+        // the playback was stopped keeping or releasing the player
+        STOP,
+        // the player was released and the session went back to the initial state
+        RELEASE,
+        // the audio focus wasn't granted on play
+        FOCUS_DENIED,
+        // the audio focus was lost temporarily
+        FOCUS_LOSS_TRANSIENT,
+        // the audio focus was lost
+        FOCUS_LOSS,
+        // the audio focus was regained after a transient loss
+        FOCUS_GAIN,
+        // a stop forced while stopped by the focus, handled as playing so the player stop is reported
+        FORCE_STOP,
+    }
+
+    /**
+     * Notified of every state change
+     */
+    public interface Listener {
+        void onTransition(PlaybackState from, Event event, PlaybackState to);
+
+        void onIgnored(PlaybackState state, Event event);
+    }
+
+    private static final Map<PlaybackState, Map<Event, PlaybackState>> TRANSITIONS =
+        new EnumMap<PlaybackState, Map<Event, PlaybackState>>(PlaybackState.class);
+
+    static {
+        for (PlaybackState state : PlaybackState.values()) {
+            TRANSITIONS.put(state, new EnumMap<Event, PlaybackState>(Event.class));
+            allow(state, Event.STOP, PlaybackState.STOPPED);
+            allow(state, Event.RELEASE, PlaybackState.IDLE);
+            allow(state, Event.FOCUS_DENIED, PlaybackState.STOPPED_FOCUS_LOSS);
+        }
+
+        allow(PlaybackState.IDLE, Event.START, PlaybackState.PLAYING);
+        allow(PlaybackState.STOPPED, Event.START, PlaybackState.PLAYING);
+        allow(PlaybackState.STOPPED_FOCUS_LOSS, Event.START, PlaybackState.PLAYING);
+
+        allow(PlaybackState.PLAYING, Event.FOCUS_LOSS_TRANSIENT, PlaybackState.STOPPED_FOCUS_TRANSIENT);
+        allow(PlaybackState.STOPPED_FOCUS_TRANSIENT, Event.FOCUS_LOSS_TRANSIENT, PlaybackState.STOPPED_FOCUS_TRANSIENT);
+        allow(PlaybackState.PLAYING, Event.FOCUS_LOSS, PlaybackState.STOPPED_FOCUS_LOSS);
+        allow(PlaybackState.STOPPED_FOCUS_TRANSIENT, Event.FOCUS_LOSS, PlaybackState.STOPPED_FOCUS_LOSS);
+        allow(PlaybackState.STOPPED_FOCUS_TRANSIENT, Event.FOCUS_GAIN, PlaybackState.PLAYING);
+
+        allow(PlaybackState.STOPPED_FOCUS_TRANSIENT, Event.FORCE_STOP, PlaybackState.PLAYING);
+        allow(PlaybackState.STOPPED_FOCUS_LOSS, Event.FORCE_STOP, PlaybackState.PLAYING);
+    }
+
+    private static void allow(PlaybackState from, Event event, PlaybackState to) {
+        TRANSITIONS.get(from).put(event, to);
+    }
+
+    private volatile PlaybackState state = PlaybackState.IDLE;
+    private Listener listener = null;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public PlaybackState getState() {
+        return this.state;
+    }
+
+    public boolean is(PlaybackState state) {
+        return this.state == state;
+    }
+
+    /**
+     * Apply an event to the current state
+     *
+     * @param event
+     * @return false if the event isn't allowed on the current state and was ignored
+     */
+    public synchronized boolean fire(Event event) {
+        PlaybackState from = this.state;
+        PlaybackState to = TRANSITIONS.get(from).get(event);
+
+        if (to == null) {
+            if (this.listener != null) {
+                this.listener.onIgnored(from, event);
+            }
+
+            return false;
+        }
+
+        this.state = to;
+
+        if (this.listener != null && from != to) {
+            this.listener.onTransition(from, event, to);
+        }
+
+        return true;
+    }
+}
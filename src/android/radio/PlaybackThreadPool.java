@@ -0,0 +1,67 @@
+package com.eltonfaust.multiplayer;
+
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded pool of playback threads shared by the sessions,
+ * each session is assigned to the thread with fewer sessions.
+ * The threads run with audio priority, the player commands and the listeners run on their own threads
+ */
+public class PlaybackThreadPool {
+    private final String name;
+    private final int maxThreads;
+    private final List<HandlerThread> threads = new ArrayList<HandlerThread>();
+    private final List<Integer> usage = new ArrayList<Integer>();
+
+    public PlaybackThreadPool(String name, int maxThreads) {
+        this.name = name;
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * Get the looper of the least used thread, a new thread is started while the pool isn't full
+     *
+     * @return Looper
+     */
+    public synchronized Looper acquire() {
+        int index = -1;
+
+        for (int i = 0; i < this.threads.size(); i++) {
+            if (index == -1 || this.usage.get(i) < this.usage.get(index)) {
+                index = i;
+            }
+        }
+
+        if (index == -1 || (this.usage.get(index) > 0 && this.threads.size() < this.maxThreads)) {
+            HandlerThread thread = new HandlerThread(this.name + "-" + this.threads.size(), Process.THREAD_PRIORITY_AUDIO);
+            thread.start();
+
+            this.threads.add(thread);
+            this.usage.add(0);
+            index = this.threads.size() - 1;
+        }
+
+        this.usage.set(index, this.usage.get(index) + 1);
+
+        return this.threads.get(index).getLooper();
+    }
+
+    /**
+     * Release a looper acquired from the pool, the thread is kept to be reused
+     *
+     * @param looper
+     */
+    public synchronized void release(Looper looper) {
+        for (int i = 0; i < this.threads.size(); i++) {
+            if (this.threads.get(i).getLooper() == looper) {
+                this.usage.set(i, Math.max(this.usage.get(i) - 1, 0));
+                return;
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.eltonfaust.multiplayer;
 
+import org.json.JSONObject;
+
 public interface RadioListener {
     void onRadioLoading();
     void onRadioConnected();
@@ -9,5 +11,13 @@ public interface RadioListener {
     void onRadioStoppedFocusLoss();
     void onRadioStoppedFocusTransient();
     void onRadioStartedFocusTransient();
-    void onError();
+    void onRadioStalled();
+    void onRadioRecovered();
+    void onRadioReconnecting(JSONObject reconnect);
+    void onRadioStats(JSONObject stats);
+    void onRadioMetadata(JSONObject metadata);
+    void onRadioRecording(JSONObject recording);
+    void onRadioBitrateChanged(JSONObject change);
+    void onRadioAlarm(JSONObject alarm);
+    void onError(JSONObject error);
 }
@@ -9,8 +9,18 @@ import android.os.IBinder;
 import android.util.Log;
 import android.app.Activity;
 
+import org.json.JSONObject;
+
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.os.HandlerThread;
 import android.os.Handler;
@@ -21,15 +31,24 @@ public class RadioManager implements IRadioManager {
     private static HandlerThread handlerThread = null;
     private static Handler requestHandler = null;
 
-    /**
-     * Streaming url to listen
-     */
-    private static int streamType = AudioManager.STREAM_MUSIC;
+    private static ExecutorService listenerExecutor = null;
+
+    // Id of the session used by the single player api
+    public static final int DEFAULT_SESSION_ID = 0;
+
+    // Max sessions playing at the same time, including the default one
+    public static final int MAX_SESSIONS = 4;
+
+    // Max threads shared by the session players
+    private static final int MAX_PLAYBACK_THREADS = 2;
+
+    // Total memory (in bytes) the session players can use for buffering, split evenly between the sessions
+    private static final int BUFFER_MEMORY_BUDGET_BYTES = 32 * 1024 * 1024;
 
     /**
-     * Streaming url to listen
+     * Threads the session players run on
      */
-    private static String streamURL = null;
+    private static final PlaybackThreadPool playbackThreadPool = new PlaybackThreadPool("PlayerPlayback", MAX_PLAYBACK_THREADS);
 
     /**
      * Auto kill service music control notification
@@ -62,9 +81,19 @@ public class RadioManager implements IRadioManager {
     private List<RadioListener> mRadioListenerQueue;
 
     /**
-     * Service connected/Disconnected lock
+     * Service connection state, published on the session snapshots
+     */
+    private final ConnectionStateMachine mConnection = new ConnectionStateMachine();
+
+    /**
+     * Active sessions by id
      */
-    private boolean isServiceConnected;
+    private final Map<Integer, RadioSession> mSessions = new LinkedHashMap<Integer, RadioSession>();
+
+    /**
+     * Id of the next created session
+     */
+    private int mNextSessionId = DEFAULT_SESSION_ID + 1;
 
     /**
      * Private constructor because of Singleton pattern
@@ -75,7 +104,19 @@ public class RadioManager implements IRadioManager {
         this.mAppContext = mContext.getApplicationContext();
 
         this.mRadioListenerQueue = new ArrayList<RadioListener>();
-        this.isServiceConnected = false;
+
+        this.mConnection.setListener(new ConnectionStateMachine.Listener() {
+            @Override
+            public void onTransition(ConnectionState from, ConnectionStateMachine.Event event, ConnectionState to) {
+                log("Connection " + from + " -> " + to + " (" + event + ")");
+
+                for (RadioSession session : RadioManager.this.getSessions()) {
+                    session.setConnectionState(to);
+                }
+            }
+        });
+
+        this.mSessions.put(DEFAULT_SESSION_ID, this.buildSession(DEFAULT_SESSION_ID));
     }
 
     /**
@@ -86,6 +127,9 @@ public class RadioManager implements IRadioManager {
     public static RadioManager with(Context mContext) {
         if (instance == null) {
             instance = new RadioManager(mContext);
+        } else if (mContext instanceof Activity) {
+            // restored by a scheduled start without the app, the activity controls the volume keys from now on
+            instance.mContext = mContext;
         }
 
         return instance;
@@ -104,6 +148,14 @@ public class RadioManager implements IRadioManager {
         return instance;
     }
 
+    /**
+     * Manager instance, without creating it
+     * @return null if not initialized
+     */
+    public static RadioManager getInstance() {
+        return instance;
+    }
+
     /**
      * get current service instance
      * @return RadioPlayerService
@@ -114,12 +166,79 @@ public class RadioManager implements IRadioManager {
 
     @Override
     public void setStreamURL(String streamURL) {
-        this.streamURL = streamURL;
+        this.getDefaultSession().setStreamURL(streamURL);
+    }
+
+    @Override
+    public void setStreamURLs(List<String> streamURLs) {
+        this.getDefaultSession().setStreamURLs(streamURLs);
     }
 
     @Override
     public void setAutoKillNotification(boolean autoKillNotification) {
         this.autoKillNotification = autoKillNotification;
+
+        if (this.isConnected()) {
+            this.mService.setAutoKillNotification(autoKillNotification);
+        }
+    }
+
+    @Override
+    public void setStallTimeout(int stallTimeout) {
+        this.getDefaultSession().setStallTimeout(stallTimeout);
+    }
+
+    @Override
+    public void setBufferProfile(String bufferProfile) {
+        this.getDefaultSession().setBufferProfile(BufferProfile.fromName(bufferProfile));
+    }
+
+    @Override
+    public void setRetryPolicy(int maxAttempts, int baseDelayMs, int maxDelayMs) {
+        this.getDefaultSession().setRetryPolicy(new DefaultRetryPolicy(maxAttempts, baseDelayMs, maxDelayMs));
+    }
+
+    /**
+     * Configure the on-disk media cache, shared by all the sessions
+     * @param enabled
+     * @param maxBytes max size, 0 to use the default
+     * @param ignoredParams query parameters ignored on the cache key, null to use the default
+     */
+    @Override
+    public void setCache(boolean enabled, long maxBytes, List<String> ignoredParams) {
+        if (enabled || StreamCache.getInstance() != null) {
+            StreamCache.with(this.mAppContext).configure(enabled, maxBytes, ignoredParams);
+        }
+    }
+
+    @Override
+    public void setPreWarm(boolean preWarm, int preWarmTimeout) {
+        this.getDefaultSession().setPreWarm(preWarm, preWarmTimeout);
+    }
+
+    @Override
+    public void setSoftStop(boolean softStop, int softStopTimeout) {
+        this.getDefaultSession().setSoftStop(softStop, softStopTimeout);
+    }
+
+    @Override
+    public void setTimeShift(boolean timeShift, int timeShiftDuration) {
+        this.getDefaultSession().setTimeShift(timeShift, timeShiftDuration);
+    }
+
+    @Override
+    public void setMounts(List<AdaptiveMountSelector.Mount> mounts) {
+        this.getDefaultSession().setMounts(mounts);
+    }
+
+    @Override
+    public void setStatsInterval(int statsInterval) {
+        this.getDefaultSession().setStatsInterval(statsInterval);
+    }
+
+    @Override
+    public void setMetadataInterval(int metadataInterval) {
+        this.getDefaultSession().setMetadataInterval(metadataInterval);
     }
 
     @Override
@@ -129,13 +248,28 @@ public class RadioManager implements IRadioManager {
 
     @Override
     public void startRadio(int streamType) {
-        if (streamType != -1) {
-            this.streamType = streamType;
+        this.startRadio(DEFAULT_SESSION_ID, streamType);
+    }
+
+    /**
+     * Start the streaming of a session
+     * @param sessionId
+     * @param streamType stream type, -1 to keep the current
+     */
+    @Override
+    public void startRadio(int sessionId, int streamType) {
+        RadioSession session = this.getSession(sessionId);
+
+        if (streamType == -1) {
+            streamType = session.getStreamType();
         }
 
-        ((Activity) this.mContext).setVolumeControlStream(this.streamType);
+        // only the session holding the audio focus controls the device volume keys
+        if (session.hasAudioFocus() && this.mContext instanceof Activity) {
+            ((Activity) this.mContext).setVolumeControlStream(streamType);
+        }
 
-        this.mService.play(this.streamType);
+        session.play(streamType);
     }
 
     /**
@@ -143,7 +277,168 @@ public class RadioManager implements IRadioManager {
      */
     @Override
     public void stopRadio() {
-        this.mService.stop(true);
+        this.stopRadio(DEFAULT_SESSION_ID);
+    }
+
+    /**
+     * Stop the streaming of a session
+     * @param sessionId
+     */
+    @Override
+    public void stopRadio(int sessionId) {
+        this.getSession(sessionId).stop(true);
+    }
+
+    /**
+     * Set the ordered station list of a session
+     * @param sessionId
+     * @param stations
+     * @param preloadNeighbors neighbors preloaded on each side of the current station
+     * @param preloadBufferMs duration buffered by the preloaded players, 0 to use the default
+     */
+    @Override
+    public void setStations(int sessionId, List<String> stations, int preloadNeighbors, int preloadBufferMs) {
+        this.getSession(sessionId).setStations(stations, preloadNeighbors, preloadBufferMs);
+    }
+
+    /**
+     * Schedule the start of a session, the app is woken at the warm-up time to buffer the stream muted,
+     * replaces the previous schedule of the session.
+     * The schedule is persisted, if the app process is killed the session is rebuilt with its stream urls at the warm-up
+     * @param sessionId
+     * @param schedule
+     */
+    @Override
+    public void scheduleAlarm(int sessionId, AlarmSchedule schedule) {
+        RadioSession session = this.getSession(sessionId);
+
+        AlarmReceiver.cancel(this.mAppContext, sessionId);
+        session.setAlarm(schedule);
+
+        long warmupAt = schedule.getWarmupAt();
+
+        if (warmupAt <= System.currentTimeMillis()) {
+            this.startAlarmWarmup(sessionId);
+        } else {
+            AlarmReceiver.schedule(this.mAppContext, sessionId, warmupAt);
+        }
+    }
+
+    /**
+     * Cancel the scheduled start of a session
+     * @param sessionId
+     */
+    @Override
+    public void cancelAlarm(int sessionId) {
+        RadioSession session = this.getSession(sessionId);
+
+        AlarmReceiver.cancel(this.mAppContext, sessionId);
+        session.cancelAlarm();
+    }
+
+    /**
+     * Restore a persisted schedule at its warm-up, the session is rebuilt with the persisted stream urls
+     * if the app process was killed (the other options of the session keep their defaults)
+     * @param entry
+     */
+    public void restoreAlarm(AlarmStore.Entry entry) {
+        RadioSession session;
+        boolean created = false;
+
+        synchronized (this.mSessions) {
+            session = this.mSessions.get(entry.sessionId);
+
+            if (session == null) {
+                session = this.buildSession(entry.sessionId);
+                this.mSessions.put(session.getId(), session);
+                this.mNextSessionId = Math.max(this.mNextSessionId, entry.sessionId + 1);
+                created = true;
+            }
+        }
+
+        if (created) {
+            session.setConnectionState(this.mConnection.getState());
+
+            if (this.isConnected()) {
+                this.mService.attachSession(session);
+            }
+        }
+
+        if (session.getStreamURLs().isEmpty()) {
+            session.setStreamURLs(entry.urls);
+        }
+
+        session.restoreAlarm(entry.schedule);
+    }
+
+    /**
+     * Start buffering the scheduled session, connecting the service to keep the app awake until the trigger time
+     * @param sessionId
+     */
+    public void startAlarmWarmup(int sessionId) {
+        RadioSession session = this.getSession(sessionId);
+
+        this.connect();
+        session.startAlarmWarmup();
+    }
+
+    /**
+     * Play a scheduled session at its trigger time on the alarm stream, queued on the command thread as a play command,
+     * so it runs in order with the pending commands and the listeners and state see a regular play
+     * @param sessionId
+     */
+    public void startAlarm(final int sessionId) {
+        getRequestHandler().post(new Runnable() {
+            public void run() {
+                RadioSession session;
+
+                try {
+                    session = RadioManager.this.getSession(sessionId);
+                } catch (IllegalArgumentException e) {
+                    log("Session #" + sessionId + " destroyed, scheduled start dropped");
+                    return;
+                }
+
+                session.beginTrace("alarm");
+                session.markTrace("command");
+
+                RadioManager.this.connect();
+                RadioManager.this.startRadio(sessionId, AudioManager.STREAM_ALARM);
+            }
+        });
+    }
+
+    /**
+     * Switch a session to a station of its station list and play it
+     * @param sessionId
+     * @param index station index, or offset from the current station if relative
+     * @param relative
+     */
+    @Override
+    public void switchStation(int sessionId, int index, boolean relative) {
+        RadioSession session = this.getSession(sessionId);
+
+        if (!session.hasStations()) {
+            throw new IllegalStateException("NO_STATIONS");
+        }
+
+        if (session.hasAudioFocus()) {
+            ((Activity) this.mContext).setVolumeControlStream(session.getStreamType());
+        }
+
+        session.switchStation(index, relative);
+    }
+
+    /**
+     * Seek the time-shifted playback of a session
+     * @param sessionId
+     * @param behindLiveMs time behind the live edge, 0 to go back to live
+     */
+    @Override
+    public void seekTimeShift(int sessionId, long behindLiveMs) {
+        if (!this.getSession(sessionId).seekTimeShift(behindLiveMs)) {
+            throw new IllegalStateException("TIME_SHIFT_INACTIVE");
+        }
     }
 
     /**
@@ -152,8 +447,179 @@ public class RadioManager implements IRadioManager {
      */
     @Override
     public boolean isPlaying() {
-        log("IsPlaying : " + this.mService.isPlaying());
-        return this.mService.isPlaying();
+        boolean isPlaying = this.getDefaultSession().isPlaying();
+        log("IsPlaying : " + isPlaying);
+        return isPlaying;
+    }
+
+    /**
+     * Playback metrics of the current session
+     * @return
+     */
+    @Override
+    public JSONObject getStats() {
+        return this.getStats(DEFAULT_SESSION_ID);
+    }
+
+    /**
+     * Playback metrics of a session
+     * @param sessionId
+     * @return
+     */
+    @Override
+    public JSONObject getStats(int sessionId) {
+        return this.getSession(sessionId).getStats();
+    }
+
+    /**
+     * Record the playing stream of a session to a file
+     * @param sessionId
+     * @param path
+     * @throws IOException
+     */
+    @Override
+    public void startRecording(int sessionId, String path) throws IOException {
+        this.getSession(sessionId).startRecording(path);
+    }
+
+    /**
+     * Stop the recording of a session
+     * @param sessionId
+     * @return final recording progress
+     */
+    @Override
+    public JSONObject stopRecording(int sessionId) {
+        return this.getSession(sessionId).stopRecording();
+    }
+
+    /**
+     * Time-shift position of a session, answered from its playback thread
+     * @param sessionId
+     * @param callback
+     */
+    @Override
+    public void getTimeShiftPosition(int sessionId, RadioSession.TimeShiftPositionCallback callback) {
+        this.getSession(sessionId).getTimeShiftPosition(callback);
+    }
+
+    /**
+     * Remove the cached data of the url, or all the not pinned data if the url is null
+     * @param url
+     */
+    @Override
+    public void clearCache(String url) {
+        StreamCache.with(this.mAppContext).clear(url);
+    }
+
+    /**
+     * Pin or unpin the url on the cache, the data of pinned urls is never evicted
+     * @param url
+     * @param pinned
+     */
+    @Override
+    public void pinCache(String url, boolean pinned) {
+        StreamCache.with(this.mAppContext).pin(url, pinned);
+    }
+
+    /**
+     * Session used by the single player api
+     * @return
+     */
+    @Override
+    public RadioSession getDefaultSession() {
+        return this.getSession(DEFAULT_SESSION_ID);
+    }
+
+    /**
+     * Create a new independent session, with its own player, listeners and stats
+     * @return
+     */
+    @Override
+    public RadioSession createSession() {
+        RadioSession session;
+
+        synchronized (this.mSessions) {
+            if (this.mSessions.size() >= MAX_SESSIONS) {
+                throw new IllegalStateException("MAX_SESSIONS");
+            }
+
+            session = this.buildSession(this.mNextSessionId++);
+            this.mSessions.put(session.getId(), session);
+        }
+
+        session.setConnectionState(this.mConnection.getState());
+
+        if (this.isConnected()) {
+            this.mService.attachSession(session);
+        }
+
+        return session;
+    }
+
+    /**
+     * Get a session by id
+     * @param sessionId
+     * @return
+     */
+    @Override
+    public RadioSession getSession(int sessionId) {
+        RadioSession session;
+
+        synchronized (this.mSessions) {
+            session = this.mSessions.get(sessionId);
+        }
+
+        if (session == null) {
+            throw new IllegalArgumentException("INVALID_SESSION");
+        }
+
+        return session;
+    }
+
+    /**
+     * Release the player of a session and remove it, the default session can't be destroyed
+     * @param sessionId
+     */
+    @Override
+    public void destroySession(int sessionId) {
+        if (sessionId == DEFAULT_SESSION_ID) {
+            throw new IllegalArgumentException("INVALID_SESSION");
+        }
+
+        RadioSession session;
+
+        synchronized (this.mSessions) {
+            session = this.mSessions.remove(sessionId);
+        }
+
+        if (session == null) {
+            throw new IllegalArgumentException("INVALID_SESSION");
+        }
+
+        AlarmReceiver.cancel(this.mAppContext, sessionId);
+        session.cancelAlarm();
+
+        if (this.isConnected()) {
+            this.mService.detachSession(session);
+        }
+
+        session.release();
+        playbackThreadPool.release(session.getLooper());
+    }
+
+    private RadioSession buildSession(int sessionId) {
+        return new RadioSession(
+            sessionId,
+            this.mAppContext,
+            playbackThreadPool.acquire(),
+            BUFFER_MEMORY_BUDGET_BYTES / MAX_SESSIONS
+        );
+    }
+
+    private List<RadioSession> getSessions() {
+        synchronized (this.mSessions) {
+            return new ArrayList<RadioSession>(this.mSessions.values());
+        }
     }
 
     /**
@@ -163,10 +629,7 @@ public class RadioManager implements IRadioManager {
     @Override
     public void registerListener(RadioListener mRadioListener) {
         this.mRadioListenerQueue.add(mRadioListener);
-
-        if (this.isServiceConnected) {
-            this.mService.registerListener(mRadioListener);
-        }
+        this.getDefaultSession().registerListener(mRadioListener);
     }
 
     /**
@@ -177,10 +640,7 @@ public class RadioManager implements IRadioManager {
     public void setListener(RadioListener mRadioListener) {
         this.mRadioListenerQueue.clear();
         this.mRadioListenerQueue.add(mRadioListener);
-
-        if (this.isServiceConnected) {
-            this.mService.setListener(mRadioListener);
-        }
+        this.getDefaultSession().setListener(mRadioListener);
     }
 
     /**
@@ -191,33 +651,79 @@ public class RadioManager implements IRadioManager {
     public void unregisterListener(RadioListener mRadioListener) {
         log("Register unregistered.");
         this.mRadioListenerQueue.remove(mRadioListener);
-
-        if (this.isServiceConnected) {
-            this.mService.unregisterListener(mRadioListener);
-        }
+        this.getDefaultSession().unregisterListener(mRadioListener);
     }
 
     /**
-     * Connect radio player service
+     * Connect radio player service, ignored if already connected or connecting
      */
     @Override
     public void connect() {
         log("Requested to connect service.");
+
+        if (!this.mConnection.fire(ConnectionStateMachine.Event.CONNECT)) {
+            return;
+        }
+
         Intent intent = new Intent(this.mAppContext, RadioPlayerService.class);
-        this.mAppContext.bindService(intent, mServiceConnection, Context.BIND_AUTO_CREATE);
+
+        try {
+            this.mAppContext.bindService(intent, mServiceConnection, Context.BIND_AUTO_CREATE);
+        } catch (RuntimeException e) {
+            this.mConnection.fire(ConnectionStateMachine.Event.DISCONNECT);
+            throw e;
+        }
     }
 
     /**
-     * Disconnect radio player service
+     * Disconnect radio player service, also cancelling a pending connection
      */
     @Override
     public void disconnect() {
         log("Requested to disconnect service.");
+        ConnectionState from = this.mConnection.getState();
+
+        if (from == ConnectionState.DISCONNECTED) {
+            return;
+        }
+
+        this.mConnection.fire(ConnectionStateMachine.Event.DISCONNECT);
+        this.mAppContext.unbindService(mServiceConnection);
+        // started by a scheduled start without the app, no effect otherwise
+        this.mAppContext.stopService(new Intent(this.mAppContext, RadioPlayerService.class));
+        this.mService = null;
+
+        if (from == ConnectionState.CONNECTED) {
+            this.notifySessionsConnection(false);
+        }
+    }
 
-        if (this.isServiceConnected) {
-            this.mAppContext.unbindService(mServiceConnection);
-            this.mService = null;
-            this.isServiceConnected = false;
+    @Override
+    public ConnectionState getConnectionState() {
+        return this.mConnection.getState();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.mConnection.is(ConnectionState.CONNECTED);
+    }
+
+    /**
+     * Notify the listeners of the created sessions of the service connection,
+     * the default session listeners are the manager listeners
+     * @param connected
+     */
+    private void notifySessionsConnection(boolean connected) {
+        for (RadioSession session : this.getSessions()) {
+            if (session.getId() == DEFAULT_SESSION_ID) {
+                continue;
+            }
+
+            if (connected) {
+                session.notifyRadioConnected();
+            } else {
+                session.notifyRadioDisconnected();
+            }
         }
     }
 
@@ -231,15 +737,24 @@ public class RadioManager implements IRadioManager {
 
             getRequestHandler().post(new Runnable() {
                 public void run() {
+                    // disconnected before the bind completed
+                    if (!RadioManager.this.mConnection.fire(ConnectionStateMachine.Event.BOUND)) {
+                        return;
+                    }
+
                     RadioManager.this.mService = ((RadioPlayerService.LocalBinder) binder).getService();
-                    RadioManager.this.mService.setStreamURL(RadioManager.this.streamURL);
                     RadioManager.this.mService.setAutoKillNotification(RadioManager.this.autoKillNotification);
-                    RadioManager.this.isServiceConnected = true;
+
+                    for (RadioSession session : RadioManager.this.getSessions()) {
+                        RadioManager.this.mService.attachSession(session);
+                        session.preWarm();
+                    }
 
                     for (RadioListener mRadioListener : RadioManager.this.mRadioListenerQueue) {
-                        RadioManager.this.mService.registerListener(mRadioListener);
                         mRadioListener.onRadioConnected();
                     }
+
+                    RadioManager.this.notifySessionsConnection(true);
                 }
             });
         }
@@ -248,23 +763,28 @@ public class RadioManager implements IRadioManager {
         public void onServiceDisconnected(ComponentName arg0) {
             log("Service Disconnected.");
 
-            if (RadioManager.this.isServiceConnected) {
-                for (RadioListener mRadioListener : RadioManager.this.mRadioListenerQueue) {
-                    mRadioListener.onRadioConnected();
+            getRequestHandler().post(new Runnable() {
+                public void run() {
+                    // the bind is kept, the service is connected again when restarted
+                    if (RadioManager.this.mConnection.fire(ConnectionStateMachine.Event.LOST)) {
+                        RadioManager.this.mService = null;
+
+                        for (RadioListener mRadioListener : RadioManager.this.mRadioListenerQueue) {
+                            mRadioListener.onRadioDisconnected();
+                        }
 
-                    try {
-                        RadioManager.this.mService.registerListener(mRadioListener);
-                    } catch (Exception e) {
-                        log("Can't complete service Disconnected.");
+                        RadioManager.this.notifySessionsConnection(false);
                     }
                 }
-            }
-
-            RadioManager.this.mService = null;
-            RadioManager.this.isServiceConnected = false;
+            });
         }
     };
 
+    /**
+     * Handler of the command thread, the player commands are queued on it in the order they are received
+     *
+     * @return Handler
+     */
     public static Handler getRequestHandler() {
         if (handlerThread == null) {
             handlerThread = new HandlerThread("PlayerOperation");
@@ -275,6 +795,30 @@ public class RadioManager implements IRadioManager {
         return requestHandler;
     }
 
+    /**
+     * Executor the session listeners are called on, apart from the command and playback threads,
+     * each listener drains its own queue so a slow listener holds only its thread
+     *
+     * @return Executor
+     */
+    public static synchronized Executor getListenerExecutor() {
+        if (listenerExecutor == null) {
+            listenerExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "PlayerEvents-" + this.count.getAndIncrement());
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+        }
+
+        return listenerExecutor;
+    }
+
     /**
      * Logger
      * @param log
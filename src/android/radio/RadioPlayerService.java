@@ -3,17 +3,12 @@ package com.eltonfaust.multiplayer;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ServiceInfo;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
-import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
 import android.service.notification.StatusBarNotification;
@@ -21,31 +16,12 @@ import android.util.Log;
 
 import androidx.annotation.RequiresApi;
 
-import android.media.AudioManager;
-import android.media.AudioFocusRequest;
-// import android.media.AudioAttributes;
-import androidx.media3.common.AudioAttributes;
-import androidx.media3.common.C;
-import androidx.media3.common.MediaItem;
-import androidx.media3.common.PlaybackException;
-import androidx.media3.common.PlaybackParameters;
-import androidx.media3.datasource.DataSource;
-import androidx.media3.datasource.DefaultDataSource;
-import androidx.media3.datasource.DefaultHttpDataSource;
-import androidx.media3.extractor.ExtractorsFactory;
-import androidx.media3.extractor.DefaultExtractorsFactory;
-import androidx.media3.exoplayer.ExoPlayer;
-import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
-
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 
 public class RadioPlayerService extends Service {
     private static final String LOG_TAG = "MultiPlayer";
 
-    private final int LIVE_TARGET_OFFSET_MS = 5000;
-    private final float LIVE_MAX_PLAYBACK_SPEED = 1.02f;
-
     // Music Control plugin notification id
     public static final int MUSIC_CONTROL_NOTIFICATION = 7824;
 
@@ -62,68 +38,30 @@ public class RadioPlayerService extends Service {
     private static final String NOTIFICATION_TEXT = "Playing in background";
 
     /**
-     * State enum for Radio Player state (IDLE, PLAYING, STOPPED, INTERRUPTED)
+     * Watches the network changes, so the sessions can reconnect before their buffer drains
      */
-    public enum State {
-        IDLE,
-        PLAYING,
-        STOPPED,
-        STOPPED_FOCUS_TRANSIENT,
-        STOPPED_FOCUS_LOSS,
-    }
-
-    List<RadioListener> mListenerList;
+    private ConnectivitySource mConnectivitySource = null;
 
     /**
-     * Radio State
+     * Sessions playing on this service
      */
-    private State mRadioState;
-
-    /**
-     * Current radio URL
-     */
-    private String mRadioUrl;
+    private final Set<RadioSession> mSessions = new HashSet<RadioSession>();
 
     /**
      * Auto kill music controls notification on destroy
      */
     private boolean mRadioKillNotification = false;
 
-    /**
-     * Current radio Stream Type
-     */
-    private int mRadioStreamType = AudioManager.STREAM_MUSIC;
-
-    /**
-     * ExoPlayer
-     */
-    private ExoPlayer mRadioPlayer = null;
-
     /**
      * Binder
      */
     public final IBinder mLocalBinder = new LocalBinder();
 
-    /**
-     * AudioManager
-     */
-    private AudioManager mAudioManager;
-
     /**
      * Partial wake lock to prevent the app from going to sleep when locked
      */
     private PowerManager.WakeLock wakeLock;
 
-    /**
-     * AudioFocusRequest
-     */
-    private AudioFocusRequest mAudioFocusRequest;
-
-    /**
-     * AudioAttributes
-     */
-    private android.media.AudioAttributes mAudioAttributes;
-
     private Notification serviceNotification = null;
     private int startWithNotificationID = 0;
 
@@ -157,12 +95,6 @@ public class RadioPlayerService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
-        this.mListenerList = new ArrayList<RadioListener>();
-
-        this.mAudioManager = (AudioManager) this.getSystemService(Context.AUDIO_SERVICE);
-
-        this.mRadioState = State.IDLE;
-
         this.serviceNotification = null;
         this.startWithNotificationID = 0;
 
@@ -207,6 +139,8 @@ public class RadioPlayerService extends Service {
         this.wakeLock = powerMgr.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "BackgroundMode");
 
         this.wakeLock.acquire();
+
+        this.setConnectivitySource(new SystemConnectivitySource(this));
     }
 
     @Override
@@ -226,11 +160,20 @@ public class RadioPlayerService extends Service {
             notificationManager.cancel(this.startWithNotificationID);
         }
 
-        RadioManager.getRequestHandler().post(new Runnable() {
-            public void run() {
-                RadioPlayerService.this.releasePlayer();
+        if (this.mConnectivitySource != null) {
+            this.mConnectivitySource.stop();
+            this.mConnectivitySource = null;
+        }
+
+        synchronized (this.mSessions) {
+            for (RadioSession session : this.mSessions) {
+                session.release();
             }
-        });
+
+            this.mSessions.clear();
+        }
+
+        StreamNetwork.get().evictConnections();
 
         if (this.wakeLock != null) {
             this.wakeLock.release();
@@ -240,365 +183,75 @@ public class RadioPlayerService extends Service {
         this.log("destroy");
     }
 
-    public void setStreamURL(String mRadioUrl) {
-        this.mRadioUrl = mRadioUrl;
-    }
-
     public void setAutoKillNotification(boolean mRadioKillNotification) {
         this.mRadioKillNotification = mRadioKillNotification;
     }
 
     /**
-     * Play url if different from previous streaming url.
+     * Attach a session to the service, its player is released when the service is destroyed
      *
-     * @param streamType
+     * @param session
      */
-    public void play(int streamType) {
-        notifyRadioLoading();
-
-        boolean changeAudioStreamType = streamType != -1 && this.mRadioStreamType != streamType;
-
-        if (streamType != -1) {
-            this.mRadioStreamType = streamType;
-        }
-
-        int result = AudioManager.AUDIOFOCUS_REQUEST_FAILED;
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            result = this.requestAudioFocus(changeAudioStreamType);
-        } else {
-            result = this.mAudioManager.requestAudioFocus(this.audioFocusChangeListener, this.mRadioStreamType, AudioManager.AUDIOFOCUS_GAIN);
-        }
-
-        if (result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
-            ExoPlayer player = this.getPlayer(changeAudioStreamType);
-            player.setVolume(1f);
-            player.setPlayWhenReady(true);
-        } else {
-            this.log("Can't play streaming. Audio focus not granted");
-            this.mRadioState = State.STOPPED_FOCUS_LOSS;
-            this.releasePlayer();
-            this.notifyRadioStoppedFocusLoss();
-        }
-    }
-
-    public void play() {
-        this.play(-1);
-    }
-
-    public void stop(boolean forceStop) {
-        if (this.mRadioPlayer == null) {
-            this.notifyRadioStopped();
-            return;
-        }
-
-        if (
-            this.mRadioState == State.PLAYING
-            || this.mRadioState == State.STOPPED_FOCUS_TRANSIENT
-            || this.mRadioState == State.STOPPED_FOCUS_LOSS
-        ) {
-            // if force to stop, try to stop despite not being as playing
-            if (forceStop && this.mRadioState != State.PLAYING) {
-                // if already on iddle, stop wont trigger the change state, only release the player and notify
-                if (this.mRadioPlayer.getPlaybackState() == ExoPlayer.STATE_IDLE) {
-                    this.log("Player state changed. Stopped - already on focus loss");
-                    this.releasePlayer();
-                    this.notifyRadioStopped();
-                    return;
-                }
-
-                this.mRadioState = State.PLAYING;
-            }
-
-            this.mRadioPlayer.stop();
-        }
-    }
-
-    public void stop() {
-        this.stop(false);
-    }
-
-    public boolean isPlaying() {
-        if (State.PLAYING == this.mRadioState) {
-            return true;
-        }
-
-        return false;
-    }
-
-    public void registerListener(RadioListener mListener) {
-        this.mListenerList.add(mListener);
-    }
-
-    public void unregisterListener(RadioListener mListener) {
-        this.mListenerList.remove(mListener);
-    }
-
-    public void setListener(RadioListener mListener) {
-        this.mListenerList.clear();
-        this.mListenerList.add(mListener);
-    }
-
-    private void notifyRadioLoading() {
-        for (RadioListener mRadioListener : this.mListenerList) {
-            mRadioListener.onRadioLoading();
-        }
-    }
-
-    private void notifyRadioStarted() {
-        for (RadioListener mRadioListener : this.mListenerList) {
-            mRadioListener.onRadioStarted();
+    public void attachSession(RadioSession session) {
+        if (this.mConnectivitySource != null) {
+            session.setNetworkAvailable(this.mConnectivitySource.isConnected());
         }
-    }
-
-    private void notifyRadioStopped() {
-        for (RadioListener mRadioListener : this.mListenerList) {
-            mRadioListener.onRadioStopped();
-        }
-    }
-
-    private void notifyRadioStoppedFocusTransient() {
-        for (RadioListener mRadioListener : mListenerList) {
-            mRadioListener.onRadioStoppedFocusTransient();
-        }
-    }
 
-    private void notifyRadioStartedFocusTransient() {
-        for (RadioListener mRadioListener : mListenerList) {
-            mRadioListener.onRadioStartedFocusTransient();
+        synchronized (this.mSessions) {
+            this.mSessions.add(session);
         }
     }
 
-    private void notifyRadioStoppedFocusLoss() {
-        for (RadioListener mRadioListener : mListenerList) {
-            mRadioListener.onRadioStoppedFocusLoss();
-        }
-    }
-
-    private void notifyErrorOccured(){
-        for (RadioListener mRadioListener : mListenerList) {
-            mRadioListener.onError();
+    public void detachSession(RadioSession session) {
+        synchronized (this.mSessions) {
+            this.mSessions.remove(session);
         }
     }
 
     /**
-     * Return ExoPlayer instance. If it is not initialized, creates and returns.
+     * Replace the connectivity source of the service, eg. by a fake one simulating the network changes on the tests
      *
-     * @return ExoPlayer
+     * @param connectivitySource
      */
-    private ExoPlayer getPlayer(boolean changeAudioStreamType) {
-        if (this.mRadioPlayer == null) {
-            int audioUsageType = this.mRadioStreamType == AudioManager.STREAM_ALARM
-                ? C.USAGE_ALARM
-                : C.USAGE_MEDIA;
-
-            DataSource.Factory dataSourceFactory = new DefaultDataSource.Factory(
-                this.getApplicationContext(),
-                new DefaultHttpDataSource.Factory()
-                    .setUserAgent("CordovaMultiPlayer")
-            );
-
-            ExtractorsFactory extractorsFactory = new DefaultExtractorsFactory();
-
-            this.mRadioPlayer = new ExoPlayer.Builder(this.getApplicationContext())
-                .setLooper(RadioManager.getRequestHandler().getLooper())
-                .setMediaSourceFactory(
-                    new DefaultMediaSourceFactory(dataSourceFactory, extractorsFactory)
-                        .setLiveTargetOffsetMs(LIVE_TARGET_OFFSET_MS)
-                )
-                .setAudioAttributes(
-                    new AudioAttributes.Builder()
-                        .setUsage(audioUsageType)
-                        .setContentType(C.AUDIO_CONTENT_TYPE_MUSIC)
-                        .build(),
-                    false
-                )
-                .build();
-
-            // Per MediaItem settings.
-            MediaItem mediaItem = new MediaItem.Builder()
-                .setUri(Uri.parse(this.mRadioUrl))
-                .setLiveConfiguration(
-                    new MediaItem.LiveConfiguration.Builder()
-                        .setMaxPlaybackSpeed(LIVE_MAX_PLAYBACK_SPEED)
-                        .build()
-                )
-                .build();
-
-            this.mRadioPlayer.setMediaItem(mediaItem);
-            this.mRadioPlayer.addListener(this.playerEventListener);
-            this.mRadioPlayer.prepare();
-        } else if (changeAudioStreamType) {
-            int audioUsageType = this.mRadioStreamType == AudioManager.STREAM_ALARM
-                ? C.USAGE_ALARM
-                : C.USAGE_MEDIA;
-
-            this.mRadioPlayer.setAudioAttributes(
-                new AudioAttributes.Builder()
-                    .setUsage(audioUsageType)
-                    .setContentType(C.AUDIO_CONTENT_TYPE_MUSIC)
-                    .build(),
-                false
-            );
+    void setConnectivitySource(ConnectivitySource connectivitySource) {
+        if (this.mConnectivitySource != null) {
+            this.mConnectivitySource.stop();
         }
 
-        return this.mRadioPlayer;
-    }
-
-    private ExoPlayer getPlayer() {
-        return this.getPlayer(false);
-    }
-
-    private void releasePlayer() {
-        if (this.mRadioPlayer != null) {
-            this.mRadioState = State.STOPPED;
-            this.mRadioPlayer.release();
-            this.mRadioPlayer = null;
-        }
+        this.mConnectivitySource = connectivitySource;
+        this.mConnectivitySource.start(this.connectivityListener);
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            this.abandonAudioFocus();
-        } else {
-            this.mAudioManager.abandonAudioFocus(this.audioFocusChangeListener);
+        synchronized (this.mSessions) {
+            for (RadioSession session : this.mSessions) {
+                session.setNetworkAvailable(connectivitySource.isConnected());
+            }
         }
     }
 
-    private ExoPlayer.Listener playerEventListener = new ExoPlayer.Listener() {
+    private final ConnectivitySource.Listener connectivityListener = new ConnectivitySource.Listener() {
         @Override
-        public void onPlaybackParametersChanged(PlaybackParameters playbackParameters) {
-            RadioPlayerService.this.log("Playback parameters changed");
-        }
-
-        @Override
-        public void onPlayerError(PlaybackException error) {
-            if (error.errorCode == PlaybackException.ERROR_CODE_BEHIND_LIVE_WINDOW) {
-                RadioPlayerService.this.log("FELL BEHIND, RE-INITIALIZING AT THE LIVE EDGE..");
-
-                RadioManager.getRequestHandler().post(new Runnable() {
-                    public void run() {
-                        ExoPlayer player = RadioPlayerService.this.getPlayer();
-
-                        player.seekToDefaultPosition();
-                        player.prepare();
-                    }
-                });
-            } else {
-                RadioPlayerService.this.log("ERROR OCCURED.");
-
-                RadioManager.getRequestHandler().post(new Runnable() {
-                    public void run() {
-                        RadioPlayerService.this.releasePlayer();
-                        RadioPlayerService.this.notifyErrorOccured();
-                    }
-                });
-            }
-        }
+        public void onNetworkChanged() {
+            RadioPlayerService.this.log("Network changed");
 
-        @Override
-        public void onPlaybackStateChanged(int playbackState) {
-            if (
-                playbackState == ExoPlayer.STATE_IDLE
-                && RadioPlayerService.this.mRadioState == State.PLAYING
-            ) {
-                // Player.STATE_IDLE: This is the initial state, the state when the player is stopped, and when playback failed.
-                RadioPlayerService.this.log("Player state changed. Stopped");
-
-                RadioManager.getRequestHandler().post(new Runnable() {
-                    public void run() {
-                        RadioPlayerService.this.releasePlayer();
-                        RadioPlayerService.this.notifyRadioStopped();
-                    }
-                });
-            } else if (
-                playbackState == ExoPlayer.STATE_IDLE
-                && RadioPlayerService.this.mRadioState == State.STOPPED_FOCUS_TRANSIENT
-            ) {
-                // focus loss temporarily, notify
-                RadioPlayerService.this.log("Player state changed. Stopped focus loss transient");
-                RadioPlayerService.this.notifyRadioStoppedFocusTransient();
-            } else if (
-                playbackState == ExoPlayer.STATE_IDLE
-                && RadioPlayerService.this.mRadioState == State.STOPPED_FOCUS_LOSS
-            ) {
-                // focus loss, notify and set state to STOPPED
-                RadioPlayerService.this.log("Player state changed. Stopped focus loss");
-
-                RadioManager.getRequestHandler().post(new Runnable() {
-                    public void run() {
-                        RadioPlayerService.this.releasePlayer();
-                        RadioPlayerService.this.notifyRadioStoppedFocusLoss();
-                    }
-                });
-            } else if (
-                playbackState == ExoPlayer.STATE_READY
-                && RadioPlayerService.this.mRadioState == State.STOPPED_FOCUS_TRANSIENT
-            ) {
-                // focus regained after an transient loss
-                RadioPlayerService.this.log("Player state changed. Playing - regained focus transient");
-                RadioPlayerService.this.mRadioState = State.PLAYING;
-                RadioPlayerService.this.notifyRadioStartedFocusTransient();
-            } else {
-                RadioPlayerService.this.log("Player state changed. ExoPlayer State: " + playbackState + ", Current state: " + RadioPlayerService.this.mRadioState);
-            }
-        }
+            StreamNetwork.get().onNetworkChanged();
 
-        @Override
-        public void onPlayWhenReadyChanged(boolean playWhenReady, int reason) {
-            if (
-                playWhenReady
-                && reason == ExoPlayer.PLAY_WHEN_READY_CHANGE_REASON_USER_REQUEST
-            ) {
-                if (RadioPlayerService.this.mRadioState == State.STOPPED_FOCUS_TRANSIENT) {
-                    RadioPlayerService.this.log("Player state changed when ready. Playing - regained focus transient");
-                    RadioPlayerService.this.mRadioState = State.PLAYING;
-                    RadioPlayerService.this.notifyRadioStartedFocusTransient();
-                } else if (RadioPlayerService.this.mRadioState != State.PLAYING) {
-                    // The player is only playing if the state is Player.STATE_READY and playWhenReady=true
-                    RadioPlayerService.this.log("Player state changed when ready. Playing");
-                    RadioPlayerService.this.mRadioState = State.PLAYING;
-                    RadioPlayerService.this.notifyRadioStarted();
+            synchronized (RadioPlayerService.this.mSessions) {
+                for (RadioSession session : RadioPlayerService.this.mSessions) {
+                    session.setNetworkAvailable(true);
+                    session.onNetworkChanged();
                 }
             }
         }
-    };
 
-    private AudioManager.OnAudioFocusChangeListener audioFocusChangeListener = new AudioManager.OnAudioFocusChangeListener() {
-        public void onAudioFocusChange(int focusChange) {
-            if (
-                RadioPlayerService.this.mRadioPlayer == null
-                || (
-                    RadioPlayerService.this.mRadioState != State.PLAYING
-                    && RadioPlayerService.this.mRadioState != State.STOPPED_FOCUS_TRANSIENT
-                )
-            ) {
-                return;
-            }
+        @Override
+        public void onNetworkLost() {
+            RadioPlayerService.this.log("Network lost");
 
-            RadioManager.getRequestHandler().post(new Runnable() {
-                public void run() {
-                    if (focusChange == AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK) {
-                        RadioPlayerService.this.log("Player focus changed. LOSS_TRANSIENT_CAN_DUCK");
-                        RadioPlayerService.this.mRadioPlayer.setVolume(0.2f);
-                    } else if (focusChange == AudioManager.AUDIOFOCUS_GAIN) {
-                        RadioPlayerService.this.log("Player focus changed. GAIN");
-                        RadioPlayerService.this.mRadioPlayer.setVolume(1f);
-
-                        if (RadioPlayerService.this.mRadioState == State.STOPPED_FOCUS_TRANSIENT) {
-                            RadioPlayerService.this.log(" - was stopped transient");
-                            RadioPlayerService.this.mRadioPlayer.prepare();
-                            RadioPlayerService.this.mRadioPlayer.setPlayWhenReady(true);
-                        }
-                    } else if (focusChange == AudioManager.AUDIOFOCUS_LOSS_TRANSIENT) {
-                        RadioPlayerService.this.log("Player focus changed. LOSS_TRANSIENT");
-                        RadioPlayerService.this.mRadioState = State.STOPPED_FOCUS_TRANSIENT;
-                        RadioPlayerService.this.stop();
-                    } else if (focusChange == AudioManager.AUDIOFOCUS_LOSS) {
-                        RadioPlayerService.this.log("Player focus changed. LOSS");
-                        RadioPlayerService.this.mRadioState = State.STOPPED_FOCUS_LOSS;
-                        RadioPlayerService.this.stop();
-                    }
+            synchronized (RadioPlayerService.this.mSessions) {
+                for (RadioSession session : RadioPlayerService.this.mSessions) {
+                    session.setNetworkAvailable(false);
                 }
-            });
+            }
         }
     };
 
@@ -639,40 +292,6 @@ public class RadioPlayerService extends Service {
         return notificationBuilder.build();
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.O)
-    private int requestAudioFocus(boolean recreateAttribute) {
-        if (this.mAudioAttributes == null || recreateAttribute) {
-            int audioUsageType = this.mRadioStreamType == AudioManager.STREAM_ALARM
-                ? C.USAGE_ALARM
-                : C.USAGE_MEDIA;
-
-            this.mAudioAttributes = new android.media.AudioAttributes.Builder()
-                .setUsage(audioUsageType)
-                .setContentType(C.AUDIO_CONTENT_TYPE_MUSIC)
-                .build();
-        }
-
-        if (this.mAudioFocusRequest == null || recreateAttribute) {
-            this.mAudioFocusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN)
-                .setAudioAttributes(this.mAudioAttributes)
-                .setAcceptsDelayedFocusGain(false)
-                .setOnAudioFocusChangeListener(this.audioFocusChangeListener)
-                .build();
-        }
-
-        return this.mAudioManager.requestAudioFocus(this.mAudioFocusRequest);
-
-    }
-
-    @RequiresApi(api = Build.VERSION_CODES.O)
-    private int abandonAudioFocus() {
-        if (this.mAudioFocusRequest != null) {
-            return this.mAudioManager.abandonAudioFocusRequest(this.mAudioFocusRequest);
-        }
-
-        return AudioManager.AUDIOFOCUS_REQUEST_FAILED;
-    }
-
     /**
      * Logger
      *
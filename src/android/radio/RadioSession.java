@@ -0,0 +1,2498 @@
+package com.eltonfaust.multiplayer;
+
+import android.content.Context;
+import android.media.AudioFocusRequest;
+import android.media.AudioManager;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import androidx.media3.common.AudioAttributes;
+import androidx.media3.common.C;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.Metadata;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.PlaybackParameters;
+import androidx.media3.common.Tracks;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DefaultDataSource;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.extractor.ExtractorsFactory;
+import androidx.media3.extractor.DefaultExtractorsFactory;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.LoadControl;
+import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An independent player, with its own ExoPlayer, stream url, listeners and state.
+ * All the player operations run on the session playback thread.
+ */
+public class RadioSession {
+    private static final String LOG_TAG = "MultiPlayer";
+
+    // Max interval between the stall watchdog checks
+    private static final int STALL_CHECK_INTERVAL_MS = 1000;
+
+    // Default min interval between metadata events
+    private static final int METADATA_DEFAULT_INTERVAL_MS = 1000;
+
+    // Default time a pre-warmed player is kept when it's never played
+    private static final int PRE_WARM_DEFAULT_TIMEOUT_MS = 30000;
+
+    // Default time a soft stopped player is kept before it's released
+    private static final int SOFT_STOP_DEFAULT_TIMEOUT_MS = 60000;
+
+    // Time the playback must keep working after a retry to reset the retry attempts
+    private static final int RETRY_RESET_MS = 10000;
+
+    // Max mirrors connecting at the same time on the startup race
+    private static final int MIRROR_RACE_PARALLEL = 2;
+
+    // Default duration buffered by the preloaded neighbor players
+    private static final int PRELOAD_BUFFER_DEFAULT_MS = 5000;
+
+    // Max neighbors preloaded on each side of the current station
+    private static final int MAX_PRELOAD_NEIGHBORS = 2;
+
+    // Interval the buffered duration and live offset of the state snapshot are refreshed
+    private static final int SNAPSHOT_REFRESH_MS = 500;
+
+    /**
+     * Session id
+     */
+    private final int mId;
+
+    /**
+     * Application context
+     */
+    private final Context mContext;
+
+    /**
+     * Handler of the playback thread, also used as the ExoPlayer application looper
+     */
+    private final Handler mHandler;
+
+    /**
+     * Max bytes the player can buffer, share of the sessions memory budget
+     */
+    private final int mTargetBufferBytes;
+
+    /**
+     * Request the audio focus on play, sessions without it are mixed with the other sessions/apps
+     */
+    private boolean mAudioFocus = true;
+
+    /**
+     * Delivers the events to the listeners, off the playback thread
+     */
+    private final ListenerDispatcher mListeners;
+
+    /**
+     * Play posted to the playback thread and not started yet, dropped by a newer play or a stop
+     */
+    private final AtomicReference<Runnable> mPendingPlay = new AtomicReference<Runnable>();
+
+    /**
+     * Traces the latency of the player commands
+     */
+    private final LatencyTracer mLatencyTracer;
+
+    /**
+     * Latest state snapshot, read from any thread
+     */
+    private final AtomicReference<StateSnapshot> mSnapshot = new AtomicReference<StateSnapshot>(StateSnapshot.INITIAL);
+
+    /**
+     * Durations of the player build and the listener dispatch
+     */
+    private final TimingStats mTimingStats = new TimingStats();
+
+    /**
+     * Radio State
+     */
+    private final PlaybackStateMachine mStateMachine = new PlaybackStateMachine();
+
+    /**
+     * Current radio URL
+     */
+    private String mRadioUrl;
+
+    /**
+     * Mirrors of the stream, in the informed order
+     */
+    private volatile List<String> mMirrors = new ArrayList<String>();
+
+    /**
+     * Startup latency and failure history used to rank the mirrors
+     */
+    private final MirrorHistory mMirrorHistory;
+
+    /**
+     * Startup race between the mirrors, null if not racing
+     */
+    private MirrorRace mMirrorRace = null;
+
+    /**
+     * Mirrors that failed since the playback last worked
+     */
+    private final Set<String> mFailedMirrors = new HashSet<String>();
+
+    /**
+     * Time (in ms) the stream can stay buffering or without advancing before it's recovered, 0 to disable
+     */
+    private int mStallTimeout = 0;
+
+    /**
+     * When the current stall started (elapsed realtime), 0 if not stalled
+     */
+    private long mStallStartedAt = 0;
+
+    /**
+     * Playback position on the last stall watchdog check
+     */
+    private long mStallLastPosition = C.TIME_UNSET;
+
+    /**
+     * If a stall was notified and still not recovered
+     */
+    private boolean mStalled = false;
+
+    /**
+     * Buffering and live latency profile used on the next player build
+     */
+    private BufferProfile mBufferProfile = BufferProfile.BALANCED;
+
+    /**
+     * Buffering and live latency profile the current player was built with
+     */
+    private BufferProfile mPlayerBufferProfile = null;
+
+    /**
+     * Playback metrics
+     */
+    private RadioStatsCollector mStatsCollector;
+
+    /**
+     * Interval (in ms) of the periodic stats event, 0 to disable
+     */
+    private int mStatsInterval = 0;
+
+    /**
+     * Min interval (in ms) between metadata events
+     */
+    private int mMetadataInterval = METADATA_DEFAULT_INTERVAL_MS;
+
+    /**
+     * Current stream metadata, merged from all received entries
+     */
+    private StreamMetadata mMetadata = StreamMetadata.EMPTY;
+
+    /**
+     * Last notified stream metadata
+     */
+    private StreamMetadata mMetadataNotified = StreamMetadata.EMPTY;
+
+    /**
+     * When the last metadata was notified (elapsed realtime)
+     */
+    private long mMetadataNotifiedAt = 0;
+
+    /**
+     * Build and prepare the player (muted) as soon as the service is connected
+     */
+    private boolean mPreWarm = false;
+
+    /**
+     * Time (in ms) a pre-warmed player is kept if it's never played
+     */
+    private int mPreWarmTimeout = PRE_WARM_DEFAULT_TIMEOUT_MS;
+
+    /**
+     * If the current player was only pre-warmed and still wasn't played
+     */
+    private boolean mPlayerWarm = false;
+
+    /**
+     * Keep the player instance (detached from the network) on stop, instead of releasing it
+     */
+    private boolean mSoftStop = false;
+
+    /**
+     * Time (in ms) a soft stopped player is kept before it's released
+     */
+    private int mSoftStopTimeout = SOFT_STOP_DEFAULT_TIMEOUT_MS;
+
+    /**
+     * Decides if and when failed playbacks are retried
+     */
+    private RetryPolicy mRetryPolicy = new DefaultRetryPolicy();
+
+    /**
+     * Retries since the playback last worked
+     */
+    private int mRetryAttempt = 0;
+
+    /**
+     * If a retry is scheduled, the player is kept on idle until it runs
+     */
+    private boolean mRetryPending = false;
+
+    /**
+     * Ordered station list used by switchStation, empty if not set
+     */
+    private volatile List<String> mStations = new ArrayList<String>();
+
+    /**
+     * Index of the current station on the station list
+     */
+    private int mStationIndex = 0;
+
+    /**
+     * Neighbors preloaded on each side of the current station, 0 to disable
+     */
+    private int mPreloadNeighbors = 1;
+
+    /**
+     * Duration (in ms) buffered by the preloaded players
+     */
+    private int mPreloadBufferMs = PRELOAD_BUFFER_DEFAULT_MS;
+
+    /**
+     * Prepared players of the neighbor stations
+     */
+    private final NeighborPlayerPool mNeighborPool = new NeighborPlayerPool(2);
+
+    /**
+     * Buffer profile the pooled players were built with
+     */
+    private BufferProfile mNeighborPoolProfile = null;
+
+    /**
+     * Scheduled start of the session
+     */
+    private final AlarmController mAlarm;
+
+    /**
+     * Disk ring buffer of the live stream, so the playback can be paused and seeked back
+     */
+    private final TimeShiftController mTimeShift;
+
+    /**
+     * Active recording of the stream, the bytes read by the player are teed to it
+     */
+    private final RecordingController mRecording;
+
+    /**
+     * Mount switches of the bitrate ladder and network handovers, through a candidate player
+     */
+    private final HandoverController mHandover;
+
+    /**
+     * If there's a network available, failed playbacks wait for the network instead of consuming the retries
+     */
+    private volatile boolean mNetworkAvailable = true;
+
+    /**
+     * Current radio Stream Type
+     */
+    private int mRadioStreamType = AudioManager.STREAM_MUSIC;
+
+    /**
+     * ExoPlayer
+     */
+    private ExoPlayer mRadioPlayer = null;
+
+    /**
+     * AudioManager
+     */
+    private AudioManager mAudioManager;
+
+    /**
+     * AudioFocusRequest
+     */
+    private AudioFocusRequest mAudioFocusRequest;
+
+    /**
+     * AudioAttributes
+     */
+    private android.media.AudioAttributes mAudioAttributes;
+
+    public RadioSession(int mId, Context mContext, Looper looper, int mTargetBufferBytes) {
+        this.mId = mId;
+        this.mContext = mContext.getApplicationContext();
+        this.mHandler = new Handler(looper);
+        this.mTargetBufferBytes = mTargetBufferBytes;
+
+        this.mLatencyTracer = new LatencyTracer("session #" + mId);
+        this.mListeners = new ListenerDispatcher(RadioManager.getListenerExecutor(), this.mTimingStats);
+        this.mStatsCollector = new RadioStatsCollector();
+        this.mMirrorHistory = new MirrorHistory(this.mContext);
+        this.mAlarm = new AlarmController(this.mContext, this.mHandler, mId, this.alarmHost);
+        this.mRecording = new RecordingController(this.mContext, this.mHandler, this.recordingHost);
+        this.mTimeShift = new TimeShiftController(this.mContext, mId, this.mStatsCollector, this.mRecording, this.timeShiftHost);
+        this.mHandover = new HandoverController(this.mContext, this.mHandler, this.handoverHost);
+        this.mAudioManager = (AudioManager) this.mContext.getSystemService(Context.AUDIO_SERVICE);
+
+        this.mStateMachine.setListener(new PlaybackStateMachine.Listener() {
+            @Override
+            public void onTransition(PlaybackState from, PlaybackStateMachine.Event event, PlaybackState to) {
+                RadioSession.this.log("State " + from + " -> " + to + " (" + event + ")");
+                RadioSession.this.publishSnapshot();
+            }
+
+            @Override
+            public void onIgnored(PlaybackState state, PlaybackStateMachine.Event event) {
+                RadioSession.this.log("State " + state + " ignored " + event);
+            }
+        });
+    }
+
+    public int getId() {
+        return this.mId;
+    }
+
+    public Looper getLooper() {
+        return this.mHandler.getLooper();
+    }
+
+    public int getStreamType() {
+        return this.mRadioStreamType;
+    }
+
+    public boolean hasAudioFocus() {
+        return this.mAudioFocus;
+    }
+
+    public void setStreamURL(String mRadioUrl) {
+        List<String> mirrors = new ArrayList<String>();
+        mirrors.add(mRadioUrl);
+
+        this.setStreamURLs(mirrors);
+    }
+
+    /**
+     * Set the mirrors of the stream, on play they race to start and the failed ones are replaced by the next
+     *
+     * @param mirrors
+     */
+    public void setStreamURLs(List<String> mirrors) {
+        this.mMirrors = new ArrayList<String>(mirrors);
+        this.mRadioUrl = mirrors.isEmpty() ? null : mirrors.get(0);
+        this.publishSnapshot();
+
+        StreamNetwork.get().warm(this.mMirrors);
+    }
+
+    /**
+     * @return List<String> mirrors of the stream
+     */
+    public List<String> getStreamURLs() {
+        return this.mMirrors;
+    }
+
+    public void setAudioFocus(boolean mAudioFocus) {
+        this.mAudioFocus = mAudioFocus;
+    }
+
+    public void setStallTimeout(int mStallTimeout) {
+        this.mStallTimeout = Math.max(mStallTimeout, 0);
+    }
+
+    /**
+     * Set the buffer profile, applied on the next player build
+     *
+     * @param mBufferProfile
+     */
+    public void setBufferProfile(BufferProfile mBufferProfile) {
+        this.mBufferProfile = mBufferProfile;
+    }
+
+    public void setStatsInterval(int mStatsInterval) {
+        this.mStatsInterval = Math.max(mStatsInterval, 0);
+    }
+
+    public void setMetadataInterval(int mMetadataInterval) {
+        this.mMetadataInterval = mMetadataInterval >= 0 ? mMetadataInterval : METADATA_DEFAULT_INTERVAL_MS;
+    }
+
+    public void setRetryPolicy(RetryPolicy mRetryPolicy) {
+        this.mRetryPolicy = mRetryPolicy != null ? mRetryPolicy : new DefaultRetryPolicy();
+    }
+
+    public void setPreWarm(boolean mPreWarm, int mPreWarmTimeout) {
+        this.mPreWarm = mPreWarm;
+        this.mPreWarmTimeout = mPreWarmTimeout > 0 ? mPreWarmTimeout : PRE_WARM_DEFAULT_TIMEOUT_MS;
+    }
+
+    public void setSoftStop(boolean mSoftStop, int mSoftStopTimeout) {
+        this.mSoftStop = mSoftStop;
+        this.mSoftStopTimeout = mSoftStopTimeout > 0 ? mSoftStopTimeout : SOFT_STOP_DEFAULT_TIMEOUT_MS;
+    }
+
+    /**
+     * Set the bitrate ladder of the stream, the mount is picked on play from the bandwidth estimate
+     * and switched while playing following the buffer health.
+     * Replaces the stream urls, a ladder with less than two mounts disables the adaptive mode (keeping the urls if empty).
+     *
+     * @param mounts
+     */
+    public void setMounts(final List<AdaptiveMountSelector.Mount> mounts) {
+        if (!mounts.isEmpty()) {
+            this.setStreamURL(mounts.get(0).url);
+        }
+
+        this.runOnPlaybackThread(new Runnable() {
+            public void run() {
+                RadioSession.this.mHandover.setMounts(mounts);
+            }
+        });
+    }
+
+    public void setNetworkAvailable(boolean mNetworkAvailable) {
+        this.mNetworkAvailable = mNetworkAvailable;
+    }
+
+    /**
+     * The default network changed (or returned), the current connection may be dead or bound to the previous network
+     */
+    public void onNetworkChanged() {
+        this.runOnPlaybackThread(new Runnable() {
+            public void run() {
+                RadioSession.this.startNetworkHandover();
+            }
+        });
+    }
+
+    /**
+     * Set the time-shift mode, applied on the next player build.
+     * While enabled, stop pauses the playback and the stream keeps being recorded, so it can be resumed or seeked back.
+     *
+     * @param mTimeShift
+     * @param mTimeShiftDuration duration (in seconds) kept by the buffer, 0 to use the default
+     */
+    public void setTimeShift(boolean mTimeShift, int mTimeShiftDuration) {
+        this.mTimeShift.setEnabled(mTimeShift, mTimeShiftDuration);
+    }
+
+    /**
+     * Set the ordered station list used by switchStation
+     *
+     * @param stations
+     * @param preloadNeighbors neighbors preloaded on each side of the current station, 0 to disable the preloading
+     * @param preloadBufferMs duration buffered by each preloaded player, 0 to use the default
+     */
+    public void setStations(List<String> stations, int preloadNeighbors, int preloadBufferMs) {
+        final List<String> mStations = new ArrayList<String>(stations);
+        final int mPreloadNeighbors = Math.max(Math.min(preloadNeighbors, MAX_PRELOAD_NEIGHBORS), 0);
+        final int mPreloadBufferMs = preloadBufferMs > 0 ? preloadBufferMs : PRELOAD_BUFFER_DEFAULT_MS;
+
+        this.mStations = mStations;
+        StreamNetwork.get().warm(mStations);
+
+        this.runOnPlaybackThread(new Runnable() {
+            public void run() {
+                RadioSession.this.mPreloadNeighbors = mPreloadNeighbors;
+                RadioSession.this.mPreloadBufferMs = mPreloadBufferMs;
+                RadioSession.this.mNeighborPool.releaseAll();
+                RadioSession.this.mNeighborPool.setMaxSize(mPreloadNeighbors * 2);
+
+                int index = RadioSession.this.mRadioUrl == null ? -1 : mStations.indexOf(RadioSession.this.mRadioUrl);
+                RadioSession.this.mStationIndex = Math.max(index, 0);
+
+                if (RadioSession.this.isPlaying()) {
+                    RadioSession.this.preloadNeighbors();
+                }
+            }
+        });
+    }
+
+    public boolean hasStations() {
+        return !this.mStations.isEmpty();
+    }
+
+    /**
+     * Switch to a station of the station list and play it,
+     * if the station was preloaded, its player is used and the audio starts from the already buffered data
+     *
+     * @param index station index, or offset from the current station if relative
+     * @param relative
+     */
+    public void switchStation(final int index, final boolean relative) {
+        if (!this.isPlaybackThread()) {
+            this.mHandler.post(new Runnable() {
+                public void run() {
+                    RadioSession.this.switchStation(index, relative);
+                }
+            });
+
+            return;
+        }
+
+        this.mLatencyTracer.mark("playback");
+
+        List<String> stations = this.mStations;
+
+        if (stations.isEmpty()) {
+            this.log("Can't switch station. Station list not set");
+            return;
+        }
+
+        int size = stations.size();
+        int target = relative ? this.mStationIndex + index : index;
+
+        this.mStationIndex = ((target % size) + size) % size;
+        this.setStreamURL(stations.get(this.mStationIndex));
+
+        this.log("Switching to station " + this.mStationIndex);
+
+        this.discardPlayer();
+
+        // preloaded players aren't recorded, the time-shift needs a new player
+        ExoPlayer player = this.mNeighborPoolProfile == this.mBufferProfile && !this.mTimeShift.isEnabled()
+            ? this.mNeighborPool.take(this.mRadioUrl)
+            : null;
+
+        if (player != null && player.getPlayerError() != null) {
+            // preload failed, connect again on play
+            player.release();
+            player = null;
+        }
+
+        if (player != null) {
+            this.log("Using preloaded player");
+
+            player.addListener(this.playerEventListener);
+            player.addAnalyticsListener(this.mStatsCollector);
+
+            this.mRadioPlayer = player;
+            this.mPlayerBufferProfile = this.mNeighborPoolProfile;
+            // already prepared with the buffered data, handled as a warm player
+            this.mPlayerWarm = true;
+        }
+
+        this.play(-1);
+        this.preloadNeighbors();
+    }
+
+    /**
+     * Build and prepare the player muted and without playing, so the next play only needs to request the audio focus.
+     * If the player isn't played until the pre-warm timeout, it's released.
+     */
+    public void preWarm() {
+        if (!this.isPlaybackThread()) {
+            this.mHandler.post(new Runnable() {
+                public void run() {
+                    RadioSession.this.preWarm();
+                }
+            });
+
+            return;
+        }
+
+        if (!this.mPreWarm || this.mRadioUrl == null || this.mRadioPlayer != null) {
+            return;
+        }
+
+        this.log("Pre-warming player");
+        this.warmPlayer(this.mPreWarmTimeout);
+    }
+
+    /**
+     * Build and prepare the player muted, without playing it
+     *
+     * @param timeoutMs time the player is kept if not played
+     */
+    private void warmPlayer(int timeoutMs) {
+        if (this.mMirrors.size() > 1) {
+            this.setPlaybackUrl(this.mMirrorHistory.rank(this.mMirrors).get(0));
+        }
+
+        ExoPlayer player = this.getPlayer();
+        player.setVolume(0f);
+        player.setPlayWhenReady(false);
+
+        this.mPlayerWarm = true;
+        this.scheduleIdleRelease(timeoutMs);
+    }
+
+    /**
+     * Set the scheduled start, replacing the previous one, persisted with the stream urls
+     *
+     * @param alarm
+     */
+    public void setAlarm(final AlarmSchedule alarm) {
+        this.runOnPlaybackThread(new Runnable() {
+            public void run() {
+                RadioSession.this.mAlarm.set(alarm);
+            }
+        });
+    }
+
+    /**
+     * Set the persisted scheduled start, if the session lost it (released with the service or rebuilt)
+     *
+     * @param alarm
+     */
+    public void restoreAlarm(final AlarmSchedule alarm) {
+        this.runOnPlaybackThread(new Runnable() {
+            public void run() {
+                RadioSession.this.mAlarm.restore(alarm);
+            }
+        });
+    }
+
+    /**
+     * Cancel the scheduled start, a stream buffered for it and not played yet is released
+     */
+    public void cancelAlarm() {
+        this.runOnPlaybackThread(new Runnable() {
+            public void run() {
+                RadioSession.this.mAlarm.cancel();
+            }
+        });
+    }
+
+    /**
+     * Start buffering the stream muted for the scheduled start, its readiness is notified until the trigger time
+     */
+    public void startAlarmWarmup() {
+        this.runOnPlaybackThread(new Runnable() {
+            public void run() {
+                RadioSession.this.mAlarm.startWarmup();
+            }
+        });
+    }
+
+    /**
+     * Play url if different from previous streaming url.
+     *
+     * @param streamType
+     */
+    public void play(final int streamType) {
+        if (!this.isPlaybackThread()) {
+            Runnable playRunnable = new Runnable() {
+                public void run() {
+                    RadioSession.this.mPendingPlay.compareAndSet(this, null);
+                    RadioSession.this.play(streamType);
+                }
+            };
+
+            // a newer play replaces the one not started yet
+            Runnable previous = this.mPendingPlay.getAndSet(playRunnable);
+
+            if (previous != null) {
+                this.mHandler.removeCallbacks(previous);
+            }
+
+            this.mHandler.post(playRunnable);
+            return;
+        }
+
+        this.mLatencyTracer.mark("playback");
+        this.mPlaybackController.onPlay();
+
+        this.mAlarm.releaseFallback();
+        this.cancelIdleRelease();
+        this.cancelRetry();
+        this.cancelMirrorRace();
+        this.mRetryAttempt = 0;
+        this.mFailedMirrors.clear();
+        this.mStatsCollector.startSession();
+        this.resetMetadata();
+        this.publishError(null);
+        notifyRadioLoading();
+
+        // a kept player (warm or soft stopped) built with another profile must be rebuilt
+        if (
+            this.mRadioPlayer != null
+            && this.mPlayerBufferProfile != this.mBufferProfile
+            && !this.mStateMachine.is(PlaybackState.PLAYING)
+        ) {
+            this.log("Buffer profile changed, rebuilding player");
+            this.releasePlayer();
+        }
+
+        // a paused time-shift of another stream can't be resumed
+        if (this.mTimeShift.isPaused() && !this.mTimeShift.isShifted(this.mRadioUrl)) {
+            this.log("Stream changed, discarding the time-shift");
+            this.releasePlayer();
+        }
+
+        boolean changeAudioStreamType = streamType != -1 && this.mRadioStreamType != streamType;
+
+        if (streamType != -1) {
+            this.mRadioStreamType = streamType;
+        }
+
+        int result = AudioManager.AUDIOFOCUS_REQUEST_FAILED;
+
+        if (!this.mAudioFocus) {
+            // mixed session, plays without requesting the focus
+            result = AudioManager.AUDIOFOCUS_REQUEST_GRANTED;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            result = this.requestAudioFocus(changeAudioStreamType);
+        } else {
+            result = this.mAudioManager.requestAudioFocus(this.audioFocusChangeListener, this.mRadioStreamType, AudioManager.AUDIOFOCUS_GAIN);
+        }
+
+        if (result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
+            if (this.mRadioPlayer == null && this.mHandover.isAdaptive()) {
+                this.mHandover.selectInitialMount();
+            }
+
+            if (this.mRadioPlayer == null && this.mMirrors.size() > 1 && !this.mTimeShift.isEnabled()) {
+                // the playback starts when the race is won
+                this.startMirrorRace();
+                return;
+            }
+
+            this.startPlayer(this.getPlayer(changeAudioStreamType));
+        } else {
+            this.log("Can't play streaming. Audio focus not granted");
+            this.mStateMachine.fire(PlaybackStateMachine.Event.FOCUS_DENIED);
+            this.releasePlayer();
+            this.notifyRadioStoppedFocusLoss();
+        }
+    }
+
+    public void play() {
+        this.play(-1);
+    }
+
+    /**
+     * Start the playback of the player, the audio focus must be already granted
+     *
+     * @param player
+     */
+    private void startPlayer(ExoPlayer player) {
+        if (this.mPlayerWarm) {
+            this.mPlayerWarm = false;
+
+            // the warm buffer may be behind the live edge, start from the default position instead
+            if (player.isCurrentMediaItemLive()) {
+                player.seekToDefaultPosition();
+            }
+        }
+
+        // a paused time-shift continues from the paused position
+        if (!this.mTimeShift.resume(player) && player.getPlaybackState() == ExoPlayer.STATE_IDLE) {
+            // kept player (soft stopped), reconnect at the live edge
+            player.seekToDefaultPosition();
+            player.prepare();
+        }
+
+        this.mPlaybackController.start(new ExoStreamPlayer(player));
+
+        this.mAlarm.onPlayerStarted();
+
+        this.startStallWatchdog();
+        this.startStatsReporter();
+        this.mHandover.startMonitor();
+        this.startSnapshotRefresh();
+    }
+
+    public void stop(final boolean forceStop) {
+        if (!this.isPlaybackThread()) {
+            Runnable pendingPlay = this.mPendingPlay.getAndSet(null);
+
+            if (pendingPlay != null) {
+                // the play didn't start yet, drop it instead of preparing the player just to release it
+                this.log("Pending play canceled by stop");
+                this.mHandler.removeCallbacks(pendingPlay);
+            }
+
+            this.mHandler.post(new Runnable() {
+                public void run() {
+                    RadioSession.this.stop(forceStop);
+                }
+            });
+
+            return;
+        }
+
+        this.mLatencyTracer.mark("playback");
+
+        if (this.mAlarm.releaseFallback()) {
+            this.log("Player state changed. Stopped - alarm fallback");
+            this.notifyRadioStopped();
+            return;
+        }
+
+        if (this.mMirrorRace != null) {
+            this.log("Player state changed. Stopped - mirror race canceled");
+            this.releasePlayer();
+            this.notifyRadioStopped();
+            return;
+        }
+
+        if (this.mTimeShift.isPaused()) {
+            // stop while paused ends the time-shift
+            this.log("Player state changed. Stopped - time-shift discarded");
+            this.releasePlayer();
+            this.notifyRadioStopped();
+            return;
+        }
+
+        if (this.mRadioPlayer == null || this.mPlayerWarm || this.mStateMachine.is(PlaybackState.STOPPED)) {
+            this.notifyRadioStopped();
+            return;
+        }
+
+        if (!forceStop && this.mStateMachine.is(PlaybackState.PLAYING) && this.mTimeShift.isShifted(this.mRadioUrl)) {
+            this.pauseTimeShift();
+            return;
+        }
+
+        if (this.mRetryPending) {
+            // the player is already on idle waiting the retry, stop won't trigger the change state
+            this.log("Player state changed. Stopped - retry canceled");
+            this.cancelRetry();
+            this.stopPlayer();
+            this.notifyRadioStopped();
+            return;
+        }
+
+        if (
+            this.mStateMachine.is(PlaybackState.PLAYING)
+            || this.mStateMachine.is(PlaybackState.STOPPED_FOCUS_TRANSIENT)
+            || this.mStateMachine.is(PlaybackState.STOPPED_FOCUS_LOSS)
+        ) {
+            // if force to stop, try to stop despite not being as playing
+            if (forceStop && !this.mStateMachine.is(PlaybackState.PLAYING)) {
+                // if already on iddle, stop wont trigger the change state, only release the player and notify
+                if (this.mRadioPlayer.getPlaybackState() == ExoPlayer.STATE_IDLE) {
+                    this.log("Player state changed. Stopped - already on focus loss");
+                    this.releasePlayer();
+                    this.notifyRadioStopped();
+                    return;
+                }
+
+                this.mStateMachine.fire(PlaybackStateMachine.Event.FORCE_STOP);
+            }
+
+            this.mRadioPlayer.stop();
+        }
+    }
+
+    public void stop() {
+        this.stop(false);
+    }
+
+    /**
+     * Seek the time-shifted playback, keeps the paused state
+     *
+     * @param behindLiveMs time behind the live edge, 0 to go back to live
+     * @return false if the time-shift isn't recording
+     */
+    public boolean seekTimeShift(final long behindLiveMs) {
+        if (!this.mTimeShift.isEnabled()) {
+            return false;
+        }
+
+        this.runOnPlaybackThread(new Runnable() {
+            public void run() {
+                RadioSession.this.mTimeShift.seek(behindLiveMs);
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Record the playing stream to a file, teeing the bytes already downloaded by the player (no extra connection).
+     * The recording ends on stopRecording, or when the player is released.
+     *
+     * @param path absolute path, file:// uri, or path relative to the app files folder
+     * @throws IOException if the file can't be created
+     */
+    public void startRecording(String path) throws IOException {
+        if (!this.isPlaying()) {
+            throw new IllegalStateException("NOT_PLAYING");
+        }
+
+        this.mRecording.start(path);
+    }
+
+    /**
+     * Stop the recording
+     *
+     * @return JSONObject final recording progress
+     */
+    public JSONObject stopRecording() {
+        return this.mRecording.stop();
+    }
+
+    /**
+     * Receives the time-shift position, on the playback thread
+     */
+    public interface TimeShiftPositionCallback {
+        /**
+         * @param position null if the time-shift isn't recording
+         */
+        void onPosition(JSONObject position);
+    }
+
+    /**
+     * Position of the time-shifted playback: time behind live and recorded time available, in ms.
+     * The player can only be accessed from the playback thread, the position is answered from there without
+     * blocking the caller.
+     *
+     * @param callback
+     */
+    public void getTimeShiftPosition(final TimeShiftPositionCallback callback) {
+        Runnable answer = new Runnable() {
+            public void run() {
+                callback.onPosition(RadioSession.this.mTimeShift.buildPosition());
+            }
+        };
+
+        if (this.isPlaybackThread()) {
+            answer.run();
+        } else if (!this.mHandler.post(answer)) {
+            // the playback thread already quit, the session was destroyed
+            callback.onPosition(null);
+        }
+    }
+
+    /**
+     * Release the player and its resources, the session can still be played again
+     */
+    public void release() {
+        if (!this.isPlaybackThread()) {
+            this.mHandler.post(new Runnable() {
+                public void run() {
+                    RadioSession.this.release();
+                }
+            });
+
+            return;
+        }
+
+        this.resetMetadata();
+        this.mAlarm.release();
+        this.mNeighborPool.releaseAll();
+        this.releasePlayer();
+    }
+
+    /**
+     * Pause the playback keeping the player and the recording, released if not resumed until the buffer duration
+     */
+    private void pauseTimeShift() {
+        this.log("Player state changed. Paused - time-shift");
+
+        this.mTimeShift.pause();
+        this.mStateMachine.fire(PlaybackStateMachine.Event.STOP);
+        this.mRadioPlayer.setPlayWhenReady(false);
+
+        this.stopStallWatchdog();
+        this.stopStatsReporter();
+        this.stopSnapshotRefresh();
+        this.mHandover.stopMonitor();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            this.abandonAudioFocus();
+        } else {
+            this.mAudioManager.abandonAudioFocus(this.audioFocusChangeListener);
+        }
+
+        // after the buffer duration the paused position was already overwritten
+        this.scheduleIdleRelease(this.mTimeShift.getDurationMs());
+        this.notifyRadioStopped();
+    }
+
+    /**
+     * Playback metrics of the current session
+     *
+     * @return JSONObject
+     */
+    public JSONObject getStats() {
+        JSONBuilder stats = new JSONBuilder(this.mStatsCollector.toJSON());
+        String url = this.mRadioUrl;
+        JSONObject timings = url == null ? null : StreamNetwork.get().getTimings(url);
+        StreamCache streamCache = StreamCache.getInstance();
+        StreamRecorder recorder = this.mRecording.getRecorder();
+
+        // the sections that don't apply are left out
+        stats.put("network", timings)
+            .put("recording", recorder == null ? null : recorder.toJSON())
+            .put("latency", this.mLatencyTracer.toJSON())
+            .put("timings", TimingStats.isEnabled() ? this.mTimingStats.toJSON() : null)
+            .put("cache", streamCache != null && streamCache.isEnabled() ? streamCache.toJSON() : null);
+
+        return stats.build();
+    }
+
+    /**
+     * Durations of the session hot paths, also used by the event channel of the session
+     *
+     * @return TimingStats
+     */
+    public TimingStats getTimingStats() {
+        return this.mTimingStats;
+    }
+
+    /**
+     * Start tracing the latency of a command, called when the command is received
+     *
+     * @param command
+     */
+    public void beginTrace(String command) {
+        this.mLatencyTracer.begin(command);
+    }
+
+    /**
+     * Mark a hop of the traced command
+     *
+     * @param hop
+     */
+    public void markTrace(String hop) {
+        this.mLatencyTracer.mark(hop);
+    }
+
+    /**
+     * Latest state snapshot, doesn't wait for the playback thread
+     *
+     * @return StateSnapshot
+     */
+    public StateSnapshot getSnapshot() {
+        return this.mSnapshot.get();
+    }
+
+    public boolean isPlaying() {
+        if (this.mStateMachine.is(PlaybackState.PLAYING)) {
+            return true;
+        }
+
+        return false;
+    }
+
+    public void registerListener(RadioListener mListener) {
+        this.mListeners.add(mListener);
+    }
+
+    public void unregisterListener(RadioListener mListener) {
+        this.mListeners.remove(mListener);
+    }
+
+    public void setListener(RadioListener mListener) {
+        this.mListeners.set(mListener);
+    }
+
+    private boolean isPlaybackThread() {
+        return Looper.myLooper() == this.mHandler.getLooper();
+    }
+
+    private void runOnPlaybackThread(Runnable runnable) {
+        if (this.isPlaybackThread()) {
+            runnable.run();
+        } else {
+            this.mHandler.post(runnable);
+        }
+    }
+
+    /**
+     * Hand off a state event to the listeners
+     *
+     * @param effect event name if the event is the effect of a traced command, null otherwise
+     * @param call
+     */
+    private void dispatch(final String effect, ListenerDispatcher.Call call) {
+        if (effect == null) {
+            this.mListeners.dispatch(null, call, null);
+            return;
+        }
+
+        this.mLatencyTracer.mark("effect");
+
+        this.mListeners.dispatch(null, call, new Runnable() {
+            public void run() {
+                RadioSession.this.mLatencyTracer.end(effect);
+            }
+        });
+    }
+
+    /**
+     * Hand off a periodic event to the listeners, merged with the same event not delivered yet
+     *
+     * @param mergeKey
+     * @param call
+     */
+    private void dispatchPeriodic(String mergeKey, ListenerDispatcher.Call call) {
+        this.mListeners.dispatch(mergeKey, call, null);
+    }
+
+    /**
+     * Notify the session listeners that the service was connected, so the session can be played.
+     * The listeners of the default session are notified by the manager.
+     */
+    public void notifyRadioConnected() {
+        this.dispatch(null, new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioConnected();
+            }
+        });
+    }
+
+    /**
+     * Notify the session listeners that the service was disconnected
+     */
+    public void notifyRadioDisconnected() {
+        this.dispatch(null, new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioDisconnected();
+            }
+        });
+    }
+
+    private void notifyRadioLoading() {
+        this.dispatch(null, new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioLoading();
+            }
+        });
+    }
+
+    private void notifyRadioStarted() {
+        this.dispatch("STARTED", new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioStarted();
+            }
+        });
+    }
+
+    private void notifyRadioStopped() {
+        this.dispatch("STOPPED", new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioStopped();
+            }
+        });
+    }
+
+    private void notifyRadioStoppedFocusTransient() {
+        this.dispatch(null, new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioStoppedFocusTransient();
+            }
+        });
+    }
+
+    private void notifyRadioStartedFocusTransient() {
+        this.dispatch(null, new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioStartedFocusTransient();
+            }
+        });
+    }
+
+    private void notifyRadioStoppedFocusLoss() {
+        this.dispatch("STOPPED_FOCUS_LOSS", new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioStoppedFocusLoss();
+            }
+        });
+    }
+
+    private void notifyRadioStalled() {
+        this.dispatch(null, new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioStalled();
+            }
+        });
+    }
+
+    private void notifyRadioRecovered() {
+        this.dispatch(null, new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioRecovered();
+            }
+        });
+    }
+
+    private void notifyRadioStats(final JSONObject stats) {
+        this.dispatchPeriodic("STATS", new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioStats(stats);
+            }
+        });
+    }
+
+    private void notifyRadioMetadata(final JSONObject metadata) {
+        this.dispatchPeriodic("METADATA", new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioMetadata(metadata);
+            }
+        });
+    }
+
+    private void notifyRadioReconnecting(final JSONObject reconnect) {
+        this.dispatch(null, new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioReconnecting(reconnect);
+            }
+        });
+    }
+
+    private void notifyRadioAlarm(final JSONObject alarm) {
+        this.dispatch(null, new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioAlarm(alarm);
+            }
+        });
+    }
+
+    private void notifyRadioRecording(final JSONObject recording) {
+        this.dispatchPeriodic("RECORDING", new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioRecording(recording);
+            }
+        });
+    }
+
+    private void notifyRadioBitrateChanged(final JSONObject change) {
+        this.dispatch(null, new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onRadioBitrateChanged(change);
+            }
+        });
+    }
+
+    private void notifyErrorOccured(final JSONObject error) {
+        this.publishError(error);
+
+        this.dispatch("ERROR", new ListenerDispatcher.Call() {
+            public void call(RadioListener mRadioListener) {
+                mRadioListener.onError(error);
+            }
+        });
+    }
+
+    /**
+     * Return ExoPlayer instance. If it is not initialized, creates and returns.
+     *
+     * @return ExoPlayer
+     */
+    private ExoPlayer getPlayer(boolean changeAudioStreamType) {
+        if (this.mRadioPlayer == null) {
+            this.mPlayerBufferProfile = this.mBufferProfile;
+
+            if (this.mTimeShift.isEnabled()) {
+                this.mTimeShift.start(this.mRadioUrl);
+            }
+
+            this.mRadioPlayer = this.buildPlayer(
+                this.mRadioUrl,
+                this.mPlayerBufferProfile.buildLoadControl(this.mTargetBufferBytes),
+                this.mStatsCollector,
+                true
+            );
+
+            this.mRadioPlayer.addListener(this.playerEventListener);
+            this.mRadioPlayer.addAnalyticsListener(this.mStatsCollector);
+            this.mRadioPlayer.prepare();
+        } else if (changeAudioStreamType) {
+            int audioUsageType = this.mRadioStreamType == AudioManager.STREAM_ALARM
+                ? C.USAGE_ALARM
+                : C.USAGE_MEDIA;
+
+            this.mRadioPlayer.setAudioAttributes(
+                new AudioAttributes.Builder()
+                    .setUsage(audioUsageType)
+                    .setContentType(C.AUDIO_CONTENT_TYPE_MUSIC)
+                    .build(),
+                false
+            );
+        }
+
+        return this.mRadioPlayer;
+    }
+
+    private ExoPlayer getPlayer() {
+        return this.getPlayer(false);
+    }
+
+    /**
+     * Build a player of the url with the current profile and stream type, not prepared
+     *
+     * @param url
+     * @param loadControl
+     * @param transferListener network transfer listener, null for none
+     * @param recordable if the bytes read are teed to the active recording
+     * @return ExoPlayer
+     */
+    private ExoPlayer buildPlayer(String url, LoadControl loadControl, TransferListener transferListener, boolean recordable) {
+        long buildStart = TimingStats.start();
+
+        int audioUsageType = this.mRadioStreamType == AudioManager.STREAM_ALARM
+            ? C.USAGE_ALARM
+            : C.USAGE_MEDIA;
+
+        // the http connections, DNS and redirects are shared between all the players
+        DataSource.Factory networkFactory = StreamNetwork.get().buildDataSourceFactory(transferListener);
+        if (recordable) {
+            networkFactory = new RecordingDataSource.Factory(networkFactory, this.mRecording);
+        }
+
+        DataSource.Factory dataSourceFactory = new DefaultDataSource.Factory(this.mContext, networkFactory);
+
+        StreamCache streamCache = StreamCache.getInstance();
+
+        if (this.mTimeShift.isShifted(url)) {
+            // the stream is read from the time-shift buffer, the recorder does the network transfer
+            dataSourceFactory = this.mTimeShift.getDataSourceFactory();
+        } else if (streamCache != null && streamCache.isEnabled()) {
+            dataSourceFactory = streamCache.buildDataSourceFactory(dataSourceFactory);
+        }
+
+        ExtractorsFactory extractorsFactory = new DefaultExtractorsFactory();
+
+        ExoPlayer player = new ExoPlayer.Builder(this.mContext)
+            .setLooper(this.mHandler.getLooper())
+            .setLoadControl(loadControl)
+            .setMediaSourceFactory(
+                new DefaultMediaSourceFactory(dataSourceFactory, extractorsFactory)
+                    .setLiveTargetOffsetMs(this.mBufferProfile.getLiveTargetOffsetMs())
+            )
+            .setAudioAttributes(
+                new AudioAttributes.Builder()
+                    .setUsage(audioUsageType)
+                    .setContentType(C.AUDIO_CONTENT_TYPE_MUSIC)
+                    .build(),
+                false
+            )
+            .build();
+
+        player.setMediaItem(this.buildMediaItem(url, this.mBufferProfile));
+
+        this.mTimingStats.record("playerBuild", buildStart);
+
+        return player;
+    }
+
+    /**
+     * Per MediaItem settings.
+     *
+     * @return MediaItem
+     */
+    private MediaItem buildMediaItem() {
+        return this.buildMediaItem(this.mRadioUrl, this.mPlayerBufferProfile);
+    }
+
+    private MediaItem buildMediaItem(String url, BufferProfile bufferProfile) {
+        return new MediaItem.Builder()
+            .setUri(this.mTimeShift.isShifted(url) ? TimeShiftDataSource.buildLiveUri() : Uri.parse(url))
+            .setLiveConfiguration(bufferProfile.buildLiveConfiguration())
+            .build();
+    }
+
+    /**
+     * Preload the neighbors of the current station, players of stations that aren't neighbors anymore are released
+     */
+    private void preloadNeighbors() {
+        List<String> stations = this.mStations;
+
+        if (this.mPreloadNeighbors == 0 || stations.size() < 2) {
+            this.mNeighborPool.releaseAll();
+            return;
+        }
+
+        if (this.mNeighborPoolProfile != this.mBufferProfile) {
+            this.mNeighborPool.releaseAll();
+            this.mNeighborPoolProfile = this.mBufferProfile;
+        }
+
+        int size = stations.size();
+        Set<String> neighbors = new LinkedHashSet<String>();
+
+        for (int i = 1; i <= this.mPreloadNeighbors; i++) {
+            neighbors.add(stations.get((this.mStationIndex + i) % size));
+            neighbors.add(stations.get(((this.mStationIndex - i) % size + size) % size));
+        }
+
+        neighbors.remove(this.mRadioUrl);
+        this.mNeighborPool.retain(neighbors);
+
+        // the preloaded players share the session memory budget
+        int targetBufferBytes = this.mTargetBufferBytes / (this.mPreloadNeighbors * 2 + 1);
+
+        for (String url : neighbors) {
+            if (this.mNeighborPool.contains(url)) {
+                continue;
+            }
+
+            this.log("Preloading station " + url);
+
+            ExoPlayer player = this.buildPlayer(
+                url,
+                this.mNeighborPoolProfile.buildPreloadLoadControl(targetBufferBytes, this.mPreloadBufferMs),
+                null,
+                false
+            );
+
+            player.setVolume(0f);
+            player.setPlayWhenReady(false);
+            player.prepare();
+
+            this.mNeighborPool.put(url, player);
+        }
+    }
+
+    /**
+     * Release the current player without notifying, used when it's replaced by the player of another station
+     */
+    private void discardPlayer() {
+        this.cancelIdleRelease();
+        this.cancelRetry();
+        this.cancelMirrorRace();
+        this.stopStallWatchdog();
+        this.stopStatsReporter();
+        this.stopSnapshotRefresh();
+        this.mHandover.stopMonitor();
+        this.mPlayerWarm = false;
+
+        if (this.mRadioPlayer != null) {
+            this.mRadioPlayer.removeListener(this.playerEventListener);
+            this.mRadioPlayer.removeAnalyticsListener(this.mStatsCollector);
+            this.mRadioPlayer.release();
+            this.mRadioPlayer = null;
+            this.mPlayerBufferProfile = null;
+        }
+
+        this.mTimeShift.close();
+        this.mRecording.finish();
+        this.mPlaybackController.clearFocusMuted();
+        this.mStateMachine.fire(PlaybackStateMachine.Event.RELEASE);
+    }
+
+    private void releasePlayer() {
+        this.cancelIdleRelease();
+        this.cancelRetry();
+        this.cancelMirrorRace();
+        this.stopStallWatchdog();
+        this.stopStatsReporter();
+        this.stopSnapshotRefresh();
+        this.mHandover.stopMonitor();
+        this.mPlayerWarm = false;
+
+        if (this.mRadioPlayer != null) {
+            this.mStateMachine.fire(PlaybackStateMachine.Event.STOP);
+            this.mRadioPlayer.release();
+            this.mRadioPlayer = null;
+            this.mPlayerBufferProfile = null;
+        }
+
+        this.mTimeShift.close();
+        this.mRecording.finish();
+        this.mPlaybackController.clearFocusMuted();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            this.abandonAudioFocus();
+        } else {
+            this.mAudioManager.abandonAudioFocus(this.audioFocusChangeListener);
+        }
+    }
+
+    /**
+     * Stop the player keeping its instance, it will be released if not played until the soft stop timeout
+     */
+    private void softStopPlayer() {
+        this.mStateMachine.fire(PlaybackStateMachine.Event.STOP);
+        this.mPlaybackController.clearFocusMuted();
+        this.mRecording.finish();
+        this.stopStallWatchdog();
+        this.stopStatsReporter();
+        this.stopSnapshotRefresh();
+        this.mHandover.stopMonitor();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            this.abandonAudioFocus();
+        } else {
+            this.mAudioManager.abandonAudioFocus(this.audioFocusChangeListener);
+        }
+
+        this.scheduleIdleRelease(this.mSoftStopTimeout);
+    }
+
+    /**
+     * Stop or release the player, according to the soft stop setting
+     */
+    private void stopPlayer() {
+        this.mNeighborPool.releaseAll();
+
+        // a soft stopped player is detached from the network, it can't keep recording the time-shift
+        if (this.mSoftStop && this.mRadioPlayer != null && !this.mTimeShift.isRecording()) {
+            this.softStopPlayer();
+        } else {
+            this.releasePlayer();
+        }
+    }
+
+    /**
+     * Release the player after the given delay, unless it's played before
+     *
+     * @param delayMs
+     */
+    private void scheduleIdleRelease(int delayMs) {
+        Handler handler = this.mHandler;
+        handler.removeCallbacks(this.idleReleaseRunnable);
+        handler.postDelayed(this.idleReleaseRunnable, delayMs);
+    }
+
+    private void cancelIdleRelease() {
+        this.mHandler.removeCallbacks(this.idleReleaseRunnable);
+    }
+
+    private Runnable idleReleaseRunnable = new Runnable() {
+        public void run() {
+            if (
+                RadioSession.this.mRadioPlayer == null
+                || RadioSession.this.mStateMachine.is(PlaybackState.PLAYING)
+                || RadioSession.this.mStateMachine.is(PlaybackState.STOPPED_FOCUS_TRANSIENT)
+            ) {
+                return;
+            }
+
+            RadioSession.this.log("Idle timeout reached, releasing player");
+            RadioSession.this.releasePlayer();
+        }
+    };
+
+    private void startStallWatchdog() {
+        this.stopStallWatchdog();
+
+        if (this.mStallTimeout > 0) {
+            this.mHandler.postDelayed(this.stallWatchdogRunnable, this.getStallCheckInterval());
+        }
+    }
+
+    private void stopStallWatchdog() {
+        this.mHandler.removeCallbacks(this.stallWatchdogRunnable);
+
+        this.mStallStartedAt = 0;
+        this.mStallLastPosition = C.TIME_UNSET;
+        this.mStalled = false;
+    }
+
+    private int getStallCheckInterval() {
+        return Math.max(Math.min(STALL_CHECK_INTERVAL_MS, this.mStallTimeout / 2), 100);
+    }
+
+    /**
+     * Check if the playback is buffering or not advancing for longer than the stall timeout,
+     * if so, re-initialize the stream at the live edge
+     */
+    private Runnable stallWatchdogRunnable = new Runnable() {
+        public void run() {
+            ExoPlayer player = RadioSession.this.mRadioPlayer;
+
+            if (player == null) {
+                return;
+            }
+
+            long position = player.getCurrentPosition();
+            boolean advancing = player.getPlaybackState() == ExoPlayer.STATE_READY
+                && player.getPlayWhenReady()
+                && position != RadioSession.this.mStallLastPosition;
+
+            RadioSession.this.mStallLastPosition = position;
+
+            if (!RadioSession.this.mStateMachine.is(PlaybackState.PLAYING) || advancing) {
+                RadioSession.this.mStallStartedAt = 0;
+
+                if (RadioSession.this.mStalled && advancing) {
+                    RadioSession.this.log("STALL RECOVERED.");
+                    RadioSession.this.mStalled = false;
+                    RadioSession.this.notifyRadioRecovered();
+                }
+            } else {
+                long now = SystemClock.elapsedRealtime();
+
+                if (RadioSession.this.mStallStartedAt == 0) {
+                    RadioSession.this.mStallStartedAt = now;
+                } else if (now - RadioSession.this.mStallStartedAt >= RadioSession.this.mStallTimeout) {
+                    RadioSession.this.log("STALLED, RE-INITIALIZING AT THE LIVE EDGE..");
+                    RadioSession.this.mStatsCollector.onInterrupted(RadioSession.this.mStallStartedAt);
+
+                    // only retry again after another timeout
+                    RadioSession.this.mStallStartedAt = now;
+
+                    if (!RadioSession.this.mStalled) {
+                        RadioSession.this.mStalled = true;
+                        RadioSession.this.notifyRadioStalled();
+                    }
+
+                    // replacing the media item resets the position to the live edge without going through STATE_IDLE
+                    player.setMediaItem(RadioSession.this.buildMediaItem());
+                    player.prepare();
+                }
+            }
+
+            RadioSession.this.mHandler.postDelayed(this, RadioSession.this.getStallCheckInterval());
+        }
+    };
+
+    /**
+     * Merge the received metadata and schedule its notification,
+     * updates are throttled by the metadata interval and duplicates are skipped
+     *
+     * @param metadata
+     */
+    private void onMetadataReceived(Metadata metadata) {
+        StreamMetadata previous = this.mMetadata;
+        this.mMetadata = this.mMetadata.merge(metadata);
+
+        if (!previous.isEmpty() && !this.mMetadata.equals(previous)) {
+            // track change, a ready candidate player is switched between the tracks
+            this.mHandover.onTrackChanged();
+        }
+
+        if (this.mMetadata.equals(this.mMetadataNotified)) {
+            return;
+        }
+
+        long delay = Math.max(0, this.mMetadataNotifiedAt + this.mMetadataInterval - SystemClock.elapsedRealtime());
+
+        Handler handler = this.mHandler;
+        handler.removeCallbacks(this.metadataNotifyRunnable);
+        handler.postDelayed(this.metadataNotifyRunnable, delay);
+    }
+
+    private void resetMetadata() {
+        this.mHandler.removeCallbacks(this.metadataNotifyRunnable);
+
+        this.mMetadata = StreamMetadata.EMPTY;
+        this.mMetadataNotified = StreamMetadata.EMPTY;
+        this.mMetadataNotifiedAt = 0;
+    }
+
+    /**
+     * Notify the latest metadata, only sent if it's changed since the last notification
+     */
+    private Runnable metadataNotifyRunnable = new Runnable() {
+        public void run() {
+            StreamMetadata metadata = RadioSession.this.mMetadata;
+
+            if (metadata.isEmpty() || metadata.equals(RadioSession.this.mMetadataNotified)) {
+                return;
+            }
+
+            RadioSession.this.mMetadataNotified = metadata;
+            RadioSession.this.mMetadataNotifiedAt = SystemClock.elapsedRealtime();
+            RadioSession.this.notifyRadioMetadata(metadata.toJSON());
+        }
+    };
+
+    /**
+     * Re-open the stream on the new network while the current buffer keeps playing,
+     * a pending retry runs right away instead
+     */
+    private void startNetworkHandover() {
+        if (this.mRetryPending) {
+            this.log("Network changed, retrying now");
+            this.mHandler.removeCallbacks(this.retryRunnable);
+            this.mHandler.post(this.retryRunnable);
+            return;
+        }
+
+        if (this.mTimeShift.isRecording()) {
+            // the player reads from the buffer, only the recorder connection is affected
+            this.mTimeShift.reconnectNow();
+            return;
+        }
+
+        this.mHandover.startNetworkHandover();
+    }
+
+    private void startStatsReporter() {
+        this.stopStatsReporter();
+
+        if (this.mStatsInterval > 0) {
+            this.mHandler.postDelayed(this.statsReporterRunnable, this.mStatsInterval);
+        }
+    }
+
+    private void stopStatsReporter() {
+        this.mHandler.removeCallbacks(this.statsReporterRunnable);
+    }
+
+    private void startSnapshotRefresh() {
+        this.stopSnapshotRefresh();
+        this.mHandler.postDelayed(this.snapshotRefreshRunnable, SNAPSHOT_REFRESH_MS);
+    }
+
+    private void stopSnapshotRefresh() {
+        this.mHandler.removeCallbacks(this.snapshotRefreshRunnable);
+    }
+
+    /**
+     * Periodically publish the buffered duration and the live offset while there's a player
+     */
+    private Runnable snapshotRefreshRunnable = new Runnable() {
+        public void run() {
+            if (RadioSession.this.mRadioPlayer == null) {
+                return;
+            }
+
+            RadioSession.this.publishSnapshot();
+            RadioSession.this.mHandler.postDelayed(this, SNAPSHOT_REFRESH_MS);
+        }
+    };
+
+    /**
+     * Publish a snapshot of the current state, the player is only read on the playback thread,
+     * from the other threads the buffered duration and live offset of the previous snapshot are kept
+     */
+    private void publishSnapshot() {
+        ExoPlayer player = this.mRadioPlayer;
+        boolean readPlayer = this.isPlaybackThread();
+        long bufferedMs = 0;
+        long liveOffsetMs = -1;
+
+        if (readPlayer && player != null) {
+            long liveOffset = player.getCurrentLiveOffset();
+
+            bufferedMs = player.getTotalBufferedDuration();
+            liveOffsetMs = liveOffset == C.TIME_UNSET ? -1 : liveOffset;
+        }
+
+        StateSnapshot previous;
+        StateSnapshot next;
+
+        do {
+            previous = this.mSnapshot.get();
+            next = previous.withPlayback(
+                this.mStateMachine.getState(),
+                this.mRadioUrl,
+                this.mRadioStreamType,
+                readPlayer ? bufferedMs : previous.bufferedMs,
+                readPlayer ? liveOffsetMs : previous.liveOffsetMs
+            );
+        } while (!this.mSnapshot.compareAndSet(previous, next));
+    }
+
+    /**
+     * Published by the manager on the service connection changes
+     *
+     * @param connection
+     */
+    public void setConnectionState(ConnectionState connection) {
+        StateSnapshot previous;
+
+        do {
+            previous = this.mSnapshot.get();
+        } while (!this.mSnapshot.compareAndSet(previous, previous.withConnection(connection)));
+    }
+
+    private void publishError(JSONObject error) {
+        StateSnapshot previous;
+
+        do {
+            previous = this.mSnapshot.get();
+        } while (!this.mSnapshot.compareAndSet(previous, previous.withError(error)));
+    }
+
+    /**
+     * Periodically notify the playback metrics while there's a player
+     */
+    private Runnable statsReporterRunnable = new Runnable() {
+        public void run() {
+            if (RadioSession.this.mRadioPlayer == null) {
+                return;
+            }
+
+            RadioSession.this.notifyRadioStats(RadioSession.this.getStats());
+            RadioSession.this.mHandler.postDelayed(this, RadioSession.this.mStatsInterval);
+        }
+    };
+
+    /**
+     * Retry the failed playback if allowed by the retry policy, otherwise release the player and notify the error
+     *
+     * @param category
+     * @param errorCode playback error code, -1 if the playback ended without an error
+     * @param errorName
+     */
+    private void onPlaybackFailed(RetryPolicy.ErrorCategory category, int errorCode, String errorName) {
+        this.mHandler.removeCallbacks(this.retryResetRunnable);
+
+        if (
+            !this.mNetworkAvailable
+            && (category == RetryPolicy.ErrorCategory.NETWORK_IO || category == RetryPolicy.ErrorCategory.SOURCE_ENDED)
+        ) {
+            this.waitNetwork(category, errorCode, errorName);
+            return;
+        }
+
+        if (this.failoverMirror(category)) {
+            return;
+        }
+
+        long delay = this.mRetryPolicy.getRetryDelayMs(category, this.mRetryAttempt + 1);
+
+        if (delay < 0) {
+            this.log("ERROR OCCURED. " + errorName + " (" + category + ") after " + this.mRetryAttempt + " retries");
+
+            final JSONObject error = new JSONBuilder()
+                .put("code", errorCode)
+                .put("name", errorName)
+                .put("category", category.name())
+                .put("attempts", this.mRetryAttempt)
+                .build();
+
+            this.mHandler.post(new Runnable() {
+                public void run() {
+                    RadioSession.this.releasePlayer();
+                    RadioSession.this.notifyErrorOccured(error);
+                }
+            });
+
+            return;
+        }
+
+        this.mRetryAttempt++;
+        this.mRetryPending = true;
+
+        if (this.mHandover.isAdaptive()) {
+            // retry on the mount the playback is on, not the one it started with
+            this.setPlaybackUrl(this.mHandover.getCurrentMountUrl());
+        } else if (this.mMirrors.size() > 1) {
+            // all the mirrors failed, the retry starts again from the best one
+            this.mFailedMirrors.clear();
+            this.setPlaybackUrl(this.mMirrorHistory.rank(this.mMirrors).get(0));
+        }
+
+        this.stopStallWatchdog();
+        this.mStatsCollector.onReconnect();
+
+        this.log("RECONNECTING IN " + delay + "ms. " + errorName + " (" + category + "), attempt " + this.mRetryAttempt);
+
+        JSONObject reconnect = new JSONBuilder()
+            .put("attempt", this.mRetryAttempt)
+            .put("delay", delay)
+            .put("code", errorCode)
+            .put("name", errorName)
+            .put("category", category.name())
+            .build();
+
+        this.notifyRadioReconnecting(reconnect);
+        this.mHandler.postDelayed(this.retryRunnable, delay);
+    }
+
+    /**
+     * Keep the failed player waiting the network to return, without consuming the retry attempts,
+     * the retry runs as soon as a network is available
+     *
+     * @param category
+     * @param errorCode
+     * @param errorName
+     */
+    private void waitNetwork(RetryPolicy.ErrorCategory category, int errorCode, String errorName) {
+        this.mRetryPending = true;
+        this.stopStallWatchdog();
+        this.mStatsCollector.onReconnect();
+
+        this.log("NO NETWORK, WAITING TO RECONNECT. " + errorName + " (" + category + ")");
+
+        JSONObject reconnect = new JSONBuilder()
+            .put("attempt", this.mRetryAttempt)
+            .put("delay", -1)
+            .put("code", errorCode)
+            .put("name", errorName)
+            .put("category", category.name())
+            .put("waitingNetwork", true)
+            .build();
+
+        this.notifyRadioReconnecting(reconnect);
+
+        // the network may have returned while the error was being delivered
+        if (this.mNetworkAvailable) {
+            this.mHandler.post(this.retryRunnable);
+        }
+    }
+
+    /**
+     * Switch the failed player to the next mirror not failed yet, without notifying
+     *
+     * @param category
+     * @return if switched
+     */
+    private boolean failoverMirror(RetryPolicy.ErrorCategory category) {
+        if (
+            this.mMirrors.size() < 2
+            || this.mHandover.isAdaptive()
+            || this.mRadioPlayer == null
+            || this.mTimeShift.isRecording()
+            || category == RetryPolicy.ErrorCategory.OTHER
+        ) {
+            return false;
+        }
+
+        this.mMirrorHistory.recordFailure(this.mRadioUrl);
+        this.mFailedMirrors.add(this.mRadioUrl);
+
+        for (String url : this.mMirrorHistory.rank(this.mMirrors)) {
+            if (this.mFailedMirrors.contains(url)) {
+                continue;
+            }
+
+            this.log("FAILING OVER TO MIRROR " + url + ", " + category);
+
+            this.setPlaybackUrl(url);
+            this.mRetryPending = true;
+            this.stopStallWatchdog();
+            this.mStatsCollector.onInterrupted(SystemClock.elapsedRealtime());
+            this.mHandler.post(this.retryRunnable);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Change the url being played (mirror, mount or handover), keeping the mirror list, and publish it
+     *
+     * @param url
+     */
+    private void setPlaybackUrl(String url) {
+        this.mRadioUrl = url;
+        this.publishSnapshot();
+    }
+
+    private void startMirrorRace() {
+        this.cancelMirrorRace();
+
+        this.mMirrorRace = new MirrorRace(
+            this.mHandler,
+            this.mMirrorHistory.rank(this.mMirrors),
+            MIRROR_RACE_PARALLEL,
+            this.mMirrorHistory,
+            this.mirrorRaceCallback
+        );
+
+        this.mMirrorRace.start();
+    }
+
+    private void cancelMirrorRace() {
+        if (this.mMirrorRace != null) {
+            this.mMirrorRace.cancel();
+            this.mMirrorRace = null;
+        }
+    }
+
+    /**
+     * Adopt the player of a mirror as the session player
+     *
+     * @param url
+     * @param player
+     */
+    private void adoptPlayer(String url, ExoPlayer player) {
+        this.mMirrorRace = null;
+        this.setPlaybackUrl(url);
+        this.mRadioPlayer = player;
+        this.mPlayerBufferProfile = this.mBufferProfile;
+
+        player.addListener(this.playerEventListener);
+        player.addAnalyticsListener(this.mStatsCollector);
+    }
+
+    private MirrorRace.Callback mirrorRaceCallback = new MirrorRace.Callback() {
+        @Override
+        public ExoPlayer buildRacePlayer(String url) {
+            RadioSession.this.log("Racing mirror " + url);
+
+            ExoPlayer player = RadioSession.this.buildPlayer(
+                url,
+                RadioSession.this.mBufferProfile.buildLoadControl(RadioSession.this.mTargetBufferBytes / MIRROR_RACE_PARALLEL),
+                RadioSession.this.mStatsCollector,
+                true
+            );
+
+            player.setVolume(0f);
+            player.setPlayWhenReady(false);
+
+            return player;
+        }
+
+        @Override
+        public void onRaceWon(String url, ExoPlayer player) {
+            RadioSession.this.log("Mirror race won by " + url);
+            RadioSession.this.adoptPlayer(url, player);
+            RadioSession.this.startPlayer(player);
+        }
+
+        @Override
+        public void onRaceLost(String url, ExoPlayer player, PlaybackException error) {
+            RadioSession.this.log("All mirrors failed");
+            RadioSession.this.adoptPlayer(url, player);
+            RadioSession.this.mFailedMirrors.addAll(RadioSession.this.mMirrors);
+
+            player.setVolume(1f);
+            RadioSession.this.startStatsReporter();
+
+            RadioSession.this.onPlaybackFailed(
+                RetryPolicy.ErrorCategory.fromException(error),
+                error.errorCode,
+                error.getErrorCodeName()
+            );
+        }
+    };
+
+    private void cancelRetry() {
+        this.mHandler.removeCallbacks(this.retryRunnable);
+        this.mHandler.removeCallbacks(this.retryResetRunnable);
+        this.mRetryPending = false;
+    }
+
+    /**
+     * Reconnect the existing player, replacing the media item so it restarts at the live edge
+     */
+    private Runnable retryRunnable = new Runnable() {
+        public void run() {
+            ExoPlayer player = RadioSession.this.mRadioPlayer;
+
+            if (!RadioSession.this.mRetryPending || player == null) {
+                return;
+            }
+
+            if (!RadioSession.this.mNetworkAvailable) {
+                // paused until a network returns, see startNetworkHandover
+                RadioSession.this.log("Retry paused, no network");
+                return;
+            }
+
+            RadioSession.this.mRetryPending = false;
+
+            player.setMediaItem(RadioSession.this.buildMediaItem());
+            player.prepare();
+            player.setPlayWhenReady(true);
+
+            RadioSession.this.startStallWatchdog();
+        }
+    };
+
+    /**
+     * The playback kept working after a retry, the next failure starts a new backoff sequence
+     */
+    private Runnable retryResetRunnable = new Runnable() {
+        public void run() {
+            RadioSession.this.log("Playback recovered after " + RadioSession.this.mRetryAttempt + " retries");
+            RadioSession.this.mRetryAttempt = 0;
+            RadioSession.this.mFailedMirrors.clear();
+        }
+    };
+
+    private ExoPlayer.Listener playerEventListener = new ExoPlayer.Listener() {
+        @Override
+        public void onPlaybackParametersChanged(PlaybackParameters playbackParameters) {
+            RadioSession.this.log("Playback parameters changed");
+        }
+
+        @Override
+        public void onMetadata(Metadata metadata) {
+            // ICY info (StreamTitle) and ID3 frames of the stream
+            RadioSession.this.onMetadataReceived(metadata);
+        }
+
+        @Override
+        public void onTracksChanged(Tracks tracks) {
+            // ICY headers (station name, genre) are part of the track format
+            for (Tracks.Group group : tracks.getGroups()) {
+                for (int i = 0; i < group.length; i++) {
+                    Metadata metadata = group.getTrackFormat(i).metadata;
+
+                    if (metadata != null) {
+                        RadioSession.this.onMetadataReceived(metadata);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onPlayerError(PlaybackException error) {
+            if (error.errorCode == PlaybackException.ERROR_CODE_BEHIND_LIVE_WINDOW) {
+                RadioSession.this.log("FELL BEHIND, RE-INITIALIZING AT THE LIVE EDGE..");
+                RadioSession.this.mStatsCollector.onInterrupted(SystemClock.elapsedRealtime());
+
+                RadioSession.this.mHandler.post(new Runnable() {
+                    public void run() {
+                        ExoPlayer player = RadioSession.this.getPlayer();
+
+                        player.seekToDefaultPosition();
+                        player.prepare();
+                    }
+                });
+            } else if (RadioSession.this.mTimeShift.isPaused()) {
+                // the player is idle until resumed, the resume continues from the paused position
+                RadioSession.this.log("ERROR OCCURED WHILE PAUSED. " + error.getErrorCodeName());
+            } else if (RadioSession.this.mPlayerWarm) {
+                // nobody requested to play yet, only discard the warm player, the error will be notified if it happens again on play
+                RadioSession.this.log("ERROR OCCURED ON PRE-WARM.");
+
+                RadioSession.this.mHandler.post(new Runnable() {
+                    public void run() {
+                        if (RadioSession.this.mPlayerWarm) {
+                            RadioSession.this.releasePlayer();
+                        }
+                    }
+                });
+            } else {
+                RadioSession.this.onPlaybackFailed(
+                    RetryPolicy.ErrorCategory.fromException(error),
+                    error.errorCode,
+                    error.getErrorCodeName()
+                );
+            }
+        }
+
+        @Override
+        public void onPlaybackStateChanged(int playbackState) {
+            RadioSession.this.mPlaybackController.onPlaybackStateChanged(playbackState);
+        }
+
+        @Override
+        public void onPlayWhenReadyChanged(boolean playWhenReady, int reason) {
+            RadioSession.this.mPlaybackController.onPlayWhenReadyChanged(
+                playWhenReady,
+                reason == ExoPlayer.PLAY_WHEN_READY_CHANGE_REASON_USER_REQUEST
+            );
+        }
+    };
+
+    private AudioManager.OnAudioFocusChangeListener audioFocusChangeListener = new AudioManager.OnAudioFocusChangeListener() {
+        public void onAudioFocusChange(int focusChange) {
+            if (focusChange == AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK) {
+                RadioSession.this.mPlaybackController.onFocusChange(PlaybackController.Focus.LOSS_TRANSIENT_CAN_DUCK);
+            } else if (focusChange == AudioManager.AUDIOFOCUS_GAIN) {
+                RadioSession.this.mPlaybackController.onFocusChange(PlaybackController.Focus.GAIN);
+            } else if (focusChange == AudioManager.AUDIOFOCUS_LOSS_TRANSIENT) {
+                RadioSession.this.mPlaybackController.onFocusChange(PlaybackController.Focus.LOSS_TRANSIENT);
+            } else if (focusChange == AudioManager.AUDIOFOCUS_LOSS) {
+                RadioSession.this.mPlaybackController.onFocusChange(PlaybackController.Focus.LOSS);
+            }
+        }
+    };
+
+    /**
+     * Session side of the playback state handling
+     */
+    private final PlaybackController mPlaybackController = new PlaybackController(
+        this.mStateMachine,
+        new PlaybackController.Host() {
+            @Override
+            public StreamPlayer getPlayer() {
+                ExoPlayer player = RadioSession.this.mRadioPlayer;
+                return player == null ? null : new ExoStreamPlayer(player);
+            }
+
+            @Override
+            public boolean isRetryPending() {
+                return RadioSession.this.mRetryPending;
+            }
+
+            @Override
+            public boolean isRecording() {
+                return RadioSession.this.mRecording.isRecording();
+            }
+
+            @Override
+            public void post(Runnable runnable) {
+                RadioSession.this.mHandler.post(runnable);
+            }
+
+            @Override
+            public void stop() {
+                RadioSession.this.stop();
+            }
+
+            @Override
+            public void stopPlayer() {
+                RadioSession.this.stopPlayer();
+            }
+
+            @Override
+            public void onSourceEnded() {
+                RadioSession.this.onPlaybackFailed(RetryPolicy.ErrorCategory.SOURCE_ENDED, -1, "SOURCE_ENDED");
+            }
+
+            @Override
+            public void onReady() {
+                if (RadioSession.this.mRetryAttempt > 0 || !RadioSession.this.mFailedMirrors.isEmpty()) {
+                    Handler handler = RadioSession.this.mHandler;
+                    handler.removeCallbacks(RadioSession.this.retryResetRunnable);
+                    handler.postDelayed(RadioSession.this.retryResetRunnable, RETRY_RESET_MS);
+                }
+            }
+
+            @Override
+            public void notifyRadioStarted() {
+                RadioSession.this.notifyRadioStarted();
+            }
+
+            @Override
+            public void notifyRadioStopped() {
+                RadioSession.this.notifyRadioStopped();
+            }
+
+            @Override
+            public void notifyRadioStartedFocusTransient() {
+                RadioSession.this.notifyRadioStartedFocusTransient();
+            }
+
+            @Override
+            public void notifyRadioStoppedFocusTransient() {
+                RadioSession.this.notifyRadioStoppedFocusTransient();
+            }
+
+            @Override
+            public void notifyRadioStoppedFocusLoss() {
+                RadioSession.this.notifyRadioStoppedFocusLoss();
+            }
+
+            @Override
+            public void log(String log) {
+                RadioSession.this.log(log);
+            }
+        }
+    );
+
+    private AlarmController.Host alarmHost = new AlarmController.Host() {
+        @Override
+        public ExoPlayer getPlayer() {
+            return RadioSession.this.mRadioPlayer;
+        }
+
+        @Override
+        public List<String> getStreamURLs() {
+            return RadioSession.this.mMirrors;
+        }
+
+        @Override
+        public boolean isRetryPending() {
+            return RadioSession.this.mRetryPending;
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return RadioSession.this.isPlaying();
+        }
+
+        @Override
+        public boolean isPlayerWarm() {
+            return RadioSession.this.mPlayerWarm;
+        }
+
+        @Override
+        public void warmPlayer(int timeoutMs) {
+            if (RadioSession.this.mRadioPlayer != null || RadioSession.this.mRadioUrl == null) {
+                return;
+            }
+
+            if (RadioSession.this.mRadioStreamType != AudioManager.STREAM_ALARM) {
+                // built with the alarm usage, the focus request is recreated with it on play
+                RadioSession.this.mRadioStreamType = AudioManager.STREAM_ALARM;
+                RadioSession.this.mAudioAttributes = null;
+                RadioSession.this.mAudioFocusRequest = null;
+            }
+
+            RadioSession.this.warmPlayer(timeoutMs);
+        }
+
+        @Override
+        public void stopPlayer() {
+            RadioSession.this.stopPlayer();
+        }
+
+        @Override
+        public void releasePlayer() {
+            RadioSession.this.releasePlayer();
+        }
+
+        @Override
+        public void notifyRadioAlarm(JSONObject alarm) {
+            RadioSession.this.notifyRadioAlarm(alarm);
+        }
+
+        @Override
+        public void log(String log) {
+            RadioSession.this.log(log);
+        }
+    };
+
+    private TimeShiftController.Host timeShiftHost = new TimeShiftController.Host() {
+        @Override
+        public ExoPlayer getPlayer() {
+            return RadioSession.this.mRadioPlayer;
+        }
+
+        @Override
+        public BufferProfile getPlayerBufferProfile() {
+            return RadioSession.this.mPlayerBufferProfile;
+        }
+
+        @Override
+        public void log(String log) {
+            RadioSession.this.log(log);
+        }
+    };
+
+    private RecordingController.Host recordingHost = new RecordingController.Host() {
+        @Override
+        public void runOnPlaybackThread(Runnable runnable) {
+            RadioSession.this.runOnPlaybackThread(runnable);
+        }
+
+        @Override
+        public void notifyRadioRecording(JSONObject recording) {
+            RadioSession.this.notifyRadioRecording(recording);
+        }
+
+        @Override
+        public void log(String log) {
+            RadioSession.this.log(log);
+        }
+    };
+
+    private HandoverController.Host handoverHost = new HandoverController.Host() {
+        @Override
+        public ExoPlayer getPlayer() {
+            return RadioSession.this.mRadioPlayer;
+        }
+
+        @Override
+        public BufferProfile getPlayerBufferProfile() {
+            return RadioSession.this.mPlayerBufferProfile;
+        }
+
+        @Override
+        public String getPlaybackUrl() {
+            return RadioSession.this.mRadioUrl;
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return RadioSession.this.isPlaying();
+        }
+
+        @Override
+        public boolean isRetryPending() {
+            return RadioSession.this.mRetryPending;
+        }
+
+        @Override
+        public boolean isRecording() {
+            return RadioSession.this.mRecording.isRecording() || RadioSession.this.mTimeShift.isRecording();
+        }
+
+        @Override
+        public ExoPlayer buildCandidatePlayer(String url) {
+            // shares the budget with the current player while both are buffering
+            ExoPlayer player = RadioSession.this.buildPlayer(
+                url,
+                RadioSession.this.mBufferProfile.buildLoadControl(RadioSession.this.mTargetBufferBytes / 2),
+                null,
+                true
+            );
+
+            player.setVolume(0f);
+            player.setPlayWhenReady(false);
+
+            return player;
+        }
+
+        @Override
+        public void replacePlayer(String url, ExoPlayer player) {
+            ExoPlayer previous = RadioSession.this.mRadioPlayer;
+            // the volume is kept, the outgoing player may be ducked or in the middle of the alarm ramp
+            float volume = previous.getVolume();
+
+            previous.removeListener(RadioSession.this.playerEventListener);
+            previous.removeAnalyticsListener(RadioSession.this.mStatsCollector);
+            previous.release();
+
+            player.addListener(RadioSession.this.playerEventListener);
+            player.addAnalyticsListener(RadioSession.this.mStatsCollector);
+
+            RadioSession.this.mRadioPlayer = player;
+            RadioSession.this.mPlayerBufferProfile = RadioSession.this.mBufferProfile;
+            RadioSession.this.setPlaybackUrl(url);
+
+            player.setVolume(volume);
+            player.setPlayWhenReady(true);
+
+            RadioSession.this.startStallWatchdog();
+        }
+
+        @Override
+        public void setStreamURL(String url) {
+            RadioSession.this.setStreamURL(url);
+        }
+
+        @Override
+        public void notifyRadioBitrateChanged(JSONObject change) {
+            RadioSession.this.notifyRadioBitrateChanged(change);
+        }
+
+        @Override
+        public void log(String log) {
+            RadioSession.this.log(log);
+        }
+    };
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private int requestAudioFocus(boolean recreateAttribute) {
+        if (this.mAudioAttributes == null || recreateAttribute) {
+            int audioUsageType = this.mRadioStreamType == AudioManager.STREAM_ALARM
+                ? C.USAGE_ALARM
+                : C.USAGE_MEDIA;
+
+            this.mAudioAttributes = new android.media.AudioAttributes.Builder()
+                .setUsage(audioUsageType)
+                .setContentType(C.AUDIO_CONTENT_TYPE_MUSIC)
+                .build();
+        }
+
+        if (this.mAudioFocusRequest == null || recreateAttribute) {
+            this.mAudioFocusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN)
+                .setAudioAttributes(this.mAudioAttributes)
+                .setAcceptsDelayedFocusGain(false)
+                .setOnAudioFocusChangeListener(this.audioFocusChangeListener)
+                .build();
+        }
+
+        return this.mAudioManager.requestAudioFocus(this.mAudioFocusRequest);
+
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private int abandonAudioFocus() {
+        if (this.mAudioFocusRequest != null) {
+            return this.mAudioManager.abandonAudioFocusRequest(this.mAudioFocusRequest);
+        }
+
+        return AudioManager.AUDIOFOCUS_REQUEST_FAILED;
+    }
+
+    /**
+     * Logger
+     *
+     * @param log
+     */
+    private void log(String log) {
+        Log.v(LOG_TAG, "RadioSession #" + this.mId + " : " + log);
+    }
+}
@@ -0,0 +1,244 @@
+package com.eltonfaust.multiplayer;
+
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.Format;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.Player;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.exoplayer.DecoderReuseEvaluation;
+import androidx.media3.exoplayer.analytics.AnalyticsListener;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Playback quality metrics of the current play session (from the play request until the next one)
+ */
+public class RadioStatsCollector implements AnalyticsListener, TransferListener {
+    // Max error codes kept per session
+    private static final int MAX_ERRORS = 20;
+
+    /**
+     * When the play was requested (elapsed realtime), 0 if no session was started
+     */
+    private long sessionStartedAt = 0;
+
+    /**
+     * Time from the play request until the audio started, -1 while not started
+     */
+    private long timeToFirstAudioMs = -1;
+
+    /**
+     * If the audio played at least once on this session, buffering after it is counted as rebuffer
+     */
+    private boolean playedOnce = false;
+
+    private int rebufferCount = 0;
+    private long rebufferTimeMs = 0;
+
+    /**
+     * When the current rebuffer started (elapsed realtime), 0 if not rebuffering
+     */
+    private long rebufferStartedAt = 0;
+
+    private int recoveryCount = 0;
+    private long recoveryTimeMs = 0;
+
+    /**
+     * When the playback was interrupted by a failure or stall (elapsed realtime), 0 if not interrupted
+     */
+    private long interruptedAt = 0;
+
+    private long bytesLoaded = 0;
+
+    /**
+     * When the first network byte was received (elapsed realtime)
+     */
+    private long firstByteAt = 0;
+
+    private long bandwidthEstimate = 0;
+    private int audioUnderruns = 0;
+    private int reconnectCount = 0;
+
+    @Nullable
+    private Format audioFormat = null;
+
+    private List<JSONObject> errors = new ArrayList<JSONObject>();
+
+    /**
+     * Reset the metrics and start a new session, called on every play request
+     */
+    public synchronized void startSession() {
+        this.sessionStartedAt = SystemClock.elapsedRealtime();
+        this.timeToFirstAudioMs = -1;
+        this.playedOnce = false;
+        this.rebufferCount = 0;
+        this.rebufferTimeMs = 0;
+        this.rebufferStartedAt = 0;
+        this.recoveryCount = 0;
+        this.recoveryTimeMs = 0;
+        this.interruptedAt = 0;
+        this.bytesLoaded = 0;
+        this.firstByteAt = 0;
+        this.audioUnderruns = 0;
+        this.reconnectCount = 0;
+        this.errors = new ArrayList<JSONObject>();
+    }
+
+    /**
+     * Current metrics
+     *
+     * @return JSONObject
+     */
+    public synchronized JSONObject toJSON() {
+        long now = SystemClock.elapsedRealtime();
+        JSONObject format = null;
+
+        if (this.audioFormat != null) {
+            format = new JSONBuilder()
+                .put("mimeType", this.audioFormat.sampleMimeType)
+                .put("codecs", this.audioFormat.codecs)
+                .put("bitrate", this.audioFormat.bitrate)
+                .put("sampleRate", this.audioFormat.sampleRate)
+                .put("channelCount", this.audioFormat.channelCount)
+                .build();
+        }
+
+        // the audio format is left out until known
+        return new JSONBuilder()
+            .put("sessionDurationMs", this.sessionStartedAt == 0 ? 0 : now - this.sessionStartedAt)
+            .put("timeToFirstAudioMs", this.timeToFirstAudioMs)
+            .put("rebufferCount", this.rebufferCount)
+            .put("rebufferTimeMs", this.rebufferTimeMs + (this.rebufferStartedAt == 0 ? 0 : now - this.rebufferStartedAt))
+            .put("recoveryCount", this.recoveryCount)
+            .put("recoveryTimeMs", this.recoveryTimeMs)
+            .put("bytesLoaded", this.bytesLoaded)
+            .put("throughput", this.firstByteAt == 0 || now == this.firstByteAt ? 0 : this.bytesLoaded * 8000 / (now - this.firstByteAt))
+            .put("bandwidthEstimate", this.bandwidthEstimate)
+            .put("audioUnderruns", this.audioUnderruns)
+            .put("reconnectCount", this.reconnectCount)
+            .put("errors", new JSONArray(this.errors))
+            .put("audioFormat", format)
+            .build();
+    }
+
+    /**
+     * A failed playback is being retried
+     */
+    public synchronized void onReconnect() {
+        this.reconnectCount++;
+        this.onInterrupted(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * The playback was interrupted by a failure or stall, the recovery lasts until the audio plays again,
+     * failures before the first audio are part of the startup
+     *
+     * @param at when the playback stopped (elapsed realtime)
+     */
+    public synchronized void onInterrupted(long at) {
+        if (this.timeToFirstAudioMs != -1 && this.interruptedAt == 0) {
+            this.interruptedAt = at;
+        }
+    }
+
+    @Override
+    public synchronized void onIsPlayingChanged(EventTime eventTime, boolean isPlaying) {
+        if (!isPlaying || this.sessionStartedAt == 0) {
+            return;
+        }
+
+        if (this.timeToFirstAudioMs == -1) {
+            this.timeToFirstAudioMs = eventTime.realtimeMs - this.sessionStartedAt;
+        }
+
+        if (this.interruptedAt != 0) {
+            this.recoveryCount++;
+            this.recoveryTimeMs += eventTime.realtimeMs - this.interruptedAt;
+            this.interruptedAt = 0;
+        }
+
+        this.playedOnce = true;
+    }
+
+    @Override
+    public synchronized void onPlaybackStateChanged(EventTime eventTime, @Player.State int state) {
+        if (state == Player.STATE_BUFFERING) {
+            if (this.playedOnce && this.rebufferStartedAt == 0) {
+                this.rebufferCount++;
+                this.rebufferStartedAt = eventTime.realtimeMs;
+            }
+        } else if (this.rebufferStartedAt != 0) {
+            this.rebufferTimeMs += eventTime.realtimeMs - this.rebufferStartedAt;
+            this.rebufferStartedAt = 0;
+        }
+
+        // a stop ends the current playback, buffering on the next prepare is a new start, not a rebuffer
+        if (state == Player.STATE_IDLE) {
+            this.playedOnce = false;
+        }
+    }
+
+    @Override
+    public synchronized void onAudioInputFormatChanged(
+        EventTime eventTime,
+        Format format,
+        @Nullable DecoderReuseEvaluation decoderReuseEvaluation
+    ) {
+        this.audioFormat = format;
+    }
+
+    @Override
+    public synchronized void onAudioUnderrun(EventTime eventTime, int bufferSize, long bufferSizeMs, long elapsedSinceLastFeedMs) {
+        this.audioUnderruns++;
+    }
+
+    @Override
+    public synchronized void onBandwidthEstimate(EventTime eventTime, int totalLoadTimeMs, long totalBytesLoaded, long bitrateEstimate) {
+        this.bandwidthEstimate = bitrateEstimate;
+    }
+
+    @Override
+    public synchronized void onPlayerError(EventTime eventTime, PlaybackException error) {
+        if (this.errors.size() >= MAX_ERRORS) {
+            return;
+        }
+
+        this.errors.add(new JSONBuilder()
+            .put("code", error.errorCode)
+            .put("name", error.getErrorCodeName())
+            .build());
+    }
+
+    @Override
+    public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    }
+
+    @Override
+    public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    }
+
+    @Override
+    public synchronized void onBytesTransferred(DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+        if (!isNetwork) {
+            return;
+        }
+
+        if (this.firstByteAt == 0) {
+            this.firstByteAt = SystemClock.elapsedRealtime();
+        }
+
+        this.bytesLoaded += bytesTransferred;
+    }
+
+    @Override
+    public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    }
+}
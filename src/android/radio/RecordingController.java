@@ -0,0 +1,161 @@
+package com.eltonfaust.multiplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Records the playing stream of a session to a file, the players tee the bytes they read to the active recorder.
+ * The recorder is read from the loading threads, the progress is notified from the session playback thread.
+ */
+public class RecordingController implements RecordingDataSource.Target {
+    // Interval of the recording progress events
+    private static final int RECORDING_PROGRESS_INTERVAL_MS = 1000;
+
+    /**
+     * Session side of the controller
+     */
+    public interface Host {
+        /**
+         * Run on the session playback thread, right away if already on it
+         * @param runnable
+         */
+        void runOnPlaybackThread(Runnable runnable);
+
+        void notifyRadioRecording(JSONObject recording);
+
+        void log(String log);
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final Host mHost;
+
+    /**
+     * Active recording of the stream, null if not recording
+     */
+    private volatile StreamRecorder mRecorder = null;
+
+    /**
+     * @param context application context, relative paths are resolved from its files folder
+     * @param handler handler of the playback thread
+     * @param host
+     */
+    public RecordingController(Context context, Handler handler, Host host) {
+        this.mContext = context;
+        this.mHandler = handler;
+        this.mHost = host;
+    }
+
+    @Override
+    public StreamRecorder getRecorder() {
+        return this.mRecorder;
+    }
+
+    public boolean isRecording() {
+        return this.mRecorder != null;
+    }
+
+    /**
+     * Start recording to the file, the session must be playing
+     *
+     * @param path absolute path, file:// uri, or path relative to the app files folder
+     * @throws IOException if the file can't be created
+     */
+    public void start(String path) throws IOException {
+        if (this.mRecorder != null) {
+            throw new IllegalStateException("ALREADY_RECORDING");
+        }
+
+        Uri uri = Uri.parse(path);
+        File file = "file".equals(uri.getScheme()) ? new File(uri.getPath()) : new File(path);
+
+        if (!file.isAbsolute()) {
+            file = new File(this.mContext.getFilesDir(), path);
+        }
+
+        this.mHost.log("Recording to " + file.getAbsolutePath());
+        this.mRecorder = new StreamRecorder(file);
+
+        this.mHost.runOnPlaybackThread(new Runnable() {
+            public void run() {
+                Handler handler = RecordingController.this.mHandler;
+                handler.removeCallbacks(RecordingController.this.progressRunnable);
+                handler.postDelayed(RecordingController.this.progressRunnable, RECORDING_PROGRESS_INTERVAL_MS);
+            }
+        });
+    }
+
+    /**
+     * Stop the recording
+     *
+     * @return JSONObject final recording progress
+     */
+    public JSONObject stop() {
+        final StreamRecorder recorder = this.mRecorder;
+
+        if (recorder == null) {
+            throw new IllegalStateException("NOT_RECORDING");
+        }
+
+        this.mHost.runOnPlaybackThread(new Runnable() {
+            public void run() {
+                // a new recording may have already started
+                if (RecordingController.this.mRecorder == recorder) {
+                    RecordingController.this.finish();
+                }
+            }
+        });
+
+        recorder.stop();
+
+        return recorder.toJSON();
+    }
+
+    /**
+     * End the active recording, if any, and notify its final progress.
+     * Called on the playback thread.
+     */
+    public void finish() {
+        StreamRecorder recorder = this.mRecorder;
+
+        this.mHandler.removeCallbacks(this.progressRunnable);
+
+        if (recorder == null) {
+            return;
+        }
+
+        this.mRecorder = null;
+        recorder.stop();
+
+        this.mHost.log("Recording stopped");
+        this.mHost.notifyRadioRecording(recorder.toJSON());
+    }
+
+    /**
+     * Periodically notify the recording progress
+     */
+    private Runnable progressRunnable = new Runnable() {
+        public void run() {
+            StreamRecorder recorder = RecordingController.this.mRecorder;
+
+            if (recorder == null) {
+                return;
+            }
+
+            if (recorder.isStopped()) {
+                // the file writing failed
+                RecordingController.this.finish();
+                return;
+            }
+
+            RecordingController.this.mHost.notifyRadioRecording(recorder.toJSON());
+            RecordingController.this.mHandler.postDelayed(this, RECORDING_PROGRESS_INTERVAL_MS);
+        }
+    };
+}
@@ -0,0 +1,178 @@
+package com.eltonfaust.multiplayer;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Passes through the network source of a player and tees the read bytes to the active recording, if any,
+ * so the recording uses the same connection of the playback.
+ * The ICY metadata blocks interleaved on the stream are removed, only the audio bytes are recorded.
+ */
+public class RecordingDataSource implements DataSource {
+    private final DataSource upstream;
+    private final Target target;
+
+    /**
+     * Audio bytes between the ICY metadata blocks, 0 if the stream has no ICY metadata
+     */
+    private int metaInterval = 0;
+
+    /**
+     * Audio bytes left until the next metadata block
+     */
+    private int audioRemaining = 0;
+
+    /**
+     * Bytes left of the current metadata block, -1 when the next byte is the block length
+     */
+    private int metaRemaining = 0;
+
+    public interface Target {
+        /**
+         * Recorder the bytes are currently teed to
+         *
+         * @return StreamRecorder, null if not recording
+         */
+        @Nullable
+        StreamRecorder getRecorder();
+    }
+
+    public static class Factory implements DataSource.Factory {
+        private final DataSource.Factory upstreamFactory;
+        private final Target target;
+
+        public Factory(DataSource.Factory upstreamFactory, Target target) {
+            this.upstreamFactory = upstreamFactory;
+            this.target = target;
+        }
+
+        @Override
+        public DataSource createDataSource() {
+            return new RecordingDataSource(this.upstreamFactory.createDataSource(), this.target);
+        }
+    }
+
+    public RecordingDataSource(DataSource upstream, Target target) {
+        this.upstream = upstream;
+        this.target = target;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+        this.upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        long length = this.upstream.open(dataSpec);
+
+        this.metaInterval = this.getMetaInterval(this.upstream.getResponseHeaders());
+        this.audioRemaining = this.metaInterval;
+        this.metaRemaining = 0;
+
+        return length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = this.upstream.read(buffer, offset, length);
+
+        if (read == C.RESULT_END_OF_INPUT) {
+            return read;
+        }
+
+        StreamRecorder recorder = this.target.getRecorder();
+
+        if (this.metaInterval == 0) {
+            if (recorder != null) {
+                recorder.write(buffer, offset, read);
+            }
+
+            return read;
+        }
+
+        // the metadata blocks must be tracked even while not recording, to know where the audio is
+        int position = offset;
+        int end = offset + read;
+
+        while (position < end) {
+            if (this.metaRemaining == -1) {
+                this.metaRemaining = (buffer[position] & 0xFF) * 16;
+                position++;
+
+                if (this.metaRemaining == 0) {
+                    this.audioRemaining = this.metaInterval;
+                }
+            } else if (this.metaRemaining > 0) {
+                int skip = Math.min(this.metaRemaining, end - position);
+
+                position += skip;
+                this.metaRemaining -= skip;
+
+                if (this.metaRemaining == 0) {
+                    this.audioRemaining = this.metaInterval;
+                }
+            } else {
+                int audio = Math.min(this.audioRemaining, end - position);
+
+                if (recorder != null) {
+                    recorder.write(buffer, position, audio);
+                }
+
+                position += audio;
+                this.audioRemaining -= audio;
+
+                if (this.audioRemaining == 0) {
+                    this.metaRemaining = -1;
+                }
+            }
+        }
+
+        return read;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return this.upstream.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return this.upstream.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.upstream.close();
+    }
+
+    private int getMetaInterval(Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (
+                header.getKey() == null
+                || !header.getKey().equalsIgnoreCase("icy-metaint")
+                || header.getValue().isEmpty()
+            ) {
+                continue;
+            }
+
+            try {
+                return Math.max(Integer.parseInt(header.getValue().get(0).trim()), 0);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.eltonfaust.multiplayer;
+
+import androidx.media3.common.PlaybackException;
+import androidx.media3.datasource.HttpDataSource;
+
+/**
+ * Decides if and when a failed playback is retried
+ */
+public interface RetryPolicy {
+    /**
+     * Error categories the retry decision is based on
+     */
+    enum ErrorCategory {
+        NETWORK_IO,
+        HTTP_4XX,
+        HTTP_5XX,
+        DECODER,
+        SOURCE_ENDED,
+        OTHER;
+
+        /**
+         * Classify a playback error
+         *
+         * @param error
+         * @return ErrorCategory
+         */
+        public static ErrorCategory fromException(PlaybackException error) {
+            switch (error.errorCode) {
+                case PlaybackException.ERROR_CODE_IO_BAD_HTTP_STATUS:
+                    if (error.getCause() instanceof HttpDataSource.InvalidResponseCodeException) {
+                        int responseCode = ((HttpDataSource.InvalidResponseCodeException) error.getCause()).responseCode;
+
+                        // timeout and rate limit responses are temporary, as server errors
+                        if (responseCode >= 500 || responseCode == 408 || responseCode == 429) {
+                            return HTTP_5XX;
+                        }
+                    }
+
+                    return HTTP_4XX;
+                case PlaybackException.ERROR_CODE_IO_FILE_NOT_FOUND:
+                case PlaybackException.ERROR_CODE_IO_NO_PERMISSION:
+                case PlaybackException.ERROR_CODE_IO_CLEARTEXT_NOT_PERMITTED:
+                case PlaybackException.ERROR_CODE_IO_INVALID_HTTP_CONTENT_TYPE:
+                    return HTTP_4XX;
+                case PlaybackException.ERROR_CODE_IO_UNSPECIFIED:
+                case PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED:
+                case PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_TIMEOUT:
+                case PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE:
+                case PlaybackException.ERROR_CODE_TIMEOUT:
+                    return NETWORK_IO;
+                case PlaybackException.ERROR_CODE_PARSING_CONTAINER_MALFORMED:
+                case PlaybackException.ERROR_CODE_PARSING_MANIFEST_MALFORMED:
+                case PlaybackException.ERROR_CODE_PARSING_CONTAINER_UNSUPPORTED:
+                case PlaybackException.ERROR_CODE_PARSING_MANIFEST_UNSUPPORTED:
+                case PlaybackException.ERROR_CODE_DECODER_INIT_FAILED:
+                case PlaybackException.ERROR_CODE_DECODER_QUERY_FAILED:
+                case PlaybackException.ERROR_CODE_DECODING_FAILED:
+                case PlaybackException.ERROR_CODE_DECODING_FORMAT_EXCEEDS_CAPABILITIES:
+                case PlaybackException.ERROR_CODE_DECODING_FORMAT_UNSUPPORTED:
+                case PlaybackException.ERROR_CODE_AUDIO_TRACK_INIT_FAILED:
+                case PlaybackException.ERROR_CODE_AUDIO_TRACK_WRITE_FAILED:
+                    return DECODER;
+                default:
+                    return OTHER;
+            }
+        }
+    }
+
+    /**
+     * Delay before the next retry
+     *
+     * @param category category of the last error
+     * @param attempt number of the retry, starting on 1, reset when the playback recovers
+     * @return delay in ms, or -1 to give up and report the error
+     */
+    long getRetryDelayMs(ErrorCategory category, int attempt);
+}
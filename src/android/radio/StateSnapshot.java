@@ -0,0 +1,85 @@
+package com.eltonfaust.multiplayer;
+
+import android.os.SystemClock;
+
+import org.json.JSONObject;
+
+/**
+ * Immutable state of a session, a new snapshot is published on every change,
+ * so the state can be read from any thread without waiting the player work
+ */
+public class StateSnapshot {
+    public static final StateSnapshot INITIAL = new StateSnapshot(ConnectionState.DISCONNECTED, PlaybackState.IDLE, null, -1, 0, -1, null);
+
+    public final ConnectionState connection;
+    public final PlaybackState state;
+    public final String url;
+    public final int streamType;
+    public final long bufferedMs;
+    public final long liveOffsetMs;
+    public final JSONObject lastError;
+    public final long updatedAt;
+
+    private StateSnapshot(
+        ConnectionState connection,
+        PlaybackState state,
+        String url,
+        int streamType,
+        long bufferedMs,
+        long liveOffsetMs,
+        JSONObject lastError
+    ) {
+        this.connection = connection;
+        this.state = state;
+        this.url = url;
+        this.streamType = streamType;
+        this.bufferedMs = bufferedMs;
+        this.liveOffsetMs = liveOffsetMs;
+        this.lastError = lastError;
+        this.updatedAt = SystemClock.elapsedRealtime();
+    }
+
+    public StateSnapshot withConnection(ConnectionState connection) {
+        return new StateSnapshot(connection, this.state, this.url, this.streamType, this.bufferedMs, this.liveOffsetMs, this.lastError);
+    }
+
+    /**
+     * @param state
+     * @param url
+     * @param streamType
+     * @param bufferedMs
+     * @param liveOffsetMs -1 if unknown
+     * @return StateSnapshot
+     */
+    public StateSnapshot withPlayback(PlaybackState state, String url, int streamType, long bufferedMs, long liveOffsetMs) {
+        return new StateSnapshot(this.connection, state, url, streamType, bufferedMs, liveOffsetMs, this.lastError);
+    }
+
+    /**
+     * @param lastError the error event payload, not changed after published, null to clear
+     * @return StateSnapshot
+     */
+    public StateSnapshot withError(JSONObject lastError) {
+        return new StateSnapshot(this.connection, this.state, this.url, this.streamType, this.bufferedMs, this.liveOffsetMs, lastError);
+    }
+
+    public boolean isPlaying() {
+        return this.state == PlaybackState.PLAYING;
+    }
+
+    /**
+     * @return JSONObject { connection, state, url, streamType, bufferedMs, liveOffsetMs, lastError, updatedAt }
+     */
+    public JSONObject toJSON() {
+        return new JSONBuilder()
+            .put("connection", this.connection.name())
+            .put("state", this.state.name())
+            .put("url", this.url == null ? JSONObject.NULL : this.url)
+            .put("streamType", this.streamType)
+            .put("bufferedMs", this.bufferedMs)
+            .put("liveOffsetMs", this.liveOffsetMs)
+            .put("lastError", this.lastError == null ? JSONObject.NULL : this.lastError)
+            .put("updatedAt", this.updatedAt)
+            .build();
+    }
+}
@@ -0,0 +1,359 @@
+package com.eltonfaust.multiplayer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.media3.database.StandaloneDatabaseProvider;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.CacheKeyFactory;
+import androidx.media3.datasource.cache.SimpleCache;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Size bounded on-disk cache of the HLS segments and on-demand media.
+ * Endless progressive streams (eg. Icecast) are never cached, the player requests them flagged to not be cached
+ * when the length is unknown. Playlists and manifests bypass the cache, a live playlist is refreshed under the same
+ * key and a cached copy would freeze the stream.
+ */
+public class StreamCache {
+    private static final String LOG_TAG = "MultiPlayer";
+
+    private static final String CACHE_DIR = "cordova-plugin-multi-player-cache";
+    private static final String PREFERENCES_NAME = "cordova-plugin-multi-player-cache";
+    private static final String PREFERENCE_PINNED_KEYS = "pinnedKeys";
+
+    // Path extensions of the playlists and manifests, always loaded from the network
+    private static final List<String> PLAYLIST_EXTENSIONS = Arrays.asList(".m3u8", ".m3u", ".mpd");
+
+    // Default max size of the cache
+    public static final long DEFAULT_MAX_BYTES = 100 * 1024 * 1024;
+
+    // Query parameters commonly used for rotating tokens/signatures, ignored on the cache key
+    public static final List<String> DEFAULT_IGNORED_PARAMS = Arrays.asList(
+        "token", "auth", "sig", "signature", "expires", "exp", "hdnts", "hdnea", "policy", "key-pair-id"
+    );
+
+    private static StreamCache instance = null;
+
+    private final SharedPreferences preferences;
+    private final Set<String> pinnedKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final PinningCacheEvictor evictor;
+    private final SimpleCache cache;
+
+    private volatile Set<String> ignoredParams = new HashSet<String>(DEFAULT_IGNORED_PARAMS);
+    private volatile boolean enabled = false;
+
+    private long hitBytes = 0;
+    private long missBytes = 0;
+
+    private StreamCache(Context context, long maxBytes) {
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.pinnedKeys.addAll(this.preferences.getStringSet(PREFERENCE_PINNED_KEYS, new HashSet<String>()));
+        this.evictor = new PinningCacheEvictor(maxBytes, this.pinnedKeys);
+        this.cache = new SimpleCache(
+            new File(context.getCacheDir(), CACHE_DIR),
+            this.evictor,
+            new StandaloneDatabaseProvider(context)
+        );
+    }
+
+    /**
+     * Get the cache, created on the first call, a single instance can use the cache folder
+     *
+     * @param context
+     * @return StreamCache
+     */
+    public static synchronized StreamCache with(Context context) {
+        if (instance == null) {
+            instance = new StreamCache(context.getApplicationContext(), DEFAULT_MAX_BYTES);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Existing cache instance, null if never created
+     *
+     * @return StreamCache
+     */
+    public static synchronized StreamCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param enabled
+     * @param maxBytes max size, 0 to use the default
+     * @param ignoredParams query parameters ignored on the cache key, null to use the default
+     */
+    public void configure(boolean enabled, long maxBytes, List<String> ignoredParams) {
+        this.enabled = enabled;
+        this.evictor.setMaxBytes(maxBytes > 0 ? maxBytes : DEFAULT_MAX_BYTES);
+
+        if (ignoredParams != null) {
+            Set<String> params = new HashSet<String>();
+
+            for (String param : ignoredParams) {
+                params.add(param.toLowerCase());
+            }
+
+            this.ignoredParams = params;
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Wrap the upstream factory with the cache
+     *
+     * @param upstreamFactory
+     * @return DataSource.Factory
+     */
+    public DataSource.Factory buildDataSourceFactory(final DataSource.Factory upstreamFactory) {
+        final DataSource.Factory cacheFactory = new CacheDataSource.Factory()
+            .setCache(this.cache)
+            .setCacheKeyFactory(this.cacheKeyFactory)
+            .setUpstreamDataSourceFactory(new DataSource.Factory() {
+                public DataSource createDataSource() {
+                    DataSource dataSource = upstreamFactory.createDataSource();
+                    dataSource.addTransferListener(StreamCache.this.missListener);
+
+                    return dataSource;
+                }
+            })
+            .setEventListener(this.cacheEventListener)
+            .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR);
+
+        return new DataSource.Factory() {
+            public DataSource createDataSource() {
+                return new PlaylistBypassDataSource(cacheFactory.createDataSource(), upstreamFactory.createDataSource());
+            }
+        };
+    }
+
+    /**
+     * If the url is a playlist or manifest, which can change under the same url
+     *
+     * @param uri
+     * @return boolean
+     */
+    public static boolean isPlaylist(Uri uri) {
+        String path = uri.getPath();
+
+        if (path == null) {
+            return false;
+        }
+
+        path = path.toLowerCase();
+
+        for (String extension : PLAYLIST_EXTENSIONS) {
+            if (path.endsWith(extension)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Cache key of the url, without the ignored query parameters
+     *
+     * @param url
+     * @return String
+     */
+    public String getCacheKey(String url) {
+        Uri uri = Uri.parse(url);
+
+        if (uri.getQuery() == null) {
+            return url;
+        }
+
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+
+        for (String param : uri.getQueryParameterNames()) {
+            if (this.ignoredParams.contains(param.toLowerCase())) {
+                continue;
+            }
+
+            for (String value : uri.getQueryParameters(param)) {
+                builder.appendQueryParameter(param, value);
+            }
+        }
+
+        return builder.build().toString();
+    }
+
+    /**
+     * Remove the cached data of the url, or all the not pinned data if the url is null
+     *
+     * @param url
+     */
+    public void clear(String url) {
+        if (url != null) {
+            this.cache.removeResource(this.getCacheKey(url));
+            return;
+        }
+
+        for (String key : this.cache.getKeys()) {
+            if (!this.pinnedKeys.contains(key)) {
+                this.cache.removeResource(key);
+            }
+        }
+    }
+
+    /**
+     * Pin or unpin the url, the data of pinned urls is never evicted
+     *
+     * @param url
+     * @param pinned
+     */
+    public synchronized void pin(String url, boolean pinned) {
+        String key = this.getCacheKey(url);
+
+        if (pinned) {
+            this.pinnedKeys.add(key);
+        } else {
+            this.pinnedKeys.remove(key);
+        }
+
+        this.preferences.edit()
+            .putStringSet(PREFERENCE_PINNED_KEYS, new HashSet<String>(this.pinnedKeys))
+            .apply();
+    }
+
+    public synchronized JSONObject toJSON() {
+        return new JSONBuilder()
+            .put("usedBytes", this.cache.getCacheSpace())
+            .put("hitBytes", this.hitBytes)
+            .put("missBytes", this.missBytes)
+            .put("pinned", this.pinnedKeys.size())
+            .build();
+    }
+
+    private synchronized void onHit(long bytes) {
+        this.hitBytes += bytes;
+    }
+
+    private synchronized void onMiss(long bytes) {
+        this.missBytes += bytes;
+    }
+
+    private final CacheKeyFactory cacheKeyFactory = new CacheKeyFactory() {
+        public String buildCacheKey(DataSpec dataSpec) {
+            if (dataSpec.key != null) {
+                return dataSpec.key;
+            }
+
+            return StreamCache.this.getCacheKey(dataSpec.uri.toString());
+        }
+    };
+
+    private final CacheDataSource.EventListener cacheEventListener = new CacheDataSource.EventListener() {
+        @Override
+        public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+            StreamCache.this.onHit(cachedBytesRead);
+        }
+
+        @Override
+        public void onCacheIgnored(int reason) {
+            Log.v(LOG_TAG, "StreamCache : cache ignored, reason " + reason);
+        }
+    };
+
+    /**
+     * Opens the playlists directly from the upstream and the other loads (segments, on-demand media) through the cache,
+     * the source is picked on each open since the player reuses it between loads
+     */
+    private static class PlaylistBypassDataSource implements DataSource {
+        private final DataSource cacheDataSource;
+        private final DataSource upstreamDataSource;
+        private DataSource current = null;
+
+        PlaylistBypassDataSource(DataSource cacheDataSource, DataSource upstreamDataSource) {
+            this.cacheDataSource = cacheDataSource;
+            this.upstreamDataSource = upstreamDataSource;
+        }
+
+        @Override
+        public void addTransferListener(TransferListener transferListener) {
+            this.cacheDataSource.addTransferListener(transferListener);
+            this.upstreamDataSource.addTransferListener(transferListener);
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            this.current = isPlaylist(dataSpec.uri) ? this.upstreamDataSource : this.cacheDataSource;
+
+            return this.current.open(dataSpec);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return this.current.read(buffer, offset, length);
+        }
+
+        @Override
+        public Uri getUri() {
+            return this.current == null ? null : this.current.getUri();
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaders() {
+            return this.current == null ? Collections.<String, List<String>>emptyMap() : this.current.getResponseHeaders();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.current == null) {
+                return;
+            }
+
+            try {
+                this.current.close();
+            } finally {
+                this.current = null;
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes loaded from the network while the cache is used
+     */
+    private final TransferListener missListener = new TransferListener() {
+        @Override
+        public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+        }
+
+        @Override
+        public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+        }
+
+        @Override
+        public void onBytesTransferred(DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+            if (isNetwork) {
+                StreamCache.this.onMiss(bytesTransferred);
+            }
+        }
+
+        @Override
+        public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+        }
+    };
+}
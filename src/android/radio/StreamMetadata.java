@@ -0,0 +1,167 @@
+package com.eltonfaust.multiplayer;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.Metadata;
+import androidx.media3.extractor.metadata.icy.IcyHeaders;
+import androidx.media3.extractor.metadata.icy.IcyInfo;
+import androidx.media3.extractor.metadata.id3.TextInformationFrame;
+
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * "Now playing" information, merged from the ICY headers/info and ID3 text frames of the stream
+ */
+public class StreamMetadata {
+    public static final StreamMetadata EMPTY = new StreamMetadata(null, null, null, null, null, null, null);
+
+    // separator commonly used on ICY StreamTitle between the artist and the title
+    private static final String ICY_TITLE_SEPARATOR = " - ";
+
+    @Nullable private final String title;
+    @Nullable private final String artist;
+    @Nullable private final String album;
+    @Nullable private final String streamTitle;
+    @Nullable private final String streamUrl;
+    @Nullable private final String station;
+    @Nullable private final String genre;
+
+    private StreamMetadata(
+        @Nullable String title,
+        @Nullable String artist,
+        @Nullable String album,
+        @Nullable String streamTitle,
+        @Nullable String streamUrl,
+        @Nullable String station,
+        @Nullable String genre
+    ) {
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.streamTitle = streamTitle;
+        this.streamUrl = streamUrl;
+        this.station = station;
+        this.genre = genre;
+    }
+
+    /**
+     * Returns a copy with the known entries of the metadata applied, unknown entries are ignored
+     *
+     * @param metadata
+     * @return StreamMetadata
+     */
+    public StreamMetadata merge(Metadata metadata) {
+        String title = this.title;
+        String artist = this.artist;
+        String album = this.album;
+        String streamTitle = this.streamTitle;
+        String streamUrl = this.streamUrl;
+        String station = this.station;
+        String genre = this.genre;
+
+        for (int i = 0; i < metadata.length(); i++) {
+            Metadata.Entry entry = metadata.get(i);
+
+            if (entry instanceof IcyInfo) {
+                IcyInfo icyInfo = (IcyInfo) entry;
+
+                if (icyInfo.title != null) {
+                    streamTitle = icyInfo.title;
+                    int separatorIndex = streamTitle.indexOf(ICY_TITLE_SEPARATOR);
+
+                    if (separatorIndex > 0) {
+                        artist = streamTitle.substring(0, separatorIndex).trim();
+                        title = streamTitle.substring(separatorIndex + ICY_TITLE_SEPARATOR.length()).trim();
+                    } else {
+                        artist = null;
+                        title = streamTitle.trim();
+                    }
+                }
+
+                if (icyInfo.url != null) {
+                    streamUrl = icyInfo.url;
+                }
+            } else if (entry instanceof IcyHeaders) {
+                IcyHeaders icyHeaders = (IcyHeaders) entry;
+
+                if (icyHeaders.name != null) {
+                    station = icyHeaders.name;
+                }
+
+                if (icyHeaders.genre != null) {
+                    genre = icyHeaders.genre;
+                }
+            } else if (entry instanceof TextInformationFrame) {
+                TextInformationFrame frame = (TextInformationFrame) entry;
+
+                if (frame.values.isEmpty()) {
+                    continue;
+                }
+
+                String value = frame.values.get(0);
+
+                if ("TIT2".equals(frame.id)) {
+                    title = value;
+                } else if ("TPE1".equals(frame.id)) {
+                    artist = value;
+                } else if ("TALB".equals(frame.id)) {
+                    album = value;
+                } else if ("TRSN".equals(frame.id)) {
+                    station = value;
+                }
+            }
+        }
+
+        return new StreamMetadata(title, artist, album, streamTitle, streamUrl, station, genre);
+    }
+
+    public boolean isEmpty() {
+        return this.equals(EMPTY);
+    }
+
+    public JSONObject toJSON() {
+        // the missing fields are left out
+        return new JSONBuilder()
+            .put("title", this.title)
+            .put("artist", this.artist)
+            .put("album", this.album)
+            .put("streamTitle", this.streamTitle)
+            .put("streamUrl", this.streamUrl)
+            .put("station", this.station)
+            .put("genre", this.genre)
+            .build();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof StreamMetadata)) {
+            return false;
+        }
+
+        StreamMetadata other = (StreamMetadata) obj;
+
+        return equals(this.title, other.title)
+            && equals(this.artist, other.artist)
+            && equals(this.album, other.album)
+            && equals(this.streamTitle, other.streamTitle)
+            && equals(this.streamUrl, other.streamUrl)
+            && equals(this.station, other.station)
+            && equals(this.genre, other.genre);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new Object[] {
+            this.title, this.artist, this.album, this.streamTitle, this.streamUrl, this.station, this.genre
+        });
+    }
+
+    private static boolean equals(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,321 @@
+package com.eltonfaust.multiplayer;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.media3.datasource.HttpDataSource;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.datasource.okhttp.OkHttpDataSource;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dns;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Network layer shared by all the players: keeps the connections alive between player rebuilds,
+ * caches the DNS resolutions (warmed on initialize) and the redirect targets of the stream urls,
+ * and measures the timing of each connection phase
+ */
+public class StreamNetwork {
+    private static final String LOG_TAG = "MultiPlayer";
+
+    // Max idle connections kept alive and for how long
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000;
+
+    // Time a DNS resolution is reused
+    private static final long DNS_TTL_MS = 5 * 60 * 1000;
+
+    // Time a redirect target is requested directly, skipping the redirect chain
+    private static final long REDIRECT_TTL_MS = 10 * 60 * 1000;
+
+    private static StreamNetwork instance = null;
+
+    private final OkHttpClient client;
+    private final ExecutorService warmExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Cached DNS resolutions by host, with the time they expire
+     */
+    private final Map<String, List<InetAddress>> dnsCache = new HashMap<String, List<InetAddress>>();
+    private final Map<String, Long> dnsExpiresAt = new HashMap<String, Long>();
+
+    /**
+     * Final redirect target by requested url, with the time they expire
+     */
+    private final Map<String, String> redirectCache = new HashMap<String, String>();
+    private final Map<String, Long> redirectExpiresAt = new HashMap<String, Long>();
+
+    /**
+     * Timings of the last request of each url
+     */
+    private final Map<String, JSONObject> timings = new HashMap<String, JSONObject>();
+
+    private StreamNetwork() {
+        this.client = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS, TimeUnit.MILLISECONDS))
+            .dns(this.cachingDns)
+            .addInterceptor(this.redirectInterceptor)
+            .eventListenerFactory(new EventListener.Factory() {
+                public EventListener create(Call call) {
+                    return new TimingListener();
+                }
+            })
+            .build();
+    }
+
+    public static synchronized StreamNetwork get() {
+        if (instance == null) {
+            instance = new StreamNetwork();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Data source factory of the stream, all the players share the same connection pool and caches
+     *
+     * @param transferListener network transfer listener, null for none
+     * @return HttpDataSource.Factory
+     */
+    public HttpDataSource.Factory buildDataSourceFactory(@Nullable TransferListener transferListener) {
+        OkHttpDataSource.Factory factory = new OkHttpDataSource.Factory(this.client)
+            .setUserAgent("CordovaMultiPlayer");
+
+        if (transferListener != null) {
+            factory.setTransferListener(transferListener);
+        }
+
+        return factory;
+    }
+
+    /**
+     * Resolve the hosts of the urls in background, so the first play doesn't wait for the DNS
+     *
+     * @param urls
+     */
+    public void warm(final List<String> urls) {
+        this.warmExecutor.execute(new Runnable() {
+            public void run() {
+                for (String url : urls) {
+                    String host = Uri.parse(url).getHost();
+
+                    if (host == null) {
+                        continue;
+                    }
+
+                    try {
+                        StreamNetwork.this.cachingDns.lookup(host);
+                    } catch (UnknownHostException e) {
+                        StreamNetwork.this.log("Can't warm DNS of " + host);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Timing breakdown (in ms) of the last request of the url: dns, connect, tls and firstByte,
+     * phases skipped due to a cached/reused connection are 0
+     *
+     * @param url
+     * @return JSONObject or null if never requested
+     */
+    @Nullable
+    public synchronized JSONObject getTimings(String url) {
+        return this.timings.get(url);
+    }
+
+    /**
+     * Close the idle connections, called when the service is destroyed
+     */
+    public void evictConnections() {
+        this.client.connectionPool().evictAll();
+    }
+
+    /**
+     * The default network changed, the pooled connections and the resolved addresses belong to the previous one
+     */
+    public void onNetworkChanged() {
+        this.evictConnections();
+
+        synchronized (this) {
+            this.dnsCache.clear();
+            this.dnsExpiresAt.clear();
+        }
+    }
+
+    private synchronized String getRedirectTarget(String url) {
+        Long expiresAt = this.redirectExpiresAt.get(url);
+
+        if (expiresAt == null || expiresAt < SystemClock.elapsedRealtime()) {
+            this.redirectCache.remove(url);
+            this.redirectExpiresAt.remove(url);
+            return null;
+        }
+
+        return this.redirectCache.get(url);
+    }
+
+    private synchronized void putRedirectTarget(String url, String target) {
+        this.redirectCache.put(url, target);
+        this.redirectExpiresAt.put(url, SystemClock.elapsedRealtime() + REDIRECT_TTL_MS);
+    }
+
+    private synchronized void removeRedirectTarget(String url) {
+        this.redirectCache.remove(url);
+        this.redirectExpiresAt.remove(url);
+    }
+
+    private synchronized void putTimings(String url, JSONObject timing) {
+        this.timings.put(url, timing);
+    }
+
+    /**
+     * Requests the cached redirect target directly, if it fails the original url is requested again
+     */
+    private final Interceptor redirectInterceptor = new Interceptor() {
+        public Response intercept(Interceptor.Chain chain) throws IOException {
+            Request request = chain.request();
+            String url = request.url().toString();
+            String target = StreamNetwork.this.getRedirectTarget(url);
+
+            if (target != null) {
+                try {
+                    Response response = chain.proceed(request.newBuilder().url(target).build());
+
+                    if (response.isSuccessful()) {
+                        return response;
+                    }
+
+                    response.close();
+                } catch (IOException e) {
+                    StreamNetwork.this.log("Cached redirect target failed: " + target);
+                }
+
+                StreamNetwork.this.removeRedirectTarget(url);
+            }
+
+            Response response = chain.proceed(request);
+
+            if (response.isSuccessful() && response.priorResponse() != null) {
+                StreamNetwork.this.putRedirectTarget(url, response.request().url().toString());
+            }
+
+            return response;
+        }
+    };
+
+    private final Dns cachingDns = new Dns() {
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            synchronized (StreamNetwork.this) {
+                Long expiresAt = StreamNetwork.this.dnsExpiresAt.get(hostname);
+
+                if (expiresAt != null && expiresAt >= SystemClock.elapsedRealtime()) {
+                    return StreamNetwork.this.dnsCache.get(hostname);
+                }
+            }
+
+            List<InetAddress> addresses = Arrays.asList(InetAddress.getAllByName(hostname));
+
+            synchronized (StreamNetwork.this) {
+                StreamNetwork.this.dnsCache.put(hostname, addresses);
+                StreamNetwork.this.dnsExpiresAt.put(hostname, SystemClock.elapsedRealtime() + DNS_TTL_MS);
+            }
+
+            return addresses;
+        }
+    };
+
+    /**
+     * Measures the phases of a request, stored when the response headers start to arrive
+     */
+    private class TimingListener extends EventListener {
+        private long callStartAt = 0;
+        private long dnsStartAt = 0;
+        private long dnsMs = 0;
+        private long connectStartAt = 0;
+        private long connectMs = 0;
+        private long tlsStartAt = 0;
+        private long tlsMs = 0;
+        private boolean connectionReused = true;
+
+        @Override
+        public void callStart(Call call) {
+            this.callStartAt = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            this.dnsStartAt = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            this.dnsMs += SystemClock.elapsedRealtime() - this.dnsStartAt;
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            this.connectionReused = false;
+            this.connectStartAt = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            this.tlsStartAt = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, @Nullable Handshake handshake) {
+            this.tlsMs += SystemClock.elapsedRealtime() - this.tlsStartAt;
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, @Nullable Protocol protocol) {
+            // TCP connect time, without the TLS handshake
+            this.connectMs += SystemClock.elapsedRealtime() - this.connectStartAt - this.tlsMs;
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            JSONObject timing = new JSONBuilder()
+                .put("dns", this.dnsMs)
+                .put("connect", this.connectMs)
+                .put("tls", this.tlsMs)
+                .put("firstByte", SystemClock.elapsedRealtime() - this.callStartAt)
+                .put("connectionReused", this.connectionReused)
+                .build();
+
+            StreamNetwork.this.putTimings(call.request().url().toString(), timing);
+        }
+    }
+
+    private void log(String log) {
+        Log.v(LOG_TAG, "StreamNetwork : " + log);
+    }
+}
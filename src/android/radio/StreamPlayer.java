@@ -0,0 +1,23 @@
+package com.eltonfaust.multiplayer;
+
+/**
+ * Player of a session stream, as seen by the playback state handling.
+ * Implemented on top of ExoPlayer by the session, and by a fake player on the JVM tests.
+ */
+public interface StreamPlayer {
+    // Same values as the ExoPlayer playback states
+    int STATE_IDLE = 1;
+    int STATE_BUFFERING = 2;
+    int STATE_READY = 3;
+    int STATE_ENDED = 4;
+
+    int getPlaybackState();
+
+    boolean getPlayWhenReady();
+
+    void setPlayWhenReady(boolean playWhenReady);
+
+    void setVolume(float volume);
+
+    void prepare();
+}
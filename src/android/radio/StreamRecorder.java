@@ -0,0 +1,194 @@
+package com.eltonfaust.multiplayer;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the stream bytes teed from the player data source to a file, on its own writer thread,
+ * so the loading thread never waits on the disk.
+ * Chunks that don't fit the pending limit are dropped (and counted) instead of blocking the playback.
+ */
+public class StreamRecorder implements Runnable {
+    private static final String LOG_TAG = "MultiPlayer";
+
+    // Size of the buffer aggregating the chunks before each write to the file
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    // Max bytes waiting to be written, above it the chunks are dropped
+    private static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+    // Time the writer waits for new chunks before flushing the buffered bytes
+    private static final int FLUSH_IDLE_MS = 500;
+
+    // Marks the end of the recording on the queue
+    private static final byte[] END_OF_RECORDING = new byte[0];
+
+    private final File file;
+    private final FileOutputStream outputStream;
+    private final FileChannel channel;
+    private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<byte[]>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private final long startedAt;
+    private final Thread thread;
+
+    private volatile boolean stopped = false;
+    private volatile long stoppedAt = 0;
+    private volatile String error = null;
+
+    public StreamRecorder(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Can't create the recording folder: " + parent);
+        }
+
+        this.file = file;
+        this.outputStream = new FileOutputStream(file, false);
+        this.channel = this.outputStream.getChannel();
+        this.startedAt = SystemClock.elapsedRealtime();
+
+        this.thread = new Thread(this, "PlayerRecorder");
+        this.thread.start();
+    }
+
+    /**
+     * Queue bytes to be written, never blocks
+     *
+     * @param buffer
+     * @param offset
+     * @param length
+     */
+    public void write(byte[] buffer, int offset, int length) {
+        if (this.stopped || length <= 0) {
+            return;
+        }
+
+        if (this.pendingBytes.get() + length > MAX_PENDING_BYTES) {
+            this.droppedBytes.addAndGet(length);
+            return;
+        }
+
+        byte[] chunk = new byte[length];
+        System.arraycopy(buffer, offset, chunk, 0, length);
+
+        this.pendingBytes.addAndGet(length);
+        this.queue.offer(chunk);
+    }
+
+    /**
+     * Stop the recording, the queued bytes are still written before the file is closed
+     */
+    public void stop() {
+        if (this.stopped) {
+            return;
+        }
+
+        this.stopped = true;
+        this.stoppedAt = SystemClock.elapsedRealtime();
+        this.queue.offer(END_OF_RECORDING);
+    }
+
+    public boolean isStopped() {
+        return this.stopped;
+    }
+
+    /**
+     * Recording progress: path, bytesWritten, droppedBytes, duration (in ms) and error, if writing failed
+     *
+     * @return JSONObject
+     */
+    public JSONObject toJSON() {
+        long endedAt = this.stopped ? this.stoppedAt : SystemClock.elapsedRealtime();
+
+        // the error is left out while writing succeeds
+        return new JSONBuilder()
+            .put("path", this.file.getAbsolutePath())
+            .put("bytesWritten", this.bytesWritten.get())
+            .put("droppedBytes", this.droppedBytes.get())
+            .put("duration", endedAt - this.startedAt)
+            .put("active", !this.stopped)
+            .put("error", this.error)
+            .build();
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+        try {
+            while (true) {
+                byte[] chunk = this.queue.poll(FLUSH_IDLE_MS, TimeUnit.MILLISECONDS);
+
+                if (chunk == null) {
+                    this.flush(writeBuffer);
+                    continue;
+                }
+
+                if (chunk == END_OF_RECORDING) {
+                    break;
+                }
+
+                this.pendingBytes.addAndGet(-chunk.length);
+
+                int offset = 0;
+
+                while (offset < chunk.length) {
+                    int length = Math.min(writeBuffer.remaining(), chunk.length - offset);
+
+                    writeBuffer.put(chunk, offset, length);
+                    offset += length;
+
+                    if (!writeBuffer.hasRemaining()) {
+                        this.flush(writeBuffer);
+                    }
+                }
+            }
+
+            this.flush(writeBuffer);
+        } catch (IOException e) {
+            this.log("Write failed: " + e.getMessage());
+            this.error = e.getMessage();
+            this.stop();
+        } catch (InterruptedException e) {
+            this.stop();
+        } finally {
+            this.queue.clear();
+
+            try {
+                this.channel.close();
+                this.outputStream.close();
+            } catch (IOException e) {
+                // already closing, nothing to do
+            }
+        }
+
+        this.log("Recording finished, " + this.bytesWritten.get() + " bytes");
+    }
+
+    private void flush(ByteBuffer writeBuffer) throws IOException {
+        writeBuffer.flip();
+
+        while (writeBuffer.hasRemaining()) {
+            this.bytesWritten.addAndGet(this.channel.write(writeBuffer));
+        }
+
+        writeBuffer.clear();
+    }
+
+    private void log(String log) {
+        Log.v(LOG_TAG, "StreamRecorder : " + log);
+    }
+}
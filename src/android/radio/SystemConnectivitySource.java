@@ -0,0 +1,135 @@
+package com.eltonfaust.multiplayer;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Watches the default network through a ConnectivityManager.NetworkCallback
+ */
+public class SystemConnectivitySource implements ConnectivitySource {
+    private static final String LOG_TAG = "MultiPlayer";
+
+    private final ConnectivityManager connectivityManager;
+
+    private Listener listener = null;
+
+    /**
+     * Current default network, null if none
+     */
+    private Network network = null;
+
+    /**
+     * If the first network was already received, it's not notified as a change
+     */
+    private boolean initialized = false;
+
+    private volatile boolean connected = true;
+
+    public SystemConnectivitySource(Context context) {
+        this.connectivityManager = (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        this.listener = listener;
+
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                this.connectivityManager.registerDefaultNetworkCallback(this.networkCallback);
+            } else {
+                NetworkRequest request = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+
+                this.connectivityManager.registerNetworkCallback(request, this.networkCallback);
+            }
+        } catch (RuntimeException e) {
+            // missing ACCESS_NETWORK_STATE permission, the player works without the network awareness
+            this.log("Can't watch the network: " + e.getMessage());
+            this.listener = null;
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (this.listener == null) {
+            return;
+        }
+
+        this.listener = null;
+
+        try {
+            this.connectivityManager.unregisterNetworkCallback(this.networkCallback);
+        } catch (RuntimeException e) {
+            // already unregistered
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.connected;
+    }
+
+    private synchronized void onAvailable(Network network) {
+        if (network.equals(this.network)) {
+            return;
+        }
+
+        boolean notify = this.initialized;
+
+        this.network = network;
+        this.initialized = true;
+        this.connected = true;
+
+        if (notify && this.listener != null) {
+            this.log("Network changed");
+            this.listener.onNetworkChanged();
+        }
+    }
+
+    private synchronized void onLost(Network network) {
+        if (!network.equals(this.network)) {
+            return;
+        }
+
+        // before API 24 any network is tracked, another one may still be available
+        Network active = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+            ? this.connectivityManager.getActiveNetwork()
+            : null;
+
+        if (active != null && !active.equals(network)) {
+            this.onAvailable(active);
+            return;
+        }
+
+        this.network = null;
+        this.initialized = true;
+        this.connected = false;
+
+        if (this.listener != null) {
+            this.log("Network lost");
+            this.listener.onNetworkLost();
+        }
+    }
+
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(Network network) {
+            SystemConnectivitySource.this.onAvailable(network);
+        }
+
+        @Override
+        public void onLost(Network network) {
+            SystemConnectivitySource.this.onLost(network);
+        }
+    };
+
+    private void log(String log) {
+        Log.v(LOG_TAG, "SystemConnectivitySource : " + log);
+    }
+}
@@ -0,0 +1,234 @@
+package com.eltonfaust.multiplayer;
+
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed size file backed ring buffer of the live stream bytes, once full the oldest data is overwritten in place.
+ * Bytes are addressed by their absolute offset on the stream, only the last "capacity" bytes are available.
+ * Uses positional NIO reads/writes, so the writer and the readers never share a file pointer.
+ */
+public class TimeShiftBuffer {
+    // Max time a read waits for new data before failing, as a network read timeout
+    private static final int READ_TIMEOUT_MS = 8000;
+
+    private final File file;
+    private final long capacity;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+
+    /**
+     * Total bytes written since the buffer was created
+     */
+    private long written = 0;
+
+    /**
+     * End offset of the write in progress, the file positions up to it minus the capacity may already be overwritten
+     */
+    private long writing = 0;
+
+    /**
+     * When the first byte was written (elapsed realtime), used to estimate the stream byte rate
+     */
+    private long firstWriteAt = 0;
+
+    private boolean closed = false;
+
+    /**
+     * The data at the offset read was overwritten by the writer, the reader must skip to the intact offset
+     */
+    public static class OverwrittenException extends IOException {
+        /**
+         * First offset not reached by the writer when the read failed
+         */
+        public final long intactOffset;
+
+        public OverwrittenException(long position, long intactOffset) {
+            super("Time-shift data overwritten at offset " + position);
+            this.intactOffset = intactOffset;
+        }
+    }
+
+    public TimeShiftBuffer(File file, long capacity) throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.randomAccessFile.setLength(capacity);
+        this.channel = this.randomAccessFile.getChannel();
+    }
+
+    /**
+     * Append bytes to the buffer, overwriting the oldest data when full
+     *
+     * @param buffer
+     * @param offset
+     * @param length
+     * @throws IOException
+     */
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        long position;
+
+        synchronized (this) {
+            if (this.closed) {
+                throw new IOException("Time-shift buffer closed");
+            }
+
+            position = this.written;
+            this.writing = position + length;
+        }
+
+        // the same bytes are never read before the written count is updated
+        ByteBuffer data = ByteBuffer.wrap(buffer, offset, length);
+
+        while (data.hasRemaining()) {
+            long filePosition = (position + (length - data.remaining())) % this.capacity;
+            int chunk = (int) Math.min(data.remaining(), this.capacity - filePosition);
+            ByteBuffer slice = data.slice();
+
+            slice.limit(chunk);
+            this.channel.write(slice, filePosition);
+            data.position(data.position() + chunk);
+        }
+
+        synchronized (this) {
+            if (this.firstWriteAt == 0) {
+                this.firstWriteAt = SystemClock.elapsedRealtime();
+            }
+
+            this.written += length;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Read bytes from the absolute stream offset, waits for the data if the offset is on the live edge
+     *
+     * @param position absolute offset, must be available (between the oldest offset and the written bytes)
+     * @param buffer
+     * @param offset
+     * @param length
+     * @return bytes read, -1 if the buffer is closed
+     * @throws OverwrittenException if the data was overwritten, before or while reading it
+     * @throws IOException if no data arrives before the timeout
+     */
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        long available;
+
+        synchronized (this) {
+            long deadline = SystemClock.elapsedRealtime() + READ_TIMEOUT_MS;
+
+            while (!this.closed && position >= this.written) {
+                long wait = deadline - SystemClock.elapsedRealtime();
+
+                if (wait <= 0) {
+                    throw new IOException("Time-shift read timeout");
+                }
+
+                try {
+                    this.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+
+            if (this.closed) {
+                return -1;
+            }
+
+            if (this.isOverwritten(position)) {
+                throw new OverwrittenException(position, this.getIntactOffset());
+            }
+
+            available = this.written - position;
+        }
+
+        long filePosition = position % this.capacity;
+        int chunk = (int) Math.min(Math.min(length, available), this.capacity - filePosition);
+        int read = this.channel.read(ByteBuffer.wrap(buffer, offset, chunk), filePosition);
+
+        // the read runs without the lock, the writer may have reached the bytes in the meantime
+        synchronized (this) {
+            if (this.isOverwritten(position)) {
+                throw new OverwrittenException(position, this.getIntactOffset());
+            }
+        }
+
+        return read;
+    }
+
+    /**
+     * The writes overwrite the file from the oldest offset forward, if the first byte is still intact all the
+     * following ones are too
+     */
+    private boolean isOverwritten(long position) {
+        return position < this.getIntactOffset();
+    }
+
+    private long getIntactOffset() {
+        return Math.max(this.getOldestOffset(), this.writing - this.capacity);
+    }
+
+    public synchronized long getWritten() {
+        return this.written;
+    }
+
+    /**
+     * Oldest offset still available
+     *
+     * @return long
+     */
+    public synchronized long getOldestOffset() {
+        return Math.max(0, this.written - this.capacity);
+    }
+
+    /**
+     * Estimated bytes per second of the stream, 0 if unknown
+     *
+     * @return long
+     */
+    public synchronized long getByteRate() {
+        long elapsed = this.firstWriteAt == 0 ? 0 : SystemClock.elapsedRealtime() - this.firstWriteAt;
+
+        return elapsed < 1000 ? 0 : this.written * 1000 / elapsed;
+    }
+
+    /**
+     * Available offset the given time behind the live edge, the oldest offset if it goes beyond the buffer
+     *
+     * @param behindLiveMs
+     * @return long
+     */
+    public synchronized long getOffsetBehindLive(long behindLiveMs) {
+        return Math.max(this.getOldestOffset(), this.written - behindLiveMs * this.getByteRate() / 1000);
+    }
+
+    /**
+     * Close and delete the buffer file, pending reads return the end of input
+     */
+    public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+            this.notifyAll();
+        }
+
+        try {
+            this.channel.close();
+            this.randomAccessFile.close();
+        } catch (IOException e) {
+            // already closing, nothing to do
+        }
+
+        this.file.delete();
+    }
+}
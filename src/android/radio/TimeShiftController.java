@@ -0,0 +1,331 @@
+package com.eltonfaust.multiplayer;
+
+import android.content.Context;
+
+import androidx.media3.common.MediaItem;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.exoplayer.ExoPlayer;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Records the live stream of a session to a disk ring buffer, the player reads from the buffer,
+ * so the playback can be paused and seeked back.
+ * Must only be used from the session playback thread, except the data source read by the loading thread.
+ */
+public class TimeShiftController {
+    // Default duration (in seconds) kept by the time-shift buffer
+    private static final int TIME_SHIFT_DEFAULT_DURATION_S = 1800;
+
+    // Byte rate used to size the time-shift buffer, enough for streams up to 192kbps
+    private static final int TIME_SHIFT_SIZING_BYTE_RATE = 24000;
+
+    /**
+     * Session side of the controller
+     */
+    public interface Host {
+        /**
+         * @return the current player, null if released
+         */
+        ExoPlayer getPlayer();
+
+        /**
+         * @return the buffer profile the current player was built with
+         */
+        BufferProfile getPlayerBufferProfile();
+
+        void log(String log);
+    }
+
+    private final Context mContext;
+    private final int mSessionId;
+    private final TransferListener mTransferListener;
+    private final RecordingDataSource.Target mRecordingTarget;
+    private final Host mHost;
+
+    /**
+     * Record the live stream on the next player build
+     */
+    private boolean mEnabled = false;
+
+    /**
+     * Duration (in seconds) kept by the buffer
+     */
+    private int mDuration = TIME_SHIFT_DEFAULT_DURATION_S;
+
+    /**
+     * Ring buffer of the recorded stream, null if not recording
+     */
+    private TimeShiftBuffer mBuffer = null;
+
+    /**
+     * Downloads the stream into the buffer
+     */
+    private TimeShiftRecorder mRecorder = null;
+
+    /**
+     * Buffer offset the current media item was opened at
+     */
+    private volatile long mOpenOffset = 0;
+
+    /**
+     * Buffer offset the playback was paused at, the resume continues from it
+     */
+    private long mPausedOffset = 0;
+
+    /**
+     * If the playback is paused, keeping the player and the recording
+     */
+    private boolean mPaused = false;
+
+    /**
+     * @param context application context, the buffer is kept on its cache folder
+     * @param sessionId
+     * @param transferListener network transfer listener of the recorder
+     * @param recordingTarget active recording the downloaded bytes are teed to
+     * @param host
+     */
+    public TimeShiftController(
+        Context context,
+        int sessionId,
+        TransferListener transferListener,
+        RecordingDataSource.Target recordingTarget,
+        Host host
+    ) {
+        this.mContext = context;
+        this.mSessionId = sessionId;
+        this.mTransferListener = transferListener;
+        this.mRecordingTarget = recordingTarget;
+        this.mHost = host;
+    }
+
+    /**
+     * @param enabled
+     * @param duration duration (in seconds) kept by the buffer, 0 to use the default
+     */
+    public void setEnabled(boolean enabled, int duration) {
+        this.mEnabled = enabled;
+        this.mDuration = duration > 0 ? duration : TIME_SHIFT_DEFAULT_DURATION_S;
+    }
+
+    public boolean isEnabled() {
+        return this.mEnabled;
+    }
+
+    /**
+     * @return int duration (in ms) kept by the buffer
+     */
+    public int getDurationMs() {
+        return this.mDuration * 1000;
+    }
+
+    /**
+     * @return true if the stream is being recorded to the buffer
+     */
+    public boolean isRecording() {
+        return this.mRecorder != null;
+    }
+
+    public boolean isPaused() {
+        return this.mPaused;
+    }
+
+    /**
+     * If the url is being recorded to the buffer
+     *
+     * @param url
+     * @return boolean
+     */
+    public boolean isShifted(String url) {
+        return this.mRecorder != null && url != null && url.equals(this.mRecorder.getUrl());
+    }
+
+    /**
+     * Start recording the url, if not already recording it
+     *
+     * @param url
+     */
+    public void start(String url) {
+        if (this.isShifted(url)) {
+            return;
+        }
+
+        this.close();
+
+        File file = new File(this.mContext.getCacheDir(), "multi-player-timeshift-" + this.mSessionId);
+
+        try {
+            this.mBuffer = new TimeShiftBuffer(file, (long) this.mDuration * TIME_SHIFT_SIZING_BYTE_RATE);
+        } catch (IOException e) {
+            this.mHost.log("Can't create the time-shift buffer: " + e.getMessage());
+            return;
+        }
+
+        this.mOpenOffset = 0;
+        this.mRecorder = new TimeShiftRecorder(
+            new RecordingDataSource.Factory(StreamNetwork.get().buildDataSourceFactory(this.mTransferListener), this.mRecordingTarget),
+            url,
+            this.mBuffer
+        );
+
+        this.mRecorder.start();
+    }
+
+    /**
+     * Stop the recording and discard the buffer
+     */
+    public void close() {
+        this.mPaused = false;
+
+        if (this.mRecorder != null) {
+            this.mRecorder.stop();
+            this.mRecorder = null;
+        }
+
+        if (this.mBuffer != null) {
+            this.mBuffer.close();
+            this.mBuffer = null;
+        }
+    }
+
+    /**
+     * The network changed, only the recorder connection is affected, the player reads from the buffer
+     */
+    public void reconnectNow() {
+        if (this.mRecorder != null) {
+            this.mRecorder.reconnectNow();
+        }
+    }
+
+    /**
+     * Keep the position of the paused playback, the player and the recording are kept
+     */
+    public void pause() {
+        this.mPausedOffset = this.getPlaybackOffset();
+        this.mPaused = true;
+    }
+
+    /**
+     * Resume the paused playback on the player
+     *
+     * @param player
+     * @return false if the playback wasn't paused
+     */
+    public boolean resume(ExoPlayer player) {
+        if (!this.mPaused) {
+            return false;
+        }
+
+        this.mPaused = false;
+
+        if (player.getPlaybackState() == ExoPlayer.STATE_IDLE) {
+            // the player failed while paused, continue from the paused position
+            player.setMediaItem(this.buildMediaItem(this.mPausedOffset));
+            player.prepare();
+        }
+
+        return true;
+    }
+
+    /**
+     * Seek the playback, keeps the paused state
+     *
+     * @param behindLiveMs time behind the live edge, 0 to go back to live
+     */
+    public void seek(long behindLiveMs) {
+        ExoPlayer player = this.mHost.getPlayer();
+        TimeShiftBuffer buffer = this.mBuffer;
+
+        if (player == null || buffer == null) {
+            this.mHost.log("Can't seek. Time-shift not recording");
+            return;
+        }
+
+        long offset = behindLiveMs <= 0 ? buffer.getWritten() : buffer.getOffsetBehindLive(behindLiveMs);
+
+        this.mHost.log("Seeking time-shift to " + behindLiveMs + "ms behind live");
+
+        this.mPausedOffset = offset;
+        player.setMediaItem(this.buildMediaItem(offset));
+        player.prepare();
+    }
+
+    /**
+     * Position of the playback: time behind live and recorded time available, in ms
+     *
+     * @return null if not recording
+     */
+    public JSONObject buildPosition() {
+        TimeShiftBuffer buffer = this.mBuffer;
+
+        if (buffer == null || this.mHost.getPlayer() == null) {
+            return null;
+        }
+
+        long byteRate = buffer.getByteRate();
+        long offset = this.mPaused ? this.mPausedOffset : this.getPlaybackOffset();
+
+        return new JSONBuilder()
+            .put("behindLive", byteRate == 0 ? 0 : (buffer.getWritten() - offset) * 1000 / byteRate)
+            .put("available", byteRate == 0 ? 0 : (buffer.getWritten() - buffer.getOldestOffset()) * 1000 / byteRate)
+            .put("paused", this.mPaused)
+            .build();
+    }
+
+    /**
+     * @return DataSource.Factory reads the stream from the buffer
+     */
+    public DataSource.Factory getDataSourceFactory() {
+        return this.dataSourceFactory;
+    }
+
+    /**
+     * Buffer offset being played, estimated from the playback position and the stream byte rate
+     *
+     * @return long
+     */
+    private long getPlaybackOffset() {
+        TimeShiftBuffer buffer = this.mBuffer;
+        ExoPlayer player = this.mHost.getPlayer();
+
+        if (buffer == null || player == null) {
+            return 0;
+        }
+
+        long offset = this.mOpenOffset + player.getCurrentPosition() * buffer.getByteRate() / 1000;
+
+        return Math.max(buffer.getOldestOffset(), Math.min(offset, buffer.getWritten()));
+    }
+
+    /**
+     * MediaItem of the buffer starting at the given offset
+     *
+     * @param offset
+     * @return MediaItem
+     */
+    private MediaItem buildMediaItem(long offset) {
+        return new MediaItem.Builder()
+            .setUri(TimeShiftDataSource.buildOffsetUri(offset))
+            .setLiveConfiguration(this.mHost.getPlayerBufferProfile().buildLiveConfiguration())
+            .build();
+    }
+
+    private DataSource.Factory dataSourceFactory = new DataSource.Factory() {
+        @Override
+        public DataSource createDataSource() {
+            return new TimeShiftDataSource(TimeShiftController.this.mBuffer, TimeShiftController.this.openListener);
+        }
+    };
+
+    private TimeShiftDataSource.Listener openListener = new TimeShiftDataSource.Listener() {
+        @Override
+        public void onOpened(long offset) {
+            // called on the loading thread, the playback position restarts from 0 at the opened offset
+            TimeShiftController.this.mOpenOffset = offset;
+        }
+    };
+}
@@ -0,0 +1,116 @@
+package com.eltonfaust.multiplayer;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+
+import java.io.IOException;
+
+/**
+ * Reads the stream from the time-shift buffer, the uri "timeshift://live" starts at the live edge
+ * and "timeshift://offset/{bytes}" at an absolute offset of the stream (clamped to the available data)
+ */
+public class TimeShiftDataSource implements DataSource {
+    public static final String SCHEME = "timeshift";
+
+    private final TimeShiftBuffer buffer;
+    private final Listener listener;
+
+    @Nullable
+    private Uri uri = null;
+    private long position = 0;
+
+    public interface Listener {
+        /**
+         * The stream was opened at the given absolute offset
+         */
+        void onOpened(long offset);
+    }
+
+    public TimeShiftDataSource(TimeShiftBuffer buffer, Listener listener) {
+        this.buffer = buffer;
+        this.listener = listener;
+    }
+
+    public static Uri buildLiveUri() {
+        return Uri.parse(SCHEME + "://live");
+    }
+
+    public static Uri buildOffsetUri(long offset) {
+        return Uri.parse(SCHEME + "://offset/" + offset);
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+        // bytes are counted when downloaded by the recorder
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        this.uri = dataSpec.uri;
+
+        long start = this.buffer.getWritten();
+
+        if ("offset".equals(dataSpec.uri.getHost()) && !dataSpec.uri.getPathSegments().isEmpty()) {
+            try {
+                start = Long.parseLong(dataSpec.uri.getPathSegments().get(0));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid time-shift offset: " + dataSpec.uri);
+            }
+        }
+
+        start = Math.max(this.buffer.getOldestOffset(), Math.min(start, this.buffer.getWritten()));
+
+        this.position = start + dataSpec.position;
+        this.listener.onOpened(start);
+
+        return C.LENGTH_UNSET;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        int read;
+
+        while (true) {
+            if (this.position < this.buffer.getOldestOffset()) {
+                // paused for longer than the buffer, continue from the oldest data available
+                this.position = this.buffer.getOldestOffset();
+            }
+
+            try {
+                read = this.buffer.read(this.position, buffer, offset, length);
+                break;
+            } catch (TimeShiftBuffer.OverwrittenException e) {
+                // the writer reached the bytes while reading them, they are discarded and read again ahead
+                this.position = e.intactOffset;
+            }
+        }
+
+        if (read == -1) {
+            return C.RESULT_END_OF_INPUT;
+        }
+
+        this.position += read;
+
+        return read;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return this.uri;
+    }
+
+    @Override
+    public void close() {
+        this.uri = null;
+    }
+}
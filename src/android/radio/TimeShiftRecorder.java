@@ -0,0 +1,135 @@
+package com.eltonfaust.multiplayer;
+
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.media3.common.C;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+
+import java.io.IOException;
+
+/**
+ * Downloads the live stream into the time-shift buffer on its own thread, reconnecting on failures until stopped.
+ * Keeps downloading while the playback is paused, so it can be resumed from the paused position.
+ */
+public class TimeShiftRecorder implements Runnable {
+    private static final String LOG_TAG = "MultiPlayer";
+
+    // Size of each read from the network
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    // Delay between reconnections, doubled on each failure up to the max
+    private static final int RECONNECT_DELAY_MS = 1000;
+    private static final int RECONNECT_MAX_DELAY_MS = 10000;
+
+    private final DataSource.Factory upstreamFactory;
+    private final String url;
+    private final TimeShiftBuffer buffer;
+
+    private volatile boolean stopped = false;
+
+    /**
+     * Set when the network changed, the current connection is replaced by a new one
+     */
+    private volatile boolean reconnect = false;
+
+    private final Object reconnectLock = new Object();
+    private Thread thread = null;
+
+    public TimeShiftRecorder(DataSource.Factory upstreamFactory, String url, TimeShiftBuffer buffer) {
+        this.upstreamFactory = upstreamFactory;
+        this.url = url;
+        this.buffer = buffer;
+    }
+
+    public synchronized void start() {
+        if (this.thread == null) {
+            this.thread = new Thread(this, "PlayerTimeShift");
+            this.thread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        this.stopped = true;
+
+        if (this.thread != null) {
+            this.thread.interrupt();
+        }
+    }
+
+    /**
+     * Re-open the connection right away, without waiting the reconnection delay
+     */
+    public void reconnectNow() {
+        synchronized (this.reconnectLock) {
+            this.reconnect = true;
+            this.reconnectLock.notifyAll();
+        }
+    }
+
+    public String getUrl() {
+        return this.url;
+    }
+
+    @Override
+    public void run() {
+        byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+        int reconnectDelay = RECONNECT_DELAY_MS;
+
+        while (!this.stopped) {
+            DataSource dataSource = this.upstreamFactory.createDataSource();
+            this.reconnect = false;
+
+            try {
+                dataSource.open(new DataSpec(Uri.parse(this.url)));
+
+                while (!this.stopped && !this.reconnect) {
+                    int read = dataSource.read(readBuffer, 0, readBuffer.length);
+
+                    if (read == C.RESULT_END_OF_INPUT) {
+                        break;
+                    }
+
+                    this.buffer.write(readBuffer, 0, read);
+                    reconnectDelay = RECONNECT_DELAY_MS;
+                }
+            } catch (IOException e) {
+                this.log("Download failed: " + e.getMessage());
+            } finally {
+                try {
+                    dataSource.close();
+                } catch (IOException e) {
+                    // closing a failed source, nothing to do
+                }
+            }
+
+            if (this.stopped) {
+                break;
+            }
+
+            try {
+                synchronized (this.reconnectLock) {
+                    if (!this.reconnect) {
+                        this.reconnectLock.wait(reconnectDelay);
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            if (this.reconnect) {
+                reconnectDelay = RECONNECT_DELAY_MS;
+                continue;
+            }
+
+            reconnectDelay = Math.min(reconnectDelay * 2, RECONNECT_MAX_DELAY_MS);
+        }
+
+        this.log("Stopped");
+    }
+
+    private void log(String log) {
+        Log.v(LOG_TAG, "TimeShiftRecorder : " + log);
+    }
+}
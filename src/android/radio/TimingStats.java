@@ -0,0 +1,100 @@
+package com.eltonfaust.multiplayer;
+
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Durations of the hot paths of a session (player build, listener dispatch, event delivery),
+ * reported on the stats so a regression shows on the device without a profiler.
+ * A debug tool, disabled by default: nothing is measured on the hot paths until enabled.
+ */
+public class TimingStats {
+    /**
+     * If the durations are measured, shared by all the sessions
+     */
+    private static volatile boolean enabled = false;
+
+    private static class Timing {
+        private long count = 0;
+        private long totalNanos = 0;
+        private long maxNanos = 0;
+        private long lastNanos = 0;
+    }
+
+    private final Map<String, Timing> timings = new LinkedHashMap<String, Timing>();
+
+    public static void setEnabled(boolean enabled) {
+        TimingStats.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start time of a measure
+     *
+     * @return long 0 if disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the duration of a measure, ignored if disabled or started while disabled
+     *
+     * @param name
+     * @param startNanos time returned by start
+     */
+    public void record(String name, long startNanos) {
+        if (!enabled || startNanos == 0) {
+            return;
+        }
+
+        long duration = System.nanoTime() - startNanos;
+
+        synchronized (this) {
+            Timing timing = this.timings.get(name);
+
+            if (timing == null) {
+                timing = new Timing();
+                this.timings.put(name, timing);
+            }
+
+            timing.count++;
+            timing.totalNanos += duration;
+            timing.lastNanos = duration;
+            timing.maxNanos = Math.max(timing.maxNanos, duration);
+        }
+    }
+
+    /**
+     * Measures by name, each one with count, avgMs, maxMs and lastMs
+     *
+     * @return JSONObject
+     */
+    public synchronized JSONObject toJSON() {
+        JSONBuilder json = new JSONBuilder();
+
+        for (Map.Entry<String, Timing> entry : this.timings.entrySet()) {
+            Timing timing = entry.getValue();
+
+            // a timing is only created with its first measure, the count is never 0
+            json.put(entry.getKey(), new JSONBuilder()
+                .put("count", timing.count)
+                .put("avgMs", toMs(timing.totalNanos / timing.count))
+                .put("maxMs", toMs(timing.maxNanos))
+                .put("lastMs", toMs(timing.lastNanos))
+                .build());
+        }
+
+        return json.build();
+    }
+
+    private static double toMs(long nanos) {
+        // 0.01ms precision
+        return Math.round(nanos / 10000.0) / 100.0;
+    }
+}
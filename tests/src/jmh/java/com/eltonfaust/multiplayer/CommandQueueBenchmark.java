@@ -0,0 +1,75 @@
+package com.eltonfaust.multiplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.apache.cordova.CallbackContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submit and run of the player commands, collapsing on the same slot or queued on different slots
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandQueueBenchmark {
+    // Commands submitted before the command thread catches up
+    private static final int BURST = 8;
+
+    private static final String[] SLOTS = { "playback:0", "playback:1", "playback:2", "connection" };
+
+    private Handler handler;
+    private CommandQueue queue;
+    private CallbackContext callbackContext;
+
+    private final CommandQueue.Command command = new CommandQueue.Command() {
+        public String run() {
+            return null;
+        }
+    };
+
+    @Setup
+    public void setup() {
+        this.handler = new Handler(Looper.getMainLooper());
+        this.queue = new CommandQueue(this.handler);
+        this.callbackContext = new CallbackContext();
+    }
+
+    @Benchmark
+    public int submitAndRun() {
+        this.queue.submit(SLOTS[0], "play", this.callbackContext, this.command);
+        return this.handler.runPending();
+    }
+
+    @Benchmark
+    public int burstCollapsedOnSameSlot() {
+        for (int i = 0; i < BURST; i++) {
+            this.queue.submit(SLOTS[0], i % 2 == 0 ? "play" : "stop", this.callbackContext, this.command);
+        }
+
+        return this.handler.runPending();
+    }
+
+    @Benchmark
+    public int burstOnDifferentSlots() {
+        for (int i = 0; i < BURST; i++) {
+            this.queue.submit(SLOTS[i % SLOTS.length], "play", this.callbackContext, this.command);
+        }
+
+        return this.handler.runPending();
+    }
+}
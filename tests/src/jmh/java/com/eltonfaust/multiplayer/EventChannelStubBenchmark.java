@@ -0,0 +1,95 @@
+package com.eltonfaust.multiplayer;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and send of the events, one by one or batched, on the JVM stubs of CallbackContext and PluginResult:
+ * measures the plugin side and the message encoding only, not the Cordova bridge to the webview
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventChannelStubBenchmark {
+    // Events sent within a batch window
+    private static final int BURST = 8;
+
+    @Param({ "false", "true" })
+    public boolean timings;
+
+    private EventChannel legacy;
+    private EventChannel structured;
+    private EventChannel batched;
+    private JSONObject stats;
+
+    @Setup
+    public void setup() throws JSONException {
+        TimingStats.setEnabled(this.timings);
+        TimingStats timingStats = new TimingStats();
+
+        this.legacy = new EventChannel();
+        this.legacy.configure(new CallbackContext(), false, -1);
+        this.legacy.setTimingStats(timingStats);
+
+        this.structured = new EventChannel();
+        this.structured.configure(new CallbackContext(), true, 0);
+        this.structured.setTimingStats(timingStats);
+
+        this.batched = new EventChannel();
+        this.batched.configure(new CallbackContext(), true, 50);
+        this.batched.setTimingStats(timingStats);
+
+        // a STATS event payload, the largest periodic event
+        this.stats = new JSONObject();
+        this.stats.put("sessionDurationMs", 123456);
+        this.stats.put("timeToFirstAudioMs", 850);
+        this.stats.put("rebufferCount", 2);
+        this.stats.put("rebufferTimeMs", 1400);
+        this.stats.put("bytesLoaded", 18874368);
+        this.stats.put("throughput", 1843200);
+        this.stats.put("bandwidthEstimate", 2400000);
+        this.stats.put("audioUnderruns", 0);
+        this.stats.put("reconnectCount", 1);
+        this.stats.put("audioFormat", new JSONObject()
+            .put("mimeType", "audio/mpeg")
+            .put("bitrate", 128000)
+            .put("sampleRate", 44100)
+            .put("channelCount", 2));
+    }
+
+    @Benchmark
+    public void legacyStateEvent() {
+        this.legacy.send("STARTED", null);
+    }
+
+    @Benchmark
+    public void structuredStatsEvent() {
+        this.structured.send("STATS", this.stats);
+    }
+
+    @Benchmark
+    public void batchedBurst() {
+        for (int i = 0; i < BURST; i++) {
+            this.batched.send(i % 2 == 0 ? "STATS" : "METADATA", this.stats);
+        }
+
+        this.batched.flush();
+    }
+}
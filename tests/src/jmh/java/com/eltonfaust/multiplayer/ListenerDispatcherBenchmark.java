@@ -0,0 +1,171 @@
+package com.eltonfaust.multiplayer;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue and delivery of the events to the session listeners
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerDispatcherBenchmark {
+    @Param({ "1", "4" })
+    public int listeners;
+
+    @Param({ "false", "true" })
+    public boolean timings;
+
+    private final ArrayDeque<Runnable> executed = new ArrayDeque<Runnable>();
+    private ListenerDispatcher dispatcher;
+    private Blackhole blackhole;
+
+    private final ListenerDispatcher.Call startedCall = new ListenerDispatcher.Call() {
+        public void call(RadioListener mRadioListener) {
+            mRadioListener.onRadioStarted();
+        }
+    };
+
+    private final JSONObject stats = new JSONObject();
+
+    private final ListenerDispatcher.Call statsCall = new ListenerDispatcher.Call() {
+        public void call(RadioListener mRadioListener) {
+            mRadioListener.onRadioStats(ListenerDispatcherBenchmark.this.stats);
+        }
+    };
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        TimingStats.setEnabled(this.timings);
+        this.blackhole = blackhole;
+
+        // the listener threads are run by hand, so only the dispatch is measured
+        this.dispatcher = new ListenerDispatcher(new Executor() {
+            public void execute(Runnable command) {
+                ListenerDispatcherBenchmark.this.executed.add(command);
+            }
+        }, new TimingStats());
+
+        for (int i = 0; i < this.listeners; i++) {
+            this.dispatcher.add(new ConsumingListener(blackhole));
+        }
+    }
+
+    @Benchmark
+    public void stateEvent() {
+        this.dispatcher.dispatch(null, this.startedCall, null);
+        this.deliver();
+    }
+
+    @Benchmark
+    public void periodicEventsMerged() {
+        // a slow listener gets the periodic events merged
+        for (int i = 0; i < 4; i++) {
+            this.dispatcher.dispatch("STATS", this.statsCall, null);
+        }
+
+        this.deliver();
+    }
+
+    private void deliver() {
+        Runnable runnable;
+
+        while ((runnable = this.executed.poll()) != null) {
+            runnable.run();
+        }
+    }
+
+    private static class ConsumingListener implements RadioListener {
+        private final Blackhole blackhole;
+
+        ConsumingListener(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        public void onRadioLoading() {
+            this.blackhole.consume(1);
+        }
+
+        public void onRadioConnected() {
+            this.blackhole.consume(2);
+        }
+
+        public void onRadioDisconnected() {
+            this.blackhole.consume(3);
+        }
+
+        public void onRadioStarted() {
+            this.blackhole.consume(4);
+        }
+
+        public void onRadioStopped() {
+            this.blackhole.consume(5);
+        }
+
+        public void onRadioStoppedFocusLoss() {
+            this.blackhole.consume(6);
+        }
+
+        public void onRadioStoppedFocusTransient() {
+            this.blackhole.consume(7);
+        }
+
+        public void onRadioStartedFocusTransient() {
+            this.blackhole.consume(8);
+        }
+
+        public void onRadioStalled() {
+            this.blackhole.consume(9);
+        }
+
+        public void onRadioRecovered() {
+            this.blackhole.consume(10);
+        }
+
+        public void onRadioReconnecting(JSONObject reconnect) {
+            this.blackhole.consume(reconnect);
+        }
+
+        public void onRadioStats(JSONObject stats) {
+            this.blackhole.consume(stats);
+        }
+
+        public void onRadioMetadata(JSONObject metadata) {
+            this.blackhole.consume(metadata);
+        }
+
+        public void onRadioRecording(JSONObject recording) {
+            this.blackhole.consume(recording);
+        }
+
+        public void onRadioBitrateChanged(JSONObject change) {
+            this.blackhole.consume(change);
+        }
+
+        public void onRadioAlarm(JSONObject alarm) {
+            this.blackhole.consume(alarm);
+        }
+
+        public void onError(JSONObject error) {
+            this.blackhole.consume(error);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.eltonfaust.multiplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transitions of the playback state, fired on every player and focus callback
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaybackStateMachineBenchmark {
+    private PlaybackStateMachine machine;
+
+    @Setup
+    public void setup() {
+        this.machine = new PlaybackStateMachine();
+        this.machine.setListener(new PlaybackStateMachine.Listener() {
+            @Override
+            public void onTransition(PlaybackState from, PlaybackStateMachine.Event event, PlaybackState to) {
+            }
+
+            @Override
+            public void onIgnored(PlaybackState state, PlaybackStateMachine.Event event) {
+            }
+        });
+    }
+
+    @Benchmark
+    public boolean startStop() {
+        this.machine.fire(PlaybackStateMachine.Event.START);
+        return this.machine.fire(PlaybackStateMachine.Event.STOP);
+    }
+
+    @Benchmark
+    public boolean focusLossAndGain() {
+        this.machine.fire(PlaybackStateMachine.Event.START);
+        this.machine.fire(PlaybackStateMachine.Event.FOCUS_LOSS_TRANSIENT);
+        return this.machine.fire(PlaybackStateMachine.Event.FOCUS_GAIN);
+    }
+
+    @Benchmark
+    public boolean ignoredEvent() {
+        // FOCUS_GAIN is only allowed after a transient loss
+        return this.machine.fire(PlaybackStateMachine.Event.FOCUS_GAIN);
+    }
+}
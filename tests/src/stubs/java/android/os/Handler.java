@@ -0,0 +1,53 @@
+package android.os;
+
+import java.util.ArrayDeque;
+
+/**
+ * JVM stand-in of the Android class, only the members used by the plugin.
+ * Posted runnables wait, ignoring the delays, until runPending is called.
+ */
+public class Handler {
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+
+    public Handler(Looper looper) {
+    }
+
+    public synchronized boolean post(Runnable runnable) {
+        this.queue.addLast(runnable);
+        return true;
+    }
+
+    public boolean postDelayed(Runnable runnable, long delayMillis) {
+        return this.post(runnable);
+    }
+
+    public synchronized void removeCallbacks(Runnable runnable) {
+        while (this.queue.remove(runnable)) {
+            // every posting of the runnable
+        }
+    }
+
+    /**
+     * Run the posted runnables, as the looper would
+     *
+     * @return number of runnables run
+     */
+    public int runPending() {
+        int count = 0;
+
+        while (true) {
+            Runnable runnable;
+
+            synchronized (this) {
+                runnable = this.queue.pollFirst();
+            }
+
+            if (runnable == null) {
+                return count;
+            }
+
+            runnable.run();
+            count++;
+        }
+    }
+}
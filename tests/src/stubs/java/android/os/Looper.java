@@ -0,0 +1,15 @@
+package android.os;
+
+/**
+ * JVM stand-in of the Android class, only the members used by the plugin
+ */
+public final class Looper {
+    private static final Looper MAIN = new Looper();
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN;
+    }
+}
@@ -0,0 +1,17 @@
+package androidx.media3.datasource;
+
+import java.io.IOException;
+
+/**
+ * JVM stand-in of the Media3 interface, only the members used by the plugin
+ */
+public interface HttpDataSource {
+    class InvalidResponseCodeException extends IOException {
+        public final int responseCode;
+
+        public InvalidResponseCodeException(int responseCode) {
+            super("Response code: " + responseCode);
+            this.responseCode = responseCode;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.apache.cordova;
+
+/**
+ * JVM stand-in of the Cordova class, only the members used by the plugin, keeps the last result sent
+ */
+public class CallbackContext {
+    private volatile PluginResult lastResult = null;
+
+    public void sendPluginResult(PluginResult pluginResult) {
+        this.lastResult = pluginResult;
+    }
+
+    public void success() {
+        this.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+    }
+
+    public void error(String message) {
+        this.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+    }
+
+    public PluginResult getLastResult() {
+        return this.lastResult;
+    }
+}
@@ -0,0 +1,55 @@
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * JVM stand-in of the Cordova class, only the members used by the plugin.
+ * Encodes the message on creation, as Cordova does.
+ */
+public class PluginResult {
+    public enum Status {
+        NO_RESULT,
+        OK,
+        ERROR,
+    }
+
+    private final Status status;
+    private final String encodedMessage;
+    private boolean keepCallback = false;
+
+    public PluginResult(Status status) {
+        this(status, (String) null);
+    }
+
+    public PluginResult(Status status, String message) {
+        this.status = status;
+        this.encodedMessage = message == null ? null : JSONObject.quote(message);
+    }
+
+    public PluginResult(Status status, JSONObject message) {
+        this.status = status;
+        this.encodedMessage = message.toString();
+    }
+
+    public PluginResult(Status status, JSONArray message) {
+        this.status = status;
+        this.encodedMessage = message.toString();
+    }
+
+    public void setKeepCallback(boolean keepCallback) {
+        this.keepCallback = keepCallback;
+    }
+
+    public boolean getKeepCallback() {
+        return this.keepCallback;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    public String getMessage() {
+        return this.encodedMessage;
+    }
+}
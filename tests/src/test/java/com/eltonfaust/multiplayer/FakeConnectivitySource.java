@@ -0,0 +1,51 @@
+package com.eltonfaust.multiplayer;
+
+/**
+ * Connectivity source driven by hand, to simulate network changes and losses without real networks.
+ * The instrumented tests install it on the bound service with RadioPlayerService.setConnectivitySource.
+ */
+public class FakeConnectivitySource implements ConnectivitySource {
+    private Listener listener = null;
+    private volatile boolean connected = true;
+
+    @Override
+    public synchronized void start(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public synchronized void stop() {
+        this.listener = null;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.connected;
+    }
+
+    /**
+     * Simulate a new default network, eg. moving from Wi-Fi to cellular, or the network coming back
+     */
+    public synchronized void changeNetwork() {
+        this.connected = true;
+
+        if (this.listener != null) {
+            this.listener.onNetworkChanged();
+        }
+    }
+
+    /**
+     * Simulate the loss of all networks
+     */
+    public synchronized void loseNetwork() {
+        if (!this.connected) {
+            return;
+        }
+
+        this.connected = false;
+
+        if (this.listener != null) {
+            this.listener.onNetworkLost();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.eltonfaust.multiplayer;
+
+/**
+ * StreamPlayer reporting its changes to the controller the way ExoPlayer does:
+ * only actual changes are reported, and stop keeps the play when ready flag
+ */
+class FakeStreamPlayer implements StreamPlayer {
+    private final PlaybackController controller;
+
+    private int state = STATE_IDLE;
+    private boolean playWhenReady = false;
+    private float volume = 1f;
+
+    FakeStreamPlayer(PlaybackController controller) {
+        this.controller = controller;
+    }
+
+    @Override
+    public int getPlaybackState() {
+        return this.state;
+    }
+
+    @Override
+    public boolean getPlayWhenReady() {
+        return this.playWhenReady;
+    }
+
+    @Override
+    public void setPlayWhenReady(boolean playWhenReady) {
+        if (this.playWhenReady != playWhenReady) {
+            this.playWhenReady = playWhenReady;
+            this.controller.onPlayWhenReadyChanged(playWhenReady, true);
+        }
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        this.volume = volume;
+    }
+
+    @Override
+    public void prepare() {
+        if (this.state == STATE_IDLE || this.state == STATE_ENDED) {
+            this.setState(STATE_BUFFERING);
+        }
+    }
+
+    float getVolume() {
+        return this.volume;
+    }
+
+    void stop() {
+        this.setState(STATE_IDLE);
+    }
+
+    /**
+     * Loaded enough to play, or ran out of buffer
+     */
+    void onNetwork(boolean ready) {
+        if (this.state == STATE_BUFFERING || this.state == STATE_READY) {
+            this.setState(ready ? STATE_READY : STATE_BUFFERING);
+        }
+    }
+
+    /**
+     * The server closed the stream
+     */
+    void onEnded() {
+        if (this.state == STATE_BUFFERING || this.state == STATE_READY) {
+            this.setState(STATE_ENDED);
+        }
+    }
+
+    /**
+     * The playback failed, the player goes back to idle
+     */
+    void onError() {
+        this.setState(STATE_IDLE);
+    }
+
+    private void setState(int state) {
+        if (this.state != state) {
+            this.state = state;
+            this.controller.onPlaybackStateChanged(state);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.eltonfaust.multiplayer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Collects the outcome of each fault scenario, with the faults applied and the client result,
+ * written as JSON to the "faults.report" path (next to the JUnit XML reports of Gradle)
+ */
+public class FaultReport extends TestWatcher {
+    private final JSONArray scenarios = new JSONArray();
+    private JSONObject current = null;
+    private long startedAt = 0;
+
+    /**
+     * Attach the details of the running scenario
+     *
+     * @param server
+     * @param result
+     */
+    public void record(FaultServer server, StreamClient.Result result) {
+        this.current
+            .put("faults", server.appliedToJSON())
+            .put("serverConnections", server.getConnections())
+            .put("result", result.toJSON());
+    }
+
+    @Override
+    protected void starting(Description description) {
+        this.startedAt = System.currentTimeMillis();
+        this.current = new JSONObject().put("scenario", description.getMethodName());
+    }
+
+    @Override
+    protected void succeeded(Description description) {
+        this.current.put("passed", true);
+    }
+
+    @Override
+    protected void failed(Throwable e, Description description) {
+        this.current.put("passed", false).put("failure", String.valueOf(e.getMessage()));
+    }
+
+    @Override
+    protected void finished(Description description) {
+        this.current.put("durationMs", System.currentTimeMillis() - this.startedAt);
+
+        synchronized (this.scenarios) {
+            this.scenarios.put(this.current);
+        }
+    }
+
+    /**
+     * Write the report of the scenarios run
+     *
+     * @param suite
+     */
+    public void write(String suite) throws IOException {
+        String path = System.getProperty("faults.report", "");
+
+        if (path.isEmpty()) {
+            return;
+        }
+
+        File file = new File(path);
+        file.getParentFile().mkdirs();
+
+        int failures = 0;
+
+        for (int i = 0; i < this.scenarios.length(); i++) {
+            if (!this.scenarios.getJSONObject(i).optBoolean("passed")) {
+                failures++;
+            }
+        }
+
+        JSONObject report = new JSONObject()
+            .put("suite", suite)
+            .put("scenarios", this.scenarios)
+            .put("total", this.scenarios.length())
+            .put("failures", failures);
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+
+        try {
+            writer.write(report.toString(2));
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.eltonfaust.multiplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.eltonfaust.multiplayer.FaultServer.Fault;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Network fault scenarios against the local FaultServer, each scenario is reported on build/reports/faults.
+ * They check that each fault reaches a client as scripted and how the retry policy classifies and retries it,
+ * the startup, rebuffer and recovery times of the player are measured by the same scenarios on a device (tests/tests.js)
+ */
+public class FaultScenarioTest {
+    // Short retry delays and stall timeout, so the scenarios run fast
+    private static final int RETRY_BASE_DELAY_MS = 20;
+    private static final int RETRY_MAX_DELAY_MS = 100;
+    private static final int STALL_TIMEOUT_MS = 500;
+
+    private static final long STREAM_BYTES = 256 * 1024;
+    // a second of the throttled stream
+    private static final int THROTTLE_BYTES_PER_S = 32 * 1024;
+
+    private static final FaultReport report = new FaultReport();
+
+    @Rule
+    public final FaultReport scenario = report;
+
+    private FaultServer server;
+
+    @AfterClass
+    public static void writeReport() throws Exception {
+        report.write(FaultScenarioTest.class.getSimpleName());
+    }
+
+    @After
+    public void closeServer() throws IOException {
+        if (this.server != null) {
+            this.server.close();
+        }
+    }
+
+    private void start(Fault... faults) throws IOException {
+        this.server = new FaultServer(faults);
+    }
+
+    private static StreamClient client(int maxAttempts) {
+        return new StreamClient(new DefaultRetryPolicy(maxAttempts, RETRY_BASE_DELAY_MS, RETRY_MAX_DELAY_MS), STALL_TIMEOUT_MS);
+    }
+
+    @Test
+    public void cleanStreamPlaysWithMetadata() throws Exception {
+        this.start();
+
+        StreamClient.Result result = client(3).readStream(this.server.getUrl("/stream"), STREAM_BYTES);
+        report.record(this.server, result);
+
+        assertNull(result.error);
+        assertEquals(0, result.reconnects);
+        assertEquals(FaultServer.ICY_METAINT, result.metaint);
+        assertEquals(STREAM_BYTES / FaultServer.ICY_METAINT, result.titles.size());
+    }
+
+    @Test
+    public void resetMidStreamReconnects() throws Exception {
+        this.start(Fault.reset("/stream", 64 * 1024));
+
+        StreamClient.Result result = client(3).readStream(this.server.getUrl("/stream"), STREAM_BYTES);
+        report.record(this.server, result);
+
+        assertNull(result.error);
+        assertEquals(1, result.reconnects);
+        assertEquals(2, this.server.getConnections());
+        assertTrue(result.bytes >= STREAM_BYTES);
+    }
+
+    @Test
+    public void stallIsDetectedAndReconnects() throws Exception {
+        this.start(Fault.stall("/stream", 32 * 1024, STALL_TIMEOUT_MS * 4));
+
+        StreamClient.Result result = client(3).readStream(this.server.getUrl("/stream"), STREAM_BYTES);
+        report.record(this.server, result);
+
+        assertNull(result.error);
+        assertEquals(1, result.stalls);
+        assertEquals(1, result.reconnects);
+    }
+
+    @Test
+    public void serverErrorsAreRetried() throws Exception {
+        this.start(Fault.status("/stream", 503), Fault.status("/stream", 503));
+
+        StreamClient.Result result = client(3).readStream(this.server.getUrl("/stream"), STREAM_BYTES);
+        report.record(this.server, result);
+
+        assertNull(result.error);
+        assertEquals(2, result.reconnects);
+    }
+
+    @Test
+    public void clientErrorIsReportedWithoutRetries() throws Exception {
+        this.start(Fault.status("/stream", 404));
+
+        StreamClient.Result result = client(3).readStream(this.server.getUrl("/stream"), STREAM_BYTES);
+        report.record(this.server, result);
+
+        assertEquals(RetryPolicy.ErrorCategory.HTTP_4XX, result.error);
+        assertEquals(0, result.reconnects);
+    }
+
+    @Test
+    public void serverErrorsExhaustTheRetries() throws Exception {
+        // every connection fails before any data, the player never recovers
+        this.start(
+            Fault.status("/stream", 502),
+            Fault.status("/stream", 502),
+            Fault.status("/stream", 502),
+            Fault.status("/stream", 502)
+        );
+
+        StreamClient.Result result = client(3).readStream(this.server.getUrl("/stream"), STREAM_BYTES);
+        report.record(this.server, result);
+
+        assertEquals(RetryPolicy.ErrorCategory.HTTP_5XX, result.error);
+        assertEquals(3, result.reconnects);
+        assertEquals(4, this.server.getConnections());
+    }
+
+    @Test
+    public void retriesAreResetAfterRecovering() throws Exception {
+        // more drops than retries, but the stream delivers data between them
+        this.start(
+            Fault.reset("/stream", 16 * 1024),
+            Fault.reset("/stream", 16 * 1024),
+            Fault.reset("/stream", 16 * 1024),
+            Fault.reset("/stream", 16 * 1024)
+        );
+
+        StreamClient.Result result = client(2).readStream(this.server.getUrl("/stream"), STREAM_BYTES);
+        report.record(this.server, result);
+
+        assertNull(result.error);
+        assertEquals(4, result.reconnects);
+    }
+
+    @Test
+    public void badIcyHeaderIsIgnored() throws Exception {
+        this.start(Fault.badIcyHeader("/stream"));
+
+        StreamClient.Result result = client(3).readStream(this.server.getUrl("/stream"), STREAM_BYTES);
+        report.record(this.server, result);
+
+        // played without the metadata
+        assertNull(result.error);
+        assertEquals(0, result.metaint);
+        assertTrue(result.titles.isEmpty());
+        assertTrue(result.bytes >= STREAM_BYTES);
+    }
+
+    @Test
+    public void truncatedSegmentIsRequestedAgain() throws Exception {
+        this.start(Fault.truncatedSegment("/segment-1.mp3", 1000));
+
+        StreamClient.Result result = client(3).readSegments(this.server.getUrl("/live.m3u8"));
+        report.record(this.server, result);
+
+        assertNull(result.error);
+        assertEquals(1, result.reconnects);
+        assertEquals(FaultServer.PLAYLIST_SEGMENTS * FaultServer.SEGMENT_BYTES, result.bytes);
+    }
+
+    @Test
+    public void stalledSegmentIsRequestedAgain() throws Exception {
+        this.start(Fault.stall("/segment-0.mp3", 4096, STALL_TIMEOUT_MS * 4));
+
+        StreamClient.Result result = client(3).readSegments(this.server.getUrl("/live.m3u8"));
+        report.record(this.server, result);
+
+        assertNull(result.error);
+        assertEquals(1, result.stalls);
+        assertEquals(FaultServer.PLAYLIST_SEGMENTS * FaultServer.SEGMENT_BYTES, result.bytes);
+    }
+
+    @Test
+    public void aacStreamPlaysWithMetadata() throws Exception {
+        this.start();
+
+        StreamClient.Result result = client(3).readStream(this.server.getUrl("/stream.aac"), STREAM_BYTES);
+        report.record(this.server, result);
+
+        assertNull(result.error);
+        assertEquals(0, result.reconnects);
+        assertEquals(STREAM_BYTES / FaultServer.ICY_METAINT, result.titles.size());
+        assertArrayEquals(FaultServer.ADTS_HEADER, this.readHead("/stream.aac", FaultServer.ADTS_HEADER.length));
+    }
+
+    @Test
+    public void throttledStreamIsPaced() throws Exception {
+        this.start(Fault.throttle("/stream", 0, THROTTLE_BYTES_PER_S));
+
+        StreamClient.Result result = client(3).readStream(this.server.getUrl("/stream"), THROTTLE_BYTES_PER_S);
+        report.record(this.server, result);
+
+        // slower than the stall timeout as a whole, but never silent for that long
+        assertNull(result.error);
+        assertEquals(0, result.stalls);
+        assertTrue("Read in " + result.durationMs + "ms", result.durationMs >= 800);
+    }
+
+    @Test
+    public void redirectChainIsFollowed() throws Exception {
+        this.start(Fault.redirect("/stream", 3));
+
+        StreamClient.Result result = client(3).readStream(this.server.getUrl("/stream"), STREAM_BYTES);
+        report.record(this.server, result);
+
+        assertNull(result.error);
+        assertEquals(0, result.reconnects);
+        assertEquals(4, this.server.getConnections());
+        assertEquals(STREAM_BYTES / FaultServer.ICY_METAINT, result.titles.size());
+    }
+
+    @Test
+    public void armedFaultsApplyToTheNextConnections() throws Exception {
+        // the protocol of the device tests: arm the scenario, play it, read the applied faults
+        this.start(Fault.status("/stream", 404));
+
+        HttpURLConnection arm = (HttpURLConnection) new URL(this.server.getUrl("/faults")).openConnection();
+        arm.setDoOutput(true);
+        arm.getOutputStream().write("reset:/segment-*:4096".getBytes(StandardCharsets.UTF_8));
+        assertEquals(200, arm.getResponseCode());
+        assertEquals("*", arm.getHeaderField("Access-Control-Allow-Origin"));
+
+        StreamClient.Result result = client(3).readSegments(this.server.getUrl("/live.m3u8"));
+        report.record(this.server, result);
+
+        assertNull(result.error);
+        assertEquals(1, result.reconnects);
+        assertEquals(1, this.server.getApplied().size());
+        assertTrue(this.server.getPending().isEmpty());
+    }
+
+    private byte[] readHead(String path, int length) throws IOException {
+        InputStream in = new URL(this.server.getUrl(path)).openStream();
+
+        try {
+            byte[] head = new byte[length];
+            int read = 0;
+
+            while (read < length) {
+                int count = in.read(head, read, length - read);
+
+                if (count < 0) {
+                    break;
+                }
+
+                read += count;
+            }
+
+            return Arrays.copyOf(head, read);
+        } finally {
+            in.close();
+        }
+    }
+}
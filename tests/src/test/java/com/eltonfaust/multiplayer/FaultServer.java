@@ -0,0 +1,700 @@
+package com.eltonfaust.multiplayer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local Icecast and HLS server with scripted network faults, the faults are applied in order,
+ * each one to the next connection of its path.
+ *
+ * Serves endless Icecast streams of silent MP3 frames on /stream and of silent AAC frames (ADTS) on /stream.aac,
+ * with ICY metadata when requested, and a live HLS playlist on /live.m3u8 with its MP3 segments on /segment-N.mp3,
+ * so a device can also play them:
+ * `gradle -p tests faultServer -Pfaults=reset:/stream:65536,stall:/stream:131072:15000` and
+ * `adb reverse tcp:8000 tcp:8000`, then play http://localhost:8000/stream on the device.
+ *
+ * A path ending with * matches the paths starting with it (eg. "/segment-*"). The device tests of tests/tests.js arm
+ * the faults of each scenario with POST /faults (comma separated faults), read the applied ones with GET /faults and
+ * send their results to POST /report/NAME, written to the report directory as device-NAME.json.
+ */
+public class FaultServer implements Closeable {
+    // MPEG-1 Layer III frame of 128kbps at 44.1kHz, a header followed by zeros decodes as silence
+    private static final byte[] FRAME_HEADER = { (byte) 0xFF, (byte) 0xFB, (byte) 0x90, (byte) 0x64 };
+    private static final int FRAME_SIZE = 417;
+    private static final byte[] MP3_FRAME = frame(FRAME_HEADER, new byte[FRAME_SIZE - FRAME_HEADER.length]);
+
+    // ADTS frame of AAC-LC stereo at 44.1kHz (header without CRC, 16 bytes long) with a silent raw data block
+    public static final byte[] ADTS_HEADER = {
+        (byte) 0xFF, (byte) 0xF1, (byte) 0x50, (byte) 0x80, (byte) 0x02, (byte) 0x1F, (byte) 0xFC,
+    };
+    private static final byte[] AAC_FRAME = frame(ADTS_HEADER, new byte[] {
+        (byte) 0x21, (byte) 0x00, (byte) 0x49, (byte) 0x90, (byte) 0x02, (byte) 0x19, (byte) 0x00, (byte) 0x23, (byte) 0x80,
+    });
+
+    // Audio bytes between the ICY metadata blocks
+    public static final int ICY_METAINT = 8192;
+
+    // Segments of the HLS playlist, and their duration and size (frames of 26.12ms)
+    public static final int PLAYLIST_SEGMENTS = 3;
+    public static final int SEGMENT_DURATION_S = 2;
+    public static final int SEGMENT_BYTES = 77 * FRAME_SIZE;
+
+    /**
+     * Fault types
+     */
+    public enum Kind {
+        // the connection is answered with an HTTP status instead of the content
+        STATUS,
+        // the connection is reset (TCP RST) after some bytes
+        RESET,
+        // the connection stops sending for some time after some bytes
+        STALL,
+        // the icy-metaint response header isn't a number
+        BAD_ICY_HEADER,
+        // a segment is closed after some bytes, before its content length
+        TRUNCATED_SEGMENT,
+        // the connection is sent at a limited rate (bytes/s) after some bytes
+        THROTTLE,
+        // the connection is answered with a chain of 302 redirects (hops) before the content
+        REDIRECT,
+    }
+
+    /**
+     * Fault of a scripted connection
+     */
+    public static class Fault {
+        public final Kind kind;
+        public final String path;
+        public final long afterBytes;
+        public final long value;
+
+        private Fault(Kind kind, String path, long afterBytes, long value) {
+            this.kind = kind;
+            this.path = path;
+            this.afterBytes = afterBytes;
+            this.value = value;
+        }
+
+        public static Fault status(String path, int status) {
+            return new Fault(Kind.STATUS, path, 0, status);
+        }
+
+        public static Fault reset(String path, long afterBytes) {
+            return new Fault(Kind.RESET, path, afterBytes, 0);
+        }
+
+        public static Fault stall(String path, long afterBytes, long stallMs) {
+            return new Fault(Kind.STALL, path, afterBytes, stallMs);
+        }
+
+        public static Fault badIcyHeader(String path) {
+            return new Fault(Kind.BAD_ICY_HEADER, path, 0, 0);
+        }
+
+        public static Fault truncatedSegment(String path, long afterBytes) {
+            return new Fault(Kind.TRUNCATED_SEGMENT, path, afterBytes, 0);
+        }
+
+        public static Fault throttle(String path, long afterBytes, long bytesPerSecond) {
+            return new Fault(Kind.THROTTLE, path, afterBytes, bytesPerSecond);
+        }
+
+        public static Fault redirect(String path, int hops) {
+            return new Fault(Kind.REDIRECT, path, 0, hops);
+        }
+
+        /**
+         * Parse a fault of the "kind:path[:afterBytes][:value]" form, eg. "status:/stream:503",
+         * "reset:/stream:65536", "stall:/stream:131072:15000", "badIcyHeader:/stream", "truncatedSegment:/segment-1.mp3:1000",
+         * "throttle:/stream:0:8000" or "redirect:/stream:3" (the status and the redirect hops have no afterBytes)
+         *
+         * @param spec
+         * @return Fault
+         */
+        public static Fault parse(String spec) {
+            String[] parts = spec.trim().split(":");
+
+            if (parts.length < 2) {
+                throw new IllegalArgumentException("Invalid fault: " + spec);
+            }
+
+            String path = parts[1];
+
+            switch (parts[0]) {
+                case "status":
+                    return status(path, parts.length > 2 ? Integer.parseInt(parts[2]) : 503);
+                case "reset":
+                    return reset(path, parts.length > 2 ? Long.parseLong(parts[2]) : 0);
+                case "stall":
+                    return stall(path, Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+                case "badIcyHeader":
+                    return badIcyHeader(path);
+                case "truncatedSegment":
+                    return truncatedSegment(path, Long.parseLong(parts[2]));
+                case "throttle":
+                    return throttle(path, Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+                case "redirect":
+                    return redirect(path, parts.length > 2 ? Integer.parseInt(parts[2]) : 1);
+                default:
+                    throw new IllegalArgumentException("Invalid fault: " + spec);
+            }
+        }
+
+        public boolean matches(String path) {
+            return this.path.endsWith("*") ? path.startsWith(this.path.substring(0, this.path.length() - 1)) : this.path.equals(path);
+        }
+
+        public JSONObject toJSON() {
+            return new JSONObject()
+                .put("kind", this.kind.name())
+                .put("path", this.path)
+                .put("afterBytes", this.afterBytes)
+                .put("value", this.value);
+        }
+
+        @Override
+        public String toString() {
+            return this.kind + " " + this.path + " after " + this.afterBytes + " bytes (" + this.value + ")";
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final List<Fault> script;
+    private final List<Fault> applied = new ArrayList<Fault>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger mediaSequence = new AtomicInteger();
+    private final Thread acceptThread;
+    private File reportDir = null;
+
+    /**
+     * Start listening on the loopback interface
+     *
+     * @param port 0 for any free port
+     * @param script faults of the next connections, in order
+     */
+    public FaultServer(int port, List<Fault> script) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.script = new ArrayList<Fault>(script);
+        this.acceptThread = new Thread(new Runnable() {
+            public void run() {
+                FaultServer.this.accept();
+            }
+        }, "FaultServer");
+        this.acceptThread.setDaemon(true);
+        this.acceptThread.start();
+    }
+
+    public FaultServer(Fault... script) throws IOException {
+        this(0, Arrays.asList(script));
+    }
+
+    /**
+     * @param reportDir where the reports sent by the device are written, null to refuse them
+     */
+    public void setReportDir(File reportDir) {
+        this.reportDir = reportDir;
+    }
+
+    /**
+     * Replace the faults not applied yet and forget the applied ones
+     *
+     * @param script faults of the next connections, in order
+     */
+    public synchronized void arm(List<Fault> script) {
+        this.script.clear();
+        this.script.addAll(script);
+        this.applied.clear();
+    }
+
+    public String getUrl(String path) {
+        return "http://127.0.0.1:" + this.serverSocket.getLocalPort() + path;
+    }
+
+    /**
+     * @return connections accepted so far
+     */
+    public int getConnections() {
+        return this.connections.get();
+    }
+
+    /**
+     * @return faults applied so far, in order
+     */
+    public synchronized List<Fault> getApplied() {
+        return new ArrayList<Fault>(this.applied);
+    }
+
+    /**
+     * @return faults of the script not applied
+     */
+    public synchronized List<Fault> getPending() {
+        return new ArrayList<Fault>(this.script);
+    }
+
+    public synchronized JSONArray appliedToJSON() {
+        JSONArray faults = new JSONArray();
+
+        for (Fault fault : this.applied) {
+            faults.put(fault.toJSON());
+        }
+
+        return faults;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.serverSocket.close();
+    }
+
+    private synchronized Fault takeFault(String path) {
+        Iterator<Fault> iterator = this.script.iterator();
+
+        while (iterator.hasNext()) {
+            Fault fault = iterator.next();
+
+            if (fault.matches(path)) {
+                iterator.remove();
+                this.applied.add(fault);
+                return fault;
+            }
+        }
+
+        return null;
+    }
+
+    private void accept() {
+        while (!this.serverSocket.isClosed()) {
+            final Socket socket;
+
+            try {
+                socket = this.serverSocket.accept();
+            } catch (IOException e) {
+                // closed
+                return;
+            }
+
+            this.connections.incrementAndGet();
+
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        FaultServer.this.serve(socket);
+                    } catch (IOException e) {
+                        // the client went away
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // already closed
+                        }
+                    }
+                }
+            }, "FaultServer-connection");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+        String requestLine = reader.readLine();
+
+        if (requestLine == null) {
+            return;
+        }
+
+        String method = requestLine.split(" ")[0];
+        String target = requestLine.split(" ")[1];
+        int query = target.indexOf('?');
+        String path = query < 0 ? target : target.substring(0, query);
+        int redirectsLeft = this.parseRedirectsLeft(query < 0 ? "" : target.substring(query + 1));
+        boolean icyMetadata = false;
+        int contentLength = 0;
+        String header;
+
+        while ((header = reader.readLine()) != null && !header.isEmpty()) {
+            if (header.toLowerCase().startsWith("icy-metadata:") && header.substring(13).trim().equals("1")) {
+                icyMetadata = true;
+            } else if (header.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(header.substring(15).trim());
+            }
+        }
+
+        if (path.equals("/faults") || path.startsWith("/report/") || method.equals("OPTIONS")) {
+            this.serveControl(socket.getOutputStream(), method, path, this.readBody(reader, contentLength));
+            return;
+        }
+
+        // the hops of a redirect chain are part of the connection that got the fault
+        Fault fault = redirectsLeft < 0 ? this.takeFault(path) : null;
+        OutputStream out = socket.getOutputStream();
+
+        if (fault != null && fault.kind == Kind.STATUS) {
+            this.writeHead(out, (int) fault.value, "text/plain", -1, null);
+            return;
+        }
+
+        if (fault != null && fault.kind == Kind.REDIRECT) {
+            redirectsLeft = (int) fault.value;
+        }
+
+        if (redirectsLeft > 0) {
+            this.writeRedirect(out, path + "?redirect=" + (redirectsLeft - 1));
+            return;
+        }
+
+        if (path.equals("/stream") || path.equals("/stream.aac")) {
+            boolean aac = path.equals("/stream.aac");
+            String metaint = fault != null && fault.kind == Kind.BAD_ICY_HEADER ? "8k" : String.valueOf(ICY_METAINT);
+            this.writeHead(out, 200, aac ? "audio/aac" : "audio/mpeg", -1, icyMetadata ? metaint : null);
+            this.writeStream(socket, out, aac ? AAC_FRAME : MP3_FRAME, icyMetadata, fault);
+        } else if (path.equals("/live.m3u8")) {
+            byte[] playlist = this.buildPlaylist().getBytes(StandardCharsets.UTF_8);
+            this.writeHead(out, 200, "application/vnd.apple.mpegurl", playlist.length, null);
+            out.write(playlist);
+        } else if (path.startsWith("/segment-")) {
+            this.writeHead(out, 200, "audio/mpeg", SEGMENT_BYTES, null);
+            this.writeSegment(socket, out, fault);
+        } else {
+            this.writeHead(out, 404, "text/plain", -1, null);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Fault script and reports of the device tests, allowed from the web view origin
+     */
+    private void serveControl(OutputStream out, String method, String path, String body) throws IOException {
+        byte[] response = new byte[0];
+        int status = 200;
+
+        if (method.equals("OPTIONS")) {
+            status = 204;
+        } else if (path.equals("/faults")) {
+            if (method.equals("POST")) {
+                List<Fault> script = new ArrayList<Fault>();
+
+                for (String spec : body.split(",")) {
+                    if (!spec.trim().isEmpty()) {
+                        script.add(Fault.parse(spec.trim()));
+                    }
+                }
+
+                this.arm(script);
+                System.out.println("Armed " + script);
+            }
+
+            JSONArray pending = new JSONArray();
+
+            for (Fault fault : this.getPending()) {
+                pending.put(fault.toJSON());
+            }
+
+            response = new JSONObject()
+                .put("applied", this.appliedToJSON())
+                .put("pending", pending)
+                .toString()
+                .getBytes(StandardCharsets.UTF_8);
+        } else if (this.reportDir == null || !method.equals("POST") || !path.matches("/report/[A-Za-z0-9_-]+")) {
+            status = 404;
+        } else {
+            File file = new File(this.reportDir, "device-" + path.substring(8) + ".json");
+            this.reportDir.mkdirs();
+
+            try (OutputStream report = new FileOutputStream(file)) {
+                report.write(new JSONObject(body).toString(2).getBytes(StandardCharsets.UTF_8));
+            }
+
+            System.out.println("Report written to " + file);
+        }
+
+        this.writeHead(out, status, "application/json", response.length, null);
+        out.write(response);
+        out.flush();
+    }
+
+    private String readBody(BufferedReader reader, int contentLength) throws IOException {
+        char[] body = new char[contentLength];
+        int read = 0;
+
+        while (read < contentLength) {
+            int count = reader.read(body, read, contentLength - read);
+
+            if (count < 0) {
+                break;
+            }
+
+            read += count;
+        }
+
+        // read as ISO-8859-1, one char per byte
+        return new String(new String(body, 0, read).getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+    }
+
+    private void writeHead(OutputStream out, int status, String contentType, long contentLength, String icyMetaint) throws IOException {
+        StringBuilder head = new StringBuilder()
+            .append("HTTP/1.1 ").append(status).append(status < 300 ? " OK" : " Fault").append("\r\n")
+            .append("Content-Type: ").append(contentType).append("\r\n")
+            .append("Connection: close\r\n")
+            .append("Cache-Control: no-cache\r\n")
+            .append("Access-Control-Allow-Origin: *\r\n")
+            .append("Access-Control-Allow-Methods: GET, POST\r\n")
+            .append("Access-Control-Allow-Headers: Content-Type\r\n");
+
+        if (contentLength >= 0) {
+            head.append("Content-Length: ").append(contentLength).append("\r\n");
+        } else if (status != 200) {
+            head.append("Content-Length: 0\r\n");
+        }
+
+        if (icyMetaint != null) {
+            head.append("icy-name: FaultServer\r\n").append("icy-metaint: ").append(icyMetaint).append("\r\n");
+        }
+
+        out.write(head.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private void writeRedirect(OutputStream out, String location) throws IOException {
+        String head = "HTTP/1.1 302 Found\r\n"
+            + "Location: " + location + "\r\n"
+            + "Content-Length: 0\r\n"
+            + "Connection: close\r\n\r\n";
+
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * @return hops left of a redirect chain, -1 if the request isn't part of one
+     */
+    private int parseRedirectsLeft(String query) {
+        for (String param : query.split("&")) {
+            if (param.startsWith("redirect=")) {
+                return Integer.parseInt(param.substring(9));
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Endless stream of frames, with a metadata block every ICY_METAINT bytes when requested
+     */
+    private void writeStream(Socket socket, OutputStream out, byte[] frame, boolean icyMetadata, Fault fault) throws IOException {
+        long written = 0;
+        int sinceMetadata = 0;
+        int titles = 0;
+        boolean faulted = false;
+        Throttle throttle = null;
+
+        while (!socket.isClosed()) {
+            int frameOffset = (int) (written % frame.length);
+            int length = frame.length - frameOffset;
+
+            if (icyMetadata) {
+                length = Math.min(length, ICY_METAINT - sinceMetadata);
+            }
+
+            if (!faulted && fault != null && fault.afterBytes > written) {
+                length = (int) Math.min(length, fault.afterBytes - written);
+            }
+
+            out.write(frame, frameOffset, length);
+            written += length;
+            sinceMetadata += length;
+
+            if (throttle != null) {
+                throttle.pace(length);
+            }
+
+            if (!faulted && fault != null && written >= fault.afterBytes) {
+                faulted = true;
+
+                if (fault.kind == Kind.THROTTLE) {
+                    throttle = new Throttle(fault.value);
+                } else if (this.applyFault(socket, out, fault)) {
+                    return;
+                }
+            }
+
+            if (icyMetadata && sinceMetadata == ICY_METAINT) {
+                out.write(this.metadataBlock("StreamTitle='FaultServer - Title " + (++titles) + "';"));
+                sinceMetadata = 0;
+            }
+        }
+    }
+
+    private void writeSegment(Socket socket, OutputStream out, Fault fault) throws IOException {
+        long limit = fault != null && fault.kind == Kind.TRUNCATED_SEGMENT ? fault.afterBytes : SEGMENT_BYTES;
+        long written = 0;
+        Throttle throttle = null;
+
+        while (written < limit) {
+            int frameOffset = (int) (written % FRAME_SIZE);
+            int length = (int) Math.min(FRAME_SIZE - frameOffset, limit - written);
+
+            if (fault != null && fault.kind != Kind.TRUNCATED_SEGMENT && fault.afterBytes > written) {
+                length = (int) Math.min(length, fault.afterBytes - written);
+            }
+
+            out.write(MP3_FRAME, frameOffset, length);
+            written += length;
+
+            if (throttle != null) {
+                throttle.pace(length);
+            }
+
+            if (fault != null && fault.kind != Kind.TRUNCATED_SEGMENT && written == fault.afterBytes) {
+                if (fault.kind == Kind.THROTTLE) {
+                    throttle = new Throttle(fault.value);
+                } else if (this.applyFault(socket, out, fault)) {
+                    return;
+                }
+            }
+        }
+
+        // a truncated segment closes the connection with the content length not reached
+    }
+
+    /**
+     * @return true if the connection was dropped
+     */
+    private boolean applyFault(Socket socket, OutputStream out, Fault fault) throws IOException {
+        switch (fault.kind) {
+            case RESET:
+                out.flush();
+                // a zero linger closes the connection with a RST instead of a FIN
+                socket.setSoLinger(true, 0);
+                socket.close();
+                return true;
+            case STALL:
+                out.flush();
+
+                try {
+                    Thread.sleep(fault.value);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return true;
+                }
+
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private static byte[] frame(byte[] header, byte[] data) {
+        byte[] frame = new byte[header.length + data.length];
+        System.arraycopy(header, 0, frame, 0, header.length);
+        System.arraycopy(data, 0, frame, header.length, data.length);
+
+        return frame;
+    }
+
+    /**
+     * Paces the writes of a throttled connection to its rate
+     */
+    private static class Throttle {
+        private final long bytesPerSecond;
+        private final long startedAt = System.nanoTime();
+        private long bytes = 0;
+
+        Throttle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void pace(int written) throws IOException {
+            this.bytes += written;
+
+            long aheadMs = this.bytes * 1000 / this.bytesPerSecond - (System.nanoTime() - this.startedAt) / 1000000;
+
+            if (aheadMs <= 0) {
+                return;
+            }
+
+            try {
+                Thread.sleep(aheadMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    private byte[] metadataBlock(String metadata) {
+        byte[] text = metadata.getBytes(StandardCharsets.UTF_8);
+        int blocks = (text.length + 15) / 16;
+        byte[] block = new byte[1 + blocks * 16];
+        block[0] = (byte) blocks;
+        System.arraycopy(text, 0, block, 1, text.length);
+
+        return block;
+    }
+
+    private String buildPlaylist() {
+        // a live window that moves on every request
+        int sequence = this.mediaSequence.getAndIncrement();
+        StringBuilder playlist = new StringBuilder()
+            .append("#EXTM3U\n")
+            .append("#EXT-X-VERSION:3\n")
+            .append("#EXT-X-TARGETDURATION:").append(SEGMENT_DURATION_S).append("\n")
+            .append("#EXT-X-MEDIA-SEQUENCE:").append(sequence).append("\n");
+
+        for (int i = sequence; i < sequence + PLAYLIST_SEGMENTS; i++) {
+            playlist.append("#EXTINF:").append(SEGMENT_DURATION_S).append(".0,\n").append("/segment-").append(i).append(".mp3\n");
+        }
+
+        return playlist.toString();
+    }
+
+    /**
+     * Run the server for a device, on the port of the "port" property (default 8000) with the comma separated faults
+     * of the "faults" property, writing the device reports to the directory of the "reports" property
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<Fault> script = new ArrayList<Fault>();
+        String faults = System.getProperty("faults", "");
+
+        for (String spec : faults.split(",")) {
+            if (!spec.trim().isEmpty()) {
+                script.add(Fault.parse(spec));
+            }
+        }
+
+        FaultServer server = new FaultServer(Integer.getInteger("port", 8000), script);
+        server.setReportDir(new File(System.getProperty("reports", "build/reports/faults")));
+        System.out.println(
+            "Serving " + server.getUrl("/stream") + ", " + server.getUrl("/stream.aac") + " and " + server.getUrl("/live.m3u8")
+                + " with " + script
+        );
+
+        int reported = 0;
+
+        while (true) {
+            Thread.sleep(1000);
+            List<Fault> applied = server.getApplied();
+
+            for (; reported < applied.size(); reported++) {
+                System.out.println("Applied " + applied.get(reported));
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.eltonfaust.multiplayer;
+
+/**
+ * Seeds of the fuzz tests, a failure is reproduced running only its seed with -Dfuzz.seed=<seed>
+ */
+final class FuzzSeeds {
+    // Runs when no seed is given
+    private static final int DEFAULT_RUNS = 200;
+
+    private FuzzSeeds() {
+    }
+
+    static long[] get() {
+        String seed = System.getProperty("fuzz.seed", "");
+
+        if (!seed.isEmpty()) {
+            return new long[] { Long.parseLong(seed) };
+        }
+
+        String runs = System.getProperty("fuzz.runs", "");
+        long[] seeds = new long[runs.isEmpty() ? DEFAULT_RUNS : Integer.parseInt(runs)];
+
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = i + 1;
+        }
+
+        return seeds;
+    }
+}
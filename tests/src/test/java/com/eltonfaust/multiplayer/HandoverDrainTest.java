@@ -0,0 +1,72 @@
+package com.eltonfaust.multiplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HandoverDrainTest {
+    private static final long LOW_WATERMARK_MS = 2000;
+
+    @Test
+    public void waitsTheBufferToDrainDownToTheLowWatermark() {
+        HandoverDrain drain = new HandoverDrain(1000, 10000, LOW_WATERMARK_MS);
+
+        assertFalse(drain.shouldSwitch(10000, true, 1000));
+        assertFalse(drain.shouldSwitch(3000, true, 8000));
+        assertEquals(1000, drain.getRemainingMs(8000));
+        assertTrue(drain.shouldSwitch(2000, true, 8500));
+    }
+
+    @Test
+    public void switchesAfterTheDrainTimeWhenThePreviousNetworkKeepsLoading() {
+        HandoverDrain drain = new HandoverDrain(0, 10000, LOW_WATERMARK_MS);
+
+        // the buffer is refilled, the time played since the candidate got ready is what matters
+        assertFalse(drain.shouldSwitch(10000, true, 7999));
+        assertTrue(drain.shouldSwitch(10000, true, 8000));
+    }
+
+    @Test
+    public void drainIsCapped() {
+        HandoverDrain drain = new HandoverDrain(0, 120000, LOW_WATERMARK_MS);
+
+        assertEquals(HandoverDrain.MAX_DRAIN_MS, drain.getRemainingMs(0));
+        assertTrue(drain.shouldSwitch(100000, true, HandoverDrain.MAX_DRAIN_MS));
+    }
+
+    @Test
+    public void switchesRightAwayWithoutBufferAboveTheWatermark() {
+        HandoverDrain drain = new HandoverDrain(0, 1500, LOW_WATERMARK_MS);
+
+        assertEquals(0, drain.getRemainingMs(0));
+        assertTrue(drain.shouldSwitch(1500, true, 0));
+    }
+
+    @Test
+    public void switchesRightAwayWhenThePreviousNetworkIsLost() {
+        final HandoverDrain drain = new HandoverDrain(0, 10000, LOW_WATERMARK_MS);
+        final boolean[] playing = { true };
+
+        FakeConnectivitySource source = new FakeConnectivitySource();
+        source.start(new ConnectivitySource.Listener() {
+            @Override
+            public void onNetworkChanged() {
+            }
+
+            @Override
+            public void onNetworkLost() {
+                // the current player stalls without its network
+                playing[0] = false;
+            }
+        });
+
+        assertFalse(drain.shouldSwitch(9000, playing[0], 1000));
+
+        source.loseNetwork();
+
+        assertFalse(source.isConnected());
+        assertTrue(drain.shouldSwitch(9000, playing[0], 1000));
+    }
+}
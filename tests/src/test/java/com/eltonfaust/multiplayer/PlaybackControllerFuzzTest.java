@@ -0,0 +1,342 @@
+package com.eltonfaust.multiplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Drives the playback state handling with a fake player, interleaving random user commands,
+ * audio focus changes, network events and the work posted to the playback thread
+ */
+public class PlaybackControllerFuzzTest {
+    private static final int STEPS = 1000;
+
+    // Kept on the failure message
+    private static final int TRACE_SIZE = 60;
+
+    @Test
+    public void randomSequencesKeepTheInvariants() {
+        for (long seed : FuzzSeeds.get()) {
+            FakeSession session = new FakeSession(new Random(seed));
+
+            for (int step = 0; step < STEPS; step++) {
+                try {
+                    session.step();
+                    session.assertInvariants();
+                } catch (AssertionError e) {
+                    throw new AssertionError("seed " + seed + ", step " + step + ", trace:\n" + session.trace(), e);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void focusRegainedAfterTransientLossResumes() {
+        FakeSession session = new FakeSession(new Random(0));
+
+        session.play();
+        session.player.onNetwork(true);
+        assertEquals(PlaybackState.PLAYING, session.machine.getState());
+
+        session.controller.onFocusChange(PlaybackController.Focus.LOSS_TRANSIENT);
+        session.drain();
+        assertEquals(PlaybackState.STOPPED_FOCUS_TRANSIENT, session.machine.getState());
+
+        session.controller.onFocusChange(PlaybackController.Focus.GAIN);
+        session.drain();
+        session.player.onNetwork(true);
+        assertEquals(PlaybackState.PLAYING, session.machine.getState());
+        assertEquals("STOPPED_FOCUS_TRANSIENT", session.notifications.get(session.notifications.size() - 2));
+        assertEquals("STARTED_FOCUS_TRANSIENT", session.notifications.get(session.notifications.size() - 1));
+    }
+
+    @Test
+    public void replayOfAStoppedPlayerIsReported() {
+        FakeSession session = new FakeSession(new Random(0));
+        session.softStop = true;
+
+        session.play();
+        session.player.onNetwork(true);
+        session.stop();
+        session.drain();
+        assertEquals(PlaybackState.STOPPED, session.machine.getState());
+
+        session.play();
+        assertEquals(PlaybackState.PLAYING, session.machine.getState());
+        assertEquals("STARTED", session.notifications.get(session.notifications.size() - 1));
+    }
+
+    /**
+     * Session side of the controller, a reduced RadioSession keeping its play and stop flow
+     */
+    private static class FakeSession implements PlaybackController.Host {
+        final PlaybackStateMachine machine = new PlaybackStateMachine();
+        final PlaybackController controller = new PlaybackController(this.machine, this);
+        final Queue<Runnable> posted = new ArrayDeque<Runnable>();
+        final List<String> notifications = new ArrayList<String>();
+        final ArrayDeque<String> trace = new ArrayDeque<String>();
+        final Random random;
+
+        FakeStreamPlayer player = null;
+        boolean softStop = false;
+        boolean recording = false;
+
+        FakeSession(Random random) {
+            this.random = random;
+        }
+
+        void step() {
+            int op = this.random.nextInt(12);
+
+            switch (op) {
+                case 0:
+                    // the commands are posted to the playback thread, as the player events
+                    this.trace("play");
+                    this.post(new Runnable() {
+                        public void run() {
+                            FakeSession.this.play();
+                        }
+                    });
+                    break;
+                case 1:
+                    this.trace("stop");
+                    this.post(new Runnable() {
+                        public void run() {
+                            FakeSession.this.stop();
+                        }
+                    });
+                    break;
+                case 2:
+                    PlaybackController.Focus[] focuses = PlaybackController.Focus.values();
+                    PlaybackController.Focus focus = focuses[this.random.nextInt(focuses.length)];
+                    this.trace("focus " + focus);
+                    this.controller.onFocusChange(focus);
+                    break;
+                case 3:
+                case 4:
+                    if (this.player != null) {
+                        boolean ready = this.random.nextInt(3) > 0;
+                        this.trace(ready ? "network ready" : "network buffering");
+                        this.player.onNetwork(ready);
+                    }
+                    break;
+                case 5:
+                    if (this.player != null && this.random.nextInt(4) == 0) {
+                        if (this.random.nextBoolean()) {
+                            this.trace("error");
+                            this.player.onError();
+                        } else {
+                            this.trace("ended");
+                            this.player.onEnded();
+                        }
+                    }
+                    break;
+                case 6:
+                    if (this.machine.is(PlaybackState.PLAYING) && !this.recording) {
+                        this.trace("start recording");
+                        this.recording = true;
+                    } else if (this.recording) {
+                        this.trace("stop recording");
+                        this.recording = false;
+                    }
+                    break;
+                case 7:
+                    this.softStop = !this.softStop;
+                    break;
+                default:
+                    // the playback thread catching up
+                    Runnable runnable = this.posted.poll();
+
+                    if (runnable != null) {
+                        this.trace("run posted");
+                        runnable.run();
+                    }
+            }
+        }
+
+        void drain() {
+            Runnable runnable;
+
+            while ((runnable = this.posted.poll()) != null) {
+                runnable.run();
+            }
+        }
+
+        /**
+         * RadioSession.play, with the focus granted and a single mirror
+         */
+        void play() {
+            this.controller.onPlay();
+
+            if (this.player == null) {
+                this.player = new FakeStreamPlayer(this.controller);
+            }
+
+            if (this.player.getPlaybackState() == StreamPlayer.STATE_IDLE) {
+                this.player.prepare();
+            }
+
+            this.controller.start(this.player);
+        }
+
+        @Override
+        public StreamPlayer getPlayer() {
+            return this.player;
+        }
+
+        @Override
+        public boolean isRetryPending() {
+            return false;
+        }
+
+        @Override
+        public boolean isRecording() {
+            return this.recording;
+        }
+
+        @Override
+        public void post(Runnable runnable) {
+            this.posted.add(runnable);
+        }
+
+        /**
+         * RadioSession.stop, without force
+         */
+        @Override
+        public void stop() {
+            if (this.player == null || this.machine.is(PlaybackState.STOPPED)) {
+                this.notifyRadioStopped();
+                return;
+            }
+
+            if (
+                this.machine.is(PlaybackState.PLAYING)
+                || this.machine.is(PlaybackState.STOPPED_FOCUS_TRANSIENT)
+                || this.machine.is(PlaybackState.STOPPED_FOCUS_LOSS)
+            ) {
+                this.player.stop();
+            }
+        }
+
+        @Override
+        public void stopPlayer() {
+            this.machine.fire(PlaybackStateMachine.Event.STOP);
+            this.controller.clearFocusMuted();
+            this.recording = false;
+
+            if (!this.softStop) {
+                this.player = null;
+            }
+        }
+
+        @Override
+        public void onSourceEnded() {
+            // no retry configured, the failure stops the playback
+            this.post(new Runnable() {
+                public void run() {
+                    FakeSession.this.stopPlayer();
+                    FakeSession.this.notifyRadioStopped();
+                }
+            });
+        }
+
+        @Override
+        public void onReady() {
+        }
+
+        @Override
+        public void notifyRadioStarted() {
+            this.notify("STARTED");
+            assertEquals(PlaybackState.PLAYING, this.machine.getState());
+        }
+
+        @Override
+        public void notifyRadioStopped() {
+            this.notify("STOPPED");
+            assertTrue(!this.machine.is(PlaybackState.PLAYING));
+        }
+
+        @Override
+        public void notifyRadioStartedFocusTransient() {
+            this.notify("STARTED_FOCUS_TRANSIENT");
+            assertEquals(PlaybackState.PLAYING, this.machine.getState());
+        }
+
+        @Override
+        public void notifyRadioStoppedFocusTransient() {
+            this.notify("STOPPED_FOCUS_TRANSIENT");
+            assertEquals(PlaybackState.STOPPED_FOCUS_TRANSIENT, this.machine.getState());
+        }
+
+        @Override
+        public void notifyRadioStoppedFocusLoss() {
+            this.notify("STOPPED_FOCUS_LOSS");
+            assertTrue(!this.machine.is(PlaybackState.PLAYING));
+        }
+
+        @Override
+        public void log(String log) {
+            this.trace("log " + log);
+        }
+
+        void assertInvariants() {
+            if (this.machine.is(PlaybackState.PLAYING) && this.player != null) {
+                // playing is never silent, only a transient loss mutes the player
+                assertTrue("muted while playing", this.player.getVolume() > 0f);
+                assertTrue("playing without play when ready", this.player.getPlayWhenReady());
+            }
+
+            if (
+                this.machine.is(PlaybackState.STOPPED_FOCUS_TRANSIENT)
+                && this.player != null
+                && this.player.getPlaybackState() == StreamPlayer.STATE_READY
+                && this.player.getPlayWhenReady()
+            ) {
+                // the player is stopped, or muted if recording
+                assertEquals("audible on transient loss", 0f, this.player.getVolume(), 0f);
+            }
+
+            // a start is always followed by a stop before the next start
+            String previous = null;
+
+            for (String notification : this.notifications) {
+                if (notification.startsWith("STARTED") && previous != null && previous.startsWith("STARTED")) {
+                    fail("started twice: " + this.notifications);
+                }
+
+                previous = notification;
+            }
+        }
+
+        private void notify(String notification) {
+            this.trace("notify " + notification);
+            this.notifications.add(notification);
+        }
+
+        private void trace(String operation) {
+            this.trace.add(operation + " [" + this.machine.getState() + "]");
+
+            if (this.trace.size() > TRACE_SIZE) {
+                this.trace.poll();
+            }
+        }
+
+        String trace() {
+            StringBuilder builder = new StringBuilder();
+
+            for (String operation : this.trace) {
+                builder.append("  ").append(operation).append('\n');
+            }
+
+            return builder.toString();
+        }
+    }
+}
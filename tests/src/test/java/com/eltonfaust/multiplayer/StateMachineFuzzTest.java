@@ -0,0 +1,220 @@
+package com.eltonfaust.multiplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Fires random event sequences on the state machines, asserting the invariants of the transition tables
+ */
+public class StateMachineFuzzTest {
+    private static final int STEPS = 2000;
+
+    @Test
+    public void playbackTransitionsKeepTheInvariants() {
+        for (long seed : FuzzSeeds.get()) {
+            Random random = new Random(seed);
+            PlaybackStateMachine machine = new PlaybackStateMachine();
+            RecordingListener listener = new RecordingListener();
+            machine.setListener(listener);
+
+            PlaybackStateMachine.Event[] events = PlaybackStateMachine.Event.values();
+
+            for (int step = 0; step < STEPS; step++) {
+                PlaybackState from = machine.getState();
+                PlaybackStateMachine.Event event = events[random.nextInt(events.length)];
+                int transitions = listener.transitions.size();
+                int ignored = listener.ignored;
+
+                boolean accepted = machine.fire(event);
+                PlaybackState to = machine.getState();
+                String context = "seed " + seed + ", step " + step + ": " + from + " + " + event + " -> " + to;
+
+                if (!accepted) {
+                    assertEquals(context, from, to);
+                    assertEquals(context, ignored + 1, listener.ignored);
+                    assertEquals(context, transitions, listener.transitions.size());
+                    continue;
+                }
+
+                // notified only of actual changes, in the order they happened
+                assertEquals(context, from != to ? transitions + 1 : transitions, listener.transitions.size());
+
+                switch (event) {
+                    case STOP:
+                        assertEquals(context, PlaybackState.STOPPED, to);
+                        break;
+                    case RELEASE:
+                        assertEquals(context, PlaybackState.IDLE, to);
+                        break;
+                    case FOCUS_DENIED:
+                    case FOCUS_LOSS:
+                        assertEquals(context, PlaybackState.STOPPED_FOCUS_LOSS, to);
+                        break;
+                    case START:
+                        assertTrue(context, from != PlaybackState.PLAYING && from != PlaybackState.STOPPED_FOCUS_TRANSIENT);
+                        assertEquals(context, PlaybackState.PLAYING, to);
+                        break;
+                    case FOCUS_GAIN:
+                        assertEquals(context, PlaybackState.STOPPED_FOCUS_TRANSIENT, from);
+                        assertEquals(context, PlaybackState.PLAYING, to);
+                        break;
+                    case FOCUS_LOSS_TRANSIENT:
+                        assertTrue(context, from == PlaybackState.PLAYING || from == PlaybackState.STOPPED_FOCUS_TRANSIENT);
+                        assertEquals(context, PlaybackState.STOPPED_FOCUS_TRANSIENT, to);
+                        break;
+                    case FORCE_STOP:
+                        assertTrue(context, from == PlaybackState.STOPPED_FOCUS_TRANSIENT || from == PlaybackState.STOPPED_FOCUS_LOSS);
+                        assertEquals(context, PlaybackState.PLAYING, to);
+                        break;
+                    default:
+                        fail(context);
+                }
+            }
+
+            listener.assertChained(PlaybackState.IDLE, "seed " + seed);
+        }
+    }
+
+    @Test
+    public void playbackTransitionsAreSerializedBetweenThreads() throws InterruptedException {
+        final PlaybackStateMachine machine = new PlaybackStateMachine();
+        final RecordingListener listener = new RecordingListener();
+        machine.setListener(listener);
+
+        final long seed = FuzzSeeds.get()[0];
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < 4; i++) {
+            final Random random = new Random(seed + i);
+
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    PlaybackStateMachine.Event[] events = PlaybackStateMachine.Event.values();
+
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int step = 0; step < STEPS; step++) {
+                        machine.fire(events[random.nextInt(events.length)]);
+                    }
+                }
+            });
+
+            threads.add(thread);
+            thread.start();
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        listener.assertChained(PlaybackState.IDLE, "seed " + seed);
+
+        if (!listener.transitions.isEmpty()) {
+            assertEquals(listener.transitions.get(listener.transitions.size() - 1)[1], machine.getState());
+        }
+    }
+
+    @Test
+    public void connectionTransitionsKeepTheInvariants() {
+        for (long seed : FuzzSeeds.get()) {
+            Random random = new Random(seed);
+            ConnectionStateMachine machine = new ConnectionStateMachine();
+            ConnectionStateMachine.Event[] events = ConnectionStateMachine.Event.values();
+            final List<ConnectionState[]> transitions = new ArrayList<ConnectionState[]>();
+
+            machine.setListener(new ConnectionStateMachine.Listener() {
+                @Override
+                public void onTransition(ConnectionState from, ConnectionStateMachine.Event event, ConnectionState to) {
+                    transitions.add(new ConnectionState[] { from, to });
+                }
+            });
+
+            for (int step = 0; step < STEPS; step++) {
+                ConnectionState from = machine.getState();
+                ConnectionStateMachine.Event event = events[random.nextInt(events.length)];
+                boolean accepted = machine.fire(event);
+                ConnectionState to = machine.getState();
+                String context = "seed " + seed + ", step " + step + ": " + from + " + " + event + " -> " + to;
+
+                if (!accepted) {
+                    assertEquals(context, from, to);
+                    continue;
+                }
+
+                switch (event) {
+                    case CONNECT:
+                        // a connect while connecting or connected must not bind the service twice
+                        assertEquals(context, ConnectionState.DISCONNECTED, from);
+                        assertEquals(context, ConnectionState.CONNECTING, to);
+                        break;
+                    case BOUND:
+                        // a bind completed after the disconnect is ignored
+                        assertEquals(context, ConnectionState.CONNECTING, from);
+                        assertEquals(context, ConnectionState.CONNECTED, to);
+                        break;
+                    case LOST:
+                        assertEquals(context, ConnectionState.CONNECTED, from);
+                        assertEquals(context, ConnectionState.CONNECTING, to);
+                        break;
+                    case DISCONNECT:
+                        assertEquals(context, ConnectionState.DISCONNECTED, to);
+                        break;
+                    default:
+                        fail(context);
+                }
+            }
+
+            ConnectionState previous = ConnectionState.DISCONNECTED;
+
+            for (ConnectionState[] transition : transitions) {
+                assertEquals("seed " + seed, previous, transition[0]);
+                previous = transition[1];
+            }
+
+            assertEquals("seed " + seed, previous, machine.getState());
+        }
+    }
+
+    private static class RecordingListener implements PlaybackStateMachine.Listener {
+        final List<PlaybackState[]> transitions = new ArrayList<PlaybackState[]>();
+        int ignored = 0;
+
+        @Override
+        public void onTransition(PlaybackState from, PlaybackStateMachine.Event event, PlaybackState to) {
+            this.transitions.add(new PlaybackState[] { from, to });
+        }
+
+        @Override
+        public void onIgnored(PlaybackState state, PlaybackStateMachine.Event event) {
+            this.ignored++;
+        }
+
+        /**
+         * Every transition starts where the previous one ended
+         */
+        void assertChained(PlaybackState initial, String context) {
+            PlaybackState previous = initial;
+
+            for (PlaybackState[] transition : this.transitions) {
+                assertEquals(context, previous, transition[0]);
+                assertTrue(context, transition[0] != transition[1]);
+                previous = transition[1];
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.eltonfaust.multiplayer;
+
+import androidx.media3.common.PlaybackException;
+import androidx.media3.datasource.HttpDataSource;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the streams of the FaultServer the way the player does: the failures are reported with the ExoPlayer error
+ * codes, classified and retried by the plugin retry policy, and the attempts are reset once a connection delivers
+ * data again (the player got ready).
+ * It checks the server and the retry policy only, it has no buffer, live offset or stall watchdog, the playback
+ * metrics come from the device tests (tests/tests.js)
+ */
+public class StreamClient {
+    private static final Pattern STREAM_TITLE = Pattern.compile("StreamTitle='(.*?)';");
+
+    /**
+     * Outcome of a read
+     */
+    public static class Result {
+        public long bytes = 0;
+        public int connections = 0;
+        public int reconnects = 0;
+        public int stalls = 0;
+        public int metaint = 0;
+        public final List<String> titles = new ArrayList<String>();
+        public final List<String> events = new ArrayList<String>();
+        public RetryPolicy.ErrorCategory error = null;
+        public long durationMs = 0;
+
+        public JSONObject toJSON() {
+            return new JSONObject()
+                .put("bytes", this.bytes)
+                .put("connections", this.connections)
+                .put("reconnects", this.reconnects)
+                .put("stalls", this.stalls)
+                .put("metaint", this.metaint)
+                .put("titles", new JSONArray(this.titles))
+                .put("events", new JSONArray(this.events))
+                .put("error", this.error == null ? JSONObject.NULL : this.error.name())
+                .put("durationMs", this.durationMs);
+        }
+    }
+
+    /**
+     * A connection, retried until it completes or the policy gives up
+     */
+    private interface Connection {
+        void read(Result result) throws PlaybackException;
+    }
+
+    private final RetryPolicy retryPolicy;
+    private final int readTimeoutMs;
+
+    /**
+     * @param retryPolicy
+     * @param readTimeoutMs time without data before the connection is considered stalled
+     */
+    public StreamClient(RetryPolicy retryPolicy, int readTimeoutMs) {
+        this.retryPolicy = retryPolicy;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    /**
+     * Read an Icecast stream, with ICY metadata, until the bytes of audio are received
+     *
+     * @param url
+     * @param targetBytes
+     * @return Result
+     */
+    public Result readStream(final String url, final long targetBytes) {
+        final Result result = new Result();
+        long startedAt = System.currentTimeMillis();
+
+        this.retry(result, new Connection() {
+            public void read(Result result) throws PlaybackException {
+                StreamClient.this.readIcy(url, targetBytes, result);
+            }
+        });
+
+        result.durationMs = System.currentTimeMillis() - startedAt;
+        return result;
+    }
+
+    /**
+     * Read the segments of a HLS media playlist
+     *
+     * @param playlistUrl
+     * @return Result
+     */
+    public Result readSegments(final String playlistUrl) {
+        final Result result = new Result();
+        final List<String> segments = new ArrayList<String>();
+        long startedAt = System.currentTimeMillis();
+
+        boolean loaded = this.retry(result, new Connection() {
+            public void read(Result result) throws PlaybackException {
+                segments.addAll(StreamClient.this.readPlaylist(playlistUrl, result));
+            }
+        });
+
+        for (int i = 0; loaded && i < segments.size(); i++) {
+            final String segmentUrl = segments.get(i);
+
+            loaded = this.retry(result, new Connection() {
+                public void read(Result result) throws PlaybackException {
+                    StreamClient.this.readSegment(segmentUrl, result);
+                }
+            });
+        }
+
+        result.durationMs = System.currentTimeMillis() - startedAt;
+        return result;
+    }
+
+    /**
+     * @return false if the policy gave up
+     */
+    private boolean retry(Result result, Connection connection) {
+        int attempt = 0;
+
+        while (true) {
+            long bytesBefore = result.bytes;
+
+            try {
+                result.connections++;
+                connection.read(result);
+                return true;
+            } catch (PlaybackException e) {
+                // the retries are counted again once the player recovers
+                if (result.bytes > bytesBefore) {
+                    attempt = 0;
+                }
+
+                RetryPolicy.ErrorCategory category = RetryPolicy.ErrorCategory.fromException(e);
+                long delay = this.retryPolicy.getRetryDelayMs(category, ++attempt);
+
+                if (delay < 0) {
+                    result.error = category;
+                    result.events.add("ERROR " + category + " after " + (attempt - 1) + " retries: " + e.getMessage());
+                    return false;
+                }
+
+                result.reconnects++;
+                result.events.add("RECONNECTING " + category + " attempt " + attempt + ": " + e.getMessage());
+
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    result.error = category;
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void readIcy(String url, long targetBytes, Result result) throws PlaybackException {
+        HttpURLConnection connection = this.open(url, true);
+
+        try {
+            // an invalid icy-metaint is ignored, as ExoPlayer does, the stream is read without metadata
+            result.metaint = this.parseMetaint(connection.getHeaderField("icy-metaint"));
+            DataInputStream in = new DataInputStream(connection.getInputStream());
+            byte[] buffer = new byte[4096];
+            int sinceMetadata = 0;
+
+            while (result.bytes < targetBytes) {
+                int length = buffer.length;
+
+                if (result.metaint > 0) {
+                    length = Math.min(length, result.metaint - sinceMetadata);
+                }
+
+                int read = in.read(buffer, 0, length);
+
+                if (read < 0) {
+                    throw new EOFException("Stream ended");
+                }
+
+                result.bytes += read;
+                sinceMetadata += read;
+
+                if (result.metaint > 0 && sinceMetadata == result.metaint) {
+                    this.readMetadata(in, result);
+                    sinceMetadata = 0;
+                }
+            }
+        } catch (IOException e) {
+            throw this.toPlaybackException(e, result);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void readMetadata(DataInputStream in, Result result) throws IOException {
+        byte[] metadata = new byte[in.readUnsignedByte() * 16];
+        in.readFully(metadata);
+
+        Matcher matcher = STREAM_TITLE.matcher(new String(metadata, StandardCharsets.UTF_8));
+
+        if (matcher.find()) {
+            result.titles.add(matcher.group(1));
+        }
+    }
+
+    private List<String> readPlaylist(String playlistUrl, Result result) throws PlaybackException {
+        HttpURLConnection connection = this.open(playlistUrl, false);
+        List<String> segments = new ArrayList<String>();
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    segments.add(new URL(new URL(playlistUrl), line).toString());
+                }
+            }
+        } catch (IOException e) {
+            throw this.toPlaybackException(e, result);
+        } finally {
+            connection.disconnect();
+        }
+
+        if (segments.isEmpty()) {
+            throw new PlaybackException("Empty playlist", null, PlaybackException.ERROR_CODE_PARSING_MANIFEST_MALFORMED);
+        }
+
+        return segments;
+    }
+
+    private void readSegment(String segmentUrl, Result result) throws PlaybackException {
+        HttpURLConnection connection = this.open(segmentUrl, false);
+        long expected = connection.getContentLengthLong();
+        long read = 0;
+
+        try {
+            InputStream in = connection.getInputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+
+            while ((count = in.read(buffer)) >= 0) {
+                read += count;
+            }
+
+            // the partial data is discarded and the segment requested again
+            if (expected >= 0 && read < expected) {
+                throw new EOFException("Segment ended at " + read + " of " + expected + " bytes");
+            }
+
+            result.bytes += read;
+        } catch (IOException e) {
+            throw this.toPlaybackException(e, result);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(String url, boolean icyMetadata) throws PlaybackException {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(this.readTimeoutMs);
+            connection.setReadTimeout(this.readTimeoutMs);
+
+            if (icyMetadata) {
+                connection.setRequestProperty("Icy-MetaData", "1");
+            }
+
+            int responseCode = connection.getResponseCode();
+
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+
+                throw new PlaybackException(
+                    "HTTP " + responseCode,
+                    new HttpDataSource.InvalidResponseCodeException(responseCode),
+                    PlaybackException.ERROR_CODE_IO_BAD_HTTP_STATUS
+                );
+            }
+
+            return connection;
+        } catch (IOException e) {
+            throw this.toPlaybackException(e, null);
+        }
+    }
+
+    private int parseMetaint(String header) {
+        if (header == null) {
+            return 0;
+        }
+
+        try {
+            return Math.max(Integer.parseInt(header.trim()), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private PlaybackException toPlaybackException(IOException e, Result result) {
+        if (e instanceof SocketTimeoutException) {
+            if (result != null) {
+                result.stalls++;
+            }
+
+            return new PlaybackException("Stalled: " + e.getMessage(), e, PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_TIMEOUT);
+        }
+
+        return new PlaybackException(e.getClass().getSimpleName() + ": " + e.getMessage(), e, PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED);
+    }
+}
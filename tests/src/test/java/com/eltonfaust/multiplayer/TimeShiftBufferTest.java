@@ -0,0 +1,134 @@
+package com.eltonfaust.multiplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TimeShiftBufferTest {
+    private static final int CAPACITY = 64;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private TimeShiftBuffer buffer;
+
+    @Before
+    public void createBuffer() throws IOException {
+        this.buffer = new TimeShiftBuffer(this.folder.newFile(), CAPACITY);
+    }
+
+    @After
+    public void closeBuffer() {
+        this.buffer.close();
+    }
+
+    @Test
+    public void readsTheBytesOnTheirOffsetAcrossTheEndOfTheFile() throws IOException {
+        this.write(0, CAPACITY + 10);
+
+        byte[] data = new byte[20];
+        int read = this.buffer.read(CAPACITY - 5, data, 0, data.length);
+
+        // stops at the end of the file, the rest is read on the next call
+        assertEquals(5, read);
+        this.assertPattern(CAPACITY - 5, data, read);
+
+        read = this.buffer.read(CAPACITY, data, 0, data.length);
+
+        assertEquals(10, read);
+        this.assertPattern(CAPACITY, data, read);
+    }
+
+    @Test
+    public void overwrittenOffsetIsRejected() throws IOException {
+        this.write(0, CAPACITY * 2 + 3);
+
+        try {
+            this.buffer.read(CAPACITY, new byte[8], 0, 8);
+            fail("Overwritten offset read");
+        } catch (TimeShiftBuffer.OverwrittenException e) {
+            assertEquals(CAPACITY + 3, e.intactOffset);
+        }
+    }
+
+    @Test
+    public void readsNearTheOldestOffsetNeverReturnBytesOverwrittenWhileReading() throws Exception {
+        final long total = 4 * 1024 * 1024;
+        final AtomicReference<Throwable> writerError = new AtomicReference<Throwable>();
+
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (long written = 0; written < total; written += 7) {
+                        TimeShiftBufferTest.this.write(written, 7);
+                    }
+                } catch (Throwable e) {
+                    writerError.set(e);
+                }
+            }
+        });
+
+        writer.start();
+
+        byte[] data = new byte[CAPACITY];
+        int skips = 0;
+        long position = 0;
+
+        while (writer.isAlive()) {
+            position = Math.max(position, this.buffer.getOldestOffset());
+
+            if (position >= this.buffer.getWritten()) {
+                continue;
+            }
+
+            try {
+                int read = this.buffer.read(position, data, 0, data.length);
+                this.assertPattern(position, data, read);
+                // stays behind, on the bytes the writer reaches next
+                position += 1;
+            } catch (TimeShiftBuffer.OverwrittenException e) {
+                assertTrue(e.intactOffset > position);
+                position = e.intactOffset;
+                skips++;
+            }
+        }
+
+        writer.join();
+
+        if (writerError.get() != null) {
+            throw new AssertionError(writerError.get());
+        }
+
+        assertTrue("The reader was never overtaken, the race wasn't exercised", skips > 0);
+    }
+
+    private void write(long offset, int length) throws IOException {
+        byte[] data = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            data[i] = pattern(offset + i);
+        }
+
+        this.buffer.write(data, 0, length);
+    }
+
+    private void assertPattern(long offset, byte[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            assertEquals("Byte at offset " + (offset + i), pattern(offset + i), data[i]);
+        }
+    }
+
+    private static byte pattern(long offset) {
+        // prime, so the byte differs from the one a capacity ahead
+        return (byte) (offset % 251);
+    }
+}
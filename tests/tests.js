@@ -0,0 +1,292 @@
+/*
+ * Device tests, run with cordova-plugin-test-framework against the FaultServer of the tests Gradle project:
+ *   gradle -p tests faultServer
+ *   adb reverse tcp:8000 tcp:8000
+ * Each scenario arms its faults on the server, plays it on a new session of the real player and reports the startup,
+ * rebuffer and recovery times measured by the player, the startup benchmark repeats clean plays of the MP3 and AAC
+ * streams, the reports are written by the server to tests/build/reports/faults
+ */
+/* global cordova */
+
+var FAULT_SERVER = 'http://localhost:8000';
+
+// A small buffer and a short stall timeout, so the faults reach the audio and the scenarios run fast
+var SESSION_OPTIONS = {
+    structuredEvents: true,
+    eventBatchWindow: 0,
+    audioFocus: false,
+    profile: 'low-latency',
+    stallTimeout: 3000,
+    retryMaxAttempts: 3,
+    retryBaseDelay: 500,
+    retryMaxDelay: 2000,
+};
+
+// The low-latency buffer (10s of 128kbps) is loaded right away, the faults after it happen while playing
+var PLAYING_BYTES = 320 * 1024;
+
+var SCENARIOS = [
+    { name: 'cleanStream', path: '/stream', faults: [], expected: 'plays' },
+    { name: 'cleanAacStream', path: '/stream.aac', faults: [], expected: 'plays' },
+    // the loader may reconnect without emptying the buffer, the recovery is reported but not required
+    { name: 'resetMidStream', path: '/stream', faults: [ 'reset:/stream:' + PLAYING_BYTES ], expected: 'plays' },
+    { name: 'stallMidStream', path: '/stream', faults: [ 'stall:/stream:' + PLAYING_BYTES + ':20000' ], expected: 'recovers' },
+    { name: 'serverErrorsRetried', path: '/stream', faults: [ 'status:/stream:503', 'status:/stream:503' ], expected: 'plays' },
+    { name: 'clientError', path: '/stream', faults: [ 'status:/stream:404' ], expected: 'fails' },
+    { name: 'throttledStream', path: '/stream', faults: [ 'throttle:/stream:0:8000' ], expected: 'rebuffers' },
+    { name: 'redirectChain', path: '/stream', faults: [ 'redirect:/stream:3' ], expected: 'plays' },
+    { name: 'badIcyHeader', path: '/stream', faults: [ 'badIcyHeader:/stream' ], expected: 'plays' },
+    { name: 'truncatedSegment', path: '/live.m3u8', faults: [ 'truncatedSegment:/segment-*:1000' ], expected: 'plays' },
+    // the playlist moves on while the segment is stalled, the player falls behind the live window
+    { name: 'behindLiveWindow', path: '/live.m3u8', faults: [ 'stall:/segment-*:4096:20000' ], expected: 'recovers' },
+];
+
+// Time each scenario plays, enough for the faults after the buffer and the recovery
+var PLAY_MS = 40000;
+
+// Plays of each stream on the startup benchmark, each one on a new session with the default buffer profile
+var STARTUP_STREAMS = [ '/stream', '/stream.aac' ];
+var STARTUP_PLAYS = 10;
+var STARTUP_TIMEOUT_MS = 15000;
+
+// Budgets of the 90th percentile on the loopback server, a regression fails the run before a release
+var STARTUP_BUDGET_MS = 2000;
+var PLAYER_BUILD_BUDGET_MS = 250;
+
+function request(method, path, body, successCallback, failureCallback) {
+    var xhr = new XMLHttpRequest();
+
+    xhr.open(method, FAULT_SERVER + path);
+    xhr.onload = function () {
+        if (xhr.status != 200) {
+            failureCallback(method + ' ' + path + ': ' + xhr.status);
+            return;
+        }
+
+        successCallback(xhr.responseText ? JSON.parse(xhr.responseText) : null);
+    };
+    xhr.onerror = function () {
+        failureCallback(method + ' ' + path + ': FaultServer not reachable on ' + FAULT_SERVER);
+    };
+    // text/plain, sent without a preflight
+    xhr.send(body);
+}
+
+function extend(target, source) {
+    for (var key in source) {
+        if (source.hasOwnProperty(key)) {
+            target[key] = source[key];
+        }
+    }
+
+    return target;
+}
+
+function percentile(values, p) {
+    var sorted = values.slice().sort(function (a, b) {
+        return a - b;
+    });
+
+    return sorted.length ? sorted[Math.min(sorted.length - 1, Math.ceil(sorted.length * p / 100) - 1)] : -1;
+}
+
+function summarize(values) {
+    return { count: values.length, p50: percentile(values, 50), p90: percentile(values, 90), max: percentile(values, 100) };
+}
+
+/**
+ * Play a stream on a new session for some time, or until an event of the finishOn type,
+ * the result has the metrics measured by the player
+ */
+function runSession(url, options, playMs, finishOn, successCallback, failureCallback) {
+    var sessionId = null;
+    var playedAt = null;
+    var events = [];
+    var error = null;
+    var finished = false;
+    var timer = null;
+
+    function finish() {
+        if (finished) {
+            return;
+        }
+
+        finished = true;
+        clearTimeout(timer);
+
+        navigator.multiPlayer.getStats(function (stats) {
+            navigator.multiPlayer.getState(function (state) {
+                navigator.multiPlayer.disconnect(function () {
+                    successCallback({
+                        url: url,
+                        startupLatencyMs: stats.timeToFirstAudioMs,
+                        rebufferCount: stats.rebufferCount,
+                        rebufferTimeMs: stats.rebufferTimeMs,
+                        recoveryCount: stats.recoveryCount,
+                        recoveryTimeMs: stats.recoveryTimeMs,
+                        reconnectCount: stats.reconnectCount,
+                        audioUnderruns: stats.audioUnderruns,
+                        audioFormat: stats.audioFormat || null,
+                        timings: stats.timings || null,
+                        errors: stats.errors,
+                        finalState: state.state,
+                        error: error,
+                        events: events,
+                    });
+                }, failureCallback, sessionId);
+            }, failureCallback, sessionId);
+        }, failureCallback, sessionId);
+    }
+
+    navigator.multiPlayer.createSession(function (e) {
+        if (e.type == 'SESSION') {
+            sessionId = e.data.id;
+            return;
+        }
+
+        if (playedAt !== null) {
+            // in ms since the play, on the device clock
+            events.push({ type: e.type, at: e.timestamp - playedAt, data: e.data || null });
+        }
+
+        if (e.type == 'CONNECTED' && playedAt === null) {
+            playedAt = e.timestamp;
+            navigator.multiPlayer.play(null, failureCallback, navigator.multiPlayer.STREAM_MUSIC, null, sessionId);
+            timer = setTimeout(finish, playMs);
+        } else if (e.type == 'ERROR') {
+            error = e.data;
+            finish();
+        } else if (e.type == finishOn) {
+            finish();
+        }
+    }, failureCallback, url, extend(extend({}, SESSION_OPTIONS), options || {}));
+}
+
+function defineFaultScenarios() {
+    var results = [];
+
+    afterAll(function (done) {
+        var report = { suite: 'faults', platform: cordova.platformId, scenarios: results };
+
+        request('POST', '/report/faults', JSON.stringify(report), function () {
+            done();
+        }, function (e) {
+            done.fail(e);
+        });
+    }, 30000);
+
+    SCENARIOS.forEach(function (scenario) {
+        it(scenario.name + ' ' + scenario.expected, function (done) {
+            request('POST', '/faults', scenario.faults.join(','), function () {
+                runSession(FAULT_SERVER + scenario.path, {}, PLAY_MS, null, function (result) {
+                    request('GET', '/faults', null, function (server) {
+                        result.scenario = scenario.name;
+                        result.expected = scenario.expected;
+                        result.faults = scenario.faults;
+                        result.applied = server.applied;
+                        result.pending = server.pending;
+                        results.push(result);
+
+                        expect(result.pending.length).toBe(0);
+
+                        if (scenario.expected == 'fails') {
+                            expect(result.error).not.toBeNull();
+                            expect(result.reconnectCount).toBe(0);
+                        } else {
+                            expect(result.error).toBeNull();
+                            expect(result.startupLatencyMs).toBeGreaterThan(0);
+                            expect(result.finalState).toBe('PLAYING');
+                        }
+
+                        if (scenario.expected == 'rebuffers') {
+                            expect(result.rebufferTimeMs).toBeGreaterThan(0);
+                        } else if (scenario.expected == 'recovers') {
+                            // the fault outlasts the buffer, the audio stopped and played again
+                            expect(result.recoveryCount).toBeGreaterThan(0);
+                        }
+
+                        done();
+                    }, done.fail);
+                }, done.fail);
+            }, done.fail);
+        }, PLAY_MS + 30000);
+    });
+}
+
+function defineStartupBenchmark() {
+    var startups = {};
+    var playerBuilds = [];
+
+    afterAll(function (done) {
+        var report = { suite: 'startup', platform: cordova.platformId, startupLatencyMs: {}, playerBuildMs: summarize(playerBuilds) };
+
+        for (var path in startups) {
+            report.startupLatencyMs[path] = summarize(startups[path]);
+        }
+
+        request('POST', '/report/startup', JSON.stringify(report), function () {
+            done();
+        }, function (e) {
+            done.fail(e);
+        });
+    }, 30000);
+
+    STARTUP_STREAMS.forEach(function (path) {
+        it('time to first audio and player build time of ' + path, function (done) {
+            var samples = startups[path] = [];
+            var builds = [];
+
+            function play() {
+                if (samples.length == STARTUP_PLAYS) {
+                    expect(percentile(samples, 90)).toBeLessThan(STARTUP_BUDGET_MS);
+                    expect(builds.length).toBe(STARTUP_PLAYS);
+                    expect(percentile(builds, 90)).toBeLessThan(PLAYER_BUILD_BUDGET_MS);
+                    done();
+                    return;
+                }
+
+                runSession(FAULT_SERVER + path, { profile: null }, STARTUP_TIMEOUT_MS, 'STARTED', function (result) {
+                    expect(result.error).toBeNull();
+                    expect(result.startupLatencyMs).toBeGreaterThan(0);
+
+                    samples.push(result.startupLatencyMs);
+
+                    // each session has its own timings, built once
+                    if (result.timings && result.timings.playerBuild) {
+                        builds.push(result.timings.playerBuild.lastMs);
+                        playerBuilds.push(result.timings.playerBuild.lastMs);
+                    }
+
+                    play();
+                }, done.fail);
+            }
+
+            request('POST', '/faults', '', play, done.fail);
+        }, STARTUP_PLAYS * (STARTUP_TIMEOUT_MS + 5000));
+    });
+}
+
+exports.defineAutoTests = function () {
+    describe('MultiPlayer (FaultServer on ' + FAULT_SERVER + ')', function () {
+        beforeAll(function (done) {
+            var connected = false;
+
+            navigator.multiPlayer.initialize(function (e) {
+                // later events of the default session are ignored
+                if (e.type == 'CONNECTED' && !connected) {
+                    connected = true;
+                    done();
+                }
+            }, function (e) {
+                done.fail('initialize: ' + e);
+            }, FAULT_SERVER + '/stream', false, 0, { structuredEvents: true, timings: true });
+
+            navigator.multiPlayer.connect(null, function (e) {
+                done.fail('connect: ' + e);
+            });
+        }, 30000);
+
+        describe('fault scenarios', defineFaultScenarios);
+        describe('startup benchmark', defineStartupBenchmark);
+    });
+};
@@ -5,28 +5,89 @@ var MultiPlayer = (function () {
         this.STREAM_ALARM = 4;
     }
 
-    MultiPlayerConstruct.prototype.initialize = function (successCallback, failureCallback, url, autoKillNotification, stallTimeout) {
-        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'initialize', [ url, autoKillNotification || false, stallTimeout || false ]);
+    MultiPlayerConstruct.prototype.initialize = function (successCallback, failureCallback, url, autoKillNotification, stallTimeout, options) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'initialize', [ url, autoKillNotification || false, stallTimeout || false, options || {} ]);
     };
 
     MultiPlayerConstruct.prototype.connect = function (successCallback, failureCallback) {
         cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'connect', []);
     };
 
-    MultiPlayerConstruct.prototype.disconnect = function (successCallback, failureCallback) {
-        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'disconnect', []);
+    MultiPlayerConstruct.prototype.createSession = function (successCallback, failureCallback, url, options) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'createSession', [ url, options || {} ]);
     };
 
-    MultiPlayerConstruct.prototype.play = function (successCallback, failureCallback, streamType) {
-        if (typeof streamType == 'undefined') {
+    MultiPlayerConstruct.prototype.disconnect = function (successCallback, failureCallback, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'disconnect', [ sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.play = function (successCallback, failureCallback, streamType, profile, sessionId) {
+        if (typeof streamType == 'undefined' || streamType === null) {
             streamType = -1;
         }
 
-        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'play', [ streamType ]);
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'play', [ streamType, profile || null, sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.stop = function(successCallback, failureCallback, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'stop', [ sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.setStations = function(successCallback, failureCallback, urls, options, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'setStations', [ urls || [], options || {}, sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.switchStation = function(successCallback, failureCallback, index, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'switchStation', [ index, false, sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.nextStation = function(successCallback, failureCallback, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'switchStation', [ 1, true, sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.previousStation = function(successCallback, failureCallback, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'switchStation', [ -1, true, sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.scheduleAlarm = function(successCallback, failureCallback, triggerAt, options, sessionId) {
+        var time = triggerAt instanceof Date ? triggerAt.getTime() : triggerAt;
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'scheduleAlarm', [ time, options || {}, sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.cancelAlarm = function(successCallback, failureCallback, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'cancelAlarm', [ sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.clearCache = function(successCallback, failureCallback, url) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'clearCache', [ url || null ]);
+    };
+
+    MultiPlayerConstruct.prototype.pinCache = function(successCallback, failureCallback, url, pinned) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'pinCache', [ url, pinned !== false ]);
+    };
+
+    MultiPlayerConstruct.prototype.seekTimeShift = function(successCallback, failureCallback, behindLive, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'seekTimeShift', [ behindLive || 0, sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.getTimeShiftPosition = function(successCallback, failureCallback, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'getTimeShiftPosition', [ sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.startRecording = function(successCallback, failureCallback, path, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'startRecording', [ path, sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.stopRecording = function(successCallback, failureCallback, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'stopRecording', [ sessionId || 0 ]);
+    };
+
+    MultiPlayerConstruct.prototype.getState = function(successCallback, failureCallback, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'getState', [ sessionId || 0 ]);
     };
 
-    MultiPlayerConstruct.prototype.stop = function(successCallback, failureCallback) {
-        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'stop', []);
+    MultiPlayerConstruct.prototype.getStats = function(successCallback, failureCallback, sessionId) {
+        cordova.exec(successCallback, failureCallback, 'MultiPlayer', 'getStats', [ sessionId || 0 ]);
     };
 
     return new MultiPlayerConstruct();